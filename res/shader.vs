@@ -1,14 +1,34 @@
 #version 330 core
 // If this version is not supported, try #version 150 core
 
-layout(location = 0) in vec4 vertex_colour;
-layout(location = 1) in vec4 vertex_position;
-// remove layout(..) if the version is lower than #version 330 core
+#include "vertex_attributes.glsl"
+
+// Defined by the program that loads this shader when the vertices need to be transformed, see utility.ShaderLoader
+#ifdef MODELVIEW_PROJECTION
+uniform mat4 modelview_projection;
+#endif
+
+// Defined when every copy of the mesh has its own transform and colour, see utility.vertex.InstanceBuffer.
+// A mat4 attribute takes four locations, one per column (2, 3, 4 and 5)
+#ifdef INSTANCED
+layout(location = 2) in mat4 instance_model;
+layout(location = 6) in vec4 instance_colour;
+#endif
 
 smooth out vec4 fragment_colour;
 
 void main()
 {
+#ifdef INSTANCED
+    fragment_colour = vertex_colour * instance_colour;
+    vec4 position = instance_model * vertex_position;
+#else
     fragment_colour = vertex_colour;
-    gl_Position = vertex_position;
+    vec4 position = vertex_position;
+#endif
+#ifdef MODELVIEW_PROJECTION
+    gl_Position = modelview_projection * position;
+#else
+    gl_Position = position;
+#endif
 }
\ No newline at end of file
@@ -0,0 +1,5 @@
+// The vertex attributes of the coloured vertices used by the core tutorials, see utility.vertex.VertexFormat
+layout(location = 0) in vec4 vertex_colour;
+layout(location = 1) in vec4 vertex_position;
+// The meshes of utility.mesh.Mesh have their normal at location 7 and their texture coordinate at location 8
+// remove layout(..) if the version is lower than #version 330 core
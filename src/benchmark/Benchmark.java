@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package benchmark;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A small micro-benchmark harness. Every benchmark is warmed up first, after which a number of timed iterations are run;
+ * the average time per operation of each iteration is recorded. The results can be written as JSON in the same layout
+ * as the JSON output of JMH, so that existing tooling can compare runs between commits.
+ * <p>
+ * The warm-up and iteration times can be changed with the system properties {@code benchmark.warmup} and
+ * {@code benchmark.time} (milliseconds) and the number of iterations with {@code benchmark.iterations}.
+ */
+public class Benchmark {
+
+    /**
+     * The code that is measured. The returned value is consumed by the harness, so the JIT can't remove the work.
+     */
+    public interface Task {
+        Object run() throws Exception;
+    }
+
+    private static final long WARM_UP_MILLIS = Long.getLong("benchmark.warmup", 1000);
+    private static final long ITERATION_MILLIS = Long.getLong("benchmark.time", 1000);
+    private static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 5);
+
+    private final String suite;
+    private final List<Result> results = new ArrayList<>();
+    // Receives the results of the tasks, so they are never dead code
+    private volatile int sink;
+
+    /**
+     * @param suite the prefix of all benchmark names, usually the class that defines them
+     */
+    public Benchmark(String suite) {
+        this.suite = suite;
+    }
+
+    /**
+     * Measures a task of which every invocation counts as one operation.
+     */
+    public Result run(String name, Task task) {
+        return run(name, 1, task);
+    }
+
+    /**
+     * Measures a task.
+     *
+     * @param operationsPerInvocation the number of operations a single invocation of the task performs, the score is
+     *                                reported per operation
+     */
+    public Result run(String name, int operationsPerInvocation, Task task) {
+        try {
+            measure(task, WARM_UP_MILLIS);
+            double[] scores = new double[ITERATIONS];
+            for (int i = 0; i < ITERATIONS; i++) {
+                scores[i] = measure(task, ITERATION_MILLIS) / operationsPerInvocation;
+            }
+            Result result = new Result(suite + "." + name, scores);
+            results.add(result);
+            System.out.println(result);
+            return result;
+        } catch (Exception e) {
+            throw new IllegalStateException("Benchmark " + name + " failed", e);
+        }
+    }
+
+    /**
+     * @return the average number of nanoseconds per invocation
+     */
+    private double measure(Task task, long millis) throws Exception {
+        long duration = millis * 1_000_000L;
+        long invocations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        int batch = 1;
+        do {
+            for (int i = 0; i < batch; i++) {
+                Object value = task.run();
+                sink += value == null ? 0 : value.hashCode();
+            }
+            invocations += batch;
+            if (batch < 1 << 16)
+                batch <<= 1;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < duration);
+        return (double) elapsed / invocations;
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    /**
+     * Writes all results to a JSON file in the JMH result format (mode "avgt", unit "ns/op").
+     */
+    public void writeJson(String location) throws IOException {
+        try (Writer writer = new FileWriter(location)) {
+            writer.write("[\n");
+            for (int i = 0; i < results.size(); i++) {
+                writer.write(results.get(i).toJson());
+                writer.write(i == results.size() - 1 ? "\n" : ",\n");
+            }
+            writer.write("]\n");
+        }
+    }
+
+    // The two-sided 99.9% quantiles of Student's t-distribution for 1 to 30 degrees of freedom
+    private static final double[] STUDENT_T_999 = {
+            636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+            4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+            3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646
+    };
+
+    /**
+     * @return the two-sided 99.9% quantile of Student's t-distribution. Above 30 degrees of freedom the Cornish-Fisher
+     * expansion around the normal quantile is used, which is within 0.001 of the exact value there
+     */
+    static double studentT999(int degreesOfFreedom) {
+        if (degreesOfFreedom <= STUDENT_T_999.length)
+            return STUDENT_T_999[degreesOfFreedom - 1];
+        double z = 3.2905267314919255, v = degreesOfFreedom;
+        double z3 = z * z * z, z5 = z3 * z * z, z7 = z5 * z * z, z9 = z7 * z * z;
+        return z + (z3 + z) / (4 * v)
+                + (5 * z5 + 16 * z3 + 3 * z) / (96 * v * v)
+                + (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * v * v * v)
+                + (79 * z9 + 776 * z7 + 1482 * z5 - 1920 * z3 - 945 * z) / (92160 * v * v * v * v);
+    }
+
+    /**
+     * The measured scores of a single benchmark in nanoseconds per operation.
+     */
+    public static class Result {
+
+        private final String name;
+        private final double[] scores;
+
+        public Result(String name, double[] scores) {
+            this.name = name;
+            this.scores = scores;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getScore() {
+            double sum = 0;
+            for (double score : scores) {
+                sum += score;
+            }
+            return sum / scores.length;
+        }
+
+        /**
+         * @return the standard deviation of the iteration scores
+         */
+        public double getStandardDeviation() {
+            double mean = getScore(), sum = 0;
+            for (double score : scores) {
+                sum += (score - mean) * (score - mean);
+            }
+            return scores.length > 1 ? Math.sqrt(sum / (scores.length - 1)) : 0;
+        }
+
+        /**
+         * @return the half-width of the 99.9% confidence interval of the score, {@code t(0.999, n - 1) * s / sqrt(n)},
+         * which is what JMH reports as the score error
+         */
+        public double getError() {
+            if (scores.length < 2)
+                return Double.NaN;
+            return studentT999(scores.length - 1) * getStandardDeviation() / Math.sqrt(scores.length);
+        }
+
+        private String toJson() {
+            StringBuilder rawData = new StringBuilder();
+            for (int i = 0; i < scores.length; i++) {
+                if (i > 0)
+                    rawData.append(", ");
+                rawData.append(String.format(Locale.ROOT, "%.3f", scores[i]));
+            }
+            return String.format(Locale.ROOT,
+                    "  {\n" +
+                            "    \"benchmark\": \"%s\",\n" +
+                            "    \"mode\": \"avgt\",\n" +
+                            "    \"measurementIterations\": %d,\n" +
+                            "    \"primaryMetric\": {\n" +
+                            "      \"score\": %.3f,\n" +
+                            "      \"scoreError\": %s,\n" +
+                            "      \"scoreUnit\": \"ns/op\",\n" +
+                            "      \"rawData\": [[%s]]\n" +
+                            "    }\n" +
+                            "  }",
+                    name, scores.length, getScore(), errorJson(), rawData);
+        }
+
+        private String errorJson() {
+            // Like JMH, a single iteration has no confidence interval
+            double error = getError();
+            return Double.isNaN(error) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", error);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-60s %14.3f +- %10.3f ns/op", name, getScore(), getError());
+        }
+    }
+}
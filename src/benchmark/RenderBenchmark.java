@@ -0,0 +1,724 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package benchmark;
+
+import com.joml.matrix.Matrix4f;
+import com.joml.utils.CamMath;
+import com.joml.vector.Vector3f;
+import de.matthiasmann.twl.utils.PNGDecoder;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import utility.Camera;
+import utility.ShaderLoader;
+import utility.command.CommandList;
+import utility.command.CommandQueue;
+import utility.command.SortKey;
+import utility.input.InputEvent;
+import utility.input.InputQueue;
+import utility.log.Level;
+import utility.log.LogBuffer;
+import utility.log.Logger;
+import utility.memory.BufferPool;
+import utility.memory.StackAllocator;
+import utility.mesh.MeshLoader;
+import utility.mesh.MeshOptimizer;
+import utility.mesh.MeshSimplifier;
+import utility.profile.FrameProfiler;
+import utility.scene.BoundingVolumeHierarchy;
+import utility.scene.Frustum;
+import utility.shader.ShaderPreprocessor;
+import utility.sprite.GLSpriteRenderer;
+import utility.sprite.SpriteBatch;
+import utility.sprite.SpriteRenderer;
+import utility.texture.MipmapGenerator;
+import utility.texture.SkylinePacker;
+import utility.vertex.ComponentType;
+import utility.vertex.InstanceBuffer;
+import utility.vertex.VertexAttribute;
+import utility.vertex.VertexFormat;
+import utility.vertex.VertexWriter;
+import utility.voxel.Chunk;
+import utility.voxel.GreedyMesher;
+import utility.voxel.RemeshScheduler;
+import utility.voxel.VoxelWorld;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks the work the tutorials do on the CPU every frame or during set-up. None of these need an OpenGL context,
+ * so they can run on any machine. Run from the project directory (the resources are loaded from res/); the results are
+ * written as JSON to the file given as the first argument, or to benchmark-results.json.
+ */
+public class RenderBenchmark {
+
+    // The cube from CoreCube: 8 vertex positions followed by 8 colours
+    private static final double[] CUBE_VERTICES = {
+            -1, -1, 1, 1, -1, 1, 1, 1, 1, -1, 1, 1,
+            -1, -1, -1, 1, -1, -1, 1, 1, -1, -1, 1, -1,
+            1, 0, 0, 0, 1, 0, 0, 0, 1, 1, 1, 1,
+            1, 0, 0, 0, 1, 0, 0, 0, 1, 1, 1, 1
+    };
+
+    public static void main(String[] args) throws IOException {
+        Benchmark benchmark = new Benchmark(RenderBenchmark.class.getSimpleName());
+        benchmarkCamera(benchmark);
+        benchmarkTemporaryBuffers(benchmark);
+        benchmarkVertexPacking(benchmark);
+        benchmarkTextures(benchmark);
+        benchmarkShaders(benchmark);
+        benchmarkSprites(benchmark);
+        benchmarkInstances(benchmark);
+        benchmarkCulling(benchmark);
+        benchmarkCommands(benchmark);
+        benchmarkInput(benchmark);
+        benchmarkLogging(benchmark);
+        benchmarkProfiler(benchmark);
+        benchmarkMeshes(benchmark);
+        benchmarkVoxels(benchmark);
+        benchmark.writeJson(args.length > 0 ? args[0] : "benchmark-results.json");
+    }
+
+    /**
+     * Composing the MVP matrix of CoreCube.
+     */
+    private static void benchmarkCamera(Benchmark benchmark) {
+        // MVP composition as done by CoreCube before it used the Camera: three new vectors, lookAt, mul and flip
+        final Matrix4f modelviewMatrix = new Matrix4f();
+        final Matrix4f projectionMatrix = new Matrix4f();
+        final FloatBuffer mvpMatrix = BufferUtils.createFloatBuffer(16);
+        CamMath.perspective(60, 640f / 480f, 0.3f, 1000, projectionMatrix);
+        benchmark.run("mvpLookAtAllocating", new Benchmark.Task() {
+            float x;
+
+            @Override
+            public Object run() {
+                x += 0.001f;
+                CamMath.lookAt(new Vector3f(x, 0, 5), new Vector3f(0, 0, 0), new Vector3f(0, 1, 0), modelviewMatrix);
+                mvpMatrix.clear();
+                Matrix4f.mul(projectionMatrix, modelviewMatrix, mvpMatrix);
+                mvpMatrix.flip();
+                return mvpMatrix.get(0);
+            }
+        });
+
+        // MVP composition through the Camera, which reuses its vectors and buffer
+        final Camera camera = new Camera();
+        camera.setPerspective(60, 640f / 480f, 0.3f, 1000);
+        benchmark.run("mvpCamera", new Benchmark.Task() {
+            float x;
+
+            @Override
+            public Object run() {
+                x += 0.001f;
+                camera.setPosition(x, 0, 5);
+                return camera.getModelviewProjection().get(0);
+            }
+        });
+    }
+
+    /**
+     * Allocating a temporary buffer.
+     */
+    private static void benchmarkTemporaryBuffers(Benchmark benchmark) {
+        // A temporary buffer for the MVP matrix: a new direct buffer, one from the stack and one from a pool
+        final Matrix4f modelviewMatrix = new Matrix4f();
+        final Matrix4f projectionMatrix = new Matrix4f();
+        CamMath.perspective(60, 640f / 480f, 0.3f, 1000, projectionMatrix);
+        CamMath.lookAt(new Vector3f(0, 0, 5), new Vector3f(0, 0, 0), new Vector3f(0, 1, 0), modelviewMatrix);
+        benchmark.run("tempMatrixAllocating", new Benchmark.Task() {
+            @Override
+            public Object run() {
+                FloatBuffer buffer = BufferUtils.createFloatBuffer(16);
+                Matrix4f.mul(projectionMatrix, modelviewMatrix, buffer);
+                return buffer.get(0);
+            }
+        });
+
+        final StackAllocator stack = StackAllocator.get();
+        benchmark.run("tempMatrixStack", new Benchmark.Task() {
+            @Override
+            public Object run() {
+                int frame = stack.push();
+                FloatBuffer buffer = stack.allocateFloats(16);
+                Matrix4f.mul(projectionMatrix, modelviewMatrix, buffer);
+                float first = buffer.get(0);
+                stack.pop(frame);
+                return first;
+            }
+        });
+
+        final BufferPool pool = new BufferPool();
+        benchmark.run("tempMatrixPool", new Benchmark.Task() {
+            @Override
+            public Object run() {
+                FloatBuffer buffer = pool.acquireFloats(16);
+                Matrix4f.mul(projectionMatrix, modelviewMatrix, buffer);
+                float first = buffer.get(0);
+                pool.release(buffer);
+                return first;
+            }
+        });
+    }
+
+    /**
+     * Packing the vertex data of the cube.
+     */
+    private static void benchmarkVertexPacking(Benchmark benchmark) {
+        // Packing the vertex data of the cube, as done in the static initializer of CoreCube
+        benchmark.run("vertexPackingAllocating", new Benchmark.Task() {
+            @Override
+            public Object run() {
+                DoubleBuffer vertexData = BufferUtils.createDoubleBuffer(CUBE_VERTICES.length);
+                vertexData.put(CUBE_VERTICES);
+                vertexData.flip();
+                return vertexData.get(0);
+            }
+        });
+
+        final DoubleBuffer vertexData = BufferUtils.createDoubleBuffer(CUBE_VERTICES.length);
+        benchmark.run("vertexPackingReused", new Benchmark.Task() {
+            @Override
+            public Object run() {
+                vertexData.clear();
+                vertexData.put(CUBE_VERTICES);
+                vertexData.flip();
+                return vertexData.get(0);
+            }
+        });
+
+        // Packing the same cube interleaved, as floats and normalized bytes, the way CoreCube does now
+        final VertexFormat vertexFormat = new VertexFormat(
+                new VertexAttribute("position", 1, 3, ComponentType.FLOAT),
+                new VertexAttribute("colour", 0, 3, ComponentType.UNSIGNED_BYTE));
+        final ByteBuffer interleavedData = BufferUtils.createByteBuffer(8 * vertexFormat.getStride());
+        benchmark.run("vertexPackingInterleaved", new Benchmark.Task() {
+            @Override
+            public Object run() {
+                interleavedData.clear();
+                VertexWriter vertexWriter = new VertexWriter(vertexFormat, interleavedData);
+                for (int i = 0; i < 8; i++) {
+                    vertexWriter.put(0, (float) CUBE_VERTICES[i * 3], (float) CUBE_VERTICES[i * 3 + 1], (float) CUBE_VERTICES[i * 3 + 2]);
+                    vertexWriter.put(1, (float) CUBE_VERTICES[24 + i * 3], (float) CUBE_VERTICES[25 + i * 3], (float) CUBE_VERTICES[26 + i * 3]);
+                    vertexWriter.endVertex();
+                }
+                interleavedData.flip();
+                return interleavedData.get(0);
+            }
+        });
+    }
+
+    /**
+     * Decoding, mipmapping and packing textures.
+     */
+    private static void benchmarkTextures(Benchmark benchmark) throws IOException {
+        // Decoding the texture of Textures.setUp, the file is read once so only the decoding is measured
+        final byte[] png = Files.readAllBytes(Paths.get("res/texture.png"));
+        final ByteBuffer textureData;
+        {
+            PNGDecoder decoder = new PNGDecoder(new ByteArrayInputStream(png));
+            textureData = BufferUtils.createByteBuffer(4 * decoder.getWidth() * decoder.getHeight());
+        }
+        benchmark.run("pngDecode", new Benchmark.Task() {
+            @Override
+            public Object run() throws IOException {
+                PNGDecoder decoder = new PNGDecoder(new ByteArrayInputStream(png));
+                textureData.clear();
+                decoder.decode(textureData, decoder.getWidth() * 4, PNGDecoder.Format.RGBA);
+                textureData.flip();
+                return textureData.get(0);
+            }
+        });
+
+        // Generating the mipmap chain of a 512x512 page on all cores, with both filters
+        final ByteBuffer mipmapSource = ByteBuffer.allocate(512 * 512 * 4);
+        for (int i = 0; i < mipmapSource.capacity(); i++) {
+            mipmapSource.put(i, (byte) (i * 31));
+        }
+        for (final MipmapGenerator.Filter filter : MipmapGenerator.Filter.values()) {
+            benchmark.run("mipmap512" + filter, new Benchmark.Task() {
+                @Override
+                public Object run() {
+                    return MipmapGenerator.generate(mipmapSource, 512, 512, filter).length;
+                }
+            });
+        }
+
+        // Packing 500 rectangles of 8 to 64 pixels into a 2048x2048 page
+        Random random = new Random(1);
+        final int[] rectangleSizes = new int[1000];
+        for (int i = 0; i < rectangleSizes.length; i++) {
+            rectangleSizes[i] = 8 + random.nextInt(57);
+        }
+        benchmark.run("skylinePack500", 500, new Benchmark.Task() {
+            final int[] position = new int[2];
+
+            @Override
+            public Object run() {
+                SkylinePacker packer = new SkylinePacker(2048, 2048);
+                for (int i = 0; i < rectangleSizes.length; i += 2) {
+                    packer.pack(rectangleSizes[i], rectangleSizes[i + 1], position);
+                }
+                return packer.getEfficiency();
+            }
+        });
+    }
+
+    /**
+     * Loading the shader sources.
+     */
+    private static void benchmarkShaders(Benchmark benchmark) {
+        // Reading and expanding the shader pair used by Core3D and CoreCube, without and with the permutation cache
+        benchmark.run("shaderSourceLoad", new Benchmark.Task() {
+            @Override
+            public Object run() throws IOException {
+                ShaderPreprocessor preprocessor = new ShaderPreprocessor();
+                return preprocessor.preprocess("res/shader.vs", "MODELVIEW_PROJECTION").length()
+                        + preprocessor.preprocess("res/shader.fs", "MODELVIEW_PROJECTION").length();
+            }
+        });
+
+        benchmark.run("shaderSourceLoadCached", new Benchmark.Task() {
+            @Override
+            public Object run() {
+                return ShaderLoader.loadShaderSource("res/shader.vs", "MODELVIEW_PROJECTION").length()
+                        + ShaderLoader.loadShaderSource("res/shader.fs", "MODELVIEW_PROJECTION").length();
+            }
+        });
+    }
+
+    /**
+     * Batching sprites.
+     */
+    private static void benchmarkSprites(Benchmark benchmark) {
+        // Filling a sprite batch with 10000 sprites spread over 4 textures, the batches are only counted
+        final SpriteBatch spriteBatch = new SpriteBatch(new SpriteRenderer() {
+            @Override
+            public void drawSprites(int texture, ByteBuffer vertices, int spriteCount) {
+            }
+        }, GLSpriteRenderer.MAX_SPRITES);
+        benchmark.run("spriteBatch10000", 10000, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                spriteBatch.begin();
+                for (int i = 0; i < 10000; i++) {
+                    spriteBatch.setTexture(1 + i / 2500);
+                    spriteBatch.setColour(1, 1, 1, 0.5f);
+                    spriteBatch.draw(i % 100, i / 100, 1, 1);
+                }
+                spriteBatch.end();
+                return spriteBatch.getFlushCount();
+            }
+        });
+    }
+
+    /**
+     * Packing the instance data of CoreCube.
+     */
+    private static void benchmarkInstances(Benchmark benchmark) {
+        // Packing the model matrices and colours of N cube instances, as done by CoreCube every frame. Up from 4096
+        // instances the packing is spread over all cores, so the last case packs the largest one on a single thread
+        final InstanceBuffer instances = new InstanceBuffer(1000000);
+        for (int i = 0; i < instances.getCapacity(); i++) {
+            instances.setTransform(i, i % 100, i / 100 % 100, i / 10000, i * 0.01f, 1);
+            instances.setColour(i, 1, 0.5f, 0.25f, 1);
+        }
+        for (int count = 1; count <= instances.getCapacity(); count *= 10) {
+            final int instanceCount = count;
+            benchmark.run("instancePack" + instanceCount, instanceCount, new Benchmark.Task() {
+                @Override
+                public Object run() {
+                    instances.setCount(instanceCount);
+                    return instances.pack().limit();
+                }
+            });
+        }
+        benchmark.run("instancePackSequential1000000", 1000000, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                instances.pack(0, 1000000);
+                return instances.getCapacity();
+            }
+        });
+    }
+
+    /**
+     * Frustum culling, brute force and through the bounding volume hierarchy.
+     */
+    private static void benchmarkCulling(Benchmark benchmark) {
+        // Culling 100000 boxes scattered through a cube of 1000 units against the frustum of a camera in the middle,
+        // which sees about a tenth of them. The time per operation is the time per object, so the number of objects
+        // culled per millisecond is 1000000 divided by it
+        Random random = new Random(1);
+        final int cullObjects = 100000;
+        final BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(cullObjects);
+        final float[] cullBounds = new float[cullObjects * 6];
+        for (int i = 0; i < cullObjects; i++) {
+            float x = random.nextFloat() * 1000 - 500, y = random.nextFloat() * 1000 - 500, z = random.nextFloat() * 1000 - 500;
+            float size = 0.5f + random.nextFloat() * 2;
+            hierarchy.setBounds(i, x - size, y - size, z - size, x + size, y + size, z + size);
+            cullBounds[i * 6] = x - size;
+            cullBounds[i * 6 + 1] = y - size;
+            cullBounds[i * 6 + 2] = z - size;
+            cullBounds[i * 6 + 3] = x + size;
+            cullBounds[i * 6 + 4] = y + size;
+            cullBounds[i * 6 + 5] = z + size;
+        }
+        hierarchy.build(cullObjects);
+        final Camera cullCamera = new Camera();
+        cullCamera.setPerspective(60, 640f / 480f, 0.3f, 1000);
+        final Frustum frustum = new Frustum();
+        final int[] visibleObjects = new int[cullObjects];
+        benchmark.run("frustumCullBruteForce100000", cullObjects, new Benchmark.Task() {
+            float angle;
+
+            @Override
+            public Object run() {
+                angle += 0.01f;
+                cullCamera.setTarget((float) Math.sin(angle), 0, (float) Math.cos(angle));
+                frustum.set(cullCamera.getModelviewProjection());
+                int count = 0;
+                for (int i = 0; i < cullObjects; i++) {
+                    if (frustum.testBox(cullBounds, i * 6) != Frustum.OUTSIDE)
+                        visibleObjects[count++] = i;
+                }
+                return count;
+            }
+        });
+        for (final boolean parallel : new boolean[]{false, true}) {
+            benchmark.run(parallel ? "frustumCullBvhParallel100000" : "frustumCullBvh100000", cullObjects, new Benchmark.Task() {
+                float angle;
+
+                @Override
+                public Object run() {
+                    angle += 0.01f;
+                    cullCamera.setTarget((float) Math.sin(angle), 0, (float) Math.cos(angle));
+                    frustum.set(cullCamera.getModelviewProjection());
+                    return hierarchy.cull(frustum, visibleObjects, parallel);
+                }
+            });
+        }
+    }
+
+    /**
+     * Recording, sorting and merging draw packets.
+     */
+    private static void benchmarkCommands(Benchmark benchmark) {
+        // Recording draw packets with random sort keys on 4 lists of 10000 packets, then sorting and merging them. The
+        // time per operation is the time per packet
+        Random random = new Random(1);
+        final int packetsPerList = 10000;
+        final CommandQueue commandQueue = new CommandQueue(4);
+        final long[] packetKeys = new long[packetsPerList * commandQueue.getListCount()];
+        for (int i = 0; i < packetKeys.length; i++) {
+            packetKeys[i] = SortKey.encode(random.nextInt(2), random.nextInt(16), random.nextInt(64), random.nextFloat());
+        }
+        final CommandQueue.Recorder recorder = new CommandQueue.Recorder() {
+            @Override
+            public void record(CommandList list, int index, int count) {
+                for (int i = index * packetsPerList, last = i + packetsPerList; i < last; i++) {
+                    list.draw(packetKeys[i], SortKey.getProgram(packetKeys[i]), SortKey.getTexture(packetKeys[i]), 1,
+                            GL11.GL_TRIANGLES, 36, GL11.GL_UNSIGNED_SHORT, 0, 1);
+                }
+            }
+        };
+        benchmark.run("sortKeyEncode40000", packetKeys.length, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                long hash = 0;
+                for (int i = 0; i < packetKeys.length; i++) {
+                    hash += SortKey.encode(i & 15, i & 0xFFFF, i >> 4 & 0xFFFF, (i & 1023) / 1023f);
+                }
+                return hash;
+            }
+        });
+        benchmark.run("commandListRecordSort40000", packetKeys.length, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                commandQueue.record(recorder);
+                return commandQueue.getList(0).getSortedKey(0);
+            }
+        });
+        commandQueue.record(recorder);
+        benchmark.run("commandQueueMerge40000", packetKeys.length, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                return commandQueue.merge();
+            }
+        });
+    }
+
+    /**
+     * Passing input events from the callbacks to the simulation.
+     */
+    private static void benchmarkInput(Benchmark benchmark) {
+        // A frame's worth of events through the input queue: the callbacks offer them, the simulation polls them
+        final InputQueue inputQueue = new InputQueue(1024);
+        final InputEvent inputEvent = new InputEvent();
+        benchmark.run("inputQueueOfferPoll1000", 1000, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                for (int i = 0; i < 1000; i++) {
+                    inputQueue.offerCursor(i, i, -i);
+                }
+                double sum = 0;
+                while (inputQueue.poll(inputEvent)) {
+                    sum += inputEvent.getX();
+                }
+                return sum;
+            }
+        });
+    }
+
+    /**
+     * Logging, compared with printing.
+     */
+    private static void benchmarkLogging(Benchmark benchmark) {
+        // Logging the cursor position 1000 times: printing it, through the log buffer until everything is written, and
+        // through a logger whose level is off. Both outputs throw the characters away, the work before that is measured
+        final PrintStream printStream = new PrintStream(new NullOutputStream());
+        benchmark.run("logPrintln1000", 1000, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                for (int i = 0; i < 1000; i++) {
+                    printStream.println(i + ", " + -i + " (" + (i >> 4) + " clicks)");
+                }
+                return printStream.checkError();
+            }
+        });
+        final LogBuffer logBuffer = new LogBuffer(4096, new NullOutputStream(), Level.INFO);
+        final Logger logger = logBuffer.getLogger("RenderBenchmark");
+        benchmark.run("logBufferWritten1000", 1000, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                for (int i = 0; i < 1000; i++) {
+                    logger.log(Level.INFO, "{}, {} ({} clicks)", i, -i, i >> 4);
+                }
+                logBuffer.flush();
+                return logBuffer.getDropped();
+            }
+        });
+        final Logger disabledLogger = logBuffer.getLogger("Disabled");
+        disabledLogger.setLevel(Level.OFF);
+        benchmark.run("logDisabled1000", 1000, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                for (int i = 0; i < 1000; i++) {
+                    disabledLogger.log(Level.INFO, "{}, {} ({} clicks)", i, -i, i >> 4);
+                }
+                return disabledLogger;
+            }
+        });
+        logBuffer.close();
+    }
+
+    /**
+     * Profiling a frame.
+     */
+    private static void benchmarkProfiler(Benchmark benchmark) {
+        // The cost of profiling a frame with the four phases of the engine
+        final FrameProfiler profiler = new FrameProfiler();
+        final int[] profilerPhases = {profiler.addPhase("update"), profiler.addPhase("render"), profiler.addPhase("swap"),
+                profiler.addPhase("events")};
+        benchmark.run("frameProfilerFrame1000", 1000, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                for (int i = 0; i < 1000; i++) {
+                    profiler.beginFrame();
+                    for (int phase : profilerPhases) {
+                        profiler.begin(phase);
+                        profiler.end(phase);
+                    }
+                    profiler.endFrame();
+                }
+                return profiler.getFrameCount();
+            }
+        });
+    }
+
+    /**
+     * Loading, optimizing and simplifying meshes.
+     */
+    private static void benchmarkMeshes(Benchmark benchmark) throws IOException {
+        // Loading a 256 x 256 grid of quads with normals, once as OBJ text and once as binary PLY
+        final int gridSize = 256;
+        StringBuilder obj = new StringBuilder();
+        ByteBuffer plyData = ByteBuffer.allocateDirect(gridSize * gridSize * 12 + (gridSize - 1) * (gridSize - 1) * 17 + 256)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        plyData.put(("ply\nformat binary_little_endian 1.0\nelement vertex " + gridSize * gridSize
+                + "\nproperty float x\nproperty float y\nproperty float z\nelement face " + (gridSize - 1) * (gridSize - 1)
+                + "\nproperty list uchar int vertex_indices\nend_header\n").getBytes(StandardCharsets.US_ASCII));
+        obj.append("vn 0 0 1\n");
+        for (int vertex = 0; vertex < gridSize * gridSize; vertex++) {
+            float x = vertex % gridSize * 0.1f;
+            float y = vertex / gridSize * 0.1f;
+            float z = (float) Math.sin(vertex);
+            obj.append("v ").append(x).append(' ').append(y).append(' ').append(z).append('\n');
+            plyData.putFloat(x).putFloat(y).putFloat(z);
+        }
+        for (int y = 0; y < gridSize - 1; y++) {
+            for (int x = 0; x < gridSize - 1; x++) {
+                int corner = y * gridSize + x;
+                obj.append("f ").append(corner + 1).append("//1 ").append(corner + 2).append("//1 ")
+                        .append(corner + 2 + gridSize).append("//1 ").append(corner + 1 + gridSize).append("//1\n");
+                plyData.put((byte) 4).putInt(corner).putInt(corner + 1).putInt(corner + 1 + gridSize).putInt(corner + gridSize);
+            }
+        }
+        plyData.flip();
+        byte[] objBytes = obj.toString().getBytes(StandardCharsets.US_ASCII);
+        final ByteBuffer objData = ByteBuffer.allocateDirect(objBytes.length);
+        objData.put(objBytes).flip();
+        final int gridTriangles = (gridSize - 1) * (gridSize - 1) * 2;
+        benchmark.run("meshLoadObj130000", gridTriangles, new Benchmark.Task() {
+            @Override
+            public Object run() throws IOException {
+                return MeshLoader.readObj(objData.duplicate()).getVertexCount();
+            }
+        });
+        final ByteBuffer ply = plyData;
+        benchmark.run("meshLoadPlyBinary130000", gridTriangles, new Benchmark.Task() {
+            @Override
+            public Object run() throws IOException {
+                return MeshLoader.readPly(ply.duplicate()).getVertexCount();
+            }
+        });
+
+        // Ordering the triangles of the same grid for the vertex cache, starting from a random order
+        final int[] gridIndices = new int[gridTriangles * 3];
+        for (int y = 0, index = 0; y < gridSize - 1; y++) {
+            for (int x = 0; x < gridSize - 1; x++) {
+                int corner = y * gridSize + x;
+                int[] quad = {corner, corner + 1, corner + 1 + gridSize, corner, corner + 1 + gridSize, corner + gridSize};
+                System.arraycopy(quad, 0, gridIndices, index, 6);
+                index += 6;
+            }
+        }
+        Random shuffle = new Random(1);
+        for (int triangle = gridTriangles - 1; triangle > 0; triangle--) {
+            int other = shuffle.nextInt(triangle + 1);
+            for (int corner = 0; corner < 3; corner++) {
+                int swap = gridIndices[triangle * 3 + corner];
+                gridIndices[triangle * 3 + corner] = gridIndices[other * 3 + corner];
+                gridIndices[other * 3 + corner] = swap;
+            }
+        }
+        benchmark.run("meshOptimizeVertexCache130000", gridTriangles, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                return MeshOptimizer.optimizeVertexCache(gridIndices, gridSize * gridSize)[0];
+            }
+        });
+
+        // Simplifying a smooth height field on the same grid to half of its triangles
+        final float[] gridPositions = new float[gridSize * gridSize * 3];
+        for (int vertex = 0; vertex < gridSize * gridSize; vertex++) {
+            gridPositions[vertex * 3] = vertex % gridSize * 0.1f;
+            gridPositions[vertex * 3 + 1] = vertex / gridSize * 0.1f;
+            gridPositions[vertex * 3 + 2] = (float) (Math.sin(vertex % gridSize * 0.05) * Math.cos(vertex / gridSize * 0.07));
+        }
+        final MeshSimplifier simplifier = new MeshSimplifier(gridPositions);
+        benchmark.run("meshSimplifyHalf130000", gridTriangles, new Benchmark.Task() {
+            @Override
+            public Object run() {
+                return simplifier.simplify(gridIndices, gridTriangles / 2, Float.MAX_VALUE).length;
+            }
+        });
+    }
+
+    /**
+     * Meshing voxel chunks.
+     */
+    private static void benchmarkVoxels(Benchmark benchmark) {
+        // Greedy meshing of a rolling terrain of 8 x 8 columns of chunks, one chunk at a time and then every chunk with 1, 2,
+        // 4, ... threads up to the number of cores; the time per chunk gives the chunks meshed per second
+        final VoxelWorld world = new VoxelWorld();
+        for (int x = 0; x < 8 * Chunk.SIZE; x++) {
+            for (int z = 0; z < 8 * Chunk.SIZE; z++) {
+                int height = 24 + (int) (10 * Math.sin(x * 0.07) * Math.cos(z * 0.05) + 4 * Math.sin(x * 0.23 + z * 0.19));
+                for (int y = 0; y < height; y++) {
+                    world.setBlock(x, y, z, y < height - 4 ? 1 : y < height - 1 ? 2 : 3);
+                }
+            }
+        }
+        final GreedyMesher mesher = new GreedyMesher();
+        final Chunk surfaceChunk = world.getChunk(3, 0, 3);
+        benchmark.run("voxelGreedyMeshChunk", new Benchmark.Task() {
+            @Override
+            public Object run() {
+                return mesher.mesh(world, surfaceChunk);
+            }
+        });
+        List<Integer> threadCounts = new ArrayList<>();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(cores);
+        for (int threads : threadCounts) {
+            final RemeshScheduler scheduler = new RemeshScheduler(world, threads);
+            benchmark.run("voxelRemeshChunks" + threads + "Threads", world.getChunkCount(), new Benchmark.Task() {
+                @Override
+                public Object run() {
+                    for (Chunk chunk : world.getChunks()) {
+                        world.markDirty(chunk);
+                    }
+                    return scheduler.remeshAll();
+                }
+            });
+            scheduler.logStatistics();
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Throws away everything written to it.
+     */
+    private static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -33,18 +33,32 @@ import com.joml.matrix.Matrix4f;
 import com.joml.utils.CamMath;
 import com.joml.vector.Vector3f;
 import com.joml.vector.Vector4f;
-import org.lwjgl.BufferUtils;
-import org.lwjgl.glfw.Callbacks;
-import org.lwjgl.glfw.GLFWCursorPosCallback;
-import org.lwjgl.glfw.GLFWErrorCallback;
-import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GLContext;
 import org.lwjgl.system.MemoryUtil;
-import utility.ShaderLoader;
-
-import java.nio.DoubleBuffer;
+import utility.engine.Application;
+import utility.engine.Display;
+import utility.engine.Engine;
+import utility.engine.GLFWDisplay;
+import utility.gl.GLStateCache;
+import utility.gl.OpenGL;
+import utility.input.GLFWInput;
+import utility.input.InputEvent;
+import utility.input.InputQueue;
+import utility.log.Level;
+import utility.log.Log;
+import utility.log.Logger;
+import utility.memory.StackAllocator;
+import utility.profile.FrameProfiler;
+import utility.shader.GLShaderCompiler;
+import utility.shader.ShaderProgramCache;
+import utility.vertex.ComponentType;
+import utility.vertex.VertexAttribute;
+import utility.vertex.VertexFormat;
+import utility.vertex.VertexWriter;
+
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
+import java.nio.file.Paths;
 import java.util.Vector;
 
 import static org.lwjgl.glfw.GLFW.*;
@@ -56,12 +70,16 @@ import static org.lwjgl.opengl.GL30.*;
 /**
  * Created by TheCodingUniverse on 05/04/2015.
  */
-public class Core3D {
+public class Core3D implements Application {
     // The indices of the vertex position and colour attributes, we use these attributes in the vertex shader
     private static final int VERTEX_POSITION = 1, VERTEX_COLOUR = 0;
-    // The error callback function for GLFW
-    private static GLFWErrorCallback errorCallback;
-    private static GLFWCursorPosCallback cursorCallback;
+    // The layout of a vertex: two floats for the position and three unsigned bytes for the colour (OpenGL maps 0..255 to 0..1)
+    private static final VertexFormat VERTEX_FORMAT = new VertexFormat(
+            new VertexAttribute("position", VERTEX_POSITION, 2, ComponentType.FLOAT),
+            new VertexAttribute("colour", VERTEX_COLOUR, 3, ComponentType.UNSIGNED_BYTE));
+    // The speed of the quad in units per second
+    private static final float MOVEMENT_SPEED = 0.6f;
+    private static final Logger log = Log.getLogger(Core3D.class);
     // The window handle
     private static long windowID;
     // The Vertex Array Object (VAO):  stores the of bindings between Vertex Attributes and vertex data
@@ -72,94 +90,83 @@ public class Core3D {
     private static int indexBufferObject;
     // The OpenGL shader program handle
     private static int shaderProgram;
+    private static ShaderProgramCache shaderProgramCache;
+    // The OpenGL functions of the display (the real ones, or a backend that only records the calls when running
+    // headless) behind a state cache, which filters out the calls that wouldn't change anything
+    private static OpenGL gl;
+    // Times the phases of every frame. The engine times the update, render, swap and events phases; these are the parts
+    // of update and render
+    private static FrameProfiler profiler = new FrameProfiler();
+    private static int inputPhase = profiler.addPhase("input");
+    private static int matricesPhase = profiler.addPhase("updateMatrices");
+    private static int drawPhase = profiler.addPhase("draw");
     private static int uniformModelviewProjection;
-    // In LWJGL we store vertex and index data using Buffers, because they most resemble C/C++ data arrays
-    private static DoubleBuffer vertexData = BufferUtils.createDoubleBuffer(20);
-    private static ShortBuffer indexData = BufferUtils.createShortBuffer(6);
+    private static Matrix4f viewMatrix = new Matrix4f();
     private static Matrix4f modelviewMatrix = new Matrix4f();
     private static Matrix4f projectionMatrix = new Matrix4f();
-    private static FloatBuffer mvpMatrix = BufferUtils.createFloatBuffer(16);
     private static Vector4f translate = new Vector4f(0, 0, -5, 1);
-    private static int mouseX = -9999, mouseY = -9999;
-
-    static {
-        vertexData.put(new double[]{
-                // Vertex Positions: each vertex position has two components, x, and y
-                -1.0, -1.0, // 0, visible vertices in this projection range from (-1, -1) to (+1, +1)
-                +1.0, -1.0, // 1
-                +1.0, +1.0, // 2
-                -1.0, +1.0, // 3
-                // Colours: each colour has three components, red, green and blue
-                1.0, 0.0, 0.0, // 0, colours range from 0.0 to 1.0
-                0.0, 1.0, 0.0, // 1
-                0.0, 0.0, 1.0, // 2
-                1.0, 1.0, 1.0  // 3
-        });
-        vertexData.flip();
-        indexData.put(new short[]{
-                // Indices for the triangles: each triangle has three indices
-                0, 1, 2,
-                0, 2, 3
-        });
-        indexData.flip();
-    }
-
-    private static void setUp() {
-        boolean glfwInitializationResult = glfwInit() == GL11.GL_TRUE;
-
-        if (glfwInitializationResult == false)
-            throw new IllegalStateException("GLFW initialization failed");
-
-        glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE); // Mac Modern OpenGL
-        glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GL_TRUE); // Mac Modern OpenGL
-        glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 3); // Modern OpenGL
-        glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 2); // Mac Modern OpenGL
-
-        windowID = glfwCreateWindow(640, 480, "Test", MemoryUtil.NULL, MemoryUtil.NULL);
-
-        if (windowID == MemoryUtil.NULL)
-            throw new IllegalStateException("GLFW window creation failed");
-
-        glfwMakeContextCurrent(windowID); // Links the OpenGL context of the window to the currrent thread
-        glfwSwapInterval(1); // Enable VSync
-        glfwShowWindow(windowID);
-
-        glfwSetCursorPosCallback(windowID, cursorCallback = new GLFWCursorPosCallback() {
-
-            @Override
-            public void invoke(long window, double xpos, double ypos) {
-                mouseX = (int) xpos;
-                mouseY = (int) ypos;
-            }
-        });
-
-        // If you don't add this line, you'll get the following exception:
-        //  java.lang.IllegalStateException: There is no OpenGL context current in the current thread.
-        GLContext.createFromCurrent(); // Links LWJGL to the OpenGL context
+    // The translation of the previous simulation tick, the quad is drawn between this translation and translate
+    private static Vector4f previousTranslate = new Vector4f(translate);
+    private static Vector4f interpolatedTranslate = new Vector4f();
+    // The input events of the window, received by the GLFW callbacks and read by the simulation in input()
+    private static InputQueue inputQueue = new InputQueue(256);
+    private static InputEvent inputEvent = new InputEvent();
+    private static GLFWInput glfwInput;
+
+    @Override
+    public void setUp(Display display) {
+        windowID = display.getWindowID();
+        gl = new GLStateCache(display.getGL());
+
+        // A headless display has no window, and so no mouse or keyboard
+        if (windowID != MemoryUtil.NULL) {
+            glfwInput = new GLFWInput(windowID, inputQueue);
+        }
 
-        glClearColor(0, 0, 0, 1);
+        gl.glClearColor(0, 0, 0, 1);
 
         // >> Vertex Array Objects (VAO) are OpenGL Objects that store the
         // >> set of bindings between Vertex Attributes and the user's source
         // >> vertex data. (http://www.opengl.org/wiki/Vertex_Array_Object)
         // >> glGenVertexArrays returns n vertex array object names in arrays.
         // Create a VAO and store the handle in vertexArrayObject
-        vertexArrayObject = glGenVertexArrays();
+        vertexArrayObject = gl.glGenVertexArrays();
         // >> glGenBuffers returns n buffer object names in buffers.
         // >> No buffer objects are associated with the returned buffer object names
         // >> until they are first bound by calling glBindBuffer.
-        vertexBufferObject = glGenBuffers();
-        indexBufferObject = glGenBuffers();
+        vertexBufferObject = gl.glGenBuffers();
+        indexBufferObject = gl.glGenBuffers();
 
         // >> glBindVertexArray binds the vertex array object with name array.
         // Bind the VAO to OpenGL
-        glBindVertexArray(vertexArrayObject);
+        gl.glBindVertexArray(vertexArrayObject);
         // >> glBindBuffer binds a buffer object to the specified buffer binding point.
         // >> Vertex Buffer Objects (VBOs) are Buffer Objects that are used for
         // >> vertex data. (VBO = GL_ARRAY_BUFFER)
         // Bind our buffer object to GL_ARRAY_BUFFER, thus making it a VBO.
-        glBindBuffer(GL_ARRAY_BUFFER, vertexBufferObject);
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBufferObject);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, vertexBufferObject);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBufferObject);
+
+        // In LWJGL we store vertex and index data using Buffers, because they most resemble C/C++ data arrays. The data
+        // is only needed until it is copied into the buffer objects, so it comes from the stack of the thread
+        StackAllocator stack = StackAllocator.get();
+        int frame = stack.push();
+        ByteBuffer vertexData = stack.allocate(4 * VERTEX_FORMAT.getStride());
+        ShortBuffer indexData = stack.allocateShorts(6);
+        VertexWriter vertexWriter = new VertexWriter(VERTEX_FORMAT, vertexData);
+        // Each vertex has a position with two components, x and y, followed by a colour with three components, red,
+        // green and blue. The position and colour of a vertex are stored next to each other (interleaved).
+        vertexWriter.putVertex(-1.0f, -1.0f, 1.0f, 0.0f, 0.0f); // 0, positions from (-1, -1) to (+1, +1) are visible, colours range from 0.0 to 1.0
+        vertexWriter.putVertex(+1.0f, -1.0f, 0.0f, 1.0f, 0.0f); // 1
+        vertexWriter.putVertex(+1.0f, +1.0f, 0.0f, 0.0f, 1.0f); // 2
+        vertexWriter.putVertex(-1.0f, +1.0f, 1.0f, 1.0f, 1.0f); // 3
+        vertexData.flip();
+        indexData.put(new short[]{
+                // Indices for the triangles: each triangle has three indices
+                0, 1, 2,
+                0, 2, 3
+        });
+        indexData.flip();
 
         // >> glBufferData creates a new data store for the buffer object currently bound
         // >> to target. Any pre-existing data store is deleted. The new data store is created
@@ -168,26 +175,28 @@ public class Core3D {
         // >> new data store is not mapped, it has a NULL mapped pointer, and its mapped
         // >> access is GL_READ_WRITE.
         // Store the vertex data (position and colour) in the VBO.
-        glBufferData(GL_ARRAY_BUFFER, vertexData, GL_STATIC_DRAW);
+        gl.glBufferData(GL_ARRAY_BUFFER, vertexData, GL_STATIC_DRAW);
         // Store the vertex index data in the IBO.
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexData, GL_STATIC_DRAW);
+        gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexData, GL_STATIC_DRAW);
+        // The data is in the buffer objects now, the stack memory can be used again
+        stack.pop(frame);
 
         // Create a new shader program from the two files containing a vertex shader and a fragment shader.
-        shaderProgram = ShaderLoader.loadShaderPair("res/perspective.vs", "res/shader.fs");
-        glUseProgram(shaderProgram);
-        uniformModelviewProjection = glGetUniformLocation(shaderProgram, "modelview_projection");
-
-        CamMath.lookAt(new Vector3f(0, 0, 5), new Vector3f(0, 0, 0), new Vector3f(0, 1, 0), modelviewMatrix);
-        System.out.println("Model View: ");
-        System.out.println(modelviewMatrix);
+        // The cache compiles every pair of sources only once and stores the linked program in shader-cache/, so the next
+        // start can skip the compiling if the driver supports program binaries
+        shaderProgramCache = new ShaderProgramCache(new GLShaderCompiler(gl), Paths.get("shader-cache"));
+        shaderProgram = shaderProgramCache.loadShaderPair("res/shader.vs", "res/shader.fs", "MODELVIEW_PROJECTION");
+        gl.glUseProgram(shaderProgram);
+        uniformModelviewProjection = gl.glGetUniformLocation(shaderProgram, "modelview_projection");
+
+        CamMath.lookAt(new Vector3f(0, 0, 5), new Vector3f(0, 0, 0), new Vector3f(0, 1, 0), viewMatrix);
+        modelviewMatrix.set(viewMatrix);
+        // The matrices are turned into strings here: the log formats its arguments later, when they may have changed
+        log.log(Level.DEBUG, "Model View:\n{}", modelviewMatrix.toString());
         CamMath.perspective(60, 1, 0.3f, 1000, projectionMatrix);
-        System.out.println("Projection: ");
-        System.out.println(projectionMatrix);
+        log.log(Level.DEBUG, "Projection:\n{}", projectionMatrix.toString());
 
-        Matrix4f.mul(projectionMatrix, modelviewMatrix, mvpMatrix);
-        mvpMatrix.flip();
-        glUniformMatrix4(uniformModelviewProjection, false, mvpMatrix);
-        mvpMatrix.flip();
+        uploadModelviewProjection();
 
         // >> glEnableVertexAttribArray enables the generic vertex attribute array specified by index.
         // >> glDisableVertexAttribArray disables the generic vertex attribute array specified by
@@ -195,12 +204,8 @@ public class Core3D {
         // >> vertex attribute arrays. If enabled, the values in the generic vertex attribute array
         // >> will be accessed and used for rendering when calls are made to vertex array commands
         // >> such as glDrawArrays, glDrawElements, glDrawRangeElements, glMultiDrawElements, or glMultiDrawArrays.
-        // Enable the vertex position vertex attribute.
-        glEnableVertexAttribArray(VERTEX_POSITION);
-        // Enable the vertex colour vertex attribute.;
-        glEnableVertexAttribArray(VERTEX_COLOUR);
 
-        glEnable(GL_DEPTH_TEST);
+        gl.glEnable(GL_DEPTH_TEST);
 
         // >> glVertexAttribPointer and glVertexAttribIPointer specify the location and data format of the
         // >> array of generic vertex attributes at index index to use when rendering. size specifies
@@ -208,77 +213,104 @@ public class Core3D {
         // >> the data type of each component, and stride specifies the byte stride from one attribute
         // >> to the next, allowing vertices and attributes to be packed into a single array or stored
         // >> in separate arrays.
-        // Tell OpenGL where to find the vertex position data (inside the VBO).
-        glVertexAttribPointer(VERTEX_POSITION, 2, GL_DOUBLE, false, 0, 0);
-        // Tell OpenGL where to find the vertex colour data (inside the VBO).
-        glVertexAttribPointer(VERTEX_COLOUR, 3, GL_DOUBLE, false, 0, 8 * 4 * 2);
+        // Enable the position and colour attributes and tell OpenGL where to find them inside the VBO. The vertex format
+        // calls glEnableVertexAttribArray and glVertexAttribPointer for each attribute, with the offsets and the stride
+        // (the size of a whole vertex) calculated from the attribute types.
+        VERTEX_FORMAT.enable(gl);
 
     }
 
-    private static void enterUpdateLoop() {
-        while (glfwWindowShouldClose(windowID) == GL_FALSE) {
-            updateMatrices();
-            draw();
-            input();
-            glfwPollEvents();
-        }
+    @Override
+    public void update(double delta) {
+        profiler.begin(inputPhase);
+        input((float) delta);
+        profiler.end(inputPhase);
     }
 
-    private static void updateMatrices() {
+    @Override
+    public void render(double alpha) {
+        profiler.begin(matricesPhase);
+        updateMatrices((float) alpha);
+        profiler.end(matricesPhase);
+        profiler.begin(drawPhase);
+        draw();
+        profiler.end(drawPhase);
+    }
 
-        modelviewMatrix.translate(translate);
+    private static void updateMatrices(float alpha) {
+        // The simulation runs at a fixed rate, so interpolate the translation between the last two simulation ticks
+        interpolatedTranslate.set(
+                previousTranslate.x + (translate.x - previousTranslate.x) * alpha,
+                previousTranslate.y + (translate.y - previousTranslate.y) * alpha,
+                previousTranslate.z + (translate.z - previousTranslate.z) * alpha,
+                1);
+        modelviewMatrix.set(viewMatrix);
+        modelviewMatrix.translate(interpolatedTranslate);
+
+        uploadModelviewProjection();
+    }
 
-        mvpMatrix.clear();
+    private static void uploadModelviewProjection() {
+        // The 16 floats only live until they're uploaded, so they are taken from the stack every frame instead of being
+        // kept in a buffer of their own
+        StackAllocator stack = StackAllocator.get();
+        int frame = stack.push();
+        FloatBuffer mvpMatrix = stack.allocateFloats(16);
         Matrix4f.mul(projectionMatrix, modelviewMatrix, mvpMatrix);
         mvpMatrix.flip();
-        glUniformMatrix4(uniformModelviewProjection, false, mvpMatrix);
+        gl.glUniformMatrix4(uniformModelviewProjection, false, mvpMatrix);
+        stack.pop(frame);
     }
 
     private static void draw() {
         // Clear the screen contents
-        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        gl.glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
         // Draw the triangles as given to us by the IBO
-        glDrawElements(
+        gl.glDrawElements(
                 GL_TRIANGLES, // The shape type: triangles, each consisting of three separate vertices
                 6, // The number of indices: 6, 3 per triangle (and there are two triangles)
                 GL_UNSIGNED_SHORT, // Data type, for OpenGL we always use GL_UNSIGNED_SHORT for DoubleBuffer (don't ask me why..)
                 0); // Index offset, we want all the data so we just set this to zero
-        // Refresh the GLFW window
-        glfwSwapBuffers(windowID);
     }
 
-    private static void input() {
+    private static void input(float delta) {
+        previousTranslate.set(translate);
+        // The camera is moved with the polled arrow keys below, the events of the callbacks aren't used yet. They are
+        // still taken out every tick, so the queue never fills up and drops events
+        while (inputQueue.poll(inputEvent)) {
+            // Nothing to do
+        }
+        if (windowID == MemoryUtil.NULL)
+            return;
+        float distance = MOVEMENT_SPEED * delta;
         if (glfwGetKey(windowID, GLFW_KEY_LEFT) == GLFW_PRESS) {
-            translate.x += 0.01f;
+            translate.x += distance;
         } else if (glfwGetKey(windowID, GLFW_KEY_RIGHT) == GLFW_PRESS) {
-            translate.x -= 0.01f;
+            translate.x -= distance;
         }
         if (glfwGetKey(windowID, GLFW_KEY_UP) == GLFW_PRESS) {
-            translate.z += 0.01f;
+            translate.z += distance;
         } else if (glfwGetKey(windowID, GLFW_KEY_DOWN) == GLFW_PRESS) {
-            translate.z -= 0.01f;
+            translate.z -= distance;
         }
         if (glfwGetMouseButton(windowID, GLFW_MOUSE_BUTTON_LEFT) == GLFW_PRESS) {
 
         }
     }
 
-    private static void cleanUp() {
-        glDeleteVertexArrays(vertexArrayObject);
-        glDeleteBuffers(vertexBufferObject);
-        glDeleteBuffers(indexBufferObject);
-        glDeleteProgram(shaderProgram);
-        glfwDestroyWindow(windowID);
-        glfwTerminate();
+    @Override
+    public void cleanUp() {
+        gl.glDeleteVertexArrays(vertexArrayObject);
+        gl.glDeleteBuffers(vertexBufferObject);
+        gl.glDeleteBuffers(indexBufferObject);
+        shaderProgramCache.delete();
     }
 
     public static void main(String[] args) {
-        errorCallback = Callbacks.errorCallbackPrint(System.err);
-        glfwSetErrorCallback(errorCallback);
-
-        setUp();
-        enterUpdateLoop();
-        cleanUp();
+        Engine engine = new Engine(new GLFWDisplay(640, 480, "Test", true));
+        // The summary of the frame times is logged at the end; run with -Dprofiler.trace=profile.csv for the last frames
+        engine.setProfiler(profiler);
+        engine.run(new Core3D());
     }
 
 }
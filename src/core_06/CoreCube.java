@@ -29,22 +29,39 @@
 
 package core_06;
 
-import com.joml.matrix.Matrix4f;
-import com.joml.utils.CamMath;
-import com.joml.vector.Vector3f;
 import com.joml.vector.Vector4f;
-import org.lwjgl.BufferUtils;
-import org.lwjgl.glfw.Callbacks;
-import org.lwjgl.glfw.GLFWCursorPosCallback;
-import org.lwjgl.glfw.GLFWErrorCallback;
-import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GLContext;
 import org.lwjgl.system.MemoryUtil;
-import utility.ShaderLoader;
-
-import java.nio.DoubleBuffer;
-import java.nio.FloatBuffer;
+import utility.Camera;
+import utility.engine.Application;
+import utility.engine.Display;
+import utility.engine.Engine;
+import utility.engine.GLFWDisplay;
+import utility.gl.GLFenceProvider;
+import utility.gl.GLGpuTimer;
+import utility.gl.GLStateCache;
+import utility.gl.OpenGL;
+import utility.input.GLFWInput;
+import utility.input.InputEvent;
+import utility.input.InputQueue;
+import utility.log.Level;
+import utility.log.Log;
+import utility.log.Logger;
+import utility.memory.StackAllocator;
+import utility.profile.FrameProfiler;
+import utility.gl.StreamingBuffer;
+import utility.scene.BoundingVolumeHierarchy;
+import utility.scene.Frustum;
+import utility.shader.GLShaderCompiler;
+import utility.shader.ShaderProgramCache;
+import utility.vertex.ComponentType;
+import utility.vertex.InstanceBuffer;
+import utility.vertex.VertexAttribute;
+import utility.vertex.VertexFormat;
+import utility.vertex.VertexWriter;
+
+import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
+import java.nio.file.Paths;
 
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.*;
@@ -55,12 +72,22 @@ import static org.lwjgl.opengl.GL30.*;
 /**
  * Created by TheCodingUniverse on 05/04/2015.
  */
-public class CoreCube {
+public class CoreCube implements Application {
     // The indices of the vertex position and colour attributes, we use these attributes in the vertex shader
     private static final int VERTEX_POSITION = 1, VERTEX_COLOUR = 0;
-    // The error callback function for GLFW
-    private static GLFWErrorCallback errorCallback;
-    private static GLFWCursorPosCallback cursorCallback;
+    // The layout of a vertex: three floats for the position and three unsigned bytes for the colour (OpenGL maps 0..255 to 0..1)
+    private static final VertexFormat VERTEX_FORMAT = new VertexFormat(
+            new VertexAttribute("position", VERTEX_POSITION, 3, ComponentType.FLOAT),
+            new VertexAttribute("colour", VERTEX_COLOUR, 3, ComponentType.UNSIGNED_BYTE));
+    // The cubes are placed in a grid of CUBES_PER_SIDE * CUBES_PER_SIDE * CUBES_PER_SIDE, SPACING units apart
+    private static final int CUBES_PER_SIDE = 10;
+    private static final int CUBE_COUNT = CUBES_PER_SIDE * CUBES_PER_SIDE * CUBES_PER_SIDE;
+    private static final float SPACING = 4;
+    // The speed at which the cubes spin around their y axis, in radians per second
+    private static final float SPIN_SPEED = 1;
+    // The speed of the camera in units per second
+    private static final float CAMERA_SPEED = 12f;
+    private static final Logger log = Log.getLogger(CoreCube.class);
     // The window handle
     private static long windowID;
     // The Vertex Array Object (VAO):  stores the of bindings between Vertex Attributes and vertex data
@@ -69,111 +96,134 @@ public class CoreCube {
     private static int vertexBufferObject;
     // The Index Buffer Object (IBO): stores the indices of the data in the VBO, used by glDrawElements
     private static int indexBufferObject;
+    // The instance VBO: stores the model matrix and colour of every cube, the attributes advance once per cube instead
+    // of once per vertex. The matrices change every frame, so they are written straight into mapped buffer memory
+    private static StreamingBuffer instanceStream;
+    // The byte offset of the instance data in the instance VBO that the instance attributes point at
+    private static long instanceOffset;
+    private static InstanceBuffer instances = new InstanceBuffer(CUBE_COUNT);
+    // The rotation of the cubes in the current and the previous simulation tick
+    private static float spin, previousSpin;
+    // The cubes only spin, so the tree of boxes around them is built once. Every frame the cubes outside the view
+    // frustum are left out of the instance data
+    private static BoundingVolumeHierarchy cubeBounds = new BoundingVolumeHierarchy(CUBE_COUNT);
+    private static Frustum frustum = new Frustum();
+    private static int[] visibleCubes = new int[CUBE_COUNT];
+    private static int visibleCubeCount;
     // The OpenGL shader program handle
     private static int shaderProgram;
+    private static ShaderProgramCache shaderProgramCache;
+    // The OpenGL functions of the display (the real ones, or a backend that only records the calls when running
+    // headless) behind a state cache, which filters out the calls that wouldn't change anything
+    private static OpenGL gl;
+    // Times the phases of every frame. The engine times the update, render, swap and events phases; these are the parts
+    // of update and render
+    private static FrameProfiler profiler = new FrameProfiler();
+    private static int inputPhase = profiler.addPhase("input");
+    private static int matricesPhase = profiler.addPhase("updateMatrices");
+    private static int instancesPhase = profiler.addPhase("updateInstances");
+    private static int drawPhase = profiler.addPhase("draw");
     private static int uniformModelviewProjection;
-    // In LWJGL we store vertex and index data using Buffers, because they most resemble C/C++ data arrays
-    private static DoubleBuffer vertexData = BufferUtils.createDoubleBuffer(16 * 3);
-    private static ShortBuffer indexData = BufferUtils.createShortBuffer(6 * 2 * 3);
-    private static Matrix4f modelviewMatrix = new Matrix4f();
-    private static Matrix4f projectionMatrix = new Matrix4f();
-    private static FloatBuffer mvpMatrix = BufferUtils.createFloatBuffer(16);
-    private static Vector4f translate = new Vector4f(0, 0, 5, 1);
-    private static int mouseX = -9999, mouseY = -9999;
+    // The camera creates the modelview-projection matrix, it only recalculates and uploads it when the camera moved
+    private static Camera camera = new Camera();
+    private static Vector4f translate = new Vector4f(0, 0, 60, 1);
+    // The camera position of the previous simulation tick, the camera is drawn between this position and translate
+    private static Vector4f previousTranslate = new Vector4f(translate);
+    // The input events of the window, received by the GLFW callbacks and read by the simulation in input()
+    private static InputQueue inputQueue = new InputQueue(256);
+    private static InputEvent inputEvent = new InputEvent();
+    private static GLFWInput glfwInput;
 
     static {
-        vertexData.put(new double[]{
-                -1, -1, 1,    // 0
-                1, -1, 1,     // 1
-                1, 1, 1,      // 2
-                -1, 1, 1,     // 3
-                -1, -1, -1,   // 4
-                1, -1, -1,    // 5
-                1, 1, -1,     // 6
-                -1, 1, -1,    // 7
-                1, 0, 0, // 0
-                0, 1, 0, // 1
-                0, 0, 1, // 2
-                1, 1, 1, // 3
-                1, 0, 0, // 4
-                0, 1, 0, // 5
-                0, 0, 1, // 6
-                1, 1, 1  // 7
-        });
-        vertexData.flip();
-        indexData.put(new short[]{
-                0, 1, 2, // front (1-6)
-                0, 2, 3,
-                4, 5, 6, // back  (7-12)
-                4, 6, 7,
-                0, 1, 5, // bottom (13-18)
-                0, 5, 4,
-                3, 2, 6, // top   (19-24)
-                3, 6, 7,
-                4, 0, 3, // left  (25-30)
-                4, 3, 7,
-                1, 5, 6, // right (31-36)
-                1, 6, 2
-        });
-        indexData.flip();
+        // Centre the grid around the origin and give every cube a colour depending on its place in the grid
+        float half = (CUBES_PER_SIDE - 1) * SPACING / 2;
+        int index = 0;
+        for (int x = 0; x < CUBES_PER_SIDE; x++) {
+            for (int y = 0; y < CUBES_PER_SIDE; y++) {
+                for (int z = 0; z < CUBES_PER_SIDE; z++) {
+                    float cubeX = x * SPACING - half, cubeY = y * SPACING - half, cubeZ = z * SPACING - half;
+                    instances.setTransform(index, cubeX, cubeY, cubeZ, 0, 1);
+                    // A cube spinning around its y axis stays within sqrt(2) of its centre in x and z
+                    cubeBounds.setBounds(index, cubeX - 1.415f, cubeY - 1, cubeZ - 1.415f, cubeX + 1.415f, cubeY + 1, cubeZ + 1.415f);
+                    instances.setColour(index,
+                            0.3f + 0.7f * x / (CUBES_PER_SIDE - 1),
+                            0.3f + 0.7f * y / (CUBES_PER_SIDE - 1),
+                            0.3f + 0.7f * z / (CUBES_PER_SIDE - 1),
+                            1);
+                    index++;
+                }
+            }
+        }
+        instances.setCount(CUBE_COUNT);
+        cubeBounds.build(CUBE_COUNT);
     }
 
-    private static void setUp() {
-        boolean glfwInitializationResult = glfwInit() == GL11.GL_TRUE;
-
-        if (glfwInitializationResult == false)
-            throw new IllegalStateException("GLFW initialization failed");
-
-        glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE); // Mac Modern OpenGL
-        glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GL_TRUE); // Mac Modern OpenGL
-        glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 3); // Modern OpenGL
-        glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 2); // Mac Modern OpenGL
-
-        windowID = glfwCreateWindow(640, 480, "Test", MemoryUtil.NULL, MemoryUtil.NULL);
-
-        if (windowID == MemoryUtil.NULL)
-            throw new IllegalStateException("GLFW window creation failed");
-
-        glfwMakeContextCurrent(windowID); // Links the OpenGL context of the window to the currrent thread
-        glfwSwapInterval(1); // Enable VSync
-        glfwShowWindow(windowID);
-
-        glfwSetCursorPosCallback(windowID, cursorCallback = new GLFWCursorPosCallback() {
-
-            @Override
-            public void invoke(long window, double xpos, double ypos) {
-                mouseX = (int) xpos;
-                mouseY = (int) ypos;
-            }
-        });
+    @Override
+    public void setUp(Display display) {
+        windowID = display.getWindowID();
+        gl = new GLStateCache(display.getGL());
 
-        // If you don't add this line, you'll get the following exception:
-        //  java.lang.IllegalStateException: There is no OpenGL context current in the current thread.
-        GLContext.createFromCurrent(); // Links LWJGL to the OpenGL context
+        // A headless display has no window, and so no mouse or keyboard
+        if (windowID != MemoryUtil.NULL) {
+            glfwInput = new GLFWInput(windowID, inputQueue);
+        }
 
-        glClearColor(0, 0, 0, 1);
+        gl.glClearColor(0, 0, 0, 1);
 
         // >> Vertex Array Objects (VAO) are OpenGL Objects that store the
         // >> set of bindings between Vertex Attributes and the user's source
         // >> vertex data. (http://www.opengl.org/wiki/Vertex_Array_Object)
         // >> glGenVertexArrays returns n vertex array object names in arrays.
         // Create a VAO and store the handle in vertexArrayObject
-        vertexArrayObject = glGenVertexArrays();
+        vertexArrayObject = gl.glGenVertexArrays();
         // >> glGenBuffers returns n buffer object names in buffers.
         // >> No buffer objects are associated with the returned buffer object names
         // >> until they are first bound by calling glBindBuffer.
-        vertexBufferObject = glGenBuffers();
-        indexBufferObject = glGenBuffers();
+        vertexBufferObject = gl.glGenBuffers();
+        indexBufferObject = gl.glGenBuffers();
 
         // >> glBindVertexArray binds the vertex array object with name array.
         // Bind the VAO to OpenGL
-        glBindVertexArray(vertexArrayObject);
+        gl.glBindVertexArray(vertexArrayObject);
         // >> glBindBuffer binds a buffer object to the specified buffer binding point.
         // >> Vertex Buffer Objects (VBOs) are Buffer Objects that are used for
         // >> vertex data. (VBO = GL_ARRAY_BUFFER)
         // Bind our buffer object to GL_ARRAY_BUFFER, thus making it a VBO.
-        glBindBuffer(GL_ARRAY_BUFFER, vertexBufferObject);
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBufferObject);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, vertexBufferObject);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBufferObject);
+
+        // In LWJGL we store vertex and index data using Buffers, because they most resemble C/C++ data arrays. The data
+        // is only needed until it is copied into the buffer objects, so it comes from the stack of the thread
+        StackAllocator stack = StackAllocator.get();
+        int frame = stack.push();
+        ByteBuffer vertexData = stack.allocate(8 * VERTEX_FORMAT.getStride());
+        ShortBuffer indexData = stack.allocateShorts(6 * 2 * 3);
+        VertexWriter vertexWriter = new VertexWriter(VERTEX_FORMAT, vertexData);
+        // Position (x, y, z) followed by colour (r, g, b)
+        vertexWriter.putVertex(-1, -1, 1, 1, 0, 0);    // 0
+        vertexWriter.putVertex(1, -1, 1, 0, 1, 0);     // 1
+        vertexWriter.putVertex(1, 1, 1, 0, 0, 1);      // 2
+        vertexWriter.putVertex(-1, 1, 1, 1, 1, 1);     // 3
+        vertexWriter.putVertex(-1, -1, -1, 1, 0, 0);   // 4
+        vertexWriter.putVertex(1, -1, -1, 0, 1, 0);    // 5
+        vertexWriter.putVertex(1, 1, -1, 0, 0, 1);     // 6
+        vertexWriter.putVertex(-1, 1, -1, 1, 1, 1);    // 7
+        vertexData.flip();
+        indexData.put(new short[]{
+                0, 1, 2, // front (1-6)
+                0, 2, 3,
+                4, 5, 6, // back  (7-12)
+                4, 6, 7,
+                0, 1, 5, // bottom (13-18)
+                0, 5, 4,
+                3, 2, 6, // top   (19-24)
+                3, 6, 7,
+                4, 0, 3, // left  (25-30)
+                4, 3, 7,
+                1, 5, 6, // right (31-36)
+                1, 6, 2
+        });
+        indexData.flip();
 
         // >> glBufferData creates a new data store for the buffer object currently bound
         // >> to target. Any pre-existing data store is deleted. The new data store is created
@@ -182,26 +232,29 @@ public class CoreCube {
         // >> new data store is not mapped, it has a NULL mapped pointer, and its mapped
         // >> access is GL_READ_WRITE.
         // Store the vertex data (position and colour) in the VBO.
-        glBufferData(GL_ARRAY_BUFFER, vertexData, GL_STATIC_DRAW);
+        gl.glBufferData(GL_ARRAY_BUFFER, vertexData, GL_STATIC_DRAW);
         // Store the vertex index data in the IBO.
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexData, GL_STATIC_DRAW);
+        gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexData, GL_STATIC_DRAW);
+        // The data is in the buffer objects now, the stack memory can be used again
+        stack.pop(frame);
 
         // Create a new shader program from the two files containing a vertex shader and a fragment shader.
-        shaderProgram = ShaderLoader.loadShaderPair("res/perspective.vs", "res/shader.fs");
-        glUseProgram(shaderProgram);
-        uniformModelviewProjection = glGetUniformLocation(shaderProgram, "modelview_projection");
-
-        //CamMath.lookAt(new Vector3f(0, 0, 5), new Vector3f(0, 0, 0), new Vector3f(0, 1, 0), modelviewMatrix);
-        System.out.println("Model View: ");
-        System.out.println(modelviewMatrix);
-        CamMath.perspective(60, 640f / 480f, 0.3f, 1000, projectionMatrix);
-        System.out.println("Projection: ");
-        System.out.println(projectionMatrix);
-
-        Matrix4f.mul(projectionMatrix, modelviewMatrix, mvpMatrix);
-        mvpMatrix.flip();
-        glUniformMatrix4(uniformModelviewProjection, false, mvpMatrix);
-        mvpMatrix.flip();
+        // The cache compiles every pair of sources only once and stores the linked program in shader-cache/, so the next
+        // start can skip the compiling if the driver supports program binaries
+        shaderProgramCache = new ShaderProgramCache(new GLShaderCompiler(gl), Paths.get("shader-cache"));
+        // INSTANCED makes the vertex shader read the model matrix and colour of every cube from the instance attributes
+        shaderProgram = shaderProgramCache.loadShaderPair("res/shader.vs", "res/shader.fs", "MODELVIEW_PROJECTION", "INSTANCED");
+        gl.glUseProgram(shaderProgram);
+        uniformModelviewProjection = gl.glGetUniformLocation(shaderProgram, "modelview_projection");
+
+        camera.setPosition(translate.x, translate.y, translate.z);
+        camera.setTarget(0, 0, 0);
+        camera.setPerspective(60, 640f / 480f, 0.3f, 1000);
+        // The matrices are turned into strings here: the log formats its arguments later, when they may have changed
+        log.log(Level.DEBUG, "Model View:\n{}", camera.getViewMatrix().toString());
+        log.log(Level.DEBUG, "Projection:\n{}", camera.getProjectionMatrix().toString());
+
+        camera.upload(gl, uniformModelviewProjection);
 
         // >> glEnableVertexAttribArray enables the generic vertex attribute array specified by index.
         // >> glDisableVertexAttribArray disables the generic vertex attribute array specified by
@@ -209,12 +262,8 @@ public class CoreCube {
         // >> vertex attribute arrays. If enabled, the values in the generic vertex attribute array
         // >> will be accessed and used for rendering when calls are made to vertex array commands
         // >> such as glDrawArrays, glDrawElements, glDrawRangeElements, glMultiDrawElements, or glMultiDrawArrays.
-        // Enable the vertex position vertex attribute.
-        glEnableVertexAttribArray(VERTEX_POSITION);
-        // Enable the vertex colour vertex attribute.;
-        glEnableVertexAttribArray(VERTEX_COLOUR);
 
-        //glPolygonMode(GL_FRONT_AND_BACK, GL_LINE);
+        //gl.glPolygonMode(GL_FRONT_AND_BACK, GL_LINE);
 
         // >> glVertexAttribPointer and glVertexAttribIPointer specify the location and data format of the
         // >> array of generic vertex attributes at index index to use when rendering. size specifies
@@ -222,82 +271,138 @@ public class CoreCube {
         // >> the data type of each component, and stride specifies the byte stride from one attribute
         // >> to the next, allowing vertices and attributes to be packed into a single array or stored
         // >> in separate arrays.
-        // Tell OpenGL where to find the vertex position data (inside the VBO).
-        glVertexAttribPointer(VERTEX_POSITION, 3, GL_DOUBLE, false, 0, 0);
-        // Tell OpenGL where to find the vertex colour data (inside the VBO).
-        glVertexAttribPointer(VERTEX_COLOUR, 3, GL_DOUBLE, false, 0, 24 * 8);
+        // Enable the position and colour attributes and tell OpenGL where to find them inside the VBO. The vertex format
+        // calls glEnableVertexAttribArray and glVertexAttribPointer for each attribute, with the offsets and the stride
+        // (the size of a whole vertex) calculated from the attribute types.
+        VERTEX_FORMAT.enable(gl);
+
+        // >> glVertexAttribDivisor modifies the rate at which generic vertex attributes advance when
+        // >> rendering multiple instances of primitives in a single draw call. If divisor is zero,
+        // >> the attribute at slot index advances once per vertex. If divisor is non-zero, the
+        // >> attribute advances once per divisor instances of the set(s) of vertices being rendered.
+        // The instance attributes are read from the instance VBO, which is bound after it's created, so the vertex format
+        // stores pointers into it in the VAO. It has room for the instances of three frames, so the CPU can fill one
+        // while the GPU still draws the others.
+        instanceStream = new StreamingBuffer(gl, new GLFenceProvider(gl), GL_ARRAY_BUFFER, instances.getSizeInBytes(), 3);
+        InstanceBuffer.VERTEX_FORMAT.enableInstanced(gl, 1);
+        instanceOffset = 0;
+
+        // Timestamp queries also measure how long the GPU takes for every phase; the profiler reads them a few frames
+        // later, so it never waits for the GPU
+        if (gl.isTimerQuerySupported())
+            profiler.setGpuTimer(new GLGpuTimer(gl));
+    }
 
+    @Override
+    public void update(double delta) {
+        profiler.begin(inputPhase);
+        input((float) delta);
+        profiler.end(inputPhase);
+        previousSpin = spin;
+        spin += SPIN_SPEED * delta;
     }
 
-    private static void enterUpdateLoop() {
-        while (glfwWindowShouldClose(windowID) == GL_FALSE) {
-            updateMatrices();
-            draw();
-            input();
-            glfwPollEvents();
-        }
+    @Override
+    public void render(double alpha) {
+        profiler.begin(matricesPhase);
+        updateMatrices((float) alpha);
+        profiler.end(matricesPhase);
+        profiler.begin(instancesPhase);
+        updateInstances((float) alpha);
+        profiler.end(instancesPhase);
+        profiler.begin(drawPhase);
+        draw();
+        profiler.end(drawPhase);
     }
 
-    private static void updateMatrices() {
-        CamMath.lookAt(
-                new Vector3f(translate.x, translate.y, translate.z),
-                new Vector3f(0, 0, 0),
-                new Vector3f(0, 1, 0),
-                modelviewMatrix);
+    private static void updateMatrices(float alpha) {
+        // The simulation runs at a fixed rate, so interpolate the camera between the last two simulation ticks
+        camera.interpolatePosition(
+                previousTranslate.x, previousTranslate.y, previousTranslate.z,
+                translate.x, translate.y, translate.z,
+                alpha);
+        // Nothing is recalculated or sent to OpenGL if the camera didn't move
+        camera.upload(gl, uniformModelviewProjection);
+    }
 
-        mvpMatrix.clear();
-        Matrix4f.mul(projectionMatrix, modelviewMatrix, mvpMatrix);
-        mvpMatrix.flip();
-        glUniformMatrix4(uniformModelviewProjection, false, mvpMatrix);
+    private static void updateInstances(float alpha) {
+        float rotation = previousSpin + (spin - previousSpin) * alpha;
+        for (int i = 0; i < CUBE_COUNT; i++) {
+            // Every other cube spins the other way around
+            instances.setRotation(i, i % 2 == 0 ? rotation : -rotation);
+        }
+        // Find the cubes that may be visible, from the planes of the same matrix the vertex shader uses
+        frustum.set(camera.getModelviewProjection());
+        visibleCubeCount = cubeBounds.cull(frustum, visibleCubes);
+        // Turn the transforms of those cubes into model matrices (in parallel for large numbers of cubes), directly in
+        // the memory OpenGL reads them from
+        instances.pack(instanceStream.map(), visibleCubes, visibleCubeCount);
+        long offset = instanceStream.unmap();
+        // Every frame uses another part of the buffer, so point the instance attributes at it
+        if (offset != instanceOffset) {
+            gl.glBindBuffer(GL_ARRAY_BUFFER, instanceStream.getBuffer());
+            InstanceBuffer.VERTEX_FORMAT.setPointers(gl, offset);
+            instanceOffset = offset;
+        }
     }
 
     private static void draw() {
         // Clear the screen contents
-        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-        // Draw the triangles as given to us by the IBO
-        glDrawElements(
-                GL_TRIANGLES, // The shape type: triangles, each consisting of three separate vertices
-                36, // The number of indices: 6, 3 per triangle (and there are two triangles)
-                GL_UNSIGNED_SHORT, // Data type, for OpenGL we always use GL_UNSIGNED_SHORT for DoubleBuffer (don't ask me why..)
-                0); // Index offset, we want all the data so we just set this to zero
-        // Refresh the GLFW window
-        glfwSwapBuffers(windowID);
+        gl.glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        // Draw the triangles as given to us by the IBO, once for every visible cube, all in a single call
+        if (visibleCubeCount > 0) {
+            gl.glDrawElementsInstanced(
+                    GL_TRIANGLES, // The shape type: triangles, each consisting of three separate vertices
+                    36, // The number of indices: 36, 3 per triangle, 2 triangles per side and 6 sides
+                    GL_UNSIGNED_SHORT, // Data type, for OpenGL we always use GL_UNSIGNED_SHORT for DoubleBuffer (don't ask me why..)
+                    0, // Index offset, we want all the data so we just set this to zero
+                    visibleCubeCount); // The number of instances
+        }
+        // Let the instance VBO know that the draw call above is the last one that reads the instances of this frame
+        instanceStream.fence();
     }
 
-    private static void input() {
+    private static void input(float delta) {
+        previousTranslate.set(translate);
+        // The camera is moved with the polled arrow keys below, the events of the callbacks aren't used yet. They are
+        // still taken out every tick, so the queue never fills up and drops events
+        while (inputQueue.poll(inputEvent)) {
+            // Nothing to do
+        }
+        if (windowID == MemoryUtil.NULL)
+            return;
+        float distance = CAMERA_SPEED * delta;
         if (glfwGetKey(windowID, GLFW_KEY_LEFT) == GLFW_PRESS) {
-            translate.x -= 0.03f;
+            translate.x -= distance;
         } else if (glfwGetKey(windowID, GLFW_KEY_RIGHT) == GLFW_PRESS) {
-            translate.x += 0.03f;
+            translate.x += distance;
         }
         if (glfwGetKey(windowID, GLFW_KEY_UP) == GLFW_PRESS) {
-            translate.z -= 0.03f;
+            translate.z -= distance;
         } else if (glfwGetKey(windowID, GLFW_KEY_DOWN) == GLFW_PRESS) {
-            translate.z += 0.03f;
+            translate.z += distance;
         }
         if (glfwGetKey(windowID, GLFW_KEY_W) == GLFW_PRESS) {
-            translate.y += 0.03f;
+            translate.y += distance;
         } else if (glfwGetKey(windowID, GLFW_KEY_S) == GLFW_PRESS) {
-            translate.y -= 0.03f;
+            translate.y -= distance;
         }
     }
 
-    private static void cleanUp() {
-        glDeleteVertexArrays(vertexArrayObject);
-        glDeleteBuffers(vertexBufferObject);
-        glDeleteBuffers(indexBufferObject);
-        glDeleteProgram(shaderProgram);
-        glfwDestroyWindow(windowID);
-        glfwTerminate();
+    @Override
+    public void cleanUp() {
+        gl.glDeleteVertexArrays(vertexArrayObject);
+        gl.glDeleteBuffers(vertexBufferObject);
+        gl.glDeleteBuffers(indexBufferObject);
+        instanceStream.delete();
+        shaderProgramCache.delete();
     }
 
     public static void main(String[] args) {
-        errorCallback = Callbacks.errorCallbackPrint(System.err);
-        glfwSetErrorCallback(errorCallback);
-
-        setUp();
-        enterUpdateLoop();
-        cleanUp();
+        Engine engine = new Engine(new GLFWDisplay(640, 480, "Test", true));
+        // The summary of the frame times is logged at the end; run with -Dprofiler.trace=profile.csv for the last frames
+        engine.setProfiler(profiler);
+        engine.run(new CoreCube());
     }
 
 }
@@ -29,16 +29,23 @@
 
 package core_06;
 
-import org.lwjgl.BufferUtils;
-import org.lwjgl.glfw.Callbacks;
-import org.lwjgl.glfw.GLFWErrorCallback;
-import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GLContext;
-import org.lwjgl.system.MemoryUtil;
-import utility.ShaderLoader;
-
-import java.nio.DoubleBuffer;
+import utility.engine.Application;
+import utility.engine.Display;
+import utility.engine.Engine;
+import utility.engine.GLFWDisplay;
+import utility.gl.GLStateCache;
+import utility.gl.OpenGL;
+import utility.memory.StackAllocator;
+import utility.shader.GLShaderCompiler;
+import utility.shader.ShaderProgramCache;
+import utility.vertex.ComponentType;
+import utility.vertex.VertexAttribute;
+import utility.vertex.VertexFormat;
+import utility.vertex.VertexWriter;
+
+import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
+import java.nio.file.Paths;
 
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.*;
@@ -51,14 +58,14 @@ import static org.lwjgl.opengl.GL30.*;
  *
  * @author Oskar Veerhoek
  */
-public class CoreOpenGL {
+public class CoreOpenGL implements Application {
 
     // The indices of the vertex position and colour attributes, we use these attributes in the vertex shader
     private static final int VERTEX_POSITION = 1, VERTEX_COLOUR = 0;
-    // The error callback function for GLFW
-    private static GLFWErrorCallback errorCallback;
-    // The window handle
-    private static long windowID;
+    // The layout of a vertex: two floats for the position and three unsigned bytes for the colour (OpenGL maps 0..255 to 0..1)
+    private static final VertexFormat VERTEX_FORMAT = new VertexFormat(
+            new VertexAttribute("position", VERTEX_POSITION, 2, ComponentType.FLOAT),
+            new VertexAttribute("colour", VERTEX_COLOUR, 3, ComponentType.UNSIGNED_BYTE));
     // The Vertex Array Object (VAO):  stores the of bindings between Vertex Attributes and vertex data
     private static int vertexArrayObject;
     // The Vertex Buffer Object (VBO): stores vertex position and colour data
@@ -67,79 +74,60 @@ public class CoreOpenGL {
     private static int indexBufferObject;
     // The OpenGL shader program handle
     private static int shaderProgram;
-    // In LWJGL we store vertex and index data using Buffers, because they most resemble C/C++ data arrays
-    private static DoubleBuffer vertexData = BufferUtils.createDoubleBuffer(20);
-    private static ShortBuffer indexData = BufferUtils.createShortBuffer(6);
-
-    static {
-        vertexData.put(new double[]{
-                // Vertex Positions: each vertex position has two components, x, and y
-                -1.0, -1.0, // 0, visible vertices in this projection range from (-1, -1) to (+1, +1)
-                +1.0, -1.0, // 1
-                +1.0, +1.0, // 2
-                -1.0, +1.0, // 3
-                // Colours: each colour has three components, red, green and blue
-                1.0, 0.0, 0.0, // 0, colours range from 0.0 to 1.0
-                0.0, 1.0, 0.0, // 1
-                0.0, 0.0, 1.0, // 2
-                1.0, 1.0, 1.0  // 3
-        });
-        vertexData.flip();
-        indexData.put(new short[]{
-                // Indices for the triangles: each triangle has three indices
-                0, 1, 2,
-                0, 2, 3
-        });
-        indexData.flip();
-    }
-
-    private static void setUp() {
-        boolean glfwInitializationResult = glfwInit() == GL11.GL_TRUE;
-
-        if (glfwInitializationResult == false)
-            throw new IllegalStateException("GLFW initialization failed");
-
-        glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE); // Mac Modern OpenGL
-        glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GL_TRUE); // Mac Modern OpenGL
-        glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 3); // Modern OpenGL
-        glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 2); // Mac Modern OpenGL
+    // Compiles each shader program once and remembers it
+    private static ShaderProgramCache shaderProgramCache;
+    // The OpenGL functions of the display (the real ones, or a backend that only records the calls when running
+    // headless) behind a state cache, which filters out the calls that wouldn't change anything
+    private static OpenGL gl;
 
-        windowID = glfwCreateWindow(640, 480, "Test", MemoryUtil.NULL, MemoryUtil.NULL);
+    @Override
+    public void setUp(Display display) {
+        gl = new GLStateCache(display.getGL());
 
-        if (windowID == MemoryUtil.NULL)
-            throw new IllegalStateException("GLFW window creation failed");
-
-        glfwMakeContextCurrent(windowID); // Links the OpenGL context of the window to the currrent thread
-        glfwSwapInterval(1); // Enable VSync
-        glfwShowWindow(windowID);
-
-        // If you don't add this line, you'll get the following exception:
-        //  java.lang.IllegalStateException: There is no OpenGL context current in the current thread.
-        GLContext.createFromCurrent(); // Links LWJGL to the OpenGL context
-
-        glClearColor(0, 0, 0, 1);
+        gl.glClearColor(0, 0, 0, 1);
 
         // >> Vertex Array Objects (VAO) are OpenGL Objects that store the
         // >> set of bindings between Vertex Attributes and the user's source
         // >> vertex data. (http://www.opengl.org/wiki/Vertex_Array_Object)
         // >> glGenVertexArrays returns n vertex array object names in arrays.
         // Create a VAO and store the handle in vertexArrayObject
-        vertexArrayObject = glGenVertexArrays();
+        vertexArrayObject = gl.glGenVertexArrays();
         // >> glGenBuffers returns n buffer object names in buffers.
         // >> No buffer objects are associated with the returned buffer object names
         // >> until they are first bound by calling glBindBuffer.
-        vertexBufferObject = glGenBuffers();
-        indexBufferObject = glGenBuffers();
+        vertexBufferObject = gl.glGenBuffers();
+        indexBufferObject = gl.glGenBuffers();
 
         // >> glBindVertexArray binds the vertex array object with name array.
         // Bind the VAO to OpenGL
-        glBindVertexArray(vertexArrayObject);
+        gl.glBindVertexArray(vertexArrayObject);
         // >> glBindBuffer binds a buffer object to the specified buffer binding point.
         // >> Vertex Buffer Objects (VBOs) are Buffer Objects that are used for
         // >> vertex data. (VBO = GL_ARRAY_BUFFER)
         // Bind our buffer object to GL_ARRAY_BUFFER, thus making it a VBO.
-        glBindBuffer(GL_ARRAY_BUFFER, vertexBufferObject);
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBufferObject);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, vertexBufferObject);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBufferObject);
+
+        // In LWJGL we store vertex and index data using Buffers, because they most resemble C/C++ data arrays. The data
+        // is only needed until it is copied into the buffer objects, so it comes from the stack of the thread
+        StackAllocator stack = StackAllocator.get();
+        int frame = stack.push();
+        ByteBuffer vertexData = stack.allocate(4 * VERTEX_FORMAT.getStride());
+        ShortBuffer indexData = stack.allocateShorts(6);
+        VertexWriter vertexWriter = new VertexWriter(VERTEX_FORMAT, vertexData);
+        // Each vertex has a position with two components, x and y, followed by a colour with three components, red,
+        // green and blue. The position and colour of a vertex are stored next to each other (interleaved).
+        vertexWriter.putVertex(-1.0f, -1.0f, 1.0f, 0.0f, 0.0f); // 0, positions from (-1, -1) to (+1, +1) are visible, colours range from 0.0 to 1.0
+        vertexWriter.putVertex(+1.0f, -1.0f, 0.0f, 1.0f, 0.0f); // 1
+        vertexWriter.putVertex(+1.0f, +1.0f, 0.0f, 0.0f, 1.0f); // 2
+        vertexWriter.putVertex(-1.0f, +1.0f, 1.0f, 1.0f, 1.0f); // 3
+        vertexData.flip();
+        indexData.put(new short[]{
+                // Indices for the triangles: each triangle has three indices
+                0, 1, 2,
+                0, 2, 3
+        });
+        indexData.flip();
 
         // >> glBufferData creates a new data store for the buffer object currently bound
         // >> to target. Any pre-existing data store is deleted. The new data store is created
@@ -148,13 +136,18 @@ public class CoreOpenGL {
         // >> new data store is not mapped, it has a NULL mapped pointer, and its mapped
         // >> access is GL_READ_WRITE.
         // Store the vertex data (position and colour) in the VBO.
-        glBufferData(GL_ARRAY_BUFFER, vertexData, GL_STATIC_DRAW);
+        gl.glBufferData(GL_ARRAY_BUFFER, vertexData, GL_STATIC_DRAW);
         // Store the vertex index data in the IBO.
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexData, GL_STATIC_DRAW);
+        gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexData, GL_STATIC_DRAW);
+        // The data is in the buffer objects now, the stack memory can be used again
+        stack.pop(frame);
 
         // Create a new shader program from the two files containing a vertex shader and a fragment shader.
-        shaderProgram = ShaderLoader.loadShaderPair("res/shader.vs", "res/shader.fs");
-        glUseProgram(shaderProgram);
+        // The cache compiles every pair of sources only once and stores the linked program in shader-cache/, so the next
+        // start can skip the compiling if the driver supports program binaries
+        shaderProgramCache = new ShaderProgramCache(new GLShaderCompiler(gl), Paths.get("shader-cache"));
+        shaderProgram = shaderProgramCache.loadShaderPair("res/shader.vs", "res/shader.fs");
+        gl.glUseProgram(shaderProgram);
 
         // >> glEnableVertexAttribArray enables the generic vertex attribute array specified by index.
         // >> glDisableVertexAttribArray disables the generic vertex attribute array specified by
@@ -162,10 +155,6 @@ public class CoreOpenGL {
         // >> vertex attribute arrays. If enabled, the values in the generic vertex attribute array
         // >> will be accessed and used for rendering when calls are made to vertex array commands
         // >> such as glDrawArrays, glDrawElements, glDrawRangeElements, glMultiDrawElements, or glMultiDrawArrays.
-        // Enable the vertex position vertex attribute.
-        glEnableVertexAttribArray(VERTEX_POSITION);
-        // Enable the vertex colour vertex attribute.;
-        glEnableVertexAttribArray(VERTEX_COLOUR);
 
         // >> glVertexAttribPointer and glVertexAttribIPointer specify the location and data format of the
         // >> array of generic vertex attributes at index index to use when rendering. size specifies
@@ -173,50 +162,40 @@ public class CoreOpenGL {
         // >> the data type of each component, and stride specifies the byte stride from one attribute
         // >> to the next, allowing vertices and attributes to be packed into a single array or stored
         // >> in separate arrays.
-        // Tell OpenGL where to find the vertex position data (inside the VBO).
-        glVertexAttribPointer(VERTEX_POSITION, 2, GL_DOUBLE, false, 0, 0);
-        // Tell OpenGL where to find the vertex colour data (inside the VBO).
-        glVertexAttribPointer(VERTEX_COLOUR, 3, GL_DOUBLE, false, 0, 8 * 4 * 2);
+        // Enable the position and colour attributes and tell OpenGL where to find them inside the VBO. The vertex format
+        // calls glEnableVertexAttribArray and glVertexAttribPointer for each attribute, with the offsets and the stride
+        // (the size of a whole vertex) calculated from the attribute types.
+        VERTEX_FORMAT.enable(gl);
 
     }
 
-    private static void enterUpdateLoop() {
-        while (glfwWindowShouldClose(windowID) == GL_FALSE) {
-            draw();
-            // Polls the user input. This is very important, because it prevents your application from becoming unresponsive
-            glfwPollEvents();
-        }
+    @Override
+    public void update(double delta) {
+        // Nothing moves in this tutorial
     }
 
-    private static void draw() {
+    @Override
+    public void render(double alpha) {
         // Clear the screen contents
-        glClear(GL_COLOR_BUFFER_BIT);
+        gl.glClear(GL_COLOR_BUFFER_BIT);
         // Draw the triangles as given to us by the IBO
-        glDrawElements(
+        gl.glDrawElements(
                 GL_TRIANGLES, // The shape type: triangles, each consisting of three separate vertices
                 6, // The number of indices: 6, 3 per triangle (and there are two triangles)
                 GL_UNSIGNED_SHORT, // Data type, for OpenGL we always use GL_UNSIGNED_SHORT for DoubleBuffer (don't ask me why..)
                 0); // Index offset, we want all the data so we just set this to zero
-        // Refresh the GLFW window
-        glfwSwapBuffers(windowID);
     }
 
-    private static void cleanUp() {
-        glDeleteVertexArrays(vertexArrayObject);
-        glDeleteBuffers(vertexBufferObject);
-        glDeleteBuffers(indexBufferObject);
-        glDeleteProgram(shaderProgram);
-        glfwDestroyWindow(windowID);
-        glfwTerminate();
+    @Override
+    public void cleanUp() {
+        gl.glDeleteVertexArrays(vertexArrayObject);
+        gl.glDeleteBuffers(vertexBufferObject);
+        gl.glDeleteBuffers(indexBufferObject);
+        shaderProgramCache.delete();
     }
 
     public static void main(String[] args) {
-        errorCallback = Callbacks.errorCallbackPrint(System.err);
-        glfwSetErrorCallback(errorCallback);
-
-        setUp();
-        enterUpdateLoop();
-        cleanUp();
+        new Engine(new GLFWDisplay(640, 480, "Test", true)).run(new CoreOpenGL());
     }
 
 }
@@ -29,12 +29,21 @@
 
 package input_04;
 
-import org.lwjgl.glfw.Callbacks;
-import org.lwjgl.glfw.GLFWCursorPosCallback;
-import org.lwjgl.glfw.GLFWErrorCallback;
-import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GLContext;
 import org.lwjgl.system.MemoryUtil;
+import utility.engine.Application;
+import utility.engine.Display;
+import utility.engine.Engine;
+import utility.engine.GLFWDisplay;
+import utility.gl.GLStateCache;
+import utility.gl.OpenGL;
+import utility.input.GLFWInput;
+import utility.input.InputEvent;
+import utility.input.InputQueue;
+import utility.log.Level;
+import utility.log.Log;
+import utility.log.Logger;
+import utility.sprite.GLSpriteRenderer;
+import utility.sprite.SpriteBatch;
 
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.*;
@@ -45,119 +54,111 @@ import static org.lwjgl.opengl.GL11.*;
  *
  * @author Oskar Veerhoek
  */
-public class Input {
+public class Input implements Application {
 
-    private static GLFWErrorCallback errorCallback;
     private static long windowID;
 
+    // The logger copies the numbers into a buffer and formats them on another thread, so logging the cursor every update
+    // doesn't slow down the game loop the way printing to the console does
+    private static final Logger log = Log.getLogger(Input.class);
     private static boolean inputEnabled = true;
     private static int mouseX = 0, mouseY = 0;
-    private static GLFWCursorPosCallback cursorCallback;
-
-    private static void setUp() {
-        // Initialize GLFW:
-        int glfwInitializationResult = glfwInit(); // initialize GLFW and store the result (pass or fail)
-        if (glfwInitializationResult == GL_FALSE)
-            throw new IllegalStateException("GLFW initialization failed");
-
-        // Configure the GLFW window
-        windowID = glfwCreateWindow(
-                640, 480,   // Width and height of the drawing canvas in pixels
-                "Simple Mouse/Keyboard Input",     // Title of the window
-                MemoryUtil.NULL, // Monitor ID to use for fullscreen mode, or NULL to use windowed mode (LWJGL JavaDoc)
-                MemoryUtil.NULL); // Window to share resources with, or NULL to not share resources (LWJGL JavaDoc)
-
-        if (windowID == MemoryUtil.NULL)
-            throw new IllegalStateException("GLFW window creation failed");
-
-        glfwMakeContextCurrent(windowID); // Links the OpenGL context of the window to the current thread (GLFW_NO_CURRENT_CONTEXT error)
-        glfwSwapInterval(1); // Enable VSync, which effective caps the frame-rate of the application to 60 frames-per-second
-        glfwShowWindow(windowID);
+    private static int mouseClicks = 0;
+    // The callbacks put the events in this queue, update() takes them out. No event is lost between two updates, even
+    // if the mouse moved several times
+    private static InputQueue inputQueue = new InputQueue(256);
+    private static InputEvent inputEvent = new InputEvent();
+    private static GLFWInput glfwInput;
+    // The OpenGL functions behind a state cache: the sprite renderer binds everything it needs for every batch, the
+    // cache makes sure only the changes reach the driver
+    private static OpenGL gl;
+    private static GLSpriteRenderer spriteRenderer;
+    private static SpriteBatch spriteBatch;
+
+    @Override
+    public void setUp(Display display) {
+        windowID = display.getWindowID();
+        gl = new GLStateCache(display.getGL());
 
         // There are two types of input in GLFW: polled input and callback input
 
-        // This is an example of callback input: we set up code that will run if the callback is triggered
-        glfwSetCursorPosCallback(windowID, cursorCallback = new GLFWCursorPosCallback() {
-
-            @Override
-            public void invoke(long window, double xpos, double ypos) {
-                mouseX = (int) xpos;
-                mouseY = (int) ypos;
-            }
-        });
-
-
-        // If you don't add this line, you'll get the following exception:
-        //  java.lang.IllegalStateException: There is no OpenGL context current in the current thread.
-        GLContext.createFromCurrent(); // Links LWJGL to the OpenGL context
+        // This is an example of callback input: GLFWInput sets callbacks for the cursor, the keys and the mouse buttons,
+        // which run when glfwPollEvents is called and store the events in the queue. A headless display has no window,
+        // and so no mouse or keyboard
+        if (windowID != MemoryUtil.NULL) {
+            glfwInput = new GLFWInput(windowID, inputQueue);
+        }
 
         // Set the background colour of OpenGL. Everything will be reset to this color once you call glClear(GL_COLOR_BUFFER_BIT).
-        glClearColor(0.2f, 0.2f, 0.2f, 1);
-    }
+        gl.glClearColor(0.2f, 0.2f, 0.2f, 1);
 
-    private static void enterUpdateLoop() {
-        while (glfwWindowShouldClose(windowID) == GL_FALSE) {
-            draw();
-            input();
-            // Polls the user input. This is very important, because it prevents your application from becoming unresponsive
-            glfwPollEvents();
-        }
+        spriteRenderer = new GLSpriteRenderer(gl, 16);
+        spriteBatch = new SpriteBatch(spriteRenderer, 16);
     }
 
-    private static void draw() {
-        glClear(GL_COLOR_BUFFER_BIT);
+    @Override
+    public void render(double alpha) {
+        gl.glClear(GL_COLOR_BUFFER_BIT);
 
-        glBegin(GL_TRIANGLES);
+        // A triangle is drawn as a sprite of which the last two vertices are the same
+        spriteBatch.begin();
 
         if (inputEnabled) {
             float red = 1 - (float) mouseY / 480;
             float green = 1 - (float) mouseX / 640 - red;
             float blue = (float) mouseX / 640 - red;
 
-            glColor3f(red, 0, 0);
-            glVertex2f(0, 0.75f);
-            glColor3f(0, green, 0);
-            glVertex2f(-0.75f, -0.75f);
-            glColor3f(0, 0, blue);
-            glVertex2f(0.75f, -0.75f);
+            spriteBatch.setColour(red, 0, 0);
+            spriteBatch.vertex(0, 0.75f);
+            spriteBatch.setColour(0, green, 0);
+            spriteBatch.vertex(-0.75f, -0.75f);
+            spriteBatch.setColour(0, 0, blue);
+            spriteBatch.vertex(0.75f, -0.75f);
+            spriteBatch.vertex(0.75f, -0.75f);
         } else {
-            glColor3f(1, 0, 0);
-            glVertex2f(0, 0.75f);
-            glColor3f(0, 1, 0);
-            glVertex2f(-0.75f, -0.75f);
-            glColor3f(0, 0, 1);
-            glVertex2f(0.75f, -0.75f);
+            spriteBatch.setColour(1, 0, 0);
+            spriteBatch.vertex(0, 0.75f);
+            spriteBatch.setColour(0, 1, 0);
+            spriteBatch.vertex(-0.75f, -0.75f);
+            spriteBatch.setColour(0, 0, 1);
+            spriteBatch.vertex(0.75f, -0.75f);
+            spriteBatch.vertex(0.75f, -0.75f);
         }
 
-        glEnd();
+        spriteBatch.end();
+    }
 
-        // Swaps the front and back framebuffers, this is a very technical process which you don't necessarily
-        // need to understand. You can simply see this method as updating the window contents.
-        glfwSwapBuffers(windowID);
+    @Override
+    public void update(double delta) {
+        input();
     }
 
     private static void input() {
+        // Handle the events the callbacks received since the last update, in the order they happened
+        while (inputQueue.poll(inputEvent)) {
+            if (inputEvent.getType() == InputEvent.CURSOR) {
+                mouseX = (int) inputEvent.getX();
+                mouseY = (int) inputEvent.getY();
+            } else if (inputEvent.getType() == InputEvent.MOUSE_BUTTON && inputEvent.getAction() == GLFW_PRESS) {
+                mouseClicks++;
+            }
+        }
         // This is an example of polled input: we check whether a key is being pressed
-        if (glfwGetKey(windowID, GLFW_KEY_SPACE) == GLFW_PRESS) {
+        if (windowID != MemoryUtil.NULL && glfwGetKey(windowID, GLFW_KEY_SPACE) == GLFW_PRESS) {
             inputEnabled = false;
         } else {
             inputEnabled = true;
         }
-        System.out.println(mouseX + ", " + mouseY);
+        log.log(Level.DEBUG, "{}, {} ({} clicks)", mouseX, mouseY, mouseClicks);
     }
 
-    private static void cleanUp() {
-        glfwDestroyWindow(windowID);
-        glfwTerminate();
+    @Override
+    public void cleanUp() {
+        spriteRenderer.delete();
     }
 
     public static void main(String[] args) {
-        errorCallback = Callbacks.errorCallbackPrint(System.err);
-        glfwSetErrorCallback(errorCallback);
-
-        setUp();
-        enterUpdateLoop();
-        cleanUp();
+        new Engine(new GLFWDisplay(640, 480, "Simple Mouse/Keyboard Input")).run(new Input());
     }
 
 }
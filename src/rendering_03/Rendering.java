@@ -29,12 +29,15 @@
 
 package rendering_03;
 
-import org.lwjgl.glfw.Callbacks;
-import org.lwjgl.glfw.GLFWErrorCallback;
-import org.lwjgl.opengl.GLContext;
-import org.lwjgl.system.MemoryUtil;
+import utility.engine.Application;
+import utility.engine.Display;
+import utility.engine.Engine;
+import utility.engine.GLFWDisplay;
+import utility.gl.GLStateCache;
+import utility.gl.OpenGL;
+import utility.sprite.GLSpriteRenderer;
+import utility.sprite.SpriteBatch;
 
-import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.*;
 
 /**
@@ -42,40 +45,21 @@ import static org.lwjgl.opengl.GL11.*;
  *
  * @author Oskar Veerhoek
  */
-public class Rendering {
+public class Rendering implements Application {
 
-    // The GLFW error callback: this tells GLFW what to do if things go wrong
-    private static GLFWErrorCallback errorCallback;
-    // The handle of the GLFW window
-    private static long windowID;
+    // The OpenGL functions behind a state cache: the sprite renderer binds everything it needs for every batch, the
+    // cache makes sure only the changes reach the driver
+    private static OpenGL gl;
+    private static GLSpriteRenderer spriteRenderer;
+    private static SpriteBatch spriteBatch;
 
-    private static void setUp() {
-        // Initialize GLFW:
-        int glfwInitializationResult = glfwInit(); // initialize GLFW and store the result (pass or fail)
-        if (glfwInitializationResult == GL_FALSE)
-            throw new IllegalStateException("GLFW initialization failed");
-
-        // Configure the GLFW window
-        windowID = glfwCreateWindow(
-                640, 480,   // Width and height of the drawing canvas in pixels
-                "Simple Rendering",     // Title of the window
-                MemoryUtil.NULL, // Monitor ID to use for fullscreen mode, or NULL to use windowed mode (LWJGL JavaDoc)
-                MemoryUtil.NULL); // Window to share resources with, or NULL to not share resources (LWJGL JavaDoc)
-
-        if (windowID == MemoryUtil.NULL)
-            throw new IllegalStateException("GLFW window creation failed");
-
-        glfwMakeContextCurrent(windowID); // Links the OpenGL context of the window to the current thread (GLFW_NO_CURRENT_CONTEXT error)
-        glfwSwapInterval(1); // Enable VSync, which effective caps the frame-rate of the application to 60 frames-per-second
-        glfwShowWindow(windowID);
-
-        // If you don't add this line, you'll get the following exception:
-        //  java.lang.IllegalStateException: There is no OpenGL context current in the current thread.
-        GLContext.createFromCurrent(); // Links LWJGL to the OpenGL context
+    @Override
+    public void setUp(Display display) {
+        gl = new GLStateCache(display.getGL());
+        // The window itself is created by the GLFWDisplay that is passed to the Engine in the main method
 
         // Set the background colour of OpenGL. Everything will be reset to this color once you call glClear(GL_COLOR_BUFFER_BIT).
-
-        glClearColor(
+        gl.glClearColor(
                 0, // red component, from 0 to 1
                 0, // green component, from 0 to 1
                 0, // blue component, from 0 to 1
@@ -89,63 +73,52 @@ public class Rendering {
         // If you skip the glOrtho method invocation, the default 2D projection coordinate space will be like this:
         // Upper-Left:  (-1,+1) Upper-Right:  (+1,+1)
         // Bottom-Left: (-1,-1) Bottom-Right: (+1,-1)
-        glMatrixMode(GL_PROJECTION);
-        glOrtho(0, 640, 480, 0, 1, -1);
-        glMatrixMode(GL_MODELVIEW);
+        gl.glMatrixMode(GL_PROJECTION);
+        gl.glOrtho(0, 640, 480, 0, 1, -1);
+        gl.glMatrixMode(GL_MODELVIEW);
+
+        // The renderer creates the buffer objects on the graphics card, the batch collects our sprites on the CPU side
+        spriteRenderer = new GLSpriteRenderer(gl, 64);
+        spriteBatch = new SpriteBatch(spriteRenderer, 64);
     }
 
-    private static void enterUpdateLoop() {
-        while (glfwWindowShouldClose(windowID) == GL_FALSE) {
-            draw();
-            // Polls the user input. This is very important, because it prevents your application from becoming unresponsive
-            glfwPollEvents();
-        }
+    @Override
+    public void update(double delta) {
+        // Nothing moves in this tutorial
     }
 
-    private static void draw() {
+    @Override
+    public void render(double alpha) {
         // Clear the contents of the window (try disabling this and resizing the window – fun guaranteed)
-        glClear(GL_COLOR_BUFFER_BIT);
-        // ">>" denotes a possibly modified piece of OpenGL documentation (http://www.opengl.org/sdk/docs/man/)
-        // >> glBegin and glEnd delimit the vertices that define a primitive or a group of like primitives.
-        // >> glBegin accepts a single argument that specifies how the vertices are interpreted.
-        // All upcoming vertex calls will be taken as points of a quadrilateral until glEnd is called. Since
-        // this primitive requires four vertices, we will have to call glVertex four times.
-        glBegin(GL_QUADS);
-        // >> glVertex commands are used within glBegin/glEnd pairs to specify point, line, and polygon vertices.
-        // >> glColor sets the current colour. (All subsequent calls to glVertex will be assigned this colour)
-        // >> The number after 'glVertex'/'glColor' indicates the amount of components. (xyzw/rgba)
-        // >> The character after the number indicates the type of arguments.
-        // >>      (for 'glVertex' = d: Double, f: Float, i: Integer)
-        // >>      (for 'glColor'  = d: Double, f: Float, b: Signed Byte, ub: Unsigned Byte)
-        glColor3f(1.0f, 0.0f, 0.0f);                    // Pure Green
-        glVertex2i(0, 0);                               // Upper-left
-        glColor3b((byte) 0, (byte) 127, (byte) 0);      // Pure Red
-        glVertex2d(640.0, 0.0);                         // Upper-right
-        glColor3ub((byte) 255, (byte) 255, (byte) 255); // White
-        glVertex2f(640.0f, 480.0f);                     // Bottom-right
-        glColor3d(0.0d, 0.0d, 1.0d);                    // Pure Blue
-        glVertex2i(0, 480);                             // Bottom-left
-        // If we put another four calls to glVertex2i here, a second quadrilateral will be drawn.
-        glEnd();
-        // Swaps the front and back framebuffers, this is a very technical process which you don't necessarily
-        // need to understand. You can simply see this method as updating the window contents.
-        glfwSwapBuffers(windowID);
+        gl.glClear(GL_COLOR_BUFFER_BIT);
+        // Older OpenGL tutorials send every vertex with glBegin, glColor, glVertex and glEnd. That is a few calls into
+        // the driver per vertex, which quickly becomes the bottleneck when you draw more than a handful of shapes.
+        // The SpriteBatch collects the vertices in a buffer instead and draws all of them in a single call at the end.
+        spriteBatch.begin();
+        // All subsequent vertices are assigned the current colour, given as red, green and blue components from 0 to 1
+        // Every four vertices define a quadrilateral ("sprite"), if we add four more vertices a second one is drawn
+        spriteBatch.setColour(1, 0, 0);   // Pure Red
+        spriteBatch.vertex(0, 0);         // Upper-left
+        spriteBatch.setColour(0, 1, 0);   // Pure Green
+        spriteBatch.vertex(640, 0);       // Upper-right
+        spriteBatch.setColour(1, 1, 1);   // White
+        spriteBatch.vertex(640, 480);     // Bottom-right
+        spriteBatch.setColour(0, 0, 1);   // Pure Blue
+        spriteBatch.vertex(0, 480);       // Bottom-left
+        // Hand the collected sprites to OpenGL
+        spriteBatch.end();
+        // After this method the Engine swaps the front and back framebuffers, which updates the window contents
     }
 
-    private static void cleanUp() {
-        // It's important to release the resources when the program has finished to prevent dreadful memory leaks
-        glfwDestroyWindow(windowID);
-        // Destroys all remaining windows and cursors (LWJGL JavaDoc)
-        glfwTerminate();
+    @Override
+    public void cleanUp() {
+        // The Engine destroys the window once this method returns, we only have to release the buffers of the renderer
+        spriteRenderer.delete();
     }
 
     public static void main(String[] args) {
-        errorCallback = Callbacks.errorCallbackPrint(System.err);
-        glfwSetErrorCallback(errorCallback);
-
-        setUp();
-        enterUpdateLoop();
-        cleanUp();
+        // The Engine opens the display, calls setUp, runs the update loop until the window is closed and calls cleanUp
+        new Engine(new GLFWDisplay(640, 480, "Simple Rendering")).run(new Rendering());
     }
 
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility;
+
+import com.joml.matrix.Matrix4f;
+import com.joml.utils.CamMath;
+import com.joml.vector.Vector3f;
+import org.lwjgl.BufferUtils;
+import utility.gl.OpenGL;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A perspective camera that looks from a position towards a target. All vectors, matrices and the buffer that holds the
+ * modelview-projection matrix are created once, so moving the camera every frame doesn't allocate anything. The matrix
+ * is only recalculated and uploaded after the camera has actually changed.
+ */
+public class Camera {
+
+    private final Vector3f position = new Vector3f();
+    private final Vector3f target = new Vector3f();
+    private final Vector3f up = new Vector3f(0, 1, 0);
+    private final Matrix4f viewMatrix = new Matrix4f();
+    private final Matrix4f projectionMatrix = new Matrix4f();
+    private final Matrix4f modelviewProjectionMatrix = new Matrix4f();
+    // The modelview-projection matrix in column-major order, ready to be handed to OpenGL
+    private final FloatBuffer modelviewProjection = BufferUtils.createFloatBuffer(16);
+    // Whether the matrices have to be recalculated
+    private boolean dirty = true;
+    // Whether the matrix has changed since it was last uploaded
+    private boolean uploadPending = true;
+
+    public void setPerspective(float fieldOfView, float aspectRatio, float near, float far) {
+        CamMath.perspective(fieldOfView, aspectRatio, near, far, projectionMatrix);
+        dirty = true;
+    }
+
+    public void setPosition(float x, float y, float z) {
+        if (position.x != x || position.y != y || position.z != z) {
+            position.set(x, y, z);
+            dirty = true;
+        }
+    }
+
+    public void setTarget(float x, float y, float z) {
+        if (target.x != x || target.y != y || target.z != z) {
+            target.set(x, y, z);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Moves the camera to the position between two simulation ticks.
+     *
+     * @param alpha the interpolation factor from 0 (previous tick) to 1 (current tick)
+     */
+    public void interpolatePosition(float previousX, float previousY, float previousZ,
+                                    float currentX, float currentY, float currentZ, float alpha) {
+        setPosition(
+                previousX + (currentX - previousX) * alpha,
+                previousY + (currentY - previousY) * alpha,
+                previousZ + (currentZ - previousZ) * alpha);
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public Matrix4f getViewMatrix() {
+        update();
+        return viewMatrix;
+    }
+
+    public Matrix4f getProjectionMatrix() {
+        return projectionMatrix;
+    }
+
+    /**
+     * @return the projection matrix multiplied by the view matrix, in a buffer that is reused between calls
+     */
+    public FloatBuffer getModelviewProjection() {
+        update();
+        return modelviewProjection;
+    }
+
+    /**
+     * Uploads the modelview-projection matrix to the uniform of the current shader program, but only if it changed
+     * since the last upload.
+     *
+     * @return true if the uniform was uploaded
+     */
+    public boolean upload(OpenGL gl, int uniformLocation) {
+        update();
+        if (!uploadPending)
+            return false;
+        gl.glUniformMatrix4(uniformLocation, false, modelviewProjection);
+        uploadPending = false;
+        return true;
+    }
+
+    private void update() {
+        if (!dirty)
+            return;
+        CamMath.lookAt(position, target, up, viewMatrix);
+        Matrix4f.mul(projectionMatrix, viewMatrix, modelviewProjectionMatrix);
+        store(modelviewProjectionMatrix, modelviewProjection);
+        dirty = false;
+        uploadPending = true;
+    }
+
+    /**
+     * Writes the matrix with absolute puts, so the position and limit of the buffer never have to be reset.
+     */
+    private static void store(Matrix4f matrix, FloatBuffer buffer) {
+        buffer.put(0, matrix.m00).put(1, matrix.m01).put(2, matrix.m02).put(3, matrix.m03);
+        buffer.put(4, matrix.m10).put(5, matrix.m11).put(6, matrix.m12).put(7, matrix.m13);
+        buffer.put(8, matrix.m20).put(9, matrix.m21).put(10, matrix.m22).put(11, matrix.m23);
+        buffer.put(12, matrix.m30).put(13, matrix.m31).put(14, matrix.m32).put(15, matrix.m33);
+    }
+}
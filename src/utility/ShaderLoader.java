@@ -29,89 +29,99 @@
 
 package utility;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import utility.gl.LWJGLOpenGL;
+import utility.gl.OpenGL;
+import utility.log.Level;
+import utility.log.Log;
+import utility.log.Logger;
+import utility.shader.ShaderPreprocessor;
+
 import java.io.IOException;
 
 import static org.lwjgl.opengl.GL11.GL_FALSE;
+import static org.lwjgl.opengl.GL11.GL_TRUE;
 import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT;
 
 public class ShaderLoader {
 
+    private static final Logger log = Log.getLogger(ShaderLoader.class);
+    private static final ShaderPreprocessor preprocessor = new ShaderPreprocessor();
+    private static final OpenGL gl = new LWJGLOpenGL();
+
     /**
      * Loads a shader program from two source files.
      *
      * @param vertexShaderLocation   the location of the file containing the vertex shader source
      * @param fragmentShaderLocation the location of the file containing the fragment shader source
+     * @param defines                the defines of the variant to load, see {@link #loadShaderSource(String, String...)}
      * @return the shader program or -1 if the loading or compiling failed
      */
-    public static int loadShaderPair(String vertexShaderLocation, String fragmentShaderLocation) {
-        int shaderProgram = glCreateProgram();
-        int vertexShader = glCreateShader(GL_VERTEX_SHADER);
-        int fragmentShader = glCreateShader(GL_FRAGMENT_SHADER);
-        StringBuilder vertexShaderSource = new StringBuilder();
-        StringBuilder fragmentShaderSource = new StringBuilder();
-        BufferedReader vertexShaderFileReader = null;
-        try {
-            vertexShaderFileReader = new BufferedReader(new FileReader(vertexShaderLocation));
-            String line;
-            while ((line = vertexShaderFileReader.readLine()) != null) {
-                vertexShaderSource.append(line).append('\n');
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    public static int loadShaderPair(String vertexShaderLocation, String fragmentShaderLocation, String... defines) {
+        StringBuilder vertexShaderSource = loadShaderSource(vertexShaderLocation, defines);
+        StringBuilder fragmentShaderSource = loadShaderSource(fragmentShaderLocation, defines);
+        if (vertexShaderSource == null || fragmentShaderSource == null) {
             return -1;
-        } finally {
-            if (vertexShaderFileReader != null) {
-                try {
-                    vertexShaderFileReader.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
         }
-        BufferedReader fragmentShaderFileReader = null;
-        try {
-            fragmentShaderFileReader = new BufferedReader(new FileReader(fragmentShaderLocation));
-            String line;
-            while ((line = fragmentShaderFileReader.readLine()) != null) {
-                fragmentShaderSource.append(line).append('\n');
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+        return createShaderProgram(gl, vertexShaderSource, fragmentShaderSource, false);
+    }
+
+    /**
+     * Compiles and links a shader program from source code.
+     *
+     * @param gl                the OpenGL functions to compile with
+     * @param retrievableBinary whether the driver should keep the binary of the program around for glGetProgramBinary,
+     *                          requires OpenGL 4.1 or ARB_get_program_binary
+     * @return the shader program or -1 if the compiling or linking failed
+     */
+    public static int createShaderProgram(OpenGL gl, CharSequence vertexShaderSource, CharSequence fragmentShaderSource, boolean retrievableBinary) {
+        int shaderProgram = gl.glCreateProgram();
+        int vertexShader = gl.glCreateShader(GL_VERTEX_SHADER);
+        int fragmentShader = gl.glCreateShader(GL_FRAGMENT_SHADER);
+        gl.glShaderSource(vertexShader, vertexShaderSource);
+        gl.glCompileShader(vertexShader);
+        if (gl.glGetShaderi(vertexShader, GL_COMPILE_STATUS) == GL_FALSE) {
+            log.log(Level.ERROR, "Vertex shader wasn't able to be compiled correctly. Error log:\n{}",
+                    gl.glGetShaderInfoLog(vertexShader, 1024));
             return -1;
-        } finally {
-            if (fragmentShaderFileReader != null) {
-                try {
-                    fragmentShaderFileReader.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
         }
-        glShaderSource(vertexShader, vertexShaderSource);
-        glCompileShader(vertexShader);
-        if (glGetShaderi(vertexShader, GL_COMPILE_STATUS) == GL_FALSE) {
-            System.err.println("Vertex shader wasn't able to be compiled correctly. Error log:");
-            System.err.println(glGetShaderInfoLog(vertexShader, 1024));
-            return -1;
+        gl.glShaderSource(fragmentShader, fragmentShaderSource);
+        gl.glCompileShader(fragmentShader);
+        if (gl.glGetShaderi(fragmentShader, GL_COMPILE_STATUS) == GL_FALSE) {
+            log.log(Level.ERROR, "Fragment shader wasn't able to be compiled correctly. Error log:\n{}",
+                    gl.glGetShaderInfoLog(fragmentShader, 1024));
         }
-        glShaderSource(fragmentShader, fragmentShaderSource);
-        glCompileShader(fragmentShader);
-        if (glGetShaderi(fragmentShader, GL_COMPILE_STATUS) == GL_FALSE) {
-            System.err.println("Fragment shader wasn't able to be compiled correctly. Error log:");
-            System.err.println(glGetShaderInfoLog(fragmentShader, 1024));
+        gl.glAttachShader(shaderProgram, vertexShader);
+        gl.glAttachShader(shaderProgram, fragmentShader);
+        if (retrievableBinary) {
+            gl.glProgramParameteri(shaderProgram, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
         }
-        glAttachShader(shaderProgram, vertexShader);
-        glAttachShader(shaderProgram, fragmentShader);
-        glLinkProgram(shaderProgram);
-        if (glGetProgrami(shaderProgram, GL_LINK_STATUS) == GL_FALSE) {
-            System.err.println("Shader program wasn't linked correctly.");
-            System.err.println(glGetProgramInfoLog(shaderProgram, 1024));
+        gl.glLinkProgram(shaderProgram);
+        if (gl.glGetProgrami(shaderProgram, GL_LINK_STATUS) == GL_FALSE) {
+            log.log(Level.ERROR, "Shader program wasn't linked correctly. Error log:\n{}",
+                    gl.glGetProgramInfoLog(shaderProgram, 1024));
             return -1;
         }
-        glDeleteShader(vertexShader);
-        glDeleteShader(fragmentShader);
+        gl.glDeleteShader(vertexShader);
+        gl.glDeleteShader(fragmentShader);
         return shaderProgram;
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads the source code of a shader, replaces its #include lines by the included files and adds the defines after
+     * the #version line. The result is cached per file and set of defines. This does not need an OpenGL context.
+     *
+     * @param shaderLocation the location of the file containing the shader source
+     * @param defines        the names of the defines, optionally followed by a space and a value, see
+     *                       {@link ShaderPreprocessor}
+     * @return the shader source or null if the file couldn't be read
+     */
+    public static StringBuilder loadShaderSource(String shaderLocation, String... defines) {
+        try {
+            return new StringBuilder(preprocessor.preprocess(shaderLocation, defines));
+        } catch (IOException e) {
+            log.log(Level.ERROR, "Couldn't read the shader source: {}", e);
+            return null;
+        }
+    }
+}
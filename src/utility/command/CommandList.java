@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.command;
+
+import utility.gl.OpenGL;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+
+/**
+ * A list of draw packets: everything a draw call needs (the program, texture, vertex array, an optional matrix uniform
+ * and the draw call itself) with a {@link SortKey}. Recording a packet doesn't touch OpenGL, so lists can be recorded
+ * on any thread, one thread per list; a {@link CommandQueue} submits them on the thread that owns the context.
+ * <p>
+ * The packets are stored in arrays that grow when needed and are reused after {@link #clear()}, so recording the same
+ * number of packets every frame doesn't allocate anything.
+ */
+public class CommandList {
+
+    /**
+     * The index type of a packet drawn with glDrawArrays instead of glDrawElements.
+     */
+    public static final int NO_INDICES = 0;
+
+    private long[] keys;
+    private int[] programs;
+    private int[] textures;
+    private int[] vertexArrays;
+    private int[] modes;
+    private int[] counts;
+    private int[] indexTypes;
+    private long[] offsets;
+    private int[] instanceCounts;
+    // The location of the matrix uniform of every packet (-1 if none) and the 16 floats of the matrices
+    private int[] matrixLocations;
+    private float[] matrices;
+    // The packets in the order of their keys, after sort()
+    private int[] order;
+    private int[] scratch;
+    private int size;
+    private boolean sorted = true;
+
+    public CommandList() {
+        this(64);
+    }
+
+    public CommandList(int initialCapacity) {
+        allocate(Math.max(1, initialCapacity));
+    }
+
+    private void allocate(int capacity) {
+        keys = Arrays.copyOf(keys == null ? new long[0] : keys, capacity);
+        programs = grow(programs, capacity);
+        textures = grow(textures, capacity);
+        vertexArrays = grow(vertexArrays, capacity);
+        modes = grow(modes, capacity);
+        counts = grow(counts, capacity);
+        indexTypes = grow(indexTypes, capacity);
+        offsets = Arrays.copyOf(offsets == null ? new long[0] : offsets, capacity);
+        instanceCounts = grow(instanceCounts, capacity);
+        matrixLocations = grow(matrixLocations, capacity);
+        matrices = Arrays.copyOf(matrices == null ? new float[0] : matrices, capacity * 16);
+        order = grow(order, capacity);
+        scratch = grow(scratch, capacity);
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        return Arrays.copyOf(array == null ? new int[0] : array, capacity);
+    }
+
+    /**
+     * Removes all packets, keeping the memory for the next frame.
+     */
+    public void clear() {
+        size = 0;
+        sorted = true;
+    }
+
+    /**
+     * Adds a draw packet.
+     *
+     * @param texture    the texture bound to GL_TEXTURE_2D of the active unit, or 0 to leave the binding alone
+     * @param indexType  the type of the indices in the element buffer of the vertex array (GL_UNSIGNED_SHORT or
+     *                   GL_UNSIGNED_INT), or {@link #NO_INDICES} to draw with glDrawArrays
+     * @param offset     the byte offset of the first index, or the first vertex for glDrawArrays
+     * @param instances  the number of instances, more than 1 requires indices
+     * @return the index of the packet in this list
+     */
+    public int draw(long key, int program, int texture, int vertexArray,
+                    int mode, int count, int indexType, long offset, int instances) {
+        if (instances < 1 || (instances > 1 && indexType == NO_INDICES))
+            throw new IllegalArgumentException("Instanced packets must be indexed and have at least one instance: " + instances);
+        if (size == keys.length)
+            allocate(size * 2);
+        int packet = size++;
+        keys[packet] = key;
+        programs[packet] = program;
+        textures[packet] = texture;
+        vertexArrays[packet] = vertexArray;
+        modes[packet] = mode;
+        counts[packet] = count;
+        indexTypes[packet] = indexType;
+        offsets[packet] = offset;
+        instanceCounts[packet] = instances;
+        matrixLocations[packet] = -1;
+        order[packet] = packet;
+        // Still sorted if the key isn't smaller than the last one in the current order
+        if (packet > 0 && key < keys[order[packet - 1]])
+            sorted = false;
+        return packet;
+    }
+
+    /**
+     * Uploads a 4x4 matrix (column-major, like {@link utility.Camera#getModelviewProjection()}) to a uniform of the
+     * program before the last packet is drawn. The matrix is copied; the position of the buffer is ignored.
+     */
+    public void setMatrix(int location, FloatBuffer matrix) {
+        if (size == 0)
+            throw new IllegalStateException("There is no packet to set the matrix of");
+        int packet = size - 1;
+        matrixLocations[packet] = location;
+        for (int i = 0; i < 16; i++) {
+            matrices[packet * 16 + i] = matrix.get(i);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sorts the packets by their keys. Packets with the same key keep the order in which they were recorded.
+     */
+    public void sort() {
+        if (sorted)
+            return;
+        // A bottom-up merge sort of the packet indices, which is stable and doesn't allocate
+        int[] from = order, to = scratch;
+        for (int width = 1; width < size; width *= 2) {
+            for (int first = 0; first < size; first += 2 * width) {
+                int middle = Math.min(first + width, size), last = Math.min(first + 2 * width, size);
+                int left = first, right = middle;
+                for (int i = first; i < last; i++) {
+                    if (left < middle && (right >= last || keys[from[left]] <= keys[from[right]])) {
+                        to[i] = from[left++];
+                    } else {
+                        to[i] = from[right++];
+                    }
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        order = from;
+        scratch = to;
+        sorted = true;
+    }
+
+    /**
+     * @return the key of the packet at a place in the sorted order, call {@link #sort()} first
+     */
+    public long getSortedKey(int place) {
+        return keys[order[place]];
+    }
+
+    /**
+     * @return the packet at a place in the sorted order
+     */
+    public int getSortedPacket(int place) {
+        return order[place];
+    }
+
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * Issues the calls of a packet. Only called on the thread that owns the context, by the {@link CommandQueue}.
+     *
+     * @param matrix a buffer of at least 16 floats to upload the matrix from
+     */
+    void execute(OpenGL gl, int packet, FloatBuffer matrix) {
+        gl.glUseProgram(programs[packet]);
+        if (textures[packet] != 0)
+            gl.glBindTexture(GL_TEXTURE_2D, textures[packet]);
+        gl.glBindVertexArray(vertexArrays[packet]);
+        if (matrixLocations[packet] >= 0) {
+            for (int i = 0; i < 16; i++) {
+                matrix.put(i, matrices[packet * 16 + i]);
+            }
+            matrix.limit(16).position(0);
+            gl.glUniformMatrix4(matrixLocations[packet], false, matrix);
+        }
+        if (indexTypes[packet] == NO_INDICES) {
+            gl.glDrawArrays(modes[packet], (int) offsets[packet], counts[packet]);
+        } else if (instanceCounts[packet] == 1) {
+            gl.glDrawElements(modes[packet], counts[packet], indexTypes[packet], offsets[packet]);
+        } else {
+            gl.glDrawElementsInstanced(modes[packet], counts[packet], indexTypes[packet], offsets[packet], instanceCounts[packet]);
+        }
+    }
+}
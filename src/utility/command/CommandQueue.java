@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.command;
+
+import org.lwjgl.BufferUtils;
+import utility.gl.OpenGL;
+
+import java.nio.FloatBuffer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Records draw packets on all cores and submits them on the thread that owns the OpenGL context. A frame goes like
+ * this:
+ * <pre>
+ * queue.record(new CommandQueue.Recorder() {
+ *     public void record(CommandList list, int index, int count) {
+ *         // cull part index of count of the scene and add a packet for every visible object
+ *     }
+ * });
+ * queue.submit(gl); // on the context thread
+ * </pre>
+ * Every list is recorded and sorted on its own worker of the common fork-join pool; the recorders never get to see an
+ * {@link OpenGL}, so they can't make calls on the wrong thread. {@link #submit(OpenGL)} merges the sorted lists into one
+ * sequence and issues it. Submit through a {@link utility.gl.GLStateCache}: the packets that follow each other with the
+ * same program, texture or vertex array then don't bind them again.
+ */
+public class CommandQueue {
+
+    /**
+     * Records the packets of one list. Called for all lists at the same time, on different threads.
+     */
+    public interface Recorder {
+
+        /**
+         * @param index the index of the list, from 0 to count - 1, to decide which part of the work to record
+         */
+        void record(CommandList list, int index, int count);
+    }
+
+    private final CommandList[] lists;
+    // The merged order: the list and the place in its sorted order of every packet
+    private int[] mergedLists = new int[0];
+    private int[] mergedPlaces = new int[0];
+    // The position in the sorted order of every list while merging
+    private final int[] heads;
+    private final FloatBuffer matrix = BufferUtils.createFloatBuffer(16);
+
+    /**
+     * Creates a queue with as many lists as there are processors.
+     */
+    public CommandQueue() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public CommandQueue(int listCount) {
+        if (listCount <= 0)
+            throw new IllegalArgumentException("A queue needs at least one list");
+        lists = new CommandList[listCount];
+        for (int i = 0; i < listCount; i++) {
+            lists[i] = new CommandList();
+        }
+        heads = new int[listCount];
+    }
+
+    public int getListCount() {
+        return lists.length;
+    }
+
+    /**
+     * @return a list, to record into it directly instead of through {@link #record(Recorder)}
+     */
+    public CommandList getList(int index) {
+        return lists[index];
+    }
+
+    /**
+     * Clears all lists and records and sorts them in parallel.
+     */
+    public void record(final Recorder recorder) {
+        IntStream.range(0, lists.length).parallel().forEach(new IntConsumer() {
+            @Override
+            public void accept(int index) {
+                CommandList list = lists[index];
+                list.clear();
+                recorder.record(list, index, lists.length);
+                list.sort();
+            }
+        });
+    }
+
+    /**
+     * Sorts the lists that aren't sorted yet and merges them into one sequence in the order of the keys. Packets with
+     * the same key are ordered by the index of their list, and then by the order in which they were recorded.
+     *
+     * @return the number of packets
+     */
+    public int merge() {
+        int total = 0;
+        for (CommandList list : lists) {
+            list.sort();
+            total += list.size();
+        }
+        if (mergedLists.length < total) {
+            mergedLists = new int[total];
+            mergedPlaces = new int[total];
+        }
+        for (int i = 0; i < lists.length; i++) {
+            heads[i] = 0;
+        }
+        // Take the smallest key at the heads of the lists every time. There's a list per core, so a linear search of
+        // the heads is faster than maintaining a heap
+        for (int i = 0; i < total; i++) {
+            int smallest = -1;
+            long smallestKey = 0;
+            for (int list = 0; list < lists.length; list++) {
+                if (heads[list] < lists[list].size()) {
+                    long key = lists[list].getSortedKey(heads[list]);
+                    if (smallest < 0 || key < smallestKey) {
+                        smallest = list;
+                        smallestKey = key;
+                    }
+                }
+            }
+            mergedLists[i] = smallest;
+            mergedPlaces[i] = heads[smallest]++;
+        }
+        return total;
+    }
+
+    /**
+     * @return the key of a packet in the merged sequence, after {@link #merge()}
+     */
+    public long getMergedKey(int index) {
+        return lists[mergedLists[index]].getSortedKey(mergedPlaces[index]);
+    }
+
+    /**
+     * @return the list a packet in the merged sequence comes from, after {@link #merge()}
+     */
+    public int getMergedList(int index) {
+        return mergedLists[index];
+    }
+
+    /**
+     * Merges the lists and issues the packets in order. Must be called on the thread that owns the context.
+     *
+     * @return the number of draw calls
+     */
+    public int submit(OpenGL gl) {
+        int count = merge();
+        for (int i = 0; i < count; i++) {
+            CommandList list = lists[mergedLists[i]];
+            list.execute(gl, list.getSortedPacket(mergedPlaces[i]), matrix);
+        }
+        return count;
+    }
+}
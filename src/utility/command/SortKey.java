@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.command;
+
+/**
+ * Packs what a draw call needs into a single long, so that sorting draw calls by their key puts the ones that share
+ * state next to each other. From the most to the least significant bits:
+ * <pre>
+ * 63..60  unused, always 0 so the keys sort the same signed and unsigned
+ * 59..56  layer     4 bits: for example opaque objects before transparent ones
+ * 55..40  program  16 bits: changing programs is the most expensive, so it comes first
+ * 39..24  texture  16 bits
+ * 23..0   depth    24 bits: front to back within the same state, so the depth test rejects more fragments
+ * </pre>
+ * Transparent objects must be drawn back to front; encode them with a depth of {@code 1 - depth}.
+ */
+public final class SortKey {
+
+    public static final int MAX_LAYER = (1 << 4) - 1;
+    public static final int MAX_PROGRAM = (1 << 16) - 1;
+    public static final int MAX_TEXTURE = (1 << 16) - 1;
+    public static final int MAX_DEPTH = (1 << 24) - 1;
+
+    private static final int LAYER_SHIFT = 56;
+    private static final int PROGRAM_SHIFT = 40;
+    private static final int TEXTURE_SHIFT = 24;
+
+    private SortKey() {
+    }
+
+    /**
+     * @param program a program name (or the index of a program), at most {@link #MAX_PROGRAM}
+     * @param texture a texture name (or the index of a texture), at most {@link #MAX_TEXTURE}
+     * @param depth   the distance from the camera between 0 (near) and 1 (far), values outside are clamped
+     */
+    public static long encode(int layer, int program, int texture, float depth) {
+        return encode(layer, program, texture, quantizeDepth(depth));
+    }
+
+    /**
+     * @param depth the depth as returned by {@link #quantizeDepth(float)}, at most {@link #MAX_DEPTH}
+     */
+    public static long encode(int layer, int program, int texture, int depth) {
+        check("layer", layer, MAX_LAYER);
+        check("program", program, MAX_PROGRAM);
+        check("texture", texture, MAX_TEXTURE);
+        check("depth", depth, MAX_DEPTH);
+        return (long) layer << LAYER_SHIFT | (long) program << PROGRAM_SHIFT | (long) texture << TEXTURE_SHIFT | depth;
+    }
+
+    /**
+     * @return the depth between 0 and 1 as an integer between 0 and {@link #MAX_DEPTH}
+     */
+    public static int quantizeDepth(float depth) {
+        if (!(depth > 0))
+            return 0; // also NaN
+        if (depth >= 1)
+            return MAX_DEPTH;
+        return (int) (depth * MAX_DEPTH);
+    }
+
+    public static int getLayer(long key) {
+        return (int) (key >>> LAYER_SHIFT) & MAX_LAYER;
+    }
+
+    public static int getProgram(long key) {
+        return (int) (key >>> PROGRAM_SHIFT) & MAX_PROGRAM;
+    }
+
+    public static int getTexture(long key) {
+        return (int) (key >>> TEXTURE_SHIFT) & MAX_TEXTURE;
+    }
+
+    public static int getDepth(long key) {
+        return (int) key & MAX_DEPTH;
+    }
+
+    public static String toString(long key) {
+        return "SortKey[layer = " + getLayer(key) + ", program = " + getProgram(key) + ", texture = " + getTexture(key)
+                + ", depth = " + getDepth(key) + "]";
+    }
+
+    private static void check(String name, int value, int max) {
+        if (value < 0 || value > max)
+            throw new IllegalArgumentException("The " + name + " must be between 0 and " + max + ": " + value);
+    }
+}
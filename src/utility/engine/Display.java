@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.engine;
+
+import utility.gl.OpenGL;
+
+/**
+ * The window and OpenGL context layer used by the {@link Engine}. The GLFW implementation opens a real window, the
+ * headless implementation lets the update loop run (and be timed) on machines without a GPU.
+ */
+public interface Display {
+
+    /**
+     * Creates the window and makes its OpenGL context current on the calling thread.
+     */
+    void open();
+
+    /**
+     * @return true if the user (or the headless frame budget) asked the application to stop
+     */
+    boolean isCloseRequested();
+
+    /**
+     * Presents the frame that was just rendered.
+     */
+    void swapBuffers();
+
+    /**
+     * Processes pending window and input events.
+     */
+    void pollEvents();
+
+    /**
+     * @return the time in seconds since the display was opened
+     */
+    double getTime();
+
+    /**
+     * @return the handle of the underlying window, or {@code 0} if there is none
+     */
+    long getWindowID();
+
+    /**
+     * @return the OpenGL functions to render with, valid after {@link #open()}
+     */
+    OpenGL getGL();
+
+    /**
+     * Destroys the window and releases the resources of the windowing system.
+     */
+    void close();
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.engine;
+
+import utility.log.Level;
+import utility.log.Log;
+import utility.log.Logger;
+import utility.memory.BufferPool;
+import utility.memory.StackAllocator;
+import utility.profile.FrameProfiler;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the set-up, update loop and clean-up of an {@link Application} on a {@link Display}.
+ * <p>
+ * The simulation is advanced in fixed ticks (60 per second by default) while frames are drawn as fast as the display
+ * allows, see {@link FixedTimestep}. The left-over fraction of a tick is handed to the renderer so it can interpolate
+ * between the last two simulation states. Because of this, the simulation behaves the same with or without VSync.
+ * <p>
+ * With a {@link FrameProfiler} the engine times the phases of every frame: the updates, the rendering, swapping the
+ * buffers and polling the events. When the application stops, a summary is logged and, if the system property
+ * {@code profiler.trace} names a file, the scopes of the last frames are written to it as CSV.
+ */
+public class Engine {
+
+    private static final Logger log = Log.getLogger(Engine.class);
+
+    private final Display display;
+    private final List<UpdateCallback> updateCallbacks = new ArrayList<>();
+    private Renderer renderer;
+    private FixedTimestep timestep = new FixedTimestep(60);
+    private FrameProfiler profiler;
+    private int updatePhase, renderPhase, swapPhase, eventsPhase;
+
+    public Engine(Display display) {
+        this.display = display;
+    }
+
+    /**
+     * Sets the number of simulation ticks per second.
+     */
+    public void setTickRate(int ticksPerSecond) {
+        this.timestep = new FixedTimestep(ticksPerSecond);
+    }
+
+    /**
+     * Replaces the renderer. By default the application passed to {@link #run(Application)} draws the frames.
+     */
+    public void setRenderer(Renderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Adds a callback that is updated every simulation tick, after the application itself.
+     */
+    public void addUpdateCallback(UpdateCallback updateCallback) {
+        updateCallbacks.add(updateCallback);
+    }
+
+    /**
+     * Times the phases of every frame with the profiler, or stops timing them if it's null. The application can add
+     * phases of its own.
+     */
+    public void setProfiler(FrameProfiler profiler) {
+        this.profiler = profiler;
+        if (profiler != null) {
+            updatePhase = profiler.addPhase("update");
+            renderPhase = profiler.addPhase("render");
+            swapPhase = profiler.addPhase("swap");
+            eventsPhase = profiler.addPhase("events");
+        }
+    }
+
+    public FrameProfiler getProfiler() {
+        return profiler;
+    }
+
+    public Display getDisplay() {
+        return display;
+    }
+
+    public FixedTimestep getTimestep() {
+        return timestep;
+    }
+
+    /**
+     * Opens the display, runs the application until the display is closed and releases everything afterwards.
+     */
+    public void run(Application application) {
+        if (renderer == null)
+            renderer = application;
+        updateCallbacks.add(0, application);
+        display.open();
+        try {
+            application.setUp(display);
+            enterUpdateLoop();
+            if (profiler != null)
+                reportProfile();
+            application.cleanUp();
+            // Everything the application took from the shared pool should be back by now
+            BufferPool.getDefault().checkLeaks();
+        } finally {
+            updateCallbacks.remove(application);
+            display.close();
+        }
+    }
+
+    private void enterUpdateLoop() {
+        double tickDuration = timestep.getTickDuration();
+        long previousTime = getTimeNanos();
+        StackAllocator stack = StackAllocator.get();
+        while (!display.isCloseRequested()) {
+            if (profiler != null)
+                profiler.beginFrame();
+            long currentTime = getTimeNanos();
+            int ticks = timestep.advance(currentTime - previousTime);
+            previousTime = currentTime;
+            begin(updatePhase);
+            for (int tick = 0; tick < ticks; tick++) {
+                for (int i = 0; i < updateCallbacks.size(); i++) {
+                    updateCallbacks.get(i).update(tickDuration);
+                }
+            }
+            end(updatePhase);
+            begin(renderPhase);
+            renderer.render(timestep.getAlpha());
+            end(renderPhase);
+            begin(swapPhase);
+            display.swapBuffers();
+            end(swapPhase);
+            // Polls the user input. This is very important, because it prevents your application from becoming unresponsive
+            begin(eventsPhase);
+            display.pollEvents();
+            end(eventsPhase);
+            if (profiler != null)
+                profiler.endFrame();
+            // Temporary buffers live no longer than a frame, frames that weren't popped are reported and freed here
+            stack.endFrame();
+        }
+    }
+
+    private void begin(int phase) {
+        if (profiler != null)
+            profiler.begin(phase);
+    }
+
+    private void end(int phase) {
+        if (profiler != null)
+            profiler.end(phase);
+    }
+
+    private void reportProfile() {
+        profiler.close();
+        log.log(Level.INFO, "Frame times:\n{}", profiler.getSummary());
+        String trace = System.getProperty("profiler.trace");
+        if (trace != null) {
+            try {
+                profiler.writeCsv(Paths.get(trace));
+            } catch (IOException e) {
+                log.log(Level.WARN, "Couldn't write the frame times: {}", e);
+            }
+        }
+    }
+
+    private long getTimeNanos() {
+        return Math.round(display.getTime() * 1e9);
+    }
+}
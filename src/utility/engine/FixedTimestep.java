@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.engine;
+
+/**
+ * The simulation clock of the {@link Engine}. Frame times are added to an accumulator, which is drained in ticks of a
+ * fixed duration; what is left over is exposed as an interpolation factor for rendering.
+ * <p>
+ * All bookkeeping is done in whole nanoseconds, so the same total elapsed time always produces the same number of ticks
+ * no matter how it was split up into frames.
+ */
+public class FixedTimestep {
+
+    // Frames that take longer than this are clamped, so a stall doesn't make the simulation spiral out of control
+    private static final long MAX_FRAME_NANOS = 250_000_000L;
+
+    private final long tickNanos;
+    private long accumulator;
+    private long tickCount;
+
+    public FixedTimestep(int ticksPerSecond) {
+        if (ticksPerSecond <= 0)
+            throw new IllegalArgumentException("Tick rate must be positive: " + ticksPerSecond);
+        this.tickNanos = Math.round(1e9 / ticksPerSecond);
+    }
+
+    /**
+     * Adds the duration of a frame to the accumulator.
+     *
+     * @param frameNanos the time that has passed since the previous frame in nanoseconds
+     * @return the number of ticks that have to be simulated before the frame is drawn
+     */
+    public int advance(long frameNanos) {
+        accumulator += Math.max(0, Math.min(frameNanos, MAX_FRAME_NANOS));
+        int ticks = (int) (accumulator / tickNanos);
+        accumulator -= ticks * tickNanos;
+        tickCount += ticks;
+        return ticks;
+    }
+
+    /**
+     * @return the fraction of a tick that is left in the accumulator, from 0 (inclusive) to 1 (exclusive)
+     */
+    public double getAlpha() {
+        return (double) accumulator / tickNanos;
+    }
+
+    /**
+     * @return the duration of a tick in seconds
+     */
+    public double getTickDuration() {
+        return tickNanos / 1e9;
+    }
+
+    /**
+     * @return the number of ticks simulated so far
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+}
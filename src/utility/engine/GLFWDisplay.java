@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.engine;
+
+import org.lwjgl.glfw.Callbacks;
+import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.opengl.GLContext;
+import org.lwjgl.system.MemoryUtil;
+import utility.gl.LWJGLOpenGL;
+import utility.gl.OpenGL;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * A {@link Display} backed by a GLFW window, doing the window set-up that every tutorial used to do by hand.
+ */
+public class GLFWDisplay implements Display {
+
+    private final int width, height;
+    private final String title;
+    private final boolean coreProfile;
+    private final OpenGL gl = new LWJGLOpenGL();
+    private boolean vSync = true;
+    // The GLFW error callback: this tells GLFW what to do if things go wrong
+    private GLFWErrorCallback errorCallback;
+    // The handle of the GLFW window
+    private long windowID = MemoryUtil.NULL;
+
+    /**
+     * Creates a display using the default (legacy) OpenGL context.
+     */
+    public GLFWDisplay(int width, int height, String title) {
+        this(width, height, title, false);
+    }
+
+    /**
+     * @param coreProfile true to request a forward compatible OpenGL 3.2 core profile context
+     */
+    public GLFWDisplay(int width, int height, String title, boolean coreProfile) {
+        this.width = width;
+        this.height = height;
+        this.title = title;
+        this.coreProfile = coreProfile;
+    }
+
+    /**
+     * Enables or disables VSync. Must be called before {@link #open()}.
+     */
+    public void setVSync(boolean vSync) {
+        this.vSync = vSync;
+    }
+
+    @Override
+    public void open() {
+        // Set the error handling code: all GLFW errors will be printed to the system error stream (just like println)
+        errorCallback = Callbacks.errorCallbackPrint(System.err);
+        glfwSetErrorCallback(errorCallback);
+
+        if (glfwInit() == GL_FALSE)
+            throw new IllegalStateException("GLFW initialization failed");
+
+        if (coreProfile) {
+            glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE); // Mac Modern OpenGL
+            glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GL_TRUE); // Mac Modern OpenGL
+            glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 3); // Modern OpenGL
+            glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 2); // Mac Modern OpenGL
+        }
+
+        windowID = glfwCreateWindow(width, height, title, MemoryUtil.NULL, MemoryUtil.NULL);
+
+        if (windowID == MemoryUtil.NULL)
+            throw new IllegalStateException("GLFW window creation failed");
+
+        glfwMakeContextCurrent(windowID); // Links the OpenGL context of the window to the current thread
+        glfwSwapInterval(vSync ? 1 : 0); // VSync caps the frame-rate of the application to the refresh rate
+        glfwShowWindow(windowID);
+
+        // If you don't add this line, you'll get the following exception:
+        //  java.lang.IllegalStateException: There is no OpenGL context current in the current thread.
+        GLContext.createFromCurrent(); // Links LWJGL to the OpenGL context
+    }
+
+    @Override
+    public boolean isCloseRequested() {
+        return glfwWindowShouldClose(windowID) == GL_TRUE;
+    }
+
+    @Override
+    public void swapBuffers() {
+        glfwSwapBuffers(windowID);
+    }
+
+    @Override
+    public void pollEvents() {
+        glfwPollEvents();
+    }
+
+    @Override
+    public double getTime() {
+        return glfwGetTime();
+    }
+
+    @Override
+    public long getWindowID() {
+        return windowID;
+    }
+
+    @Override
+    public OpenGL getGL() {
+        return gl;
+    }
+
+    @Override
+    public void close() {
+        // It's important to release the resources when the program has finished to prevent dreadful memory leaks
+        glfwDestroyWindow(windowID);
+        // Destroys all remaining windows and cursors (LWJGL JavaDoc)
+        glfwTerminate();
+        windowID = MemoryUtil.NULL;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.engine;
+
+import utility.gl.RecordingOpenGL;
+
+/**
+ * A {@link Display} without a window or OpenGL context. It runs for a fixed number of frames and, when given a frame
+ * duration, advances a simulated clock instead of the wall clock so that runs are reproducible. Rendering goes to a
+ * {@link RecordingOpenGL}, which counts the OpenGL calls of every frame.
+ */
+public class HeadlessDisplay implements Display {
+
+    private final int frameCount;
+    private final double frameDuration;
+    private final long startTime = System.nanoTime();
+    private final RecordingOpenGL gl;
+    private int framesPresented;
+
+    /**
+     * Creates a display that presents the given number of frames using the wall clock.
+     */
+    public HeadlessDisplay(int frameCount) {
+        this(frameCount, 0);
+    }
+
+    /**
+     * @param frameCount    the number of frames after which the display requests to be closed
+     * @param frameDuration the simulated duration of a frame in seconds, or 0 to use the wall clock
+     */
+    public HeadlessDisplay(int frameCount, double frameDuration) {
+        this(frameCount, frameDuration, new RecordingOpenGL());
+    }
+
+    /**
+     * @param gl the backend to render to, for example one that keeps a log of the calls
+     */
+    public HeadlessDisplay(int frameCount, double frameDuration, RecordingOpenGL gl) {
+        if (frameCount < 0 || frameDuration < 0)
+            throw new IllegalArgumentException("Frame count and duration must not be negative");
+        this.frameCount = frameCount;
+        this.frameDuration = frameDuration;
+        this.gl = gl;
+    }
+
+    @Override
+    public void open() {
+        framesPresented = 0;
+    }
+
+    @Override
+    public boolean isCloseRequested() {
+        return framesPresented >= frameCount;
+    }
+
+    @Override
+    public void swapBuffers() {
+        gl.endFrame();
+        framesPresented++;
+    }
+
+    @Override
+    public void pollEvents() {
+    }
+
+    @Override
+    public double getTime() {
+        if (frameDuration > 0)
+            return framesPresented * frameDuration;
+        return (System.nanoTime() - startTime) / 1e9;
+    }
+
+    @Override
+    public long getWindowID() {
+        return 0;
+    }
+
+    @Override
+    public RecordingOpenGL getGL() {
+        return gl;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return the number of frames presented since the display was opened
+     */
+    public int getFramesPresented() {
+        return framesPresented;
+    }
+}
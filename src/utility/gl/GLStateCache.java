@@ -0,0 +1,793 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.gl;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_1D;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_3D;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE_CUBE_MAP;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+
+/**
+ * Remembers the OpenGL state that was set through it and drops the calls that wouldn't change anything, before they
+ * cross JNI into the driver. It tracks:
+ * <ul>
+ * <li>the program in use and the values of the uniforms of every program,</li>
+ * <li>the bound vertex array object and the buffer bound to every target,</li>
+ * <li>the active texture unit and the texture bound to every target of every unit,</li>
+ * <li>the glEnable/glDisable and glEnableClientState/glDisableClientState bits.</li>
+ * </ul>
+ * Every other call is passed on unchanged. So render code can simply bind everything it needs before it draws,
+ * without unbinding afterwards and without checking what is bound already; only the changes reach the driver.
+ * <p>
+ * This only works if all OpenGL calls go through the cache. It starts out with the state of a new context: nothing
+ * bound, texture unit 0 active and no client arrays enabled. Call {@link #invalidate()} after other code has changed
+ * the state directly.
+ */
+public class GLStateCache implements OpenGL {
+
+    // The value of state that isn't known, a call that sets it is always passed on
+    private static final int UNKNOWN = -1;
+
+    private final OpenGL gl;
+    private final StateTable capabilities = new StateTable();
+    private final StateTable clientStates = new StateTable();
+    private final StateTable bufferBindings = new StateTable();
+    // The keys combine the texture unit and the target, see getTextureKey
+    private final StateTable textureBindings = new StateTable();
+    private final Map<Integer, ProgramUniforms> uniforms = new HashMap<>();
+    private ProgramUniforms programUniforms;
+    private int program;
+    private int vertexArray;
+    private int activeTexture;
+    // The new value of a uniform as raw bits, compared with the value in ProgramUniforms
+    private int[] uniformBits = new int[17];
+    private long issuedCount;
+    private long elidedCount;
+
+    /**
+     * @param gl the backend the calls that change something are passed on to
+     */
+    public GLStateCache(OpenGL gl) {
+        this.gl = gl;
+        reset(0);
+        activeTexture = GL_TEXTURE0;
+    }
+
+    /**
+     * Forgets all state, so the next call that sets a piece of state is passed on whatever its value.
+     */
+    public void invalidate() {
+        reset(UNKNOWN);
+        activeTexture = UNKNOWN;
+    }
+
+    private void reset(int bindings) {
+        capabilities.clear(UNKNOWN);
+        clientStates.clear(bindings);
+        bufferBindings.clear(bindings);
+        textureBindings.clear(bindings);
+        uniforms.clear();
+        programUniforms = null;
+        program = bindings;
+        vertexArray = bindings;
+    }
+
+    /**
+     * @return the number of calls that were passed on
+     */
+    public long getIssuedCount() {
+        return issuedCount;
+    }
+
+    /**
+     * @return the number of calls that were dropped because they wouldn't have changed the state
+     */
+    public long getElidedCount() {
+        return elidedCount;
+    }
+
+    public void resetCounters() {
+        issuedCount = 0;
+        elidedCount = 0;
+    }
+
+    @Override
+    public boolean isProgramBinarySupported() {
+        return gl.isProgramBinarySupported();
+    }
+
+    @Override
+    public boolean isBufferStorageSupported() {
+        return gl.isBufferStorageSupported();
+    }
+
+    @Override
+    public boolean isTimerQuerySupported() {
+        return gl.isTimerQuerySupported();
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        issuedCount++;
+        gl.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glClear(int mask) {
+        issuedCount++;
+        gl.glClear(mask);
+    }
+
+    @Override
+    public void glEnable(int target) {
+        setCapability(target, true);
+    }
+
+    @Override
+    public void glDisable(int target) {
+        setCapability(target, false);
+    }
+
+    private void setCapability(int capability, boolean enabled) {
+        // The texture targets are enabled per texture unit
+        int key = isTextureTarget(capability) ? getTextureKey(capability) : capability;
+        int value = enabled ? 1 : 0;
+        if (key != UNKNOWN && capabilities.get(key) == value) {
+            elidedCount++;
+            return;
+        }
+        issuedCount++;
+        if (enabled)
+            gl.glEnable(capability);
+        else
+            gl.glDisable(capability);
+        if (key != UNKNOWN)
+            capabilities.put(key, value);
+    }
+
+    @Override
+    public void glPolygonMode(int face, int mode) {
+        issuedCount++;
+        gl.glPolygonMode(face, mode);
+    }
+
+    @Override
+    public int glGetInteger(int name) {
+        issuedCount++;
+        return gl.glGetInteger(name);
+    }
+
+    @Override
+    public void glGetInteger(int name, IntBuffer params) {
+        issuedCount++;
+        gl.glGetInteger(name, params);
+    }
+
+    @Override
+    public String glGetString(int name) {
+        issuedCount++;
+        return gl.glGetString(name);
+    }
+
+    @Override
+    public int glGenBuffers() {
+        issuedCount++;
+        return gl.glGenBuffers();
+    }
+
+    @Override
+    public void glDeleteBuffers(int buffer) {
+        issuedCount++;
+        gl.glDeleteBuffers(buffer);
+        // OpenGL unbinds a deleted buffer
+        bufferBindings.replace(buffer, 0);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        if (bufferBindings.get(target) == buffer) {
+            elidedCount++;
+            return;
+        }
+        issuedCount++;
+        gl.glBindBuffer(target, buffer);
+        bufferBindings.put(target, buffer);
+    }
+
+    @Override
+    public void glBufferData(int target, ByteBuffer data, int usage) {
+        issuedCount++;
+        gl.glBufferData(target, data, usage);
+    }
+
+    @Override
+    public void glBufferData(int target, ShortBuffer data, int usage) {
+        issuedCount++;
+        gl.glBufferData(target, data, usage);
+    }
+
+    @Override
+    public void glBufferData(int target, long size, int usage) {
+        issuedCount++;
+        gl.glBufferData(target, size, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, long offset, ByteBuffer data) {
+        issuedCount++;
+        gl.glBufferSubData(target, offset, data);
+    }
+
+    @Override
+    public void glBufferStorage(int target, long size, int flags) {
+        issuedCount++;
+        gl.glBufferStorage(target, size, flags);
+    }
+
+    @Override
+    public ByteBuffer glMapBufferRange(int target, long offset, long length, int access) {
+        issuedCount++;
+        return gl.glMapBufferRange(target, offset, length, access);
+    }
+
+    @Override
+    public boolean glUnmapBuffer(int target) {
+        issuedCount++;
+        return gl.glUnmapBuffer(target);
+    }
+
+    @Override
+    public int glGenVertexArrays() {
+        issuedCount++;
+        return gl.glGenVertexArrays();
+    }
+
+    @Override
+    public void glDeleteVertexArrays(int array) {
+        issuedCount++;
+        gl.glDeleteVertexArrays(array);
+        // Deleting the bound vertex array object binds the default one
+        if (array == vertexArray)
+            setVertexArray(0);
+    }
+
+    @Override
+    public void glBindVertexArray(int array) {
+        if (array == vertexArray) {
+            elidedCount++;
+            return;
+        }
+        issuedCount++;
+        gl.glBindVertexArray(array);
+        setVertexArray(array);
+    }
+
+    private void setVertexArray(int array) {
+        vertexArray = array;
+        // The index buffer and the enabled client arrays are part of the vertex array object, so they may be different
+        bufferBindings.put(GL_ELEMENT_ARRAY_BUFFER, UNKNOWN);
+        clientStates.clear(UNKNOWN);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        issuedCount++;
+        gl.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        issuedCount++;
+        gl.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long pointerOffset) {
+        issuedCount++;
+        gl.glVertexAttribPointer(index, size, type, normalized, stride, pointerOffset);
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor) {
+        issuedCount++;
+        gl.glVertexAttribDivisor(index, divisor);
+    }
+
+    @Override
+    public void glEnableClientState(int array) {
+        setClientState(array, true);
+    }
+
+    @Override
+    public void glDisableClientState(int array) {
+        setClientState(array, false);
+    }
+
+    private void setClientState(int array, boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (clientStates.get(array) == value) {
+            elidedCount++;
+            return;
+        }
+        issuedCount++;
+        if (enabled)
+            gl.glEnableClientState(array);
+        else
+            gl.glDisableClientState(array);
+        clientStates.put(array, value);
+    }
+
+    @Override
+    public void glVertexPointer(int size, int type, int stride, long pointerOffset) {
+        issuedCount++;
+        gl.glVertexPointer(size, type, stride, pointerOffset);
+    }
+
+    @Override
+    public void glColorPointer(int size, int type, int stride, long pointerOffset) {
+        issuedCount++;
+        gl.glColorPointer(size, type, stride, pointerOffset);
+    }
+
+    @Override
+    public void glTexCoordPointer(int size, int type, int stride, long pointerOffset) {
+        issuedCount++;
+        gl.glTexCoordPointer(size, type, stride, pointerOffset);
+    }
+
+    @Override
+    public void glMatrixMode(int mode) {
+        issuedCount++;
+        gl.glMatrixMode(mode);
+    }
+
+    @Override
+    public void glOrtho(double left, double right, double bottom, double top, double near, double far) {
+        issuedCount++;
+        gl.glOrtho(left, right, bottom, top, near, far);
+    }
+
+    @Override
+    public int glGenTextures() {
+        issuedCount++;
+        return gl.glGenTextures();
+    }
+
+    @Override
+    public void glDeleteTextures(int texture) {
+        issuedCount++;
+        gl.glDeleteTextures(texture);
+        // OpenGL unbinds a deleted texture from all units
+        textureBindings.replace(texture, 0);
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        if (texture == activeTexture) {
+            elidedCount++;
+            return;
+        }
+        issuedCount++;
+        gl.glActiveTexture(texture);
+        activeTexture = texture;
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        int key = getTextureKey(target);
+        if (key != UNKNOWN && textureBindings.get(key) == texture) {
+            elidedCount++;
+            return;
+        }
+        issuedCount++;
+        gl.glBindTexture(target, texture);
+        if (key != UNKNOWN)
+            textureBindings.put(key, texture);
+        else
+            // The texture went to a unit we don't know, so nothing is known about any unit anymore
+            textureBindings.clear(UNKNOWN);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int name, int param) {
+        issuedCount++;
+        gl.glTexParameteri(target, name, param);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border, int format, int type, ByteBuffer pixels) {
+        issuedCount++;
+        gl.glTexImage2D(target, level, internalFormat, width, height, border, format, type, pixels);
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border, ByteBuffer data) {
+        issuedCount++;
+        gl.glCompressedTexImage2D(target, level, internalFormat, width, height, border, data);
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        issuedCount++;
+        return gl.glCreateShader(type);
+    }
+
+    @Override
+    public void glShaderSource(int shader, CharSequence source) {
+        issuedCount++;
+        gl.glShaderSource(shader, source);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        issuedCount++;
+        gl.glCompileShader(shader);
+    }
+
+    @Override
+    public int glGetShaderi(int shader, int name) {
+        issuedCount++;
+        return gl.glGetShaderi(shader, name);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader, int maxLength) {
+        issuedCount++;
+        return gl.glGetShaderInfoLog(shader, maxLength);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        issuedCount++;
+        gl.glDeleteShader(shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        issuedCount++;
+        return gl.glCreateProgram();
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        issuedCount++;
+        gl.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int name, int value) {
+        issuedCount++;
+        gl.glProgramParameteri(program, name, value);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        issuedCount++;
+        gl.glLinkProgram(program);
+        // Linking resets the uniforms to their initial values
+        forgetUniforms(program);
+    }
+
+    @Override
+    public int glGetProgrami(int program, int name) {
+        issuedCount++;
+        return gl.glGetProgrami(program, name);
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program, int maxLength) {
+        issuedCount++;
+        return gl.glGetProgramInfoLog(program, maxLength);
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, IntBuffer length, IntBuffer binaryFormat, ByteBuffer binary) {
+        issuedCount++;
+        gl.glGetProgramBinary(program, length, binaryFormat, binary);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, ByteBuffer binary) {
+        issuedCount++;
+        gl.glProgramBinary(program, binaryFormat, binary);
+        forgetUniforms(program);
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        issuedCount++;
+        gl.glDeleteProgram(program);
+        // The name may be handed out again for a new program
+        forgetUniforms(program);
+    }
+
+    private void forgetUniforms(int program) {
+        uniforms.remove(program);
+        if (program == this.program)
+            programUniforms = null;
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        if (program == this.program) {
+            elidedCount++;
+            return;
+        }
+        issuedCount++;
+        gl.glUseProgram(program);
+        this.program = program;
+        programUniforms = null;
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, CharSequence name) {
+        issuedCount++;
+        return gl.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glUniform1i(int location, int value) {
+        uniformBits[0] = value;
+        if (!updateUniform(location, 1)) {
+            elidedCount++;
+            return;
+        }
+        issuedCount++;
+        gl.glUniform1i(location, value);
+    }
+
+    @Override
+    public void glUniform1f(int location, float value) {
+        uniformBits[0] = Float.floatToRawIntBits(value);
+        if (!updateUniform(location, 1)) {
+            elidedCount++;
+            return;
+        }
+        issuedCount++;
+        gl.glUniform1f(location, value);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        uniformBits[0] = Float.floatToRawIntBits(x);
+        uniformBits[1] = Float.floatToRawIntBits(y);
+        uniformBits[2] = Float.floatToRawIntBits(z);
+        uniformBits[3] = Float.floatToRawIntBits(w);
+        if (!updateUniform(location, 4)) {
+            elidedCount++;
+            return;
+        }
+        issuedCount++;
+        gl.glUniform4f(location, x, y, z, w);
+    }
+
+    @Override
+    public void glUniformMatrix4(int location, boolean transpose, FloatBuffer value) {
+        int count = value.remaining() + 1;
+        if (count > uniformBits.length)
+            uniformBits = new int[count];
+        uniformBits[0] = transpose ? 1 : 0;
+        for (int i = 1; i < count; i++) {
+            uniformBits[i] = Float.floatToRawIntBits(value.get(value.position() + i - 1));
+        }
+        if (!updateUniform(location, count)) {
+            elidedCount++;
+            return;
+        }
+        issuedCount++;
+        gl.glUniformMatrix4(location, transpose, value);
+    }
+
+    /**
+     * Stores the first count values of uniformBits as the value of a uniform of the current program.
+     *
+     * @return true if the value is different from the stored one, or if it can't be cached
+     */
+    private boolean updateUniform(int location, int count) {
+        // Without a known program there is nothing to store the value in, and OpenGL ignores location -1
+        if (program <= 0 || location < 0)
+            return true;
+        if (programUniforms == null) {
+            programUniforms = uniforms.get(program);
+            if (programUniforms == null) {
+                programUniforms = new ProgramUniforms();
+                uniforms.put(program, programUniforms);
+            }
+        }
+        return programUniforms.update(location, uniformBits, count);
+    }
+
+    @Override
+    public long glFenceSync(int condition, int flags) {
+        issuedCount++;
+        return gl.glFenceSync(condition, flags);
+    }
+
+    @Override
+    public int glClientWaitSync(long sync, int flags, long timeout) {
+        issuedCount++;
+        return gl.glClientWaitSync(sync, flags, timeout);
+    }
+
+    @Override
+    public void glDeleteSync(long sync) {
+        issuedCount++;
+        gl.glDeleteSync(sync);
+    }
+
+    @Override
+    public int glGenQueries() {
+        issuedCount++;
+        return gl.glGenQueries();
+    }
+
+    @Override
+    public void glQueryCounter(int query, int target) {
+        issuedCount++;
+        gl.glQueryCounter(query, target);
+    }
+
+    @Override
+    public int glGetQueryObjecti(int query, int name) {
+        issuedCount++;
+        return gl.glGetQueryObjecti(query, name);
+    }
+
+    @Override
+    public long glGetQueryObjecti64(int query, int name) {
+        issuedCount++;
+        return gl.glGetQueryObjecti64(query, name);
+    }
+
+    @Override
+    public void glDeleteQueries(int query) {
+        issuedCount++;
+        gl.glDeleteQueries(query);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        issuedCount++;
+        gl.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, long indicesOffset) {
+        issuedCount++;
+        gl.glDrawElements(mode, count, type, indicesOffset);
+    }
+
+    @Override
+    public void glDrawElementsInstanced(int mode, int count, int type, long indicesOffset, int primitiveCount) {
+        issuedCount++;
+        gl.glDrawElementsInstanced(mode, count, type, indicesOffset, primitiveCount);
+    }
+
+    /**
+     * @return the key of a target of the active texture unit, or UNKNOWN if the active unit isn't known
+     */
+    private int getTextureKey(int target) {
+        if (activeTexture == UNKNOWN)
+            return UNKNOWN;
+        return (activeTexture - GL_TEXTURE0) << 16 | target;
+    }
+
+    private static boolean isTextureTarget(int capability) {
+        return capability == GL_TEXTURE_1D || capability == GL_TEXTURE_2D || capability == GL_TEXTURE_3D || capability == GL_TEXTURE_CUBE_MAP;
+    }
+
+    /**
+     * The last values of the uniforms of a program, as raw bits, indexed by location.
+     */
+    private static class ProgramUniforms {
+
+        private int[][] values = new int[8][];
+
+        boolean update(int location, int[] bits, int count) {
+            if (location >= values.length)
+                values = Arrays.copyOf(values, Math.max(location + 1, values.length * 2));
+            int[] current = values[location];
+            if (current != null && current.length == count) {
+                int i = 0;
+                while (i < count && current[i] == bits[i]) {
+                    i++;
+                }
+                if (i == count)
+                    return false;
+            } else {
+                current = values[location] = new int[count];
+            }
+            System.arraycopy(bits, 0, current, 0, count);
+            return true;
+        }
+    }
+
+    /**
+     * Maps int keys to int values. It only ever holds a handful of entries, so it is searched linearly, which is
+     * faster than hashing and doesn't box the keys.
+     */
+    private static class StateTable {
+
+        private int[] keys = new int[8];
+        private int[] values = new int[8];
+        private int size;
+        // The value of the keys that aren't in the table
+        private int missing;
+
+        int get(int key) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key)
+                    return values[i];
+            }
+            return missing;
+        }
+
+        void put(int key, int value) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+        }
+
+        /**
+         * Replaces a value by another wherever it occurs.
+         */
+        void replace(int value, int replacement) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value)
+                    values[i] = replacement;
+            }
+        }
+
+        void clear(int missing) {
+            size = 0;
+            this.missing = missing;
+        }
+    }
+}
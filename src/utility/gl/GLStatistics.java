@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.gl;
+
+/**
+ * Counts the OpenGL calls of a frame or of a whole run, as recorded by {@link RecordingOpenGL}.
+ */
+public class GLStatistics {
+
+    int calls;
+    int drawCalls;
+    int uniformUploads;
+    int stateChanges;
+    long bytesUploaded;
+
+    public GLStatistics() {
+    }
+
+    public GLStatistics(GLStatistics statistics) {
+        add(statistics);
+    }
+
+    /**
+     * @return the number of OpenGL calls of any kind
+     */
+    public int getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return the number of glDrawArrays, glDrawElements and glDrawElementsInstanced calls
+     */
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    /**
+     * @return the number of glUniform calls
+     */
+    public int getUniformUploads() {
+        return uniformUploads;
+    }
+
+    /**
+     * @return the number of calls that bind an object, enable or disable something or otherwise change the state that
+     * the following draw calls use
+     */
+    public int getStateChanges() {
+        return stateChanges;
+    }
+
+    /**
+     * @return the number of bytes of vertex, index, texture and uniform data that were handed to OpenGL
+     */
+    public long getBytesUploaded() {
+        return bytesUploaded;
+    }
+
+    public void add(GLStatistics statistics) {
+        calls += statistics.calls;
+        drawCalls += statistics.drawCalls;
+        uniformUploads += statistics.uniformUploads;
+        stateChanges += statistics.stateChanges;
+        bytesUploaded += statistics.bytesUploaded;
+    }
+
+    public void reset() {
+        calls = 0;
+        drawCalls = 0;
+        uniformUploads = 0;
+        stateChanges = 0;
+        bytesUploaded = 0;
+    }
+
+    @Override
+    public String toString() {
+        return calls + " calls, " + drawCalls + " draw calls, " + uniformUploads + " uniform uploads, "
+                + stateChanges + " state changes, " + bytesUploaded + " bytes uploaded";
+    }
+}
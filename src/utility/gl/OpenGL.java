@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.gl;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * The OpenGL functions the render code of the tutorials calls. The methods have the same names and arguments as the
+ * LWJGL functions, so {@code glClear(GL_COLOR_BUFFER_BIT)} simply becomes {@code gl.glClear(GL_COLOR_BUFFER_BIT)}, and
+ * the constants are still imported from the LWJGL classes.
+ * <p>
+ * {@link LWJGLOpenGL} calls the real functions of the current context, {@link RecordingOpenGL} only records the calls,
+ * so render code can be run and checked without a window or a GPU.
+ */
+public interface OpenGL {
+
+    /**
+     * @return true if the context supports OpenGL 4.1 or ARB_get_program_binary
+     */
+    boolean isProgramBinarySupported();
+
+    /**
+     * @return true if the context supports OpenGL 4.4 or ARB_buffer_storage, which allows buffers to stay mapped while
+     * they are used for drawing
+     */
+    boolean isBufferStorageSupported();
+
+    /**
+     * @return true if the context supports OpenGL 3.3 or ARB_timer_query, which allows measuring time on the GPU
+     */
+    boolean isTimerQuerySupported();
+
+    // State
+
+    void glClearColor(float red, float green, float blue, float alpha);
+
+    void glClear(int mask);
+
+    void glEnable(int target);
+
+    void glDisable(int target);
+
+    void glPolygonMode(int face, int mode);
+
+    int glGetInteger(int name);
+
+    void glGetInteger(int name, IntBuffer params);
+
+    String glGetString(int name);
+
+    // Buffers and vertex arrays
+
+    int glGenBuffers();
+
+    void glDeleteBuffers(int buffer);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glBufferData(int target, ByteBuffer data, int usage);
+
+    void glBufferData(int target, ShortBuffer data, int usage);
+
+    void glBufferData(int target, long size, int usage);
+
+    void glBufferSubData(int target, long offset, ByteBuffer data);
+
+    void glBufferStorage(int target, long size, int flags);
+
+    ByteBuffer glMapBufferRange(int target, long offset, long length, int access);
+
+    boolean glUnmapBuffer(int target);
+
+    int glGenVertexArrays();
+
+    void glDeleteVertexArrays(int array);
+
+    void glBindVertexArray(int array);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glDisableVertexAttribArray(int index);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long pointerOffset);
+
+    void glVertexAttribDivisor(int index, int divisor);
+
+    // Fixed-function vertex arrays of the legacy tutorials
+
+    void glEnableClientState(int array);
+
+    void glDisableClientState(int array);
+
+    void glVertexPointer(int size, int type, int stride, long pointerOffset);
+
+    void glColorPointer(int size, int type, int stride, long pointerOffset);
+
+    void glTexCoordPointer(int size, int type, int stride, long pointerOffset);
+
+    // Fixed-function matrices of the legacy tutorials
+
+    void glMatrixMode(int mode);
+
+    void glOrtho(double left, double right, double bottom, double top, double near, double far);
+
+    // Textures
+
+    int glGenTextures();
+
+    void glDeleteTextures(int texture);
+
+    void glActiveTexture(int texture);
+
+    void glBindTexture(int target, int texture);
+
+    void glTexParameteri(int target, int name, int param);
+
+    void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border, int format, int type, ByteBuffer pixels);
+
+    void glCompressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border, ByteBuffer data);
+
+    // Shaders and programs
+
+    int glCreateShader(int type);
+
+    void glShaderSource(int shader, CharSequence source);
+
+    void glCompileShader(int shader);
+
+    int glGetShaderi(int shader, int name);
+
+    String glGetShaderInfoLog(int shader, int maxLength);
+
+    void glDeleteShader(int shader);
+
+    int glCreateProgram();
+
+    void glAttachShader(int program, int shader);
+
+    void glProgramParameteri(int program, int name, int value);
+
+    void glLinkProgram(int program);
+
+    int glGetProgrami(int program, int name);
+
+    String glGetProgramInfoLog(int program, int maxLength);
+
+    void glGetProgramBinary(int program, IntBuffer length, IntBuffer binaryFormat, ByteBuffer binary);
+
+    void glProgramBinary(int program, int binaryFormat, ByteBuffer binary);
+
+    void glDeleteProgram(int program);
+
+    void glUseProgram(int program);
+
+    int glGetUniformLocation(int program, CharSequence name);
+
+    void glUniform1i(int location, int value);
+
+    void glUniform1f(int location, float value);
+
+    void glUniform4f(int location, float x, float y, float z, float w);
+
+    void glUniformMatrix4(int location, boolean transpose, FloatBuffer value);
+
+    // Sync objects
+
+    long glFenceSync(int condition, int flags);
+
+    int glClientWaitSync(long sync, int flags, long timeout);
+
+    void glDeleteSync(long sync);
+
+    // Queries
+
+    int glGenQueries();
+
+    void glQueryCounter(int query, int target);
+
+    int glGetQueryObjecti(int query, int name);
+
+    long glGetQueryObjecti64(int query, int name);
+
+    void glDeleteQueries(int query);
+
+    // Drawing
+
+    void glDrawArrays(int mode, int first, int count);
+
+    void glDrawElements(int mode, int count, int type, long indicesOffset);
+
+    void glDrawElementsInstanced(int mode, int count, int type, long indicesOffset, int primitiveCount);
+}
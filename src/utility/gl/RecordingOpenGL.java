@@ -0,0 +1,595 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.gl;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.GL_TRUE;
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT_AVAILABLE;
+import static org.lwjgl.opengl.GL20.GL_COMPILE_STATUS;
+import static org.lwjgl.opengl.GL20.GL_LINK_STATUS;
+import static org.lwjgl.opengl.GL32.GL_ALREADY_SIGNALED;
+
+/**
+ * An {@link OpenGL} without a context or a GPU: it draws nothing, but counts every call and can keep a log of them.
+ * Render code can be run on a build machine this way, to check how many draw calls, uniform uploads and state changes
+ * a frame takes, or to compare the complete command stream with that of an earlier run.
+ * <p>
+ * Objects get increasing names starting at 1, shaders always compile and programs always link, and program binaries
+ * are not supported. Queries that aren't about one of those return 0.
+ * <p>
+ * Mapping a buffer returns new zeroed memory of the requested length, which is never read. Fences are signalled as soon
+ * as they are created, as if the GPU finished every command instantly.
+ */
+public class RecordingOpenGL implements OpenGL {
+
+    private final List<String> commands;
+    private final List<GLStatistics> frames = new ArrayList<>();
+    private final GLStatistics frame = new GLStatistics();
+    private final Map<String, Integer> uniformLocations = new HashMap<>();
+    private final Map<Integer, Long> queryTimes = new HashMap<>();
+    private int nextName = 1;
+    private boolean bufferStorageSupported;
+
+    /**
+     * Creates a backend that only counts the calls.
+     */
+    public RecordingOpenGL() {
+        this(false);
+    }
+
+    /**
+     * @param recordCommands whether to keep a log of every call, see {@link #getCommands()}
+     */
+    public RecordingOpenGL(boolean recordCommands) {
+        this.commands = recordCommands ? new ArrayList<String>() : null;
+    }
+
+    /**
+     * Sets what {@link #isBufferStorageSupported()} returns, so both paths of code that checks it can be run. Not
+     * supported by default.
+     */
+    public void setBufferStorageSupported(boolean bufferStorageSupported) {
+        this.bufferStorageSupported = bufferStorageSupported;
+    }
+
+    /**
+     * Finishes the statistics of the current frame and starts a new frame. The display calls this when it swaps the
+     * buffers, so the calls of the set-up end up in the first frame.
+     */
+    public void endFrame() {
+        frames.add(new GLStatistics(frame));
+        frame.reset();
+    }
+
+    /**
+     * @return the number of frames that were ended
+     */
+    public int getFrameCount() {
+        return frames.size();
+    }
+
+    /**
+     * @return the statistics of an ended frame
+     */
+    public GLStatistics getFrame(int index) {
+        return frames.get(index);
+    }
+
+    /**
+     * @return the statistics of the calls since the last frame was ended
+     */
+    public GLStatistics getCurrentFrame() {
+        return frame;
+    }
+
+    /**
+     * @return the statistics of all calls since the backend was created or cleared
+     */
+    public GLStatistics getTotal() {
+        GLStatistics total = new GLStatistics(frame);
+        for (GLStatistics statistics : frames) {
+            total.add(statistics);
+        }
+        return total;
+    }
+
+    /**
+     * @return the log of calls, like "glBindBuffer(34962, 1)", or an empty list if the calls aren't recorded
+     */
+    public List<String> getCommands() {
+        return commands == null ? Collections.<String>emptyList() : Collections.unmodifiableList(commands);
+    }
+
+    /**
+     * Forgets the recorded calls and frames. The names of the objects keep increasing.
+     */
+    public void clear() {
+        if (commands != null)
+            commands.clear();
+        frames.clear();
+        frame.reset();
+    }
+
+    @Override
+    public boolean isProgramBinarySupported() {
+        return false;
+    }
+
+    @Override
+    public boolean isBufferStorageSupported() {
+        return bufferStorageSupported;
+    }
+
+    @Override
+    public boolean isTimerQuerySupported() {
+        // The queries return the time at which they were recorded on the CPU
+        return true;
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        stateChange("glClearColor", red, green, blue, alpha);
+    }
+
+    @Override
+    public void glClear(int mask) {
+        call("glClear", mask);
+    }
+
+    @Override
+    public void glEnable(int target) {
+        stateChange("glEnable", target);
+    }
+
+    @Override
+    public void glDisable(int target) {
+        stateChange("glDisable", target);
+    }
+
+    @Override
+    public void glPolygonMode(int face, int mode) {
+        stateChange("glPolygonMode", face, mode);
+    }
+
+    @Override
+    public int glGetInteger(int name) {
+        call("glGetInteger", name);
+        return 0;
+    }
+
+    @Override
+    public void glGetInteger(int name, IntBuffer params) {
+        call("glGetInteger", name, describe(params));
+    }
+
+    @Override
+    public String glGetString(int name) {
+        call("glGetString", name);
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public int glGenBuffers() {
+        call("glGenBuffers");
+        return nextName++;
+    }
+
+    @Override
+    public void glDeleteBuffers(int buffer) {
+        call("glDeleteBuffers", buffer);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        stateChange("glBindBuffer", target, buffer);
+    }
+
+    @Override
+    public void glBufferData(int target, ByteBuffer data, int usage) {
+        upload("glBufferData", data.remaining(), target, describe(data), usage);
+    }
+
+    @Override
+    public void glBufferData(int target, ShortBuffer data, int usage) {
+        upload("glBufferData", data.remaining() * 2, target, describe(data), usage);
+    }
+
+    @Override
+    public void glBufferData(int target, long size, int usage) {
+        // Only allocates (or orphans) the storage, nothing is uploaded
+        call("glBufferData", target, size, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, long offset, ByteBuffer data) {
+        upload("glBufferSubData", data.remaining(), target, offset, describe(data));
+    }
+
+    @Override
+    public void glBufferStorage(int target, long size, int flags) {
+        call("glBufferStorage", target, size, flags);
+    }
+
+    @Override
+    public ByteBuffer glMapBufferRange(int target, long offset, long length, int access) {
+        call("glMapBufferRange", target, offset, length, access);
+        return BufferUtils.createByteBuffer((int) length);
+    }
+
+    @Override
+    public boolean glUnmapBuffer(int target) {
+        call("glUnmapBuffer", target);
+        return true;
+    }
+
+    @Override
+    public int glGenVertexArrays() {
+        call("glGenVertexArrays");
+        return nextName++;
+    }
+
+    @Override
+    public void glDeleteVertexArrays(int array) {
+        call("glDeleteVertexArrays", array);
+    }
+
+    @Override
+    public void glBindVertexArray(int array) {
+        stateChange("glBindVertexArray", array);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        stateChange("glEnableVertexAttribArray", index);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        stateChange("glDisableVertexAttribArray", index);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long pointerOffset) {
+        stateChange("glVertexAttribPointer", index, size, type, normalized, stride, pointerOffset);
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor) {
+        stateChange("glVertexAttribDivisor", index, divisor);
+    }
+
+    @Override
+    public void glEnableClientState(int array) {
+        stateChange("glEnableClientState", array);
+    }
+
+    @Override
+    public void glDisableClientState(int array) {
+        stateChange("glDisableClientState", array);
+    }
+
+    @Override
+    public void glVertexPointer(int size, int type, int stride, long pointerOffset) {
+        stateChange("glVertexPointer", size, type, stride, pointerOffset);
+    }
+
+    @Override
+    public void glColorPointer(int size, int type, int stride, long pointerOffset) {
+        stateChange("glColorPointer", size, type, stride, pointerOffset);
+    }
+
+    @Override
+    public void glTexCoordPointer(int size, int type, int stride, long pointerOffset) {
+        stateChange("glTexCoordPointer", size, type, stride, pointerOffset);
+    }
+
+    @Override
+    public void glMatrixMode(int mode) {
+        stateChange("glMatrixMode", mode);
+    }
+
+    @Override
+    public void glOrtho(double left, double right, double bottom, double top, double near, double far) {
+        stateChange("glOrtho", left, right, bottom, top, near, far);
+    }
+
+    @Override
+    public int glGenTextures() {
+        call("glGenTextures");
+        return nextName++;
+    }
+
+    @Override
+    public void glDeleteTextures(int texture) {
+        call("glDeleteTextures", texture);
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        stateChange("glActiveTexture", texture);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        stateChange("glBindTexture", target, texture);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int name, int param) {
+        call("glTexParameteri", target, name, param);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border, int format, int type, ByteBuffer pixels) {
+        upload("glTexImage2D", pixels == null ? 0 : pixels.remaining(),
+                target, level, internalFormat, width, height, border, format, type, pixels == null ? null : describe(pixels));
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border, ByteBuffer data) {
+        upload("glCompressedTexImage2D", data.remaining(), target, level, internalFormat, width, height, border, describe(data));
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        call("glCreateShader", type);
+        return nextName++;
+    }
+
+    @Override
+    public void glShaderSource(int shader, CharSequence source) {
+        call("glShaderSource", shader, "[" + source.length() + " characters]");
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        call("glCompileShader", shader);
+    }
+
+    @Override
+    public int glGetShaderi(int shader, int name) {
+        call("glGetShaderi", shader, name);
+        return name == GL_COMPILE_STATUS ? GL_TRUE : 0;
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader, int maxLength) {
+        call("glGetShaderInfoLog", shader, maxLength);
+        return "";
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        call("glDeleteShader", shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        call("glCreateProgram");
+        return nextName++;
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        call("glAttachShader", program, shader);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int name, int value) {
+        call("glProgramParameteri", program, name, value);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        call("glLinkProgram", program);
+    }
+
+    @Override
+    public int glGetProgrami(int program, int name) {
+        call("glGetProgrami", program, name);
+        return name == GL_LINK_STATUS ? GL_TRUE : 0;
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program, int maxLength) {
+        call("glGetProgramInfoLog", program, maxLength);
+        return "";
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, IntBuffer length, IntBuffer binaryFormat, ByteBuffer binary) {
+        call("glGetProgramBinary", program, describe(binary));
+        length.put(length.position(), 0);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, ByteBuffer binary) {
+        call("glProgramBinary", program, binaryFormat, describe(binary));
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        call("glDeleteProgram", program);
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        stateChange("glUseProgram", program);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, CharSequence name) {
+        call("glGetUniformLocation", program, "\"" + name + "\"");
+        // Every uniform name gets its own location, the same one in every program
+        Integer location = uniformLocations.get(name.toString());
+        if (location == null) {
+            location = uniformLocations.size();
+            uniformLocations.put(name.toString(), location);
+        }
+        return location;
+    }
+
+    @Override
+    public void glUniform1i(int location, int value) {
+        upload("glUniform1i", 4, location, value);
+        frame.uniformUploads++;
+    }
+
+    @Override
+    public void glUniform1f(int location, float value) {
+        upload("glUniform1f", 4, location, value);
+        frame.uniformUploads++;
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        upload("glUniform4f", 16, location, x, y, z, w);
+        frame.uniformUploads++;
+    }
+
+    @Override
+    public void glUniformMatrix4(int location, boolean transpose, FloatBuffer value) {
+        upload("glUniformMatrix4", value.remaining() * 4, location, transpose, describe(value));
+        frame.uniformUploads++;
+    }
+
+    @Override
+    public long glFenceSync(int condition, int flags) {
+        call("glFenceSync", condition, flags);
+        return nextName++;
+    }
+
+    @Override
+    public int glClientWaitSync(long sync, int flags, long timeout) {
+        call("glClientWaitSync", sync, flags, timeout);
+        return GL_ALREADY_SIGNALED;
+    }
+
+    @Override
+    public void glDeleteSync(long sync) {
+        call("glDeleteSync", sync);
+    }
+
+    @Override
+    public int glGenQueries() {
+        call("glGenQueries");
+        return nextName++;
+    }
+
+    @Override
+    public void glQueryCounter(int query, int target) {
+        call("glQueryCounter", query, target);
+        queryTimes.put(query, System.nanoTime());
+    }
+
+    @Override
+    public int glGetQueryObjecti(int query, int name) {
+        call("glGetQueryObjecti", query, name);
+        // The commands are "executed" when they are called, so every result is available right away
+        return name == GL_QUERY_RESULT_AVAILABLE ? GL_TRUE : (int) getQueryTime(query);
+    }
+
+    @Override
+    public long glGetQueryObjecti64(int query, int name) {
+        call("glGetQueryObjecti64", query, name);
+        return getQueryTime(query);
+    }
+
+    /**
+     * @return the time at which glQueryCounter was called for the query, in the time base of System.nanoTime()
+     */
+    private long getQueryTime(int query) {
+        Long time = queryTimes.get(query);
+        return time == null ? 0 : time;
+    }
+
+    @Override
+    public void glDeleteQueries(int query) {
+        call("glDeleteQueries", query);
+        queryTimes.remove(query);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        call("glDrawArrays", mode, first, count);
+        frame.drawCalls++;
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, long indicesOffset) {
+        call("glDrawElements", mode, count, type, indicesOffset);
+        frame.drawCalls++;
+    }
+
+    @Override
+    public void glDrawElementsInstanced(int mode, int count, int type, long indicesOffset, int primitiveCount) {
+        call("glDrawElementsInstanced", mode, count, type, indicesOffset, primitiveCount);
+        frame.drawCalls++;
+    }
+
+    private void call(String name, Object... arguments) {
+        frame.calls++;
+        if (commands == null)
+            return;
+        StringBuilder command = new StringBuilder(name).append('(');
+        for (int i = 0; i < arguments.length; i++) {
+            if (i > 0)
+                command.append(", ");
+            command.append(arguments[i]);
+        }
+        commands.add(command.append(')').toString());
+    }
+
+    private void stateChange(String name, Object... arguments) {
+        call(name, arguments);
+        frame.stateChanges++;
+    }
+
+    private void upload(String name, long bytes, Object... arguments) {
+        call(name, arguments);
+        frame.bytesUploaded += bytes;
+    }
+
+    private static String describe(Buffer buffer) {
+        return "[" + buffer.remaining() + " elements]";
+    }
+}
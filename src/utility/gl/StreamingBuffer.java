@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.gl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.lwjgl.opengl.GL15.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL30.GL_MAP_INVALIDATE_BUFFER_BIT;
+import static org.lwjgl.opengl.GL30.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL44.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.GL44.GL_MAP_PERSISTENT_BIT;
+
+/**
+ * A buffer object for data that changes every frame, which is written straight into memory that OpenGL reads from,
+ * without a copy in between. Every frame goes like this:
+ * <pre>
+ * ByteBuffer vertices = buffer.map();   // write the vertices into this
+ * long offset = buffer.unmap();         // the data starts at this byte offset in the buffer
+ * gl.glDrawArrays(...);                 // the draw calls that read the data
+ * buffer.fence();
+ * </pre>
+ * With OpenGL 4.4 (or ARB_buffer_storage) the buffer is divided into a ring of regions that stays mapped all the time.
+ * Every frame writes the next region, and {@link #fence()} places a fence after the draw calls that read it. The writer
+ * only has to wait when it comes round to a region the GPU hasn't finished with, which means the GPU is a whole ring of
+ * frames behind.
+ * <p>
+ * Without buffer storage every frame orphans the storage of the buffer with glBufferData and maps the new storage, so
+ * the driver does the buffering; no fences are needed then. All offsets are 0 in that case.
+ */
+public class StreamingBuffer {
+
+    private final OpenGL gl;
+    private final FenceProvider fences;
+    private final int target;
+    private final int regionSize;
+    private final boolean persistent;
+    private final int buffer;
+    // Persistent mapping only: a view of the mapped memory of every region, and the fence after its last use (0 if none)
+    private final ByteBuffer[] regions;
+    private final long[] regionFences;
+    private int region;
+    private boolean mapped;
+    private int stalls;
+
+    /**
+     * Creates the buffer (and maps it, with buffer storage), requires a current OpenGL context. The buffer stays bound
+     * to target.
+     *
+     * @param regionSize  the largest number of bytes written in a frame
+     * @param regionCount the number of frames the CPU may be ahead of the GPU, plus one; 3 is usual
+     */
+    public StreamingBuffer(OpenGL gl, FenceProvider fences, int target, int regionSize, int regionCount) {
+        if (regionSize <= 0)
+            throw new IllegalArgumentException("The region size must be positive: " + regionSize);
+        if (regionCount <= 0)
+            throw new IllegalArgumentException("There must be at least one region: " + regionCount);
+        this.gl = gl;
+        this.fences = fences;
+        this.target = target;
+        this.regionSize = regionSize;
+        this.persistent = gl.isBufferStorageSupported();
+        this.buffer = gl.glGenBuffers();
+        gl.glBindBuffer(target, buffer);
+        if (persistent) {
+            // Coherent: whatever the CPU writes is visible to the GPU without flushing the range first
+            int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+            gl.glBufferStorage(target, (long) regionSize * regionCount, flags);
+            ByteBuffer memory = gl.glMapBufferRange(target, 0, (long) regionSize * regionCount, flags);
+            regions = new ByteBuffer[regionCount];
+            for (int i = 0; i < regionCount; i++) {
+                memory.limit((i + 1) * regionSize).position(i * regionSize);
+                regions[i] = memory.slice().order(ByteOrder.nativeOrder());
+            }
+            regionFences = new long[regionCount];
+        } else {
+            gl.glBufferData(target, regionSize, GL_STREAM_DRAW);
+            regions = null;
+            regionFences = null;
+        }
+    }
+
+    /**
+     * Returns the memory to write the data of this frame into, from position 0 to the region size. With buffer storage
+     * this waits for the GPU if it still reads the region from an earlier frame, without it binds the buffer to the
+     * target.
+     */
+    public ByteBuffer map() {
+        if (mapped)
+            throw new IllegalStateException("The buffer is mapped already");
+        mapped = true;
+        if (persistent) {
+            long fence = regionFences[region];
+            if (fence != 0) {
+                if (fences.waitFor(fence))
+                    stalls++;
+                fences.delete(fence);
+                regionFences[region] = 0;
+            }
+            ByteBuffer memory = regions[region];
+            memory.clear();
+            return memory;
+        }
+        gl.glBindBuffer(target, buffer);
+        // Give the buffer new storage, the old storage is freed by the driver once the GPU is done with it
+        gl.glBufferData(target, regionSize, GL_STREAM_DRAW);
+        ByteBuffer memory = gl.glMapBufferRange(target, 0, regionSize, GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_BUFFER_BIT);
+        memory.order(ByteOrder.nativeOrder());
+        return memory;
+    }
+
+    /**
+     * Finishes writing, the memory returned by {@link #map()} must not be used after this. Without buffer storage the
+     * buffer is bound to the target.
+     *
+     * @return the byte offset in the buffer at which the data of this frame starts
+     */
+    public long unmap() {
+        if (!mapped)
+            throw new IllegalStateException("The buffer is not mapped");
+        mapped = false;
+        if (persistent)
+            return (long) region * regionSize;
+        gl.glBindBuffer(target, buffer);
+        gl.glUnmapBuffer(target);
+        return 0;
+    }
+
+    /**
+     * Marks the end of the draw calls that read the data of this frame, so the next frame writes the next region.
+     */
+    public void fence() {
+        if (mapped)
+            throw new IllegalStateException("The buffer must be unmapped before it is fenced");
+        if (!persistent)
+            return;
+        regionFences[region] = fences.insert();
+        region = (region + 1) % regions.length;
+    }
+
+    /**
+     * @return true if the buffer is mapped persistently, false if it falls back to orphaning
+     */
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * @return the buffer object, to bind it for the draw calls
+     */
+    public int getBuffer() {
+        return buffer;
+    }
+
+    public int getRegionSize() {
+        return regionSize;
+    }
+
+    /**
+     * @return the number of times {@link #map()} had to wait for the GPU
+     */
+    public int getStalls() {
+        return stalls;
+    }
+
+    /**
+     * Deletes the fences and the buffer, which also unmaps it.
+     */
+    public void delete() {
+        if (persistent) {
+            for (int i = 0; i < regionFences.length; i++) {
+                if (regionFences[i] != 0) {
+                    fences.delete(regionFences[i]);
+                    regionFences[i] = 0;
+                }
+            }
+        }
+        gl.glDeleteBuffers(buffer);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.input;
+
+/**
+ * An input event taken from an {@link InputQueue}. The same object is filled again by every call to
+ * {@link InputQueue#poll(InputEvent)}, so reading all events of a frame doesn't allocate anything.
+ */
+public class InputEvent {
+
+    /**
+     * The types of events: the cursor moved, a key was pressed, repeated or released, or a mouse button was pressed or
+     * released.
+     */
+    public static final int CURSOR = 1, KEY = 2, MOUSE_BUTTON = 3;
+
+    int type;
+    long time;
+    int code;
+    int action;
+    int mods;
+    double x, y;
+
+    /**
+     * @return {@link #CURSOR}, {@link #KEY} or {@link #MOUSE_BUTTON}
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return the moment the event was received, in the time base of System.nanoTime()
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the GLFW key (GLFW_KEY_...) or mouse button (GLFW_MOUSE_BUTTON_...) of a key or mouse button event
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return GLFW_PRESS, GLFW_RELEASE or GLFW_REPEAT for a key or mouse button event
+     */
+    public int getAction() {
+        return action;
+    }
+
+    /**
+     * @return the GLFW_MOD_... bits of the modifier keys that were held down during a key or mouse button event
+     */
+    public int getMods() {
+        return mods;
+    }
+
+    /**
+     * @return the cursor position of a cursor event, in screen coordinates from the top left corner of the window
+     */
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case CURSOR:
+                return "InputEvent[cursor " + x + ", " + y + " at " + time + "]";
+            case KEY:
+                return "InputEvent[key " + code + " action " + action + " mods " + mods + " at " + time + "]";
+            case MOUSE_BUTTON:
+                return "InputEvent[mouse button " + code + " action " + action + " mods " + mods + " at " + time + "]";
+            default:
+                return "InputEvent[none]";
+        }
+    }
+}
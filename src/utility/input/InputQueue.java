@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.input;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passes input events from the thread that receives them (the GLFW callbacks) to the thread that runs the simulation,
+ * without locks and without allocating. Unlike a pair of mouse coordinates that is overwritten by every callback, the
+ * queue keeps every event, in order, with the time it was received.
+ * <p>
+ * There must be one producer thread and one consumer thread. The events are stored as four longs each in a ring: the
+ * time, the type, code, action and modifier bits packed together, and the raw bits of the two cursor coordinates. The
+ * producer only writes the head and the consumer only writes the tail; each publishes its position with an ordered
+ * store after the slots are written or read, so the other side never sees a half-written event.
+ * <p>
+ * When the ring is full the new event is dropped and counted: the producer is a window system callback, which must
+ * never wait for the simulation.
+ */
+public class InputQueue {
+
+    private static final int SLOT_SIZE = 4;
+
+    private final long[] slots;
+    private final int mask;
+    // The number of events ever written and read; the producer owns head, the consumer owns tail
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    // The last tail seen by the producer and the last head seen by the consumer, to read the other side's position only
+    // when the ring looks full or empty
+    private long cachedTail;
+    private long cachedHead;
+    private volatile int dropped;
+
+    /**
+     * @param capacity the number of events the queue can hold, rounded up to a power of two
+     */
+    public InputQueue(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 26)
+            throw new IllegalArgumentException("The capacity must be between 1 and " + (1 << 26) + ": " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        this.slots = new long[size * SLOT_SIZE];
+        this.mask = size - 1;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Adds a cursor event. Producer thread only.
+     *
+     * @return false if the queue was full and the event was dropped
+     */
+    public boolean offerCursor(long time, double x, double y) {
+        return offer(time, InputEvent.CURSOR, 0, 0, 0, Double.doubleToRawLongBits(x), Double.doubleToRawLongBits(y));
+    }
+
+    /**
+     * Adds a key event. Producer thread only.
+     *
+     * @return false if the queue was full and the event was dropped
+     */
+    public boolean offerKey(long time, int key, int action, int mods) {
+        return offer(time, InputEvent.KEY, key, action, mods, 0, 0);
+    }
+
+    /**
+     * Adds a mouse button event. Producer thread only.
+     *
+     * @return false if the queue was full and the event was dropped
+     */
+    public boolean offerMouseButton(long time, int button, int action, int mods) {
+        return offer(time, InputEvent.MOUSE_BUTTON, button, action, mods, 0, 0);
+    }
+
+    private boolean offer(long time, int type, int code, int action, int mods, long x, long y) {
+        long position = head.get();
+        if (position - cachedTail > mask) {
+            cachedTail = tail.get();
+            if (position - cachedTail > mask) {
+                dropped++;
+                return false;
+            }
+        }
+        int slot = (int) (position & mask) * SLOT_SIZE;
+        slots[slot] = time;
+        // 8 bits type, 8 bits action, 16 bits modifiers, 32 bits key or button (which can be -1 for unknown keys)
+        slots[slot + 1] = (long) type << 56 | (long) (action & 0xFF) << 48 | (long) (mods & 0xFFFF) << 32 | (code & 0xFFFFFFFFL);
+        slots[slot + 2] = x;
+        slots[slot + 3] = y;
+        // The ordered store makes the slot visible to the consumer before the new head
+        head.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * Takes the oldest event. Consumer thread only.
+     *
+     * @param event filled with the event
+     * @return false if there was no event
+     */
+    public boolean poll(InputEvent event) {
+        long position = tail.get();
+        if (position >= cachedHead) {
+            cachedHead = head.get();
+            if (position >= cachedHead)
+                return false;
+        }
+        int slot = (int) (position & mask) * SLOT_SIZE;
+        long header = slots[slot + 1];
+        event.time = slots[slot];
+        event.type = (int) (header >>> 56);
+        event.action = (int) (header >>> 48) & 0xFF;
+        event.mods = (int) (header >>> 32) & 0xFFFF;
+        event.code = (int) header;
+        event.x = Double.longBitsToDouble(slots[slot + 2]);
+        event.y = Double.longBitsToDouble(slots[slot + 3]);
+        // The slot is read, the producer may now overwrite it
+        tail.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * @return the number of events waiting; exact on the consumer thread, an estimate elsewhere
+     */
+    public int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    /**
+     * @return the number of events that were dropped because the queue was full
+     */
+    public int getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A ring of log messages that any thread can write to and a thread of its own writes out. All memory is allocated when
+ * the buffer is created: a message is five longs (the time, the level and the types of the arguments, and up to three
+ * arguments) plus references to its logger, its format and an object argument. Logging a message claims the next
+ * record with a compare-and-set on the head, fills it and publishes it by storing its sequence number; there are no
+ * locks, no string concatenation and no system calls on the thread that logs.
+ * <p>
+ * The writer thread formats the published messages in order into one string builder and writes them out in a single
+ * call, then sleeps for a moment if there was nothing to do. When the ring is full, new messages are dropped and
+ * counted and the writer reports how many the next time it writes: logging never waits for the output.
+ */
+public class LogBuffer {
+
+    private static final int RECORD_SIZE = 5;
+    private static final int BATCH_SIZE = 256;
+    private static final long IDLE_NANOS = 1_000_000;
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final Level[] LEVELS = Level.values();
+
+    private final int mask;
+    private final long[] records;
+    private final Logger[] loggers;
+    private final String[] formats;
+    private final Object[] objects;
+    // The sequence number + 1 of the message in every record once it's completely written
+    private final AtomicLongArray published;
+    // The number of messages ever claimed by the loggers and ever read by the writer thread
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final long startTime = System.nanoTime();
+    private volatile Level level;
+
+    // Only used by the writer thread
+    private final OutputStream out;
+    private final StringBuilder builder = new StringBuilder(BATCH_SIZE * 64);
+    private byte[] bytes = new byte[BATCH_SIZE * 64];
+    private int reportedDropped;
+    private final Thread thread;
+    private volatile boolean running = true;
+    // The number of messages written to the output
+    private volatile long written;
+
+    /**
+     * Creates the buffer and starts its writer thread.
+     *
+     * @param capacity the number of messages the buffer holds, rounded up to a power of two
+     * @param level    the level of the loggers that are created by {@link #getLogger(String)}
+     */
+    public LogBuffer(int capacity, OutputStream out, Level level) {
+        if (capacity <= 0 || capacity > 1 << 24)
+            throw new IllegalArgumentException("The capacity must be between 1 and " + (1 << 24) + ": " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        this.mask = size - 1;
+        this.records = new long[size * RECORD_SIZE];
+        this.loggers = new Logger[size];
+        this.formats = new String[size];
+        this.objects = new Object[size];
+        this.published = new AtomicLongArray(size);
+        this.out = out;
+        this.level = level;
+        thread = new Thread("Log writer") {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public Logger getLogger(String name) {
+        return new Logger(name, this, level);
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the level of the loggers that are created from now on.
+     */
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the number of messages that were dropped because the buffer was full
+     */
+    public int getDropped() {
+        return dropped.get();
+    }
+
+    void write(Logger logger, Level level, String format, int count, int types, long a, long b, long c, Object object) {
+        long time = System.nanoTime();
+        long position;
+        do {
+            position = head.get();
+            if (position - tail.get() > mask) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!head.compareAndSet(position, position + 1));
+        int slot = (int) position & mask;
+        int record = slot * RECORD_SIZE;
+        records[record] = time;
+        records[record + 1] = level.ordinal() | count << 8 | types << 16;
+        records[record + 2] = a;
+        records[record + 3] = b;
+        records[record + 4] = c;
+        loggers[slot] = logger;
+        formats[slot] = format;
+        objects[slot] = object;
+        // The ordered store makes the record visible to the writer thread before the sequence number
+        published.lazySet(slot, position + 1);
+    }
+
+    /**
+     * Waits until everything that was logged before the call is written to the output.
+     */
+    public void flush() {
+        long target = head.get();
+        LockSupport.unpark(thread);
+        // Let the writer thread run, on a single core it can't run otherwise; sleep if it takes longer than that
+        for (int spins = 0; written < target && thread.isAlive(); spins++) {
+            if (spins < 100) {
+                Thread.yield();
+            } else {
+                LockSupport.unpark(thread);
+                LockSupport.parkNanos(100_000);
+            }
+        }
+    }
+
+    /**
+     * Writes everything that was logged and stops the writer thread. Messages logged afterwards are dropped once the
+     * buffer is full.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            // Read before draining, so that everything logged before close() is written
+            boolean stop = !running;
+            if (drain() == 0) {
+                if (stop)
+                    return;
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Formats and writes the next batch of published messages.
+     *
+     * @return the number of messages
+     */
+    private int drain() {
+        builder.setLength(0);
+        int droppedNow = dropped.get();
+        if (droppedNow != reportedDropped) {
+            builder.append(droppedNow - reportedDropped).append(" log messages were dropped, the buffer was full")
+                    .append(LINE_SEPARATOR);
+            reportedDropped = droppedNow;
+        }
+        long position = tail.get();
+        int count = 0;
+        while (count < BATCH_SIZE && published.get((int) position & mask) == position + 1) {
+            int slot = (int) position & mask;
+            format(slot);
+            // Don't keep the arguments alive until the record is used again
+            objects[slot] = null;
+            position++;
+            count++;
+            tail.lazySet(position);
+        }
+        if (builder.length() > 0) {
+            try {
+                writeBuilder();
+            } catch (IOException e) {
+                // The log can't report its own failure through itself
+                System.err.println("Couldn't write the log: " + e);
+            }
+        }
+        written = position;
+        return count;
+    }
+
+    private void writeBuilder() throws IOException {
+        int length = builder.length();
+        if (bytes.length < length)
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        // Log messages are nearly always ASCII, which is the same in every charset the console uses; only encode the
+        // text properly if it isn't
+        for (int i = 0; i < length; i++) {
+            char c = builder.charAt(i);
+            if (c >= 0x80) {
+                byte[] encoded = builder.toString().getBytes();
+                out.write(encoded, 0, encoded.length);
+                out.flush();
+                return;
+            }
+            bytes[i] = (byte) c;
+        }
+        out.write(bytes, 0, length);
+        out.flush();
+    }
+
+    private void format(int slot) {
+        int record = slot * RECORD_SIZE;
+        long header = records[record + 1];
+        int count = (int) (header >>> 8) & 0xFF;
+        int types = (int) (header >>> 16);
+        // The time since the buffer was created in milliseconds, with three decimals
+        long micros = (records[record] - startTime) / 1000;
+        long fraction = micros % 1000;
+        builder.append(micros / 1000).append('.');
+        if (fraction < 100)
+            builder.append('0');
+        if (fraction < 10)
+            builder.append('0');
+        builder.append(fraction).append(' ').append(LEVELS[(int) header & 0xFF]).append(" [")
+                .append(loggers[slot].getName()).append("] ");
+        String format = formats[slot];
+        int start = 0;
+        for (int argument = 0; argument < count; argument++) {
+            int placeholder = format.indexOf("{}", start);
+            if (placeholder < 0)
+                break;
+            builder.append(format, start, placeholder);
+            long value = records[record + 2 + argument];
+            switch ((types >>> (argument * 2)) & 3) {
+                case Logger.LONG:
+                    builder.append(value);
+                    break;
+                case Logger.DOUBLE:
+                    builder.append(Double.longBitsToDouble(value));
+                    break;
+                default:
+                    builder.append(objects[slot]);
+                    break;
+            }
+            start = placeholder + 2;
+        }
+        builder.append(format, start, format.length()).append(LINE_SEPARATOR);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.log;
+
+/**
+ * Writes messages with a name into a {@link LogBuffer}. The messages are formatted later, on the thread that writes the
+ * buffer: a call only checks the level and copies the format and the arguments into the buffer, so a logger can stay
+ * in code that runs every frame.
+ * <p>
+ * The format contains a {@code {}} for every argument, for example
+ * <pre>
+ * logger.log(Level.DEBUG, "Cursor at {}, {}", mouseX, mouseY);
+ * </pre>
+ * The arguments are primitives, so they are stored as they are and nothing is allocated. An object argument is stored
+ * by reference and turned into a string on the writer thread; only pass objects that don't change anymore, like
+ * strings.
+ */
+public class Logger {
+
+    // The types of the arguments, two bits per argument
+    static final int LONG = 0, DOUBLE = 1, OBJECT = 2;
+
+    private final String name;
+    private final LogBuffer buffer;
+    private volatile Level level;
+
+    Logger(String name, LogBuffer buffer, Level level) {
+        this.name = name;
+        this.buffer = buffer;
+        this.level = level;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * @param level the least important level that is written, {@link Level#OFF} to write nothing
+     */
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    /**
+     * @return whether messages of the level are written; check it before building an expensive argument
+     */
+    public boolean isEnabled(Level level) {
+        return level != Level.OFF && level.compareTo(this.level) >= 0;
+    }
+
+    public void log(Level level, String format) {
+        if (isEnabled(level))
+            buffer.write(this, level, format, 0, 0, 0, 0, 0, null);
+    }
+
+    public void log(Level level, String format, long a) {
+        if (isEnabled(level))
+            buffer.write(this, level, format, 1, LONG, a, 0, 0, null);
+    }
+
+    public void log(Level level, String format, double a) {
+        if (isEnabled(level))
+            buffer.write(this, level, format, 1, DOUBLE, Double.doubleToRawLongBits(a), 0, 0, null);
+    }
+
+    public void log(Level level, String format, Object a) {
+        if (isEnabled(level))
+            buffer.write(this, level, format, 1, OBJECT, 0, 0, 0, a);
+    }
+
+    public void log(Level level, String format, long a, long b) {
+        if (isEnabled(level))
+            buffer.write(this, level, format, 2, LONG | LONG << 2, a, b, 0, null);
+    }
+
+    public void log(Level level, String format, double a, double b) {
+        if (isEnabled(level))
+            buffer.write(this, level, format, 2, DOUBLE | DOUBLE << 2, Double.doubleToRawLongBits(a),
+                    Double.doubleToRawLongBits(b), 0, null);
+    }
+
+    public void log(Level level, String format, long a, long b, long c) {
+        if (isEnabled(level))
+            buffer.write(this, level, format, 3, LONG | LONG << 2 | LONG << 4, a, b, c, null);
+    }
+
+    public void log(Level level, String format, double a, double b, double c) {
+        if (isEnabled(level))
+            buffer.write(this, level, format, 3, DOUBLE | DOUBLE << 2 | DOUBLE << 4, Double.doubleToRawLongBits(a),
+                    Double.doubleToRawLongBits(b), Double.doubleToRawLongBits(c), null);
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.memory;
+
+import org.lwjgl.BufferUtils;
+import utility.log.Level;
+import utility.log.Log;
+import utility.log.Logger;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out off-heap buffers and takes them back, so buffers that come and go (pixels of a texture, the data of a
+ * program binary) don't allocate new direct memory every time. Every direct buffer that is created lives as long as
+ * the pool: the garbage collector never has to clean one up. The buffers are kept in size classes of powers of two; a
+ * buffer can be acquired on one thread and released on another.
+ * <p>
+ * Every buffer must be given back with {@link #release(Buffer)}. The pool keeps track of the buffers that are out, so
+ * it can report the bytes in use and the buffers that were never released; with {@code trackSites} it also remembers
+ * where each of them was acquired. Buffers that are only needed for the duration of a method are cheaper to take from
+ * the {@link StackAllocator} of the thread.
+ */
+public class BufferPool {
+
+    private static final Logger log = Log.getLogger(BufferPool.class);
+    private static final int SIZE_CLASSES = 31;
+    /**
+     * The size of the largest buffer the pool hands out, in bytes.
+     */
+    public static final int MAX_SIZE = 1 << (SIZE_CLASSES - 1);
+    private static BufferPool defaultPool;
+
+    private final boolean trackSites;
+    private final Queue<ByteBuffer>[] freeBuffers;
+    // The buffers that are acquired and not released yet, by identity: the equals of a buffer compares the contents
+    private final Map<Buffer, Allocation> outstanding = new IdentityHashMap<>();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong allocationCount = new AtomicLong();
+    private long outstandingBytes;
+
+    /**
+     * @return the pool the tutorials share; it records where buffers are acquired if the system property
+     * {@code memory.trackSites} is true
+     */
+    public static synchronized BufferPool getDefault() {
+        if (defaultPool == null)
+            defaultPool = new BufferPool(Boolean.getBoolean("memory.trackSites"));
+        return defaultPool;
+    }
+
+    public BufferPool() {
+        this(false);
+    }
+
+    /**
+     * @param trackSites whether to record the stack trace of every acquire, to show where a leaked buffer came from
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(boolean trackSites) {
+        this.trackSites = trackSites;
+        freeBuffers = new Queue[SIZE_CLASSES];
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            freeBuffers[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * @return a buffer in native byte order with its position at 0 and its limit at the requested size, the capacity
+     * can be larger; the contents are undefined
+     */
+    public ByteBuffer acquire(int size) {
+        ByteBuffer buffer = take(size);
+        track(buffer, buffer);
+        return buffer;
+    }
+
+    public ShortBuffer acquireShorts(int count) {
+        ByteBuffer buffer = take(checkCount(count, 2));
+        ShortBuffer view = buffer.asShortBuffer();
+        track(view, buffer);
+        return view;
+    }
+
+    public IntBuffer acquireInts(int count) {
+        ByteBuffer buffer = take(checkCount(count, 4));
+        IntBuffer view = buffer.asIntBuffer();
+        track(view, buffer);
+        return view;
+    }
+
+    public FloatBuffer acquireFloats(int count) {
+        ByteBuffer buffer = take(checkCount(count, 4));
+        FloatBuffer view = buffer.asFloatBuffer();
+        track(view, buffer);
+        return view;
+    }
+
+    public DoubleBuffer acquireDoubles(int count) {
+        ByteBuffer buffer = take(checkCount(count, 8));
+        DoubleBuffer view = buffer.asDoubleBuffer();
+        track(view, buffer);
+        return view;
+    }
+
+    /**
+     * Gives back a buffer that was acquired from this pool, it must not be used afterwards.
+     *
+     * @throws IllegalArgumentException if the buffer is not out of this pool, for example because it was released
+     *                                  already
+     */
+    public void release(Buffer buffer) {
+        Allocation allocation;
+        synchronized (outstanding) {
+            allocation = outstanding.remove(buffer);
+            if (allocation == null)
+                throw new IllegalArgumentException("The buffer wasn't acquired from this pool or is released already");
+            outstandingBytes -= allocation.buffer.capacity();
+        }
+        freeBuffers[getSizeClass(allocation.buffer.capacity())].offer(allocation.buffer);
+    }
+
+    /**
+     * @return the total capacity of all buffers this pool has allocated
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * @return the total capacity of the buffers that are acquired and not released yet
+     */
+    public long getOutstandingBytes() {
+        synchronized (outstanding) {
+            return outstandingBytes;
+        }
+    }
+
+    public int getOutstandingCount() {
+        synchronized (outstanding) {
+            return outstanding.size();
+        }
+    }
+
+    /**
+     * @return the number of acquires so far
+     */
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /**
+     * @return the number of acquires that had to allocate a new buffer, because there was none of the size class
+     */
+    public long getAllocationCount() {
+        return allocationCount.get();
+    }
+
+    /**
+     * @return a description of every buffer that is still out, with the place it was acquired if sites are tracked
+     */
+    public List<String> getLeaks() {
+        List<String> leaks = new ArrayList<>();
+        synchronized (outstanding) {
+            for (Map.Entry<Buffer, Allocation> entry : outstanding.entrySet()) {
+                Allocation allocation = entry.getValue();
+                StringBuilder leak = new StringBuilder();
+                leak.append(entry.getKey().getClass().getSimpleName()).append(" of ").append(allocation.size)
+                        .append(" bytes");
+                if (allocation.site != null) {
+                    // The first two elements are track and acquire
+                    StackTraceElement[] trace = allocation.site.getStackTrace();
+                    for (int i = 2; i < trace.length; i++) {
+                        leak.append("\n\tat ").append(trace[i]);
+                    }
+                }
+                leaks.add(leak.toString());
+            }
+        }
+        return leaks;
+    }
+
+    /**
+     * Logs a warning for every buffer that is still out. Call it when everything should have been released, for
+     * example at the end of the program.
+     *
+     * @return the number of buffers that are still out
+     */
+    public int checkLeaks() {
+        List<String> leaks = getLeaks();
+        for (String leak : leaks) {
+            log.log(Level.WARN, "Buffer never released: {}", leak);
+        }
+        return leaks.size();
+    }
+
+    private ByteBuffer take(int size) {
+        if (size <= 0 || size > MAX_SIZE)
+            throw new IllegalArgumentException("Can't pool a buffer of " + size + " bytes");
+        acquireCount.incrementAndGet();
+        int sizeClass = getSizeClass(size);
+        ByteBuffer buffer = freeBuffers[sizeClass].poll();
+        if (buffer == null) {
+            buffer = BufferUtils.createByteBuffer(1 << sizeClass);
+            allocatedBytes.addAndGet(buffer.capacity());
+            allocationCount.incrementAndGet();
+        }
+        // The last user may have changed the byte order, the contract of acquire is native order
+        buffer.clear().limit(size);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    private void track(Buffer handle, ByteBuffer buffer) {
+        Allocation allocation = new Allocation(buffer, buffer.limit(), trackSites ? new Throwable() : null);
+        synchronized (outstanding) {
+            outstanding.put(handle, allocation);
+            outstandingBytes += buffer.capacity();
+        }
+    }
+
+    private static int checkCount(int count, int elementSize) {
+        if (count <= 0 || count > MAX_SIZE / elementSize)
+            throw new IllegalArgumentException("Can't pool a buffer of " + count + " elements of " + elementSize + " bytes");
+        return count * elementSize;
+    }
+
+    private static int getSizeClass(int size) {
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    private static class Allocation {
+
+        final ByteBuffer buffer;
+        final int size;
+        final Throwable site;
+
+        Allocation(ByteBuffer buffer, int size, Throwable site) {
+            this.buffer = buffer;
+            this.size = size;
+            this.site = site;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.memory;
+
+import org.lwjgl.BufferUtils;
+import utility.log.Level;
+import utility.log.Log;
+import utility.log.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Hands out temporary off-heap buffers from one block of memory per thread. Allocating moves the top of the stack up,
+ * popping a frame moves it back down, so the memory of a temporary buffer is reused by the next one right away:
+ * <pre>
+ * StackAllocator stack = StackAllocator.get();
+ * int frame = stack.push();
+ * try {
+ *     FloatBuffer matrix = stack.allocateFloats(16);
+ *     ...
+ * } finally {
+ *     stack.pop(frame);
+ * }
+ * </pre>
+ * A buffer must not be used after its frame is popped, and must not be passed to another thread. The contents of a new
+ * buffer are undefined. The size of the stack of every thread is 64 KB, or the number of bytes in the system property
+ * {@code memory.stackSize}.
+ */
+public class StackAllocator {
+
+    private static final Logger log = Log.getLogger(StackAllocator.class);
+    private static final int DEFAULT_ALIGNMENT = 8;
+    private static final ThreadLocal<StackAllocator> threadStacks = new ThreadLocal<StackAllocator>() {
+        @Override
+        protected StackAllocator initialValue() {
+            return new StackAllocator(Integer.getInteger("memory.stackSize", 64 * 1024));
+        }
+    };
+
+    private final ByteBuffer memory;
+    private int top;
+    // The top of the stack when each frame was pushed
+    private int[] frames = new int[16];
+    private int depth;
+    private int highWaterMark;
+
+    /**
+     * @return the stack of the calling thread
+     */
+    public static StackAllocator get() {
+        return threadStacks.get();
+    }
+
+    public StackAllocator(int capacity) {
+        memory = BufferUtils.createByteBuffer(capacity);
+    }
+
+    /**
+     * Starts a frame. Everything allocated from now on is freed by the matching {@link #pop(int)}.
+     *
+     * @return the frame, to pass to {@link #pop(int)}
+     */
+    public int push() {
+        if (depth == frames.length)
+            frames = Arrays.copyOf(frames, depth * 2);
+        frames[depth++] = top;
+        return depth;
+    }
+
+    /**
+     * Frees everything that was allocated since the frame was pushed.
+     *
+     * @throws IllegalStateException if the frame isn't the last one that was pushed; a frame in between wasn't popped
+     */
+    public void pop(int frame) {
+        if (frame != depth || depth == 0)
+            throw new IllegalStateException("Popping frame " + frame + " while the stack has " + depth + " frames");
+        top = frames[--depth];
+    }
+
+    public ByteBuffer allocate(int size) {
+        return allocate(size, DEFAULT_ALIGNMENT);
+    }
+
+    /**
+     * @param alignment the address the buffer starts at is a multiple of this, a power of two
+     * @return a buffer in native byte order with its position at 0 and its limit and capacity at the size
+     * @throws IllegalStateException if no frame has been pushed or the stack is full
+     */
+    public ByteBuffer allocate(int size, int alignment) {
+        if (depth == 0)
+            throw new IllegalStateException("Push a frame before allocating from the stack");
+        if (size < 0 || Integer.bitCount(alignment) != 1)
+            throw new IllegalArgumentException("Invalid size " + size + " or alignment " + alignment);
+        // The block itself comes from malloc, which aligns to at least 8 bytes, so aligned offsets are aligned addresses
+        int start = (top + alignment - 1) & -alignment;
+        if (start > memory.capacity() - size)
+            throw new IllegalStateException("The stack of " + memory.capacity() + " bytes has no room for " + size
+                    + " more bytes; allocate large buffers from a BufferPool instead");
+        top = start + size;
+        highWaterMark = Math.max(highWaterMark, top);
+        ByteBuffer buffer = memory.duplicate();
+        buffer.limit(top).position(start);
+        return buffer.slice().order(ByteOrder.nativeOrder());
+    }
+
+    public ShortBuffer allocateShorts(int count) {
+        return allocate(count * 2, 2).asShortBuffer();
+    }
+
+    public IntBuffer allocateInts(int count) {
+        return allocate(count * 4, 4).asIntBuffer();
+    }
+
+    public FloatBuffer allocateFloats(int count) {
+        return allocate(count * 4, 4).asFloatBuffer();
+    }
+
+    public DoubleBuffer allocateDoubles(int count) {
+        return allocate(count * 8, 8).asDoubleBuffer();
+    }
+
+    /**
+     * Checks that every frame that was pushed during a frame of the engine was popped again. Frames that weren't are
+     * popped and reported as a warning, so one missing pop doesn't fill up the stack over time.
+     *
+     * @return the number of frames that weren't popped
+     */
+    public int endFrame() {
+        int leaked = depth;
+        if (leaked > 0) {
+            log.log(Level.WARN, "{} stack frames weren't popped, {} bytes are freed", leaked, top);
+            depth = 0;
+            top = 0;
+        }
+        return leaked;
+    }
+
+    public int getCapacity() {
+        return memory.capacity();
+    }
+
+    /**
+     * @return the number of bytes in use, including alignment
+     */
+    public int getUsed() {
+        return top;
+    }
+
+    /**
+     * @return the largest number of bytes that was ever in use at the same time
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+}
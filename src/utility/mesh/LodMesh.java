@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.mesh;
+
+import utility.log.Level;
+import utility.log.Log;
+import utility.log.Logger;
+import utility.vertex.VertexFormat;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A mesh with several levels of detail that share its vertices: level 0 is the mesh itself, and every next level is
+ * simplified from the previous one by {@link MeshSimplifier} to a fraction of its triangles. The indices of all levels
+ * are stored one after the other in a single index buffer, so a level is drawn by an offset into it:
+ * <pre>
+ * LodMesh lod = LodMesh.create(MeshLoader.load(Paths.get("res/bunny.ply")));
+ * gl.glBufferData(GL_ARRAY_BUFFER, lod.getVertices(), GL_STATIC_DRAW);
+ * lod.getFormat().enable(gl);
+ * gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, lod.getIndices(), GL_STATIC_DRAW);
+ * ...
+ * int level = selector.select(lod, distance, 1);
+ * gl.glDrawElements(GL_TRIANGLES, lod.getIndexCount(level), lod.getIndexType(), lod.getIndexOffset(level));
+ * </pre>
+ * Every level knows its error: about how far its surface is from the original one, in the units of the positions.
+ * {@link LodSelector} projects that to pixels to pick the coarsest level that doesn't look different.
+ */
+public class LodMesh {
+
+    /**
+     * The most levels, including the original mesh, that {@link #create(Mesh)} makes.
+     */
+    public static final int MAX_LEVELS = 8;
+    /**
+     * The fraction of the triangles of the previous level that {@link #create(Mesh)} aims for in every level.
+     */
+    public static final float REDUCTION = 0.5f;
+    /**
+     * The largest error of a level that {@link #create(Mesh)} allows, relative to the bounding radius of the mesh.
+     */
+    public static final float MAX_RELATIVE_ERROR = 0.05f;
+    /**
+     * A level that doesn't get below this fraction of the triangles of the previous one isn't worth its indices, and
+     * means the simplification ran into the error bound: there are no more levels after it.
+     */
+    public static final float MIN_REDUCTION = 0.9f;
+
+    private static final Logger log = Log.getLogger(LodMesh.class);
+
+    // The vertices, and the indices of all levels
+    private final Mesh mesh;
+    private final int[] firstIndices;
+    private final int[] indexCounts;
+    private final float[] errors;
+    private final float centreX;
+    private final float centreY;
+    private final float centreZ;
+    private final float radius;
+
+    private LodMesh(Mesh mesh, int[] firstIndices, int[] indexCounts, float[] errors, float[] boundingSphere) {
+        this.mesh = mesh;
+        this.firstIndices = firstIndices;
+        this.indexCounts = indexCounts;
+        this.errors = errors;
+        centreX = boundingSphere[0];
+        centreY = boundingSphere[1];
+        centreZ = boundingSphere[2];
+        radius = boundingSphere[3];
+    }
+
+    /**
+     * Creates up to {@link #MAX_LEVELS} levels that halve the triangles, with an error of at most
+     * {@link #MAX_RELATIVE_ERROR} of the bounding radius.
+     *
+     * @throws IllegalArgumentException if the mesh has no float position
+     */
+    public static LodMesh create(Mesh mesh) {
+        float[] positions = mesh.getPositions();
+        if (positions == null)
+            throw new IllegalArgumentException("The mesh has no float position: " + mesh);
+        return create(mesh, MAX_LEVELS, REDUCTION, getBoundingSphere(positions)[3] * MAX_RELATIVE_ERROR);
+    }
+
+    /**
+     * @param maxLevels the most levels, including the original mesh
+     * @param reduction the fraction of the triangles of the previous level to aim for in every level
+     * @param maxError  the largest error of the coarsest level, in the units of the positions
+     * @throws IllegalArgumentException if the mesh has no float position
+     */
+    public static LodMesh create(Mesh mesh, int maxLevels, float reduction, float maxError) {
+        float[] positions = mesh.getPositions();
+        if (positions == null)
+            throw new IllegalArgumentException("The mesh has no float position: " + mesh);
+        int vertexCount = mesh.getVertexCount();
+        MeshSimplifier simplifier = new MeshSimplifier(positions);
+        int[][] levels = new int[maxLevels][];
+        float[] errors = new float[maxLevels];
+        levels[0] = mesh.getIndexArray();
+        int levelCount = 1;
+        int indexCount = levels[0].length;
+        while (levelCount < maxLevels) {
+            int[] previous = levels[levelCount - 1];
+            float previousError = errors[levelCount - 1];
+            int target = (int) (previous.length / 3 * reduction);
+            // The errors of the levels add up, because every level is simplified from the previous one
+            int[] indices = simplifier.simplify(previous, target, maxError - previousError);
+            if (indices.length == 0 || indices.length > previous.length * MIN_REDUCTION)
+                break;
+            levels[levelCount] = MeshOptimizer.optimizeVertexCache(indices, vertexCount);
+            errors[levelCount] = previousError + simplifier.getError();
+            indexCount += indices.length;
+            levelCount++;
+        }
+
+        int[] indices = new int[indexCount];
+        int[] firstIndices = new int[levelCount];
+        int[] indexCounts = new int[levelCount];
+        int first = 0;
+        for (int level = 0; level < levelCount; level++) {
+            firstIndices[level] = first;
+            indexCounts[level] = levels[level].length;
+            System.arraycopy(levels[level], 0, indices, first, levels[level].length);
+            first += levels[level].length;
+        }
+        LodMesh lodMesh = new LodMesh(new Mesh(mesh.getFormat(), mesh.getVertices(), indices), firstIndices,
+                indexCounts, Arrays.copyOf(errors, levelCount), getBoundingSphere(positions));
+        log.log(Level.INFO, "Created {} levels of detail, the coarsest has {} of {} triangles", levelCount,
+                indexCounts[levelCount - 1] / 3, indexCounts[0] / 3);
+        return lodMesh;
+    }
+
+    /**
+     * @return the x, y and z of the centre of the bounding box of the positions, and the distance to the furthest one
+     */
+    private static float[] getBoundingSphere(float[] positions) {
+        float[] sphere = new float[4];
+        if (positions.length == 0)
+            return sphere;
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        float maxZ = -Float.MAX_VALUE;
+        for (int i = 0; i < positions.length; i += 3) {
+            minX = Math.min(minX, positions[i]);
+            minY = Math.min(minY, positions[i + 1]);
+            minZ = Math.min(minZ, positions[i + 2]);
+            maxX = Math.max(maxX, positions[i]);
+            maxY = Math.max(maxY, positions[i + 1]);
+            maxZ = Math.max(maxZ, positions[i + 2]);
+        }
+        sphere[0] = (minX + maxX) / 2;
+        sphere[1] = (minY + maxY) / 2;
+        sphere[2] = (minZ + maxZ) / 2;
+        float radiusSquared = 0;
+        for (int i = 0; i < positions.length; i += 3) {
+            float x = positions[i] - sphere[0];
+            float y = positions[i + 1] - sphere[1];
+            float z = positions[i + 2] - sphere[2];
+            radiusSquared = Math.max(radiusSquared, x * x + y * y + z * z);
+        }
+        sphere[3] = (float) Math.sqrt(radiusSquared);
+        return sphere;
+    }
+
+    public VertexFormat getFormat() {
+        return mesh.getFormat();
+    }
+
+    /**
+     * @return a view of the vertex data, which all levels use
+     */
+    public ByteBuffer getVertices() {
+        return mesh.getVertices();
+    }
+
+    public int getVertexCount() {
+        return mesh.getVertexCount();
+    }
+
+    /**
+     * @return a view of the indices of all levels, one level after the other
+     */
+    public ByteBuffer getIndices() {
+        return mesh.getIndices();
+    }
+
+    /**
+     * @return the type of the indices as passed to glDrawElements: GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+     */
+    public int getIndexType() {
+        return mesh.getIndexType();
+    }
+
+    public int getLevelCount() {
+        return indexCounts.length;
+    }
+
+    public int getIndexCount(int level) {
+        return indexCounts[level];
+    }
+
+    public int getTriangleCount(int level) {
+        return indexCounts[level] / 3;
+    }
+
+    /**
+     * @return the offset in bytes of the first index of a level in {@link #getIndices()}, as passed to glDrawElements
+     */
+    public long getIndexOffset(int level) {
+        return (long) firstIndices[level] * mesh.getIndexSize();
+    }
+
+    /**
+     * @return a copy of the indices of a level
+     */
+    public int[] getIndexArray(int level) {
+        int[] array = new int[indexCounts[level]];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = mesh.getIndex(firstIndices[level] + i);
+        }
+        return array;
+    }
+
+    /**
+     * @return about how far the surface of a level is from the original surface, in the units of the positions: the sum
+     * of the {@link MeshSimplifier#getError()} of the levels up to it; 0 for level 0
+     */
+    public float getError(int level) {
+        return errors[level];
+    }
+
+    /**
+     * @return the centre of the bounding sphere of the vertices
+     */
+    public float getCentreX() {
+        return centreX;
+    }
+
+    public float getCentreY() {
+        return centreY;
+    }
+
+    public float getCentreZ() {
+        return centreZ;
+    }
+
+    /**
+     * @return the radius of the bounding sphere of the vertices
+     */
+    public float getRadius() {
+        return radius;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("LodMesh(").append(getVertexCount()).append(" vertices, triangles");
+        for (int level = 0; level < getLevelCount(); level++) {
+            builder.append(level == 0 ? " " : "/").append(getTriangleCount(level));
+        }
+        return builder.append(", ").append(getFormat()).append(")").toString();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.mesh;
+
+import com.joml.matrix.Matrix4f;
+
+/**
+ * Picks the level of detail of a {@link LodMesh} to draw from how large its error is on the screen. With a perspective
+ * projection something of size s at distance d is s * m11 / d of half the height of the viewport, where m11 is
+ * cot(fieldOfView / 2) from the projection matrix. The selector draws the coarsest level whose error projects to at
+ * most the threshold in pixels, so an object far away costs a fraction of its triangles and doesn't look different.
+ * <pre>
+ * LodSelector selector = new LodSelector(LodSelector.DEFAULT_THRESHOLD);
+ * selector.setProjection(camera.getProjectionMatrix(), 480);
+ * int level = selector.select(lod, scale, x, y, z, cameraX, cameraY, cameraZ);
+ * </pre>
+ * Call {@link #setProjection} again when the field of view or the size of the window changes.
+ */
+public class LodSelector {
+
+    /**
+     * The error in pixels that doesn't show: a vertex moving by less than a pixel.
+     */
+    public static final float DEFAULT_THRESHOLD = 1;
+
+    private final float threshold;
+    // The height in pixels of something of size 1 at a distance of 1
+    private float pixelsPerUnit;
+
+    /**
+     * @param threshold the largest error in pixels that is drawn; larger thresholds pick coarser levels sooner
+     */
+    public LodSelector(float threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param projectionMatrix a perspective projection
+     * @param viewportHeight   the height of the viewport in pixels
+     */
+    public void setProjection(Matrix4f projectionMatrix, int viewportHeight) {
+        pixelsPerUnit = Math.abs(projectionMatrix.m11) * viewportHeight / 2;
+    }
+
+    /**
+     * @return the size in pixels on the screen of something of the given size at the given distance from the camera,
+     * infinite if it's at or behind the camera
+     */
+    public float getProjectedSize(float size, float distance) {
+        if (distance <= 0)
+            return Float.POSITIVE_INFINITY;
+        return size * pixelsPerUnit / distance;
+    }
+
+    /**
+     * @param distance the distance from the camera to the nearest point of the object
+     * @param scale    the scale the mesh is drawn at
+     * @return the coarsest level of which the error is at most the threshold on the screen
+     */
+    public int select(LodMesh mesh, float distance, float scale) {
+        for (int level = mesh.getLevelCount() - 1; level > 0; level--) {
+            if (getProjectedSize(mesh.getError(level) * scale, distance) <= threshold)
+                return level;
+        }
+        return 0;
+    }
+
+    /**
+     * Same as {@link #select(LodMesh, float, float)}, with the distance from the camera to the bounding sphere of the
+     * mesh drawn at the given position and scale.
+     */
+    public int select(LodMesh mesh, float scale, float x, float y, float z, float cameraX, float cameraY, float cameraZ) {
+        float dx = x + mesh.getCentreX() * scale - cameraX;
+        float dy = y + mesh.getCentreY() * scale - cameraY;
+        float dz = z + mesh.getCentreZ() * scale - cameraZ;
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) - mesh.getRadius() * scale;
+        return select(mesh, distance, scale);
+    }
+}
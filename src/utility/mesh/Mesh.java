@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.mesh;
+
+import org.lwjgl.BufferUtils;
+import utility.vertex.ComponentType;
+import utility.vertex.VertexAttribute;
+import utility.vertex.VertexFormat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+
+/**
+ * Indexed triangles, ready to be uploaded: interleaved vertex data in a {@link VertexFormat} and an index buffer of
+ * three indices per triangle. Meshes with up to 65536 vertices get 16-bit indices, larger ones 32-bit indices:
+ * <pre>
+ * gl.glBufferData(GL_ARRAY_BUFFER, mesh.getVertices(), GL_STATIC_DRAW);
+ * mesh.getFormat().enable(gl);
+ * gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, mesh.getIndices(), GL_STATIC_DRAW);
+ * gl.glDrawElements(GL_TRIANGLES, mesh.getIndexCount(), mesh.getIndexType(), 0);
+ * </pre>
+ * The attributes are a position at {@link #POSITION_LOCATION}, and a normal at {@link #NORMAL_LOCATION} and a texture
+ * coordinate at {@link #TEXTURE_COORDINATE_LOCATION} if the model has them. The position is at the location of
+ * vertex_position in res/vertex_attributes.glsl, the other two come after the instance attributes of res/shader.vs, so
+ * loaded models, the cubes of the core tutorials and voxel chunks all work with the same shaders.
+ */
+public class Mesh {
+
+    public static final int POSITION_LOCATION = 1;
+    public static final int NORMAL_LOCATION = 7;
+    public static final int TEXTURE_COORDINATE_LOCATION = 8;
+    /**
+     * The largest number of vertices that can be drawn with 16-bit indices.
+     */
+    public static final int MAX_SHORT_INDEXED_VERTICES = 1 << 16;
+
+    private final VertexFormat format;
+    private final ByteBuffer vertices;
+    private final int vertexCount;
+    private final ByteBuffer indices;
+    private final int indexCount;
+
+    /**
+     * @param vertices the vertex data in native byte order from the position to the limit of the buffer
+     * @param indices  the indices in native byte order from the position to the limit of the buffer, shorts if there
+     *                 are at most {@link #MAX_SHORT_INDEXED_VERTICES} vertices and ints otherwise
+     */
+    public Mesh(VertexFormat format, ByteBuffer vertices, ByteBuffer indices) {
+        if (vertices.remaining() % format.getStride() != 0)
+            throw new IllegalArgumentException("The vertex data isn't a whole number of vertices of " + format);
+        this.format = format;
+        this.vertices = vertices.slice().order(ByteOrder.nativeOrder());
+        this.vertexCount = vertices.remaining() / format.getStride();
+        this.indices = indices.slice().order(indices.order());
+        int indexSize = getIndexSize();
+        if (indices.remaining() % (indexSize * 3) != 0)
+            throw new IllegalArgumentException("The index data isn't a whole number of triangles");
+        this.indexCount = indices.remaining() / indexSize;
+    }
+
+    /**
+     * Same as {@link #Mesh(VertexFormat, ByteBuffer, ByteBuffer)}, with the indices packed into 16 or 32 bits.
+     */
+    public Mesh(VertexFormat format, ByteBuffer vertices, int[] indices) {
+        this(format, vertices, pack(indices, vertices.remaining() / format.getStride()));
+    }
+
+    private static ByteBuffer pack(int[] indices, int vertexCount) {
+        boolean shortIndices = vertexCount <= MAX_SHORT_INDEXED_VERTICES;
+        ByteBuffer data = BufferUtils.createByteBuffer(indices.length * (shortIndices ? 2 : 4));
+        for (int index : indices) {
+            if (index < 0 || index >= vertexCount)
+                throw new IllegalArgumentException("Index " + index + " out of range, there are " + vertexCount + " vertices");
+            if (shortIndices)
+                data.putShort((short) index);
+            else
+                data.putInt(index);
+        }
+        data.flip();
+        return data;
+    }
+
+    public VertexFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return a view of the vertex data
+     */
+    public ByteBuffer getVertices() {
+        return vertices.duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return a view of the index data
+     */
+    public ByteBuffer getIndices() {
+        return indices.duplicate().order(indices.order());
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    public int getTriangleCount() {
+        return indexCount / 3;
+    }
+
+    /**
+     * @return the type of the indices as passed to glDrawElements: GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+     */
+    public int getIndexType() {
+        return vertexCount <= MAX_SHORT_INDEXED_VERTICES ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT;
+    }
+
+    /**
+     * @return the size of an index in bytes
+     */
+    public int getIndexSize() {
+        return vertexCount <= MAX_SHORT_INDEXED_VERTICES ? 2 : 4;
+    }
+
+    public int getIndex(int index) {
+        if (getIndexSize() == 2)
+            return indices.getShort(index * 2) & 0xFFFF;
+        return indices.getInt(index * 4);
+    }
+
+    /**
+     * @return a copy of all indices
+     */
+    public int[] getIndexArray() {
+        int[] array = new int[indexCount];
+        for (int i = 0; i < indexCount; i++) {
+            array[i] = getIndex(i);
+        }
+        return array;
+    }
+
+    /**
+     * @return the x, y and z of every vertex, or null if the mesh has no float position
+     */
+    public float[] getPositions() {
+        for (int attribute = 0; attribute < format.size(); attribute++) {
+            VertexAttribute vertexAttribute = format.getAttribute(attribute);
+            if (vertexAttribute.getLocation() != POSITION_LOCATION || vertexAttribute.getType() != ComponentType.FLOAT
+                    || vertexAttribute.getComponents() < 3)
+                continue;
+            float[] positions = new float[vertexCount * 3];
+            for (int vertex = 0; vertex < vertexCount; vertex++) {
+                int offset = vertex * format.getStride() + format.getOffset(attribute);
+                positions[vertex * 3] = vertices.getFloat(offset);
+                positions[vertex * 3 + 1] = vertices.getFloat(offset + 4);
+                positions[vertex * 3 + 2] = vertices.getFloat(offset + 8);
+            }
+            return positions;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "Mesh(" + vertexCount + " vertices, " + getTriangleCount() + " triangles, " + format + ")";
+    }
+}
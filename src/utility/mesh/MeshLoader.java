@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.mesh;
+
+import org.lwjgl.BufferUtils;
+import utility.vertex.ComponentType;
+import utility.vertex.VertexAttribute;
+import utility.vertex.VertexFormat;
+import utility.vertex.VertexWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Loads models from OBJ and PLY files into a {@link Mesh}. The file is mapped into memory and parsed straight from the
+ * mapped bytes, large files in parallel chunks, so loading a model of millions of triangles doesn't read it into the
+ * heap first or create an object per number. Vertices that are used more than once are stored once, and the indices
+ * are 16-bit or 32-bit depending on the number of vertices.
+ * <pre>
+ * Mesh mesh = MeshLoader.load(Paths.get("res/bunny.ply"));
+ * </pre>
+ * Malformed files are reported with an IOException that tells the byte offset of the problem.
+ */
+public class MeshLoader {
+
+    // The number of vertices that are written by a single task
+    private static final int WRITE_CHUNK_SIZE = 1 << 16;
+
+    interface ChunkTask {
+        void run(int chunk) throws IOException;
+    }
+
+    /**
+     * Loads an OBJ or PLY file, depending on its extension.
+     */
+    public static Mesh load(Path location) throws IOException {
+        String name = location.getFileName().toString().toLowerCase();
+        if (name.endsWith(".obj"))
+            return loadObj(location);
+        if (name.endsWith(".ply"))
+            return loadPly(location);
+        throw new IOException("Unknown model format: " + location);
+    }
+
+    public static Mesh loadObj(Path location) throws IOException {
+        return readObj(map(location));
+    }
+
+    public static Mesh loadPly(Path location) throws IOException {
+        return readPly(map(location));
+    }
+
+    /**
+     * Reads an OBJ file from the position to the limit of a buffer.
+     */
+    public static Mesh readObj(ByteBuffer data) throws IOException {
+        return new ObjParser(data).parse();
+    }
+
+    /**
+     * Reads a PLY file from the position to the limit of a buffer.
+     */
+    public static Mesh readPly(ByteBuffer data) throws IOException {
+        return new PlyParser(data).parse();
+    }
+
+    private static MappedByteBuffer map(Path location) throws IOException {
+        try (FileChannel channel = FileChannel.open(location, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Models of more than 2 GB aren't supported: " + location);
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Runs a task for every chunk, in parallel if there is more than one.
+     */
+    static void forEachChunk(int chunks, final ChunkTask task) throws IOException {
+        if (chunks == 1) {
+            task.run(0);
+            return;
+        }
+        try {
+            IntStream.range(0, chunks).parallel().forEach(new IntConsumer() {
+                @Override
+                public void accept(int chunk) {
+                    try {
+                        task.run(chunk);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes the deduplicated vertices and the indices of a mesh.
+     *
+     * @param textureCoordinates null if the model has none
+     * @param normals            null if the model has none
+     * @param vertices           the position, texture coordinate and normal index of every vertex; -1 if a vertex has
+     *                           no texture coordinate or normal although the model has them
+     * @param indices            the vertex numbers of the triangles
+     */
+    static Mesh build(final float[] positions, final float[] textureCoordinates, final float[] normals,
+                      final int[] vertices, int vertexCount, final int[] indices) {
+        List<VertexAttribute> attributes = new ArrayList<>();
+        attributes.add(new VertexAttribute("position", Mesh.POSITION_LOCATION, 3, ComponentType.FLOAT));
+        if (normals != null)
+            attributes.add(new VertexAttribute("normal", Mesh.NORMAL_LOCATION, 3, ComponentType.BYTE));
+        if (textureCoordinates != null)
+            attributes.add(new VertexAttribute("textureCoordinate", Mesh.TEXTURE_COORDINATE_LOCATION, 2, ComponentType.FLOAT));
+        final VertexFormat format = new VertexFormat(attributes.toArray(new VertexAttribute[attributes.size()]));
+        final int normalAttribute = 1;
+        final int textureCoordinateAttribute = normals != null ? 2 : 1;
+
+        final ByteBuffer vertexData = BufferUtils.createByteBuffer(vertexCount * format.getStride());
+        final int indexSize = vertexCount <= Mesh.MAX_SHORT_INDEXED_VERTICES ? 2 : 4;
+        final ByteBuffer indexData = BufferUtils.createByteBuffer(indices.length * indexSize);
+        final int count = vertexCount;
+        try {
+            forEachChunk(Math.max(1, (Math.max(count, indices.length / 3) + WRITE_CHUNK_SIZE - 1) / WRITE_CHUNK_SIZE), new ChunkTask() {
+                @Override
+                public void run(int chunk) {
+                    // Every chunk writes a range of the vertices and a range of the indices
+                    int first = chunk * WRITE_CHUNK_SIZE;
+                    int last = Math.min(count, first + WRITE_CHUNK_SIZE);
+                    ByteBuffer destination = vertexData.duplicate();
+                    if (first < last) {
+                        destination.position(first * format.getStride());
+                        VertexWriter writer = new VertexWriter(format, destination);
+                        for (int vertex = first; vertex < last; vertex++) {
+                            int position = vertices[vertex * 3] * 3;
+                            writer.put(0, positions[position], positions[position + 1], positions[position + 2]);
+                            if (normals != null)
+                                putNormal(writer, normalAttribute, normals, vertices[vertex * 3 + 2]);
+                            if (textureCoordinates != null) {
+                                int textureCoordinate = vertices[vertex * 3 + 1];
+                                if (textureCoordinate < 0)
+                                    writer.put(textureCoordinateAttribute, 0, 0);
+                                else
+                                    writer.put(textureCoordinateAttribute, textureCoordinates[textureCoordinate * 2], textureCoordinates[textureCoordinate * 2 + 1]);
+                            }
+                            writer.endVertex();
+                        }
+                    }
+                    int lastIndex = Math.min(indices.length, (chunk + 1) * WRITE_CHUNK_SIZE * 3);
+                    for (int i = chunk * WRITE_CHUNK_SIZE * 3; i < lastIndex; i++) {
+                        if (indexSize == 2)
+                            indexData.putShort(i * 2, (short) indices[i]);
+                        else
+                            indexData.putInt(i * 4, indices[i]);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            // The chunks don't throw
+            throw new IllegalStateException(e);
+        }
+        return new Mesh(format, vertexData, indexData);
+    }
+
+    /**
+     * Writes a normal scaled to unit length, because it's stored as normalized bytes.
+     */
+    private static void putNormal(VertexWriter writer, int attribute, float[] normals, int normal) {
+        if (normal < 0) {
+            writer.put(attribute, 0, 0, 0);
+            return;
+        }
+        float x = normals[normal * 3];
+        float y = normals[normal * 3 + 1];
+        float z = normals[normal * 3 + 2];
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length > 0)
+            writer.put(attribute, x / length, y / length, z / length);
+        else
+            writer.put(attribute, 0, 0, 0);
+    }
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.mesh;
+
+import org.lwjgl.BufferUtils;
+import utility.log.Level;
+import utility.log.Log;
+import utility.log.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reorders the triangles and vertices of a mesh so the GPU does less work drawing it, without changing what is drawn:
+ * <ol>
+ * <li>{@link #optimizeVertexCache(int[], int)} orders the triangles so that the vertices they share are still in the
+ * post-transform cache of the GPU, which then doesn't run the vertex shader for them again. This is the algorithm from
+ * Tom Forsyth's "Linear-Speed Vertex Cache Optimisation": every step draws the triangle with the best score, where
+ * vertices score high when they were used recently and when few of their triangles are left.</li>
+ * <li>{@link #optimizeOverdraw(int[], float[], int)} splits that order into clusters where the cache is cold anyway, or
+ * nearly so, and draws the clusters that face outwards first, so they hide more of the rest from any direction.</li>
+ * <li>{@link #optimizeVertexFetch(int[], int)} numbers the vertices in the order the triangles use them, so the
+ * vertex data is read from memory front to back.</li>
+ * </ol>
+ * {@link #getAverageCacheMissRatio(int[], int, int)} (ACMR) measures the result: the number of vertex shader runs per
+ * triangle with a FIFO cache. A random order is close to 3, a perfectly ordered regular grid reaches 0.5.
+ * {@link #optimize(Mesh)} does all of it and returns a mesh that is uploaded the same way as before.
+ */
+public class MeshOptimizer {
+
+    /**
+     * The size of the LRU cache the scores of the vertex cache optimization assume; it also works well for smaller and
+     * FIFO caches.
+     */
+    public static final int CACHE_SIZE = 32;
+    /**
+     * The size of the FIFO cache that is used to measure the cache misses, a common size for the post-transform cache.
+     */
+    public static final int FIFO_CACHE_SIZE = 16;
+    /**
+     * How much the ACMR may grow by splitting the triangles into smaller clusters for {@link #optimizeOverdraw}.
+     */
+    public static final float OVERDRAW_THRESHOLD = 1.05f;
+
+    private static final Logger log = Log.getLogger(MeshOptimizer.class);
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+    private static final int MAX_VALENCE = 32;
+    private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+    private static final float[] VALENCE_SCORES = new float[MAX_VALENCE];
+
+    static {
+        for (int position = 0; position < CACHE_SIZE; position++) {
+            // The last triangle's vertices get a fixed score, so the next triangle doesn't simply reuse the same edge
+            CACHE_SCORES[position] = position < 3 ? LAST_TRIANGLE_SCORE
+                    : (float) Math.pow(1 - (position - 3) / (float) (CACHE_SIZE - 3), CACHE_DECAY_POWER);
+        }
+        for (int valence = 1; valence < MAX_VALENCE; valence++) {
+            VALENCE_SCORES[valence] = getValenceScore(valence);
+        }
+    }
+
+    /**
+     * Optimizes a mesh for the vertex cache and overdraw and orders its vertices by first use, and logs the ACMR before
+     * and after. Overdraw is only optimized if the position is a float attribute at {@link Mesh#POSITION_LOCATION}.
+     *
+     * @return a new mesh with the same triangles and vertices
+     */
+    public static Mesh optimize(Mesh mesh) {
+        int vertexCount = mesh.getVertexCount();
+        int[] indices = mesh.getIndexArray();
+        double before = getAverageCacheMissRatio(indices, vertexCount, FIFO_CACHE_SIZE);
+        indices = optimizeVertexCache(indices, vertexCount);
+        float[] positions = mesh.getPositions();
+        if (positions != null)
+            optimizeOverdraw(indices, positions, FIFO_CACHE_SIZE);
+        double after = getAverageCacheMissRatio(indices, vertexCount, FIFO_CACHE_SIZE);
+        log.log(Level.INFO, "Vertex cache misses per triangle went from {} to {}", Math.round(before * 1000) / 1000.0,
+                Math.round(after * 1000) / 1000.0);
+
+        int[] order = optimizeVertexFetch(indices, vertexCount);
+        int stride = mesh.getFormat().getStride();
+        ByteBuffer source = mesh.getVertices();
+        ByteBuffer vertices = BufferUtils.createByteBuffer(order.length * stride);
+        for (int vertex : order) {
+            source.limit(vertex * stride + stride).position(vertex * stride);
+            vertices.put(source);
+        }
+        vertices.flip();
+        return new Mesh(mesh.getFormat(), vertices, indices);
+    }
+
+    /**
+     * Orders the triangles for the post-transform vertex cache. The corners of every triangle keep their order, so the
+     * triangles keep facing the same way.
+     *
+     * @param indices three vertex numbers per triangle, from 0 to vertexCount - 1
+     * @return the triangles in the new order
+     */
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+        int triangleCount = indices.length / 3;
+        // The triangles of every vertex: those of vertex v are at triangles[firstTriangle[v]], the ones that aren't
+        // drawn yet come first and there are remaining[v] of them
+        int[] remaining = new int[vertexCount];
+        for (int index : indices) {
+            remaining[index]++;
+        }
+        int[] firstTriangle = new int[vertexCount + 1];
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            firstTriangle[vertex + 1] = firstTriangle[vertex] + remaining[vertex];
+        }
+        int[] triangles = new int[indices.length];
+        int[] filled = Arrays.copyOf(firstTriangle, vertexCount);
+        for (int i = 0; i < indices.length; i++) {
+            triangles[filled[indices[i]]++] = i / 3;
+        }
+
+        float[] vertexScores = new float[vertexCount];
+        int[] cachePositions = new int[vertexCount];
+        Arrays.fill(cachePositions, -1);
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            vertexScores[vertex] = getScore(-1, remaining[vertex]);
+        }
+        boolean[] drawn = new boolean[triangleCount];
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] newCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+
+        int best = -1;
+        float bestScore = -Float.MAX_VALUE;
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            float score = getTriangleScore(indices, triangle, vertexScores);
+            if (score > bestScore) {
+                best = triangle;
+                bestScore = score;
+            }
+        }
+        int[] result = new int[triangleCount * 3];
+        // The first triangle that may not be drawn yet, for when no triangle in the cache is left
+        int next = 0;
+        for (int output = 0; output < triangleCount; output++) {
+            if (best < 0) {
+                while (drawn[next]) {
+                    next++;
+                }
+                best = next;
+            }
+            System.arraycopy(indices, best * 3, result, output * 3, 3);
+            drawn[best] = true;
+
+            // Remove the triangle from its vertices and put them at the front of the cache
+            int newCount = 0;
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = indices[best * 3 + corner];
+                int first = firstTriangle[vertex];
+                int last = first + --remaining[vertex];
+                for (int i = first; i <= last; i++) {
+                    if (triangles[i] == best) {
+                        triangles[i] = triangles[last];
+                        triangles[last] = best;
+                        break;
+                    }
+                }
+                if (indexOf(newCache, newCount, vertex) < 0)
+                    newCache[newCount++] = vertex;
+            }
+            int triangleVertices = newCount;
+            for (int i = 0; i < cacheCount; i++) {
+                if (indexOf(newCache, triangleVertices, cache[i]) < 0)
+                    newCache[newCount++] = cache[i];
+            }
+            // Score the vertices that are in the cache now, and those that just fell out of it
+            for (int i = 0; i < newCount; i++) {
+                int vertex = newCache[i];
+                cachePositions[vertex] = i < CACHE_SIZE ? i : -1;
+                vertexScores[vertex] = getScore(cachePositions[vertex], remaining[vertex]);
+            }
+            // The next triangle is the best one that uses a vertex in the cache
+            best = -1;
+            bestScore = -Float.MAX_VALUE;
+            for (int i = 0; i < Math.min(newCount, CACHE_SIZE); i++) {
+                int vertex = newCache[i];
+                for (int t = firstTriangle[vertex]; t < firstTriangle[vertex] + remaining[vertex]; t++) {
+                    int triangle = triangles[t];
+                    float score = getTriangleScore(indices, triangle, vertexScores);
+                    if (score > bestScore) {
+                        best = triangle;
+                        bestScore = score;
+                    }
+                }
+            }
+            int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+            cacheCount = Math.min(newCount, CACHE_SIZE);
+        }
+        return result;
+    }
+
+    /**
+     * Splits triangles that are ordered for the vertex cache into clusters and reorders the clusters, so the triangles
+     * that face away from the center of the mesh are drawn first. A cluster ends where all three vertices of a
+     * triangle miss the cache anyway, and within that where splitting keeps the cache misses of the cluster within
+     * {@link #OVERDRAW_THRESHOLD} of what they were.
+     *
+     * @param indices   the triangles, which are reordered in place
+     * @param positions the x, y and z of every vertex
+     * @param cacheSize the size of the FIFO cache to simulate
+     */
+    public static void optimizeOverdraw(int[] indices, float[] positions, int cacheSize) {
+        int triangleCount = indices.length / 3;
+        if (triangleCount == 0)
+            return;
+        int vertexCount = positions.length / 3;
+        int[] clusters = new int[triangleCount + 1];
+        int clusterCount = 0;
+
+        // Hard boundaries: triangles of which every vertex misses the cache
+        int[] insertTimes = new int[vertexCount];
+        Arrays.fill(insertTimes, -cacheSize);
+        int time = 0;
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            int misses = 0;
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = indices[triangle * 3 + corner];
+                if (time - insertTimes[vertex] >= cacheSize) {
+                    insertTimes[vertex] = time++;
+                    misses++;
+                }
+            }
+            if (misses == 3 || triangle == 0)
+                clusters[clusterCount++] = triangle;
+        }
+        clusters[clusterCount] = triangleCount;
+
+        // Soft boundaries: split a cluster as soon as its part so far has nearly as few misses as the whole
+        int[] softClusters = new int[triangleCount + 1];
+        int softCount = 0;
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            int start = clusters[cluster];
+            int end = clusters[cluster + 1];
+            // An empty cache: everything that's in it now expires
+            time += cacheSize;
+            int clusterMisses = 0;
+            for (int i = start * 3; i < end * 3; i++) {
+                if (time - insertTimes[indices[i]] >= cacheSize) {
+                    insertTimes[indices[i]] = time++;
+                    clusterMisses++;
+                }
+            }
+            float threshold = OVERDRAW_THRESHOLD * clusterMisses / (end - start);
+            time += cacheSize;
+            int misses = 0;
+            softClusters[softCount++] = start;
+            int softStart = start;
+            for (int triangle = start; triangle < end; triangle++) {
+                for (int corner = 0; corner < 3; corner++) {
+                    int vertex = indices[triangle * 3 + corner];
+                    if (time - insertTimes[vertex] >= cacheSize) {
+                        insertTimes[vertex] = time++;
+                        misses++;
+                    }
+                }
+                if (triangle + 1 < end && misses <= threshold * (triangle + 1 - softStart)) {
+                    softClusters[softCount++] = triangle + 1;
+                    softStart = triangle + 1;
+                    misses = 0;
+                    time += cacheSize;
+                }
+            }
+        }
+        softClusters[softCount] = triangleCount;
+
+        // The area weighted center of the mesh, then how much every cluster faces away from it
+        double centerX = 0;
+        double centerY = 0;
+        double centerZ = 0;
+        double totalArea = 0;
+        float[] normal = new float[4];
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            float area = getNormal(indices, triangle, positions, normal);
+            totalArea += area;
+            centerX += area * getCenter(indices, triangle, positions, 0);
+            centerY += area * getCenter(indices, triangle, positions, 1);
+            centerZ += area * getCenter(indices, triangle, positions, 2);
+        }
+        if (totalArea > 0) {
+            centerX /= totalArea;
+            centerY /= totalArea;
+            centerZ /= totalArea;
+        }
+        // The sort key in the high bits, descending, and the cluster in the low bits, so equal keys keep their order
+        long[] keys = new long[softCount];
+        for (int cluster = 0; cluster < softCount; cluster++) {
+            double x = 0;
+            double y = 0;
+            double z = 0;
+            double normalX = 0;
+            double normalY = 0;
+            double normalZ = 0;
+            double area = 0;
+            for (int triangle = softClusters[cluster]; triangle < softClusters[cluster + 1]; triangle++) {
+                float triangleArea = getNormal(indices, triangle, positions, normal);
+                area += triangleArea;
+                x += triangleArea * getCenter(indices, triangle, positions, 0);
+                y += triangleArea * getCenter(indices, triangle, positions, 1);
+                z += triangleArea * getCenter(indices, triangle, positions, 2);
+                normalX += triangleArea * normal[0];
+                normalY += triangleArea * normal[1];
+                normalZ += triangleArea * normal[2];
+            }
+            float key = 0;
+            double normalLength = Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+            if (area > 0 && normalLength > 0) {
+                key = (float) (((x / area - centerX) * normalX + (y / area - centerY) * normalY
+                        + (z / area - centerZ) * normalZ) / normalLength);
+            }
+            int bits = Float.floatToIntBits(-key);
+            // Make the bits of negative floats sort below those of positive ones
+            bits ^= (bits >> 31) & 0x7FFFFFFF;
+            keys[cluster] = (long) bits << 32 | cluster;
+        }
+        Arrays.sort(keys);
+
+        int[] sorted = new int[indices.length];
+        int output = 0;
+        for (long key : keys) {
+            int cluster = (int) key;
+            int length = (softClusters[cluster + 1] - softClusters[cluster]) * 3;
+            System.arraycopy(indices, softClusters[cluster] * 3, sorted, output, length);
+            output += length;
+        }
+        System.arraycopy(sorted, 0, indices, 0, indices.length);
+    }
+
+    /**
+     * Numbers the vertices in the order the triangles first use them. Vertices that no triangle uses are left out.
+     *
+     * @param indices the triangles, which are changed to use the new numbers
+     * @return the old number of every vertex in the new order
+     */
+    public static int[] optimizeVertexFetch(int[] indices, int vertexCount) {
+        int[] numbers = new int[vertexCount];
+        Arrays.fill(numbers, -1);
+        int[] order = new int[vertexCount];
+        int count = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int vertex = indices[i];
+            if (numbers[vertex] < 0) {
+                numbers[vertex] = count;
+                order[count++] = vertex;
+            }
+            indices[i] = numbers[vertex];
+        }
+        return Arrays.copyOf(order, count);
+    }
+
+    /**
+     * Simulates a FIFO post-transform cache.
+     *
+     * @return the number of vertices that miss the cache per triangle: from 3 (no reuse at all) down to about 0.5 for
+     * large regular meshes
+     */
+    public static double getAverageCacheMissRatio(int[] indices, int vertexCount, int cacheSize) {
+        if (indices.length < 3)
+            return 0;
+        return (double) getCacheMisses(indices, vertexCount, cacheSize) / (indices.length / 3);
+    }
+
+    /**
+     * @return the number of vertices that miss a FIFO cache per vertex of the mesh, 1 if every vertex is transformed
+     * once
+     */
+    public static double getAverageTransformRatio(int[] indices, int vertexCount, int cacheSize) {
+        if (vertexCount == 0)
+            return 0;
+        return (double) getCacheMisses(indices, vertexCount, cacheSize) / vertexCount;
+    }
+
+    private static int getCacheMisses(int[] indices, int vertexCount, int cacheSize) {
+        // A vertex is in the cache if fewer than cacheSize vertices were inserted after it
+        int[] insertTimes = new int[vertexCount];
+        Arrays.fill(insertTimes, -cacheSize);
+        int time = 0;
+        for (int vertex : indices) {
+            if (time - insertTimes[vertex] >= cacheSize)
+                insertTimes[vertex] = time++;
+        }
+        return time;
+    }
+
+    private static float getScore(int cachePosition, int remaining) {
+        if (remaining == 0)
+            return -1;
+        float score = cachePosition >= 0 ? CACHE_SCORES[cachePosition] : 0;
+        // Vertices with few triangles left get a boost, so they are finished instead of left behind
+        return score + (remaining < MAX_VALENCE ? VALENCE_SCORES[remaining] : getValenceScore(remaining));
+    }
+
+    private static float getValenceScore(int remaining) {
+        return VALENCE_BOOST_SCALE * (float) Math.pow(remaining, -VALENCE_BOOST_POWER);
+    }
+
+    private static float getTriangleScore(int[] indices, int triangle, float[] vertexScores) {
+        return vertexScores[indices[triangle * 3]] + vertexScores[indices[triangle * 3 + 1]]
+                + vertexScores[indices[triangle * 3 + 2]];
+    }
+
+    private static int indexOf(int[] array, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Calculates the unit normal of a triangle.
+     *
+     * @return the area of the triangle
+     */
+    private static float getNormal(int[] indices, int triangle, float[] positions, float[] normal) {
+        int a = indices[triangle * 3] * 3;
+        int b = indices[triangle * 3 + 1] * 3;
+        int c = indices[triangle * 3 + 2] * 3;
+        float abX = positions[b] - positions[a];
+        float abY = positions[b + 1] - positions[a + 1];
+        float abZ = positions[b + 2] - positions[a + 2];
+        float acX = positions[c] - positions[a];
+        float acY = positions[c + 1] - positions[a + 1];
+        float acZ = positions[c + 2] - positions[a + 2];
+        float x = abY * acZ - abZ * acY;
+        float y = abZ * acX - abX * acZ;
+        float z = abX * acY - abY * acX;
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length == 0) {
+            normal[0] = normal[1] = normal[2] = 0;
+            return 0;
+        }
+        normal[0] = x / length;
+        normal[1] = y / length;
+        normal[2] = z / length;
+        return length / 2;
+    }
+
+    private static float getCenter(int[] indices, int triangle, float[] positions, int axis) {
+        return (positions[indices[triangle * 3] * 3 + axis] + positions[indices[triangle * 3 + 1] * 3 + axis]
+                + positions[indices[triangle * 3 + 2] * 3 + axis]) / 3;
+    }
+}
@@ -0,0 +1,500 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.mesh;
+
+import java.util.Arrays;
+
+/**
+ * Simplifies the triangles of a mesh by collapsing edges, cheapest first, as measured by the quadric error metric of
+ * Garland and Heckbert's "Surface Simplification Using Quadric Error Metrics". Every vertex starts with a quadric: the
+ * sum of the squared distances to the planes of its triangles, weighted by their area. Collapsing an edge moves one of
+ * its vertices onto the other one, and the sum of both their quadrics at that position tells how far it is from the
+ * original surface around them. The merged quadric stays with the vertex, so later collapses are measured against the
+ * original surface as well.
+ * <p>
+ * A vertex is only ever moved onto another existing vertex, so the simplified triangles use the vertices of the original
+ * mesh and every level of detail of a {@link LodMesh} shares one vertex buffer. Vertices on the open border of a mesh
+ * only move along the border, and vertices on a seam, where one position has several texture coordinates or normals,
+ * don't move at all, so the outline and the texture mapping stay intact.
+ * <pre>
+ * MeshSimplifier simplifier = new MeshSimplifier(mesh);
+ * int[] half = simplifier.simplify(mesh.getIndexArray(), mesh.getTriangleCount() / 2, 0.01f);
+ * float error = simplifier.getError();
+ * </pre>
+ * A simplifier is not thread-safe, but separate simplifiers for the same positions can run in parallel.
+ */
+public class MeshSimplifier {
+
+    /**
+     * The smallest cosine of the angle a triangle may turn by in a collapse, so triangles don't flip over or fold.
+     */
+    public static final float MIN_NORMAL_COSINE = 0.25f;
+
+    // Moving a border vertex off the border costs this much more than moving it the same distance off the surface
+    private static final float BORDER_WEIGHT = 10;
+    private static final byte MANIFOLD = 0;
+    private static final byte BORDER = 1;
+    private static final byte LOCKED = 2;
+    // The upper triangle of the symmetric 4x4 matrix of the plane equations, then the total weight
+    private static final int QUADRIC_SIZE = 11;
+
+    private final float[] positions;
+    private final int vertexCount;
+    // The first vertex with the same position as every vertex; the quadrics and kinds are stored for that vertex
+    private final int[] positionVertices;
+    private final float[] normal = new float[3];
+    private float error;
+
+    private int[] indices;
+    private byte[] kinds;
+    private int[] borderNext;
+    private int[] borderPrevious;
+    private double[] quadrics;
+
+    /**
+     * @param positions the x, y and z of every vertex
+     */
+    public MeshSimplifier(float[] positions) {
+        this.positions = positions;
+        vertexCount = positions.length / 3;
+        positionVertices = new int[vertexCount];
+        VertexMap map = new VertexMap(3, vertexCount);
+        int[] key = new int[3];
+        int[] firstVertices = new int[vertexCount];
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            // Adding 0 turns -0 into 0, which is the same position
+            key[0] = Float.floatToIntBits(positions[vertex * 3] + 0.0f);
+            key[1] = Float.floatToIntBits(positions[vertex * 3 + 1] + 0.0f);
+            key[2] = Float.floatToIntBits(positions[vertex * 3 + 2] + 0.0f);
+            int number = map.add(key, 0);
+            if (number == map.size() - 1)
+                firstVertices[number] = vertex;
+            positionVertices[vertex] = firstVertices[number];
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the mesh has no float position
+     */
+    public MeshSimplifier(Mesh mesh) {
+        this(getPositions(mesh));
+    }
+
+    private static float[] getPositions(Mesh mesh) {
+        float[] positions = mesh.getPositions();
+        if (positions == null)
+            throw new IllegalArgumentException("The mesh has no float position: " + mesh);
+        return positions;
+    }
+
+    /**
+     * Collapses edges until there are at most targetTriangleCount triangles, or until every collapse that's left would
+     * have an error of more than maxError or fold a triangle over.
+     *
+     * @param indices             three vertex numbers per triangle, which aren't changed
+     * @param targetTriangleCount the number of triangles to reduce the mesh to
+     * @param maxError            the largest error of a collapse, see {@link #getError()}
+     * @return the triangles that are left, using the same vertex numbers
+     */
+    public int[] simplify(int[] indices, int targetTriangleCount, float maxError) {
+        this.indices = indices.clone();
+        int triangleCount = indices.length / 3;
+        error = 0;
+        if (triangleCount > targetTriangleCount) {
+            quadrics = new double[vertexCount * QUADRIC_SIZE];
+            addTriangleQuadrics(triangleCount);
+            classify(triangleCount);
+            double maxCost = (double) maxError * maxError;
+            int[] remap = new int[vertexCount];
+            for (int vertex = 0; vertex < vertexCount; vertex++) {
+                remap[vertex] = vertex;
+            }
+            double largestCost = 0;
+            while (triangleCount > targetTriangleCount) {
+                double cost = collapse(triangleCount, remap, maxCost, (triangleCount - targetTriangleCount + 1) / 2);
+                if (cost < 0)
+                    break;
+                largestCost = Math.max(largestCost, cost);
+                triangleCount = removeDegenerateTriangles(triangleCount, remap);
+            }
+            error = (float) Math.sqrt(largestCost);
+        }
+        int[] result = Arrays.copyOf(this.indices, triangleCount * 3);
+        this.indices = null;
+        kinds = null;
+        borderNext = null;
+        borderPrevious = null;
+        quadrics = null;
+        return result;
+    }
+
+    /**
+     * @return the error of the last {@link #simplify}, in the units of the positions: the largest root mean square
+     * distance, weighted by area, from a collapsed vertex to the planes of the original triangles around it. Single
+     * vertices that stick out, like noise, can end up further from the simplified surface than that.
+     */
+    public float getError() {
+        return error;
+    }
+
+    private void addTriangleQuadrics(int triangleCount) {
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            int a = indices[triangle * 3] * 3;
+            int b = indices[triangle * 3 + 1] * 3;
+            int c = indices[triangle * 3 + 2] * 3;
+            double abX = positions[b] - positions[a];
+            double abY = positions[b + 1] - positions[a + 1];
+            double abZ = positions[b + 2] - positions[a + 2];
+            double acX = positions[c] - positions[a];
+            double acY = positions[c + 1] - positions[a + 1];
+            double acZ = positions[c + 2] - positions[a + 2];
+            double x = abY * acZ - abZ * acY;
+            double y = abZ * acX - abX * acZ;
+            double z = abX * acY - abY * acX;
+            double length = Math.sqrt(x * x + y * y + z * z);
+            if (length == 0)
+                continue;
+            x /= length;
+            y /= length;
+            z /= length;
+            double d = -(x * positions[a] + y * positions[a + 1] + z * positions[a + 2]);
+            for (int corner = 0; corner < 3; corner++) {
+                addPlane(positionVertices[indices[triangle * 3 + corner]], x, y, z, d, length / 2);
+            }
+        }
+    }
+
+    /**
+     * Finds the kind of every position: manifold, on a single border, or locked, and adds the planes through the border
+     * edges to the quadrics.
+     */
+    private void classify(int triangleCount) {
+        kinds = new byte[vertexCount];
+        borderNext = new int[vertexCount];
+        borderPrevious = new int[vertexCount];
+        int[] borderOut = new int[vertexCount];
+        int[] borderIn = new int[vertexCount];
+        int[] wedges = new int[vertexCount];
+        boolean[] used = new boolean[vertexCount];
+
+        // The directed edges between positions, with how often they occur and a triangle that has them
+        VertexMap edges = new VertexMap(2, triangleCount * 3);
+        int[] edgeCounts = new int[triangleCount * 3];
+        int[] edgeTriangles = new int[triangleCount * 3];
+        int[] key = new int[2];
+        for (int i = 0; i < triangleCount * 3; i++) {
+            int vertex = indices[i];
+            if (!used[vertex]) {
+                used[vertex] = true;
+                wedges[positionVertices[vertex]]++;
+            }
+            key[0] = positionVertices[vertex];
+            key[1] = positionVertices[indices[i % 3 == 2 ? i - 2 : i + 1]];
+            if (key[0] == key[1])
+                continue;
+            int edge = edges.add(key, 0);
+            edgeCounts[edge]++;
+            edgeTriangles[edge] = i / 3;
+        }
+        int edgeCount = edges.size();
+        for (int edge = 0; edge < edgeCount; edge++) {
+            int from = edges.getKeys()[edge * 2];
+            int to = edges.getKeys()[edge * 2 + 1];
+            if (edgeCounts[edge] > 1) {
+                // More than two triangles share the edge
+                kinds[from] = LOCKED;
+                kinds[to] = LOCKED;
+            }
+            key[0] = to;
+            key[1] = from;
+            // An edge of which the reverse doesn't exist yet is on a border
+            if (edges.add(key, 0) < edgeCount)
+                continue;
+            borderOut[from]++;
+            borderNext[from] = to;
+            borderIn[to]++;
+            borderPrevious[to] = from;
+            addBorderPlane(edgeTriangles[edge], from, to);
+        }
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            if (kinds[vertex] == LOCKED || wedges[vertex] > 1)
+                kinds[vertex] = LOCKED;
+            else if (borderOut[vertex] == 0 && borderIn[vertex] == 0)
+                kinds[vertex] = MANIFOLD;
+            else if (borderOut[vertex] == 1 && borderIn[vertex] == 1)
+                kinds[vertex] = BORDER;
+            else
+                kinds[vertex] = LOCKED;
+        }
+    }
+
+    /**
+     * Adds the plane through a border edge that is perpendicular to its triangle, so that moving a vertex of the border
+     * inwards or outwards costs as much as moving it off the surface.
+     */
+    private void addBorderPlane(int triangle, int from, int to) {
+        int a = indices[triangle * 3] * 3;
+        int b = indices[triangle * 3 + 1] * 3;
+        int c = indices[triangle * 3 + 2] * 3;
+        double abX = positions[b] - positions[a];
+        double abY = positions[b + 1] - positions[a + 1];
+        double abZ = positions[b + 2] - positions[a + 2];
+        double acX = positions[c] - positions[a];
+        double acY = positions[c + 1] - positions[a + 1];
+        double acZ = positions[c + 2] - positions[a + 2];
+        double normalX = abY * acZ - abZ * acY;
+        double normalY = abZ * acX - abX * acZ;
+        double normalZ = abX * acY - abY * acX;
+        double edgeX = positions[to * 3] - positions[from * 3];
+        double edgeY = positions[to * 3 + 1] - positions[from * 3 + 1];
+        double edgeZ = positions[to * 3 + 2] - positions[from * 3 + 2];
+        double x = edgeY * normalZ - edgeZ * normalY;
+        double y = edgeZ * normalX - edgeX * normalZ;
+        double z = edgeX * normalY - edgeY * normalX;
+        double length = Math.sqrt(x * x + y * y + z * z);
+        if (length == 0)
+            return;
+        x /= length;
+        y /= length;
+        z /= length;
+        double d = -(x * positions[from * 3] + y * positions[from * 3 + 1] + z * positions[from * 3 + 2]);
+        double weight = (edgeX * edgeX + edgeY * edgeY + edgeZ * edgeZ) * BORDER_WEIGHT;
+        addPlane(from, x, y, z, d, weight);
+        addPlane(to, x, y, z, d, weight);
+    }
+
+    private void addPlane(int vertex, double a, double b, double c, double d, double weight) {
+        int offset = vertex * QUADRIC_SIZE;
+        quadrics[offset] += weight * a * a;
+        quadrics[offset + 1] += weight * a * b;
+        quadrics[offset + 2] += weight * a * c;
+        quadrics[offset + 3] += weight * a * d;
+        quadrics[offset + 4] += weight * b * b;
+        quadrics[offset + 5] += weight * b * c;
+        quadrics[offset + 6] += weight * b * d;
+        quadrics[offset + 7] += weight * c * c;
+        quadrics[offset + 8] += weight * c * d;
+        quadrics[offset + 9] += weight * d * d;
+        quadrics[offset + 10] += weight;
+    }
+
+    /**
+     * @return the weighted sum of the squared distances from a position to the planes of a quadric
+     */
+    private double evaluate(int vertex, double x, double y, double z) {
+        int offset = vertex * QUADRIC_SIZE;
+        double[] q = quadrics;
+        return q[offset] * x * x + q[offset + 4] * y * y + q[offset + 7] * z * z
+                + 2 * (q[offset + 1] * x * y + q[offset + 2] * x * z + q[offset + 5] * y * z)
+                + 2 * (q[offset + 3] * x + q[offset + 6] * y + q[offset + 8] * z) + q[offset + 9];
+    }
+
+    /**
+     * @return the weighted mean squared distance to the original surface around both vertices if from moves onto to
+     */
+    private double getCost(int from, int to) {
+        int fromPosition = positionVertices[from];
+        int toPosition = positionVertices[to];
+        double x = positions[to * 3];
+        double y = positions[to * 3 + 1];
+        double z = positions[to * 3 + 2];
+        double weight = quadrics[fromPosition * QUADRIC_SIZE + 10] + quadrics[toPosition * QUADRIC_SIZE + 10];
+        if (weight == 0)
+            return 0;
+        // Rounding can make the sum slightly negative
+        return Math.abs(evaluate(fromPosition, x, y, z) + evaluate(toPosition, x, y, z)) / weight;
+    }
+
+    private boolean canCollapse(int from, int to) {
+        int fromPosition = positionVertices[from];
+        int toPosition = positionVertices[to];
+        if (fromPosition == toPosition)
+            return false;
+        switch (kinds[fromPosition]) {
+            case MANIFOLD:
+                return true;
+            case BORDER:
+                // Only along the border, onto a vertex that stays on it
+                return kinds[toPosition] != MANIFOLD
+                        && (borderNext[fromPosition] == toPosition || borderPrevious[fromPosition] == toPosition);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Does one pass of collapses, cheapest first, of which no two touch the same triangles.
+     *
+     * @param goal the number of collapses after which the pass stops
+     * @return the largest cost of the collapses, or -1 if there were none
+     */
+    private double collapse(int triangleCount, int[] remap, double maxCost, int goal) {
+        // The triangles of every vertex: those of vertex v are triangles[firstTriangle[v]] to triangles[firstTriangle[v + 1] - 1]
+        int[] firstTriangle = new int[vertexCount + 1];
+        for (int i = 0; i < triangleCount * 3; i++) {
+            firstTriangle[indices[i] + 1]++;
+        }
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            firstTriangle[vertex + 1] += firstTriangle[vertex];
+        }
+        int[] triangles = new int[triangleCount * 3];
+        int[] filled = Arrays.copyOf(firstTriangle, vertexCount);
+        for (int i = 0; i < triangleCount * 3; i++) {
+            triangles[filled[indices[i]]++] = i / 3;
+        }
+
+        // Every edge once, in the direction that is cheaper to collapse
+        int[] froms = new int[triangleCount * 3];
+        int[] tos = new int[triangleCount * 3];
+        double[] costs = new double[triangleCount * 3];
+        long[] keys = new long[triangleCount * 3];
+        int candidateCount = 0;
+        for (int i = 0; i < triangleCount * 3; i++) {
+            int a = indices[i];
+            int b = indices[i % 3 == 2 ? i - 2 : i + 1];
+            int positionA = positionVertices[a];
+            // Inner edges are in two triangles, border edges only in one
+            if (a > b && !(kinds[positionA] != MANIFOLD && borderNext[positionA] == positionVertices[b]))
+                continue;
+            double costAB = canCollapse(a, b) ? getCost(a, b) : Double.MAX_VALUE;
+            double costBA = canCollapse(b, a) ? getCost(b, a) : Double.MAX_VALUE;
+            double cost = Math.min(costAB, costBA);
+            if (cost > maxCost)
+                continue;
+            froms[candidateCount] = costAB <= costBA ? a : b;
+            tos[candidateCount] = costAB <= costBA ? b : a;
+            costs[candidateCount] = cost;
+            // Non-negative floats sort the same as their bits
+            keys[candidateCount] = (long) Float.floatToIntBits((float) cost) << 32 | candidateCount;
+            candidateCount++;
+        }
+        Arrays.sort(keys, 0, candidateCount);
+
+        boolean[] touched = new boolean[vertexCount];
+        int collapses = 0;
+        double largestCost = -1;
+        for (int i = 0; i < candidateCount && collapses < goal; i++) {
+            int candidate = (int) keys[i];
+            int from = froms[candidate];
+            int to = tos[candidate];
+            if (touched[from] || touched[to] || flips(from, to, triangles, firstTriangle))
+                continue;
+            remap[from] = to;
+            int fromPosition = positionVertices[from];
+            int toPosition = positionVertices[to];
+            if (kinds[fromPosition] == BORDER) {
+                // Take from out of the border, so its neighbours along the border become neighbours
+                if (borderNext[fromPosition] == toPosition) {
+                    borderPrevious[toPosition] = borderPrevious[fromPosition];
+                    borderNext[borderPrevious[fromPosition]] = toPosition;
+                } else {
+                    borderNext[toPosition] = borderNext[fromPosition];
+                    borderPrevious[borderNext[fromPosition]] = toPosition;
+                }
+            }
+            int fromOffset = fromPosition * QUADRIC_SIZE;
+            int toOffset = toPosition * QUADRIC_SIZE;
+            for (int j = 0; j < QUADRIC_SIZE; j++) {
+                quadrics[toOffset + j] += quadrics[fromOffset + j];
+            }
+            // The triangles around from change, so nothing else in this pass may collapse into or out of them
+            for (int t = firstTriangle[from]; t < firstTriangle[from + 1]; t++) {
+                int triangle = triangles[t];
+                touched[indices[triangle * 3]] = true;
+                touched[indices[triangle * 3 + 1]] = true;
+                touched[indices[triangle * 3 + 2]] = true;
+            }
+            largestCost = Math.max(largestCost, costs[candidate]);
+            collapses++;
+        }
+        return largestCost;
+    }
+
+    /**
+     * @return if moving from onto to would turn any of the triangles of from that stay by more than the allowed angle
+     */
+    private boolean flips(int from, int to, int[] triangles, int[] firstTriangle) {
+        for (int t = firstTriangle[from]; t < firstTriangle[from + 1]; t++) {
+            int triangle = triangles[t];
+            int a = indices[triangle * 3];
+            int b = indices[triangle * 3 + 1];
+            int c = indices[triangle * 3 + 2];
+            if (a == to || b == to || c == to)
+                continue;
+            double before = getNormal(a, b, c);
+            double x = normal[0];
+            double y = normal[1];
+            double z = normal[2];
+            double after = getNormal(a == from ? to : a, b == from ? to : b, c == from ? to : c);
+            if (x * normal[0] + y * normal[1] + z * normal[2] < MIN_NORMAL_COSINE * before * after)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Calculates the normal of a triangle into {@link #normal}, with a length of twice its area.
+     *
+     * @return the length of the normal
+     */
+    private double getNormal(int a, int b, int c) {
+        float abX = positions[b * 3] - positions[a * 3];
+        float abY = positions[b * 3 + 1] - positions[a * 3 + 1];
+        float abZ = positions[b * 3 + 2] - positions[a * 3 + 2];
+        float acX = positions[c * 3] - positions[a * 3];
+        float acY = positions[c * 3 + 1] - positions[a * 3 + 1];
+        float acZ = positions[c * 3 + 2] - positions[a * 3 + 2];
+        normal[0] = abY * acZ - abZ * acY;
+        normal[1] = abZ * acX - abX * acZ;
+        normal[2] = abX * acY - abY * acX;
+        return Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+    }
+
+    /**
+     * Renumbers the triangles after a pass and drops those that lost a corner.
+     *
+     * @return the number of triangles that are left
+     */
+    private int removeDegenerateTriangles(int triangleCount, int[] remap) {
+        int count = 0;
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            int a = remap[indices[triangle * 3]];
+            int b = remap[indices[triangle * 3 + 1]];
+            int c = remap[indices[triangle * 3 + 2]];
+            if (a == b || b == c || a == c)
+                continue;
+            indices[count * 3] = a;
+            indices[count * 3 + 1] = b;
+            indices[count * 3 + 2] = c;
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.mesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Parses the geometry of a Wavefront OBJ file: the positions (v), texture coordinates (vt), normals (vn) and faces (f)
+ * with 1-based or negative (relative) indices. Faces with more than three corners are split into a fan of triangles.
+ * Everything else, such as groups, materials, lines and curves, is skipped.
+ * <p>
+ * The file is split into chunks at line boundaries that are parsed in parallel, in two passes: the first counts the
+ * elements of every chunk, so that the second knows where the elements of its chunk go in the shared arrays and what
+ * the absolute number of a relative index is. Then a single pass over all corners deduplicates the combinations of
+ * position, texture coordinate and normal into vertices.
+ */
+class ObjParser {
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private static final int OTHER = 0;
+    private static final int POSITION = 1;
+    private static final int TEXTURE_COORDINATE = 2;
+    private static final int NORMAL = 3;
+    private static final int FACE = 4;
+    // The number of counts per chunk: positions, texture coordinates, normals and triangles
+    private static final int COUNTS = 4;
+
+    private final ByteBuffer data;
+    private final int chunks;
+    private final int[] bounds;
+    // The number of elements of every chunk, and then the number of elements before every chunk
+    private final int[] counts;
+    private float[] positions;
+    private float[] textureCoordinates;
+    private float[] normals;
+    // The position, texture coordinate and normal index of every corner of every triangle, -1 if a corner has none
+    private int[] corners;
+
+    ObjParser(ByteBuffer data) {
+        this.data = data;
+        int start = data.position();
+        int end = data.limit();
+        chunks = Math.max(1, (end - start + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        bounds = new int[chunks + 1];
+        bounds[0] = start;
+        bounds[chunks] = end;
+        for (int chunk = 1; chunk < chunks; chunk++) {
+            int bound = Math.max(bounds[chunk - 1], start + (int) ((long) (end - start) * chunk / chunks));
+            // Start every chunk at the beginning of a line
+            while (bound < end && bound > start && data.get(bound - 1) != '\n') {
+                bound++;
+            }
+            bounds[chunk] = bound;
+        }
+        counts = new int[(chunks + 1) * COUNTS];
+    }
+
+    Mesh parse() throws IOException {
+        MeshLoader.forEachChunk(chunks, new MeshLoader.ChunkTask() {
+            @Override
+            public void run(int chunk) throws IOException {
+                count(chunk);
+            }
+        });
+        // Turn the counts into the number of elements before every chunk, the last entry is the total
+        int[] totals = new int[COUNTS];
+        for (int chunk = 0; chunk <= chunks; chunk++) {
+            for (int i = 0; i < COUNTS; i++) {
+                int count = counts[chunk * COUNTS + i];
+                counts[chunk * COUNTS + i] = totals[i];
+                totals[i] += count;
+            }
+        }
+        positions = new float[totals[0] * 3];
+        textureCoordinates = totals[1] > 0 ? new float[totals[1] * 2] : null;
+        normals = totals[2] > 0 ? new float[totals[2] * 3] : null;
+        corners = new int[totals[3] * 9];
+        MeshLoader.forEachChunk(chunks, new MeshLoader.ChunkTask() {
+            @Override
+            public void run(int chunk) throws IOException {
+                read(chunk);
+            }
+        });
+
+        VertexMap vertices = new VertexMap(3, totals[0]);
+        int[] indices = new int[totals[3] * 3];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = vertices.add(corners, i * 3);
+        }
+        return MeshLoader.build(positions, textureCoordinates, normals, vertices.getKeys(), vertices.size(), indices);
+    }
+
+    private void count(int chunk) {
+        TextReader reader = new TextReader(data, bounds[chunk], bounds[chunk + 1]);
+        int offset = chunk * COUNTS;
+        while (reader.hasRemaining()) {
+            int type = readType(reader);
+            if (type == FACE) {
+                int cornerCount = 0;
+                while (!reader.atLineEnd()) {
+                    reader.skipWord();
+                    cornerCount++;
+                }
+                counts[offset + 3] += Math.max(0, cornerCount - 2);
+            } else if (type != OTHER) {
+                counts[offset + type - 1]++;
+            }
+            reader.skipLine();
+        }
+    }
+
+    private void read(int chunk) throws IOException {
+        TextReader reader = new TextReader(data, bounds[chunk], bounds[chunk + 1]);
+        int offset = chunk * COUNTS;
+        int position = counts[offset];
+        int textureCoordinate = counts[offset + 1];
+        int normal = counts[offset + 2];
+        int triangle = counts[offset + 3];
+        int lastTriangle = counts[offset + COUNTS + 3];
+        int positionCount = positions.length / 3;
+        int textureCoordinateCount = textureCoordinates == null ? 0 : textureCoordinates.length / 2;
+        int normalCount = normals == null ? 0 : normals.length / 3;
+        while (reader.hasRemaining()) {
+            switch (readType(reader)) {
+                case POSITION:
+                    positions[position * 3] = reader.readFloat();
+                    positions[position * 3 + 1] = reader.readFloat();
+                    positions[position * 3 + 2] = reader.readFloat();
+                    position++;
+                    break;
+                case TEXTURE_COORDINATE:
+                    textureCoordinates[textureCoordinate * 2] = reader.readFloat();
+                    textureCoordinates[textureCoordinate * 2 + 1] = reader.atLineEnd() ? 0 : reader.readFloat();
+                    textureCoordinate++;
+                    break;
+                case NORMAL:
+                    normals[normal * 3] = reader.readFloat();
+                    normals[normal * 3 + 1] = reader.readFloat();
+                    normals[normal * 3 + 2] = reader.readFloat();
+                    normal++;
+                    break;
+                case FACE:
+                    int faceStart = reader.getPosition();
+                    int cornerCount = 0;
+                    // The corners of the fan: its first corner, the previous one and the current one
+                    int first = triangle * 9;
+                    while (!reader.atLineEnd()) {
+                        int cornerStart = reader.getPosition();
+                        int p = resolve(reader, reader.readInt(), position, positionCount);
+                        int t = -1;
+                        int n = -1;
+                        if (reader.peek() == '/') {
+                            reader.skip(1);
+                            if (reader.peek() != '/')
+                                t = resolve(reader, reader.readInt(), textureCoordinate, textureCoordinateCount);
+                            if (reader.peek() == '/') {
+                                reader.skip(1);
+                                n = resolve(reader, reader.readInt(), normal, normalCount);
+                            }
+                        }
+                        int c = reader.peek();
+                        if (c != ' ' && c != '\t' && c != '\n' && c != '\r' && c != '#' && c != -1)
+                            throw reader.error("Invalid face corner", cornerStart);
+                        if (cornerCount >= 2) {
+                            if (triangle == lastTriangle)
+                                throw reader.error("More triangles than counted", faceStart);
+                            int corner = triangle * 9;
+                            if (cornerCount > 2) {
+                                // Start the next triangle of the fan with the first corner and the previous corner
+                                System.arraycopy(corners, first, corners, corner, 3);
+                                System.arraycopy(corners, corner - 3, corners, corner + 3, 3);
+                            }
+                            corners[corner + 6] = p;
+                            corners[corner + 7] = t;
+                            corners[corner + 8] = n;
+                            triangle++;
+                        } else {
+                            int corner = first + cornerCount * 3;
+                            if (triangle == lastTriangle)
+                                throw reader.error("A face needs at least three corners", faceStart);
+                            corners[corner] = p;
+                            corners[corner + 1] = t;
+                            corners[corner + 2] = n;
+                        }
+                        cornerCount++;
+                    }
+                    if (cornerCount < 3)
+                        throw reader.error("A face needs at least three corners", faceStart);
+                    break;
+                default:
+                    break;
+            }
+            reader.skipLine();
+        }
+    }
+
+    /**
+     * Reads the keyword at the start of a line and moves past it.
+     */
+    private static int readType(TextReader reader) {
+        reader.skipSpaces();
+        int c = reader.peek();
+        if (c == 'f' && isSpace(reader.peek(1))) {
+            reader.skip(1);
+            return FACE;
+        }
+        if (c != 'v')
+            return OTHER;
+        c = reader.peek(1);
+        if (isSpace(c)) {
+            reader.skip(1);
+            return POSITION;
+        }
+        if (!isSpace(reader.peek(2)))
+            return OTHER;
+        reader.skip(2);
+        return c == 't' ? TEXTURE_COORDINATE : c == 'n' ? NORMAL : OTHER;
+    }
+
+    /**
+     * @param count the number of elements before the index, which negative indices are relative to
+     * @return the 0-based index
+     */
+    private static int resolve(TextReader reader, int index, int count, int total) throws IOException {
+        int resolved = index > 0 ? index - 1 : count + index;
+        if (index == 0 || resolved < 0 || resolved >= total)
+            throw reader.error("Index " + index + " out of range", reader.getPosition());
+        return resolved;
+    }
+
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\t';
+    }
+}
@@ -0,0 +1,559 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.mesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses the vertices and faces of a PLY file, in the ASCII or either binary format. The vertex properties x, y and z
+ * are the position, nx, ny and nz the normal and s and t (or u and v) the texture coordinate; the face property
+ * vertex_indices (or vertex_index) is a list of indices that is split into a fan of triangles. Other properties and
+ * elements are skipped.
+ * <p>
+ * Binary vertices all have the same size unless they contain lists, so they are read in parallel chunks; the faces of
+ * a binary file and everything in an ASCII file are read in one pass. Vertices with exactly the same attributes are
+ * merged, and vertices that no face uses are left out.
+ */
+class PlyParser {
+
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private enum Type {
+        INT8(1), UINT8(1), INT16(2), UINT16(2), INT32(4), UINT32(4), FLOAT32(4), FLOAT64(8);
+
+        final int size;
+
+        Type(int size) {
+            this.size = size;
+        }
+
+        double read(ByteBuffer data, int index) {
+            switch (this) {
+                case INT8:
+                    return data.get(index);
+                case UINT8:
+                    return data.get(index) & 0xFF;
+                case INT16:
+                    return data.getShort(index);
+                case UINT16:
+                    return data.getShort(index) & 0xFFFF;
+                case INT32:
+                    return data.getInt(index);
+                case UINT32:
+                    return data.getInt(index) & 0xFFFFFFFFL;
+                case FLOAT32:
+                    return data.getFloat(index);
+                default:
+                    return data.getDouble(index);
+            }
+        }
+
+        static Type parse(String name) throws IOException {
+            switch (name) {
+                case "char":
+                case "int8":
+                    return INT8;
+                case "uchar":
+                case "uint8":
+                    return UINT8;
+                case "short":
+                case "int16":
+                    return INT16;
+                case "ushort":
+                case "uint16":
+                    return UINT16;
+                case "int":
+                case "int32":
+                    return INT32;
+                case "uint":
+                case "uint32":
+                    return UINT32;
+                case "float":
+                case "float32":
+                    return FLOAT32;
+                case "double":
+                case "float64":
+                    return FLOAT64;
+                default:
+                    throw new IOException("Unknown PLY type " + name);
+            }
+        }
+    }
+
+    private static class Property {
+
+        final String name;
+        final Type type;
+        // The type of the number of items of a list, null if the property isn't a list
+        final Type countType;
+
+        Property(String name, Type type, Type countType) {
+            this.name = name;
+            this.type = type;
+            this.countType = countType;
+        }
+    }
+
+    private static class Element {
+
+        final String name;
+        final int count;
+        final List<Property> properties = new ArrayList<>();
+
+        Element(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+
+        /**
+         * @return the size of the element in a binary file, or -1 if it contains a list
+         */
+        int getSize() {
+            int size = 0;
+            for (Property property : properties) {
+                if (property.countType != null)
+                    return -1;
+                size += property.type.size;
+            }
+            return size;
+        }
+
+        int indexOf(String... names) {
+            for (int i = 0; i < properties.size(); i++) {
+                for (String name : names) {
+                    if (properties.get(i).name.equals(name))
+                        return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private final ByteBuffer data;
+    private final List<Element> elements = new ArrayList<>();
+    private boolean ascii;
+    private int position;
+    // The property index of each component of a vertex: x, y, z, nx, ny, nz, s, t; -1 for the missing ones
+    private final int[] components = new int[8];
+    private int componentCount;
+    private float[] positions;
+    private float[] normals;
+    private float[] textureCoordinates;
+    // Three vertex indices per triangle
+    private int[] faceIndices = new int[1024];
+    private int faceIndexCount;
+    // The index in faceIndices of the first corner of the face that is being read
+    private int faceStartIndex;
+
+    PlyParser(ByteBuffer data) {
+        this.data = data.duplicate();
+        this.position = data.position();
+    }
+
+    Mesh parse() throws IOException {
+        readHeader();
+        Element vertexElement = null;
+        Element faceElement = null;
+        for (Element element : elements) {
+            if (element.name.equals("vertex"))
+                vertexElement = element;
+            else if (element.name.equals("face"))
+                faceElement = element;
+        }
+        if (vertexElement == null || faceElement == null)
+            throw new IOException("A PLY mesh needs vertex and face elements");
+        findComponents(vertexElement);
+        int listIndex = faceElement.indexOf("vertex_indices", "vertex_index");
+        if (listIndex < 0 || faceElement.properties.get(listIndex).countType == null)
+            throw new IOException("The faces have no list of vertex indices");
+
+        positions = new float[vertexElement.count * 3];
+        normals = components[3] >= 0 ? new float[vertexElement.count * 3] : null;
+        textureCoordinates = components[6] >= 0 ? new float[vertexElement.count * 2] : null;
+        TextReader reader = ascii ? new TextReader(data, position, data.limit()) : null;
+        for (Element element : elements) {
+            if (element == vertexElement) {
+                if (ascii)
+                    readVertices(reader, element);
+                else
+                    readVertices(element);
+            } else if (element == faceElement) {
+                if (ascii)
+                    readFaces(reader, element, listIndex);
+                else
+                    readFaces(element, listIndex);
+            } else {
+                if (ascii)
+                    skip(reader, element);
+                else
+                    skip(element);
+            }
+        }
+        return deduplicate(vertexElement.count);
+    }
+
+    private void readHeader() throws IOException {
+        String magic = readHeaderLine();
+        if (!magic.equals("ply"))
+            throw new IOException("Not a PLY file");
+        Element element = null;
+        while (true) {
+            String line = readHeaderLine();
+            String[] words = line.trim().split("\\s+");
+            switch (words[0]) {
+                case "format":
+                    if (words.length < 2)
+                        throw new IOException("Invalid PLY format line: " + line);
+                    ascii = words[1].equals("ascii");
+                    if (words[1].equals("binary_little_endian"))
+                        data.order(ByteOrder.LITTLE_ENDIAN);
+                    else if (words[1].equals("binary_big_endian"))
+                        data.order(ByteOrder.BIG_ENDIAN);
+                    else if (!ascii)
+                        throw new IOException("Unknown PLY format " + words[1]);
+                    break;
+                case "element":
+                    if (words.length < 3)
+                        throw new IOException("Invalid PLY element line: " + line);
+                    element = new Element(words[1], parseCount(words[2]));
+                    elements.add(element);
+                    break;
+                case "property":
+                    if (element == null)
+                        throw new IOException("PLY property outside an element: " + line);
+                    if (words.length >= 5 && words[1].equals("list"))
+                        element.properties.add(new Property(words[4], Type.parse(words[3]), Type.parse(words[2])));
+                    else if (words.length >= 3)
+                        element.properties.add(new Property(words[2], Type.parse(words[1]), null));
+                    else
+                        throw new IOException("Invalid PLY property line: " + line);
+                    break;
+                case "end_header":
+                    return;
+                default:
+                    // comment, obj_info and empty lines
+                    break;
+            }
+        }
+    }
+
+    private String readHeaderLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            if (position >= data.limit())
+                throw new IOException("The PLY header has no end_header");
+            char c = (char) (data.get(position++) & 0xFF);
+            if (c == '\n')
+                break;
+            if (c != '\r')
+                line.append(c);
+        }
+        return line.toString();
+    }
+
+    private static int parseCount(String count) throws IOException {
+        try {
+            int value = Integer.parseInt(count);
+            if (value >= 0)
+                return value;
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IOException("Invalid PLY element count " + count);
+    }
+
+    private void findComponents(Element vertices) throws IOException {
+        String[][] names = {{"x"}, {"y"}, {"z"}, {"nx"}, {"ny"}, {"nz"},
+                {"s", "u", "texture_u", "texture_s"}, {"t", "v", "texture_v", "texture_t"}};
+        for (int i = 0; i < names.length; i++) {
+            components[i] = vertices.indexOf(names[i]);
+            if (components[i] >= 0 && vertices.properties.get(components[i]).countType != null)
+                throw new IOException("The vertex property " + names[i][0] + " is a list");
+        }
+        if (components[0] < 0 || components[1] < 0 || components[2] < 0)
+            throw new IOException("The vertices have no position");
+        // Only use normals and texture coordinates that are complete
+        if (components[4] < 0 || components[5] < 0)
+            components[3] = -1;
+        if (components[7] < 0)
+            components[6] = -1;
+        componentCount = 3 + (components[3] >= 0 ? 3 : 0) + (components[6] >= 0 ? 2 : 0);
+    }
+
+    private void readVertices(final Element element) throws IOException {
+        final int size = element.getSize();
+        if (size < 0) {
+            for (int vertex = 0; vertex < element.count; vertex++) {
+                int next = skipBinary(element, position);
+                readVertex(element, vertex, position);
+                position = next;
+            }
+            return;
+        }
+        if ((long) size * element.count > data.limit() - position)
+            throw new IOException("The PLY file ends in the middle of the vertices");
+        // All vertices have the same size, so every chunk knows where its vertices start
+        final int start = position;
+        final int chunks = (element.count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        MeshLoader.forEachChunk(Math.max(1, chunks), new MeshLoader.ChunkTask() {
+            @Override
+            public void run(int chunk) {
+                int last = Math.min(element.count, (chunk + 1) * CHUNK_SIZE);
+                for (int vertex = chunk * CHUNK_SIZE; vertex < last; vertex++) {
+                    readVertex(element, vertex, start + vertex * size);
+                }
+            }
+        });
+        position = start + size * element.count;
+    }
+
+    /**
+     * Reads the components of a binary vertex that starts at the given byte index and lies completely inside the file.
+     */
+    private void readVertex(Element element, int vertex, int index) {
+        int offset = index;
+        for (int property = 0; property < element.properties.size(); property++) {
+            Property type = element.properties.get(property);
+            if (type.countType != null) {
+                int count = (int) type.countType.read(data, offset);
+                offset += type.countType.size + count * type.type.size;
+                continue;
+            }
+            for (int component = 0; component < components.length; component++) {
+                if (components[component] == property)
+                    setComponent(vertex, component, (float) type.type.read(data, offset));
+            }
+            offset += type.type.size;
+        }
+    }
+
+    private void readVertices(TextReader reader, Element element) throws IOException {
+        for (int vertex = 0; vertex < element.count; vertex++) {
+            skipEmptyLines(reader);
+            for (int property = 0; property < element.properties.size(); property++) {
+                Property type = element.properties.get(property);
+                if (type.countType != null) {
+                    int count = reader.readInt();
+                    for (int i = 0; i < count; i++) {
+                        reader.readDouble();
+                    }
+                    continue;
+                }
+                float value = reader.readFloat();
+                for (int component = 0; component < components.length; component++) {
+                    if (components[component] == property)
+                        setComponent(vertex, component, value);
+                }
+            }
+            reader.skipLine();
+        }
+    }
+
+    private void setComponent(int vertex, int component, float value) {
+        if (component < 3)
+            positions[vertex * 3 + component] = value;
+        else if (component < 6)
+            normals[vertex * 3 + component - 3] = value;
+        else
+            textureCoordinates[vertex * 2 + component - 6] = value;
+    }
+
+    private void readFaces(Element element, int listIndex) throws IOException {
+        for (int face = 0; face < element.count; face++) {
+            int faceStart = position;
+            for (int property = 0; property < element.properties.size(); property++) {
+                Property type = element.properties.get(property);
+                if (type.countType == null) {
+                    checkRemaining(type.type.size);
+                    position += type.type.size;
+                    continue;
+                }
+                checkRemaining(type.countType.size);
+                long count = (long) type.countType.read(data, position);
+                position += type.countType.size;
+                if (count < 0)
+                    throw new IOException("Negative list size at byte " + faceStart);
+                checkRemaining(count * type.type.size);
+                if (property == listIndex) {
+                    beginFace((int) count, faceStart);
+                    for (int i = 0; i < count; i++) {
+                        addCorner(i, (long) type.type.read(data, position + i * type.type.size), faceStart);
+                    }
+                }
+                position += (int) count * type.type.size;
+            }
+        }
+    }
+
+    private void readFaces(TextReader reader, Element element, int listIndex) throws IOException {
+        for (int face = 0; face < element.count; face++) {
+            skipEmptyLines(reader);
+            int faceStart = reader.getPosition();
+            for (int property = 0; property < element.properties.size(); property++) {
+                if (element.properties.get(property).countType == null) {
+                    reader.readDouble();
+                    continue;
+                }
+                int count = reader.readInt();
+                if (property == listIndex)
+                    beginFace(count, faceStart);
+                for (int i = 0; i < count; i++) {
+                    if (property == listIndex)
+                        addCorner(i, reader.readInt(), faceStart);
+                    else
+                        reader.readDouble();
+                }
+            }
+            reader.skipLine();
+        }
+    }
+
+    private void beginFace(int cornerCount, int faceStart) throws IOException {
+        if (cornerCount < 3)
+            throw new IOException("A face needs at least three corners at byte " + faceStart);
+        int needed = faceIndexCount + (cornerCount - 2) * 3;
+        if (needed > faceIndices.length)
+            faceIndices = Arrays.copyOf(faceIndices, Math.max(needed, faceIndices.length * 2));
+    }
+
+    /**
+     * Adds corner i of the current face, splitting the face into a fan of triangles.
+     */
+    private void addCorner(int i, long vertex, int faceStart) throws IOException {
+        if (vertex < 0 || vertex >= positions.length / 3)
+            throw new IOException("Vertex index " + vertex + " out of range at byte " + faceStart);
+        if (i < 3) {
+            // The face starts with one triangle of the first three corners; remember where it starts
+            if (i == 0)
+                faceStartIndex = faceIndexCount;
+            faceIndices[faceIndexCount++] = (int) vertex;
+            return;
+        }
+        faceIndices[faceIndexCount] = faceIndices[faceStartIndex];
+        faceIndices[faceIndexCount + 1] = faceIndices[faceIndexCount - 1];
+        faceIndices[faceIndexCount + 2] = (int) vertex;
+        faceIndexCount += 3;
+    }
+
+    private void skip(Element element) throws IOException {
+        int size = element.getSize();
+        if (size >= 0) {
+            checkRemaining((long) size * element.count);
+            position += size * element.count;
+            return;
+        }
+        for (int i = 0; i < element.count; i++) {
+            position = skipBinary(element, position);
+        }
+    }
+
+    /**
+     * @return the byte index after the binary element that starts at the given index
+     */
+    private int skipBinary(Element element, int index) throws IOException {
+        long next = index;
+        for (Property property : element.properties) {
+            if (property.countType == null) {
+                next += property.type.size;
+            } else {
+                if (next + property.countType.size > data.limit())
+                    break;
+                long count = (long) property.countType.read(data, (int) next);
+                next += property.countType.size + count * property.type.size;
+            }
+        }
+        if (next > data.limit())
+            throw new IOException("The PLY file ends in the middle of a " + element.name);
+        return (int) next;
+    }
+
+    private void skip(TextReader reader, Element element) {
+        for (int i = 0; i < element.count; i++) {
+            skipEmptyLines(reader);
+            reader.skipLine();
+        }
+    }
+
+    private static void skipEmptyLines(TextReader reader) {
+        while (reader.hasRemaining() && reader.atLineEnd()) {
+            reader.skipLine();
+        }
+    }
+
+    private void checkRemaining(long size) throws IOException {
+        if (size > data.limit() - position)
+            throw new IOException("The PLY file ends at byte " + data.limit() + " in the middle of an element");
+    }
+
+    private Mesh deduplicate(int vertexCount) {
+        // Every vertex that is used gets a key of the bits of its components, equal keys become one vertex
+        VertexMap vertices = new VertexMap(componentCount, vertexCount);
+        int[] key = new int[componentCount];
+        int[] numbers = new int[vertexCount];
+        Arrays.fill(numbers, -1);
+        int[] sources = new int[Math.max(16, vertexCount) * 3];
+        int[] indices = new int[faceIndexCount];
+        for (int i = 0; i < faceIndexCount; i++) {
+            int vertex = faceIndices[i];
+            if (numbers[vertex] < 0) {
+                int k = 0;
+                for (int c = 0; c < 3; c++) {
+                    key[k++] = Float.floatToIntBits(positions[vertex * 3 + c]);
+                }
+                if (normals != null) {
+                    for (int c = 0; c < 3; c++) {
+                        key[k++] = Float.floatToIntBits(normals[vertex * 3 + c]);
+                    }
+                }
+                if (textureCoordinates != null) {
+                    for (int c = 0; c < 2; c++) {
+                        key[k++] = Float.floatToIntBits(textureCoordinates[vertex * 2 + c]);
+                    }
+                }
+                int size = vertices.size();
+                int number = vertices.add(key, 0);
+                if (number == size) {
+                    // A new vertex: it takes all its attributes from this vertex of the file
+                    sources[number * 3] = vertex;
+                    sources[number * 3 + 1] = vertex;
+                    sources[number * 3 + 2] = vertex;
+                }
+                numbers[vertex] = number;
+            }
+            indices[i] = numbers[vertex];
+        }
+        return MeshLoader.build(positions, textureCoordinates, normals, sources, vertices.size(), indices);
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.mesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the numbers of a text file straight from its bytes, without creating strings: the model files this is used for
+ * are hundreds of megabytes of ASCII digits, and going through a Reader and Float.parseFloat would allocate for every
+ * single number. Reads from a range of the buffer with absolute gets, so readers on different threads can share one
+ * buffer.
+ */
+class TextReader {
+
+    // The powers of ten that are exact in a double
+    private static final double[] POWERS_OF_TEN = new double[23];
+    // A long holds 18 decimal digits without overflowing, more digits don't change a float
+    private static final int MAX_DIGITS = 18;
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final ByteBuffer data;
+    private final int end;
+    private int position;
+
+    /**
+     * Reads the bytes from start to end - 1.
+     */
+    TextReader(ByteBuffer data, int start, int end) {
+        this.data = data;
+        this.position = start;
+        this.end = end;
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    boolean hasRemaining() {
+        return position < end;
+    }
+
+    /**
+     * @return the byte at the position, or -1 at the end
+     */
+    int peek() {
+        return position < end ? data.get(position) & 0xFF : -1;
+    }
+
+    /**
+     * @return the byte the given number of bytes after the position, or -1 at the end
+     */
+    int peek(int ahead) {
+        return position + ahead < end ? data.get(position + ahead) & 0xFF : -1;
+    }
+
+    void skip(int count) {
+        position = Math.min(end, position + count);
+    }
+
+    /**
+     * Skips spaces and tabs, but not the end of the line.
+     */
+    void skipSpaces() {
+        while (position < end) {
+            byte c = data.get(position);
+            if (c != ' ' && c != '\t')
+                break;
+            position++;
+        }
+    }
+
+    /**
+     * Skips everything up to the next space, tab or line break.
+     */
+    void skipWord() {
+        while (position < end) {
+            byte c = data.get(position);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r')
+                break;
+            position++;
+        }
+    }
+
+    /**
+     * Moves to the start of the next line.
+     */
+    void skipLine() {
+        while (position < end && data.get(position++) != '\n') {
+        }
+    }
+
+    /**
+     * Skips spaces and tabs and tells whether that leads to the end of the line: a line break, a comment or the end of
+     * the data.
+     */
+    boolean atLineEnd() {
+        skipSpaces();
+        int c = peek();
+        return c == -1 || c == '\n' || c == '\r' || c == '#';
+    }
+
+    /**
+     * Skips spaces and tabs and reads a decimal integer.
+     */
+    int readInt() throws IOException {
+        skipSpaces();
+        int start = position;
+        boolean negative = false;
+        int c = peek();
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            position++;
+        }
+        long value = 0;
+        int digitStart = position;
+        while (position < end) {
+            int digit = data.get(position) - '0';
+            if (digit < 0 || digit > 9)
+                break;
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE)
+                throw error("Integer out of range", start);
+            position++;
+        }
+        if (position == digitStart)
+            throw error("Expected an integer", start);
+        return (int) (negative ? -value : value);
+    }
+
+    float readFloat() throws IOException {
+        return (float) readDouble();
+    }
+
+    /**
+     * Skips spaces and tabs and reads a decimal number like 12, -0.5 or 1.5e-3. The digits are collected in a long and
+     * scaled by an exact power of ten, so the result is within a rounding error of Double.parseDouble; after conversion
+     * to a float it's nearly always the same.
+     */
+    double readDouble() throws IOException {
+        skipSpaces();
+        int start = position;
+        boolean negative = false;
+        int c = peek();
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+        while (position < end) {
+            int digit = data.get(position) - '0';
+            if (digit < 0 || digit > 9)
+                break;
+            anyDigits = true;
+            if (digits < MAX_DIGITS) {
+                mantissa = mantissa * 10 + digit;
+                if (mantissa != 0)
+                    digits++;
+            } else {
+                exponent++;
+            }
+            position++;
+        }
+        if (peek() == '.') {
+            position++;
+            while (position < end) {
+                int digit = data.get(position) - '0';
+                if (digit < 0 || digit > 9)
+                    break;
+                anyDigits = true;
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + digit;
+                    if (mantissa != 0)
+                        digits++;
+                    exponent--;
+                }
+                position++;
+            }
+        }
+        if (!anyDigits) {
+            // Something like nan or inf, which is too rare to be fast
+            position = start;
+            return parseWord();
+        }
+        c = peek();
+        if (c == 'e' || c == 'E') {
+            position++;
+            exponent += readInt();
+        }
+        if (!isSeparator(peek()))
+            throw error("Invalid number", start);
+        double value = mantissa;
+        if (exponent < 0) {
+            value = -exponent < POWERS_OF_TEN.length ? value / POWERS_OF_TEN[-exponent] : value * Math.pow(10, exponent);
+        } else if (exponent > 0) {
+            value = exponent < POWERS_OF_TEN.length ? value * POWERS_OF_TEN[exponent] : value * Math.pow(10, exponent);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return an exception that tells the byte offset where things went wrong
+     */
+    IOException error(String message, int offset) {
+        return new IOException(message + " at byte " + offset);
+    }
+
+    private double parseWord() throws IOException {
+        int start = position;
+        StringBuilder word = new StringBuilder();
+        while (!isSeparator(peek())) {
+            word.append((char) peek());
+            position++;
+        }
+        // C writes these as nan and inf, Java as NaN and Infinity
+        String lower = word.toString().toLowerCase();
+        String unsigned = lower.startsWith("-") || lower.startsWith("+") ? lower.substring(1) : lower;
+        if (unsigned.equals("nan"))
+            return Double.NaN;
+        if (unsigned.equals("inf") || unsigned.equals("infinity"))
+            return lower.startsWith("-") ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        try {
+            return Double.parseDouble(word.toString());
+        } catch (NumberFormatException e) {
+            throw error("Invalid number '" + word + "'", start);
+        }
+    }
+
+    private static boolean isSeparator(int c) {
+        return c == -1 || c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '/' || c == '#';
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.mesh;
+
+import java.util.Arrays;
+
+/**
+ * Gives every distinct key a number, in the order the keys are first added: the deduplication of the vertices of a
+ * mesh. A key is a fixed number of ints, for example the position, texture coordinate and normal index of a corner in
+ * an OBJ file. The keys are stored one after the other in a single int array, and the table is open addressing with
+ * linear probing over the numbers of the keys, so adding a million vertices creates no objects at all.
+ */
+class VertexMap {
+
+    private final int keyWidth;
+    private int[] keys;
+    // The number + 1 of the key in every slot, 0 for an empty slot
+    private int[] table;
+    private int mask;
+    private int size;
+
+    /**
+     * @param keyWidth     the number of ints in a key
+     * @param expectedSize the number of distinct keys that is expected, the map grows if there are more
+     */
+    VertexMap(int keyWidth, int expectedSize) {
+        this.keyWidth = keyWidth;
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize) * 2 - 1) << 1;
+        table = new int[capacity];
+        mask = capacity - 1;
+        keys = new int[Math.max(16, expectedSize) * keyWidth];
+    }
+
+    /**
+     * Adds the key in source[offset] to source[offset + keyWidth - 1] if the map doesn't have it yet.
+     *
+     * @return the number of the key
+     */
+    int add(int[] source, int offset) {
+        int slot = hash(source, offset) & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0)
+                break;
+            if (equals(entry - 1, source, offset))
+                return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+        int number = size++;
+        if (keys.length < size * keyWidth)
+            keys = Arrays.copyOf(keys, Math.max(size * keyWidth, keys.length * 2));
+        System.arraycopy(source, offset, keys, number * keyWidth, keyWidth);
+        table[slot] = number + 1;
+        // Keep the table at most half full, so the probe sequences stay short
+        if (size * 2 > table.length)
+            grow();
+        return number;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the keys in the order of their numbers, keyWidth ints each; the array can be longer than that
+     */
+    int[] getKeys() {
+        return keys;
+    }
+
+    private boolean equals(int number, int[] source, int offset) {
+        int start = number * keyWidth;
+        for (int i = 0; i < keyWidth; i++) {
+            if (keys[start + i] != source[offset + i])
+                return false;
+        }
+        return true;
+    }
+
+    private void grow() {
+        table = new int[table.length * 2];
+        mask = table.length - 1;
+        for (int number = 0; number < size; number++) {
+            int slot = hash(keys, number * keyWidth) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = number + 1;
+        }
+    }
+
+    private int hash(int[] source, int offset) {
+        int hash = 0;
+        for (int i = 0; i < keyWidth; i++) {
+            hash = (hash + source[offset + i]) * 0x9E3779B1;
+        }
+        // Mix the high bits into the low bits, which pick the slot
+        return hash ^ hash >>> 16;
+    }
+}
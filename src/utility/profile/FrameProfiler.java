@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.profile;
+
+import utility.gl.GpuTimer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measures where the time of a frame goes. The code of a frame is divided into phases, which are timed with
+ * {@link #begin(int)} and {@link #end(int)}:
+ * <pre>
+ * int draw = profiler.addPhase("draw");
+ * ...
+ * profiler.beginFrame();
+ * profiler.begin(draw);
+ * draw();
+ * profiler.end(draw);
+ * profiler.endFrame();
+ * </pre>
+ * The scopes of the last frames are kept in a ring that is allocated up front, so profiling a frame doesn't allocate.
+ * From those the profiler computes rolling percentiles per phase; all frames since the start go into a
+ * {@link Histogram} per phase for the summary at the end. The whole frame is phase {@link #FRAME}.
+ * <p>
+ * With a {@link GpuTimer} every scope also records a GPU timestamp at its start and end. The GPU runs a few frames
+ * behind, so the GPU times of a frame are read {@link #GPU_LATENCY} frames later, when they are normally available
+ * without waiting; GPU times that still aren't there are skipped and counted.
+ */
+public class FrameProfiler {
+
+    /**
+     * The phase of the whole frame, from {@link #beginFrame()} to {@link #endFrame()}.
+     */
+    public static final int FRAME = 0;
+    public static final int MAX_PHASES = 32;
+    /**
+     * The number of frames after which the GPU times of a frame are read.
+     */
+    public static final int GPU_LATENCY = 3;
+
+    private final int frameCapacity;
+    private final int maxScopes;
+    private final String[] phaseNames = new String[MAX_PHASES];
+    private final Histogram[] cpuHistograms = new Histogram[MAX_PHASES];
+    private final Histogram[] gpuHistograms = new Histogram[MAX_PHASES];
+    private int phaseCount;
+
+    // Per scope, frameCapacity * maxScopes of them: the phase, the CPU times and the GPU queries and times
+    private final int[] scopePhases;
+    private final long[] scopeStarts;
+    private final long[] scopeEnds;
+    private final int[] startQueries;
+    private final int[] endQueries;
+    private final long[] gpuStarts;
+    private final long[] gpuEnds;
+    // Per frame: the number of scopes, and the phases that have CPU and GPU times as bits
+    private final int[] scopeCounts;
+    private final int[] cpuPhases;
+    private final int[] gpuPhases;
+    // Per frame and phase, frameCapacity * MAX_PHASES of them: the total time of all scopes of the phase
+    private final long[] cpuTotals;
+    private final long[] gpuTotals;
+    // The scope of every phase that has begun but not ended, or -1
+    private final int[] openScopes = new int[MAX_PHASES];
+    private final long[] percentileValues;
+
+    private GpuTimer gpuTimer;
+    private long frameCount;
+    private long resolvedFrameCount;
+    private boolean inFrame;
+    private long droppedScopes;
+    private long unavailableGpuTimes;
+
+    /**
+     * Creates a profiler that keeps the last 256 frames with up to 64 scopes each.
+     */
+    public FrameProfiler() {
+        this(256, 64);
+    }
+
+    /**
+     * @param frameCapacity the number of frames that are kept for the rolling percentiles and the trace
+     * @param maxScopes     the number of scopes a frame can have, including the frame itself; more are dropped
+     */
+    public FrameProfiler(int frameCapacity, int maxScopes) {
+        if (frameCapacity <= GPU_LATENCY || maxScopes < 1)
+            throw new IllegalArgumentException("At least " + (GPU_LATENCY + 1) + " frames and 1 scope are needed");
+        this.frameCapacity = frameCapacity;
+        this.maxScopes = maxScopes;
+        int scopeCapacity = frameCapacity * maxScopes;
+        scopePhases = new int[scopeCapacity];
+        scopeStarts = new long[scopeCapacity];
+        scopeEnds = new long[scopeCapacity];
+        startQueries = new int[scopeCapacity];
+        endQueries = new int[scopeCapacity];
+        gpuStarts = new long[scopeCapacity];
+        gpuEnds = new long[scopeCapacity];
+        scopeCounts = new int[frameCapacity];
+        cpuPhases = new int[frameCapacity];
+        gpuPhases = new int[frameCapacity];
+        cpuTotals = new long[frameCapacity * MAX_PHASES];
+        gpuTotals = new long[frameCapacity * MAX_PHASES];
+        percentileValues = new long[frameCapacity];
+        Arrays.fill(openScopes, -1);
+        addPhase("frame");
+    }
+
+    /**
+     * @return the index of the phase with the name, which is added if there is none yet
+     */
+    public int addPhase(String name) {
+        for (int i = 0; i < phaseCount; i++) {
+            if (phaseNames[i].equals(name))
+                return i;
+        }
+        if (phaseCount == MAX_PHASES)
+            throw new IllegalStateException("A profiler can't have more than " + MAX_PHASES + " phases");
+        phaseNames[phaseCount] = name;
+        cpuHistograms[phaseCount] = new Histogram();
+        gpuHistograms[phaseCount] = new Histogram();
+        return phaseCount++;
+    }
+
+    public int getPhaseCount() {
+        return phaseCount;
+    }
+
+    public String getPhaseName(int phase) {
+        return phaseNames[phase];
+    }
+
+    /**
+     * Starts or stops measuring GPU time. The queries of the previous timer are deleted, so this must be called while
+     * its context is still current.
+     *
+     * @param gpuTimer the timer, or null to only measure CPU time
+     */
+    public void setGpuTimer(GpuTimer gpuTimer) {
+        if (this.gpuTimer != null) {
+            for (int i = 0; i < startQueries.length; i++) {
+                if (startQueries[i] != 0)
+                    this.gpuTimer.delete(startQueries[i]);
+                if (endQueries[i] != 0)
+                    this.gpuTimer.delete(endQueries[i]);
+            }
+            Arrays.fill(startQueries, 0);
+            Arrays.fill(endQueries, 0);
+        }
+        this.gpuTimer = gpuTimer;
+        // The frames so far have no queries of the new timer
+        resolvedFrameCount = frameCount;
+    }
+
+    public void beginFrame() {
+        if (inFrame)
+            throw new IllegalStateException("The previous frame hasn't ended");
+        int frame = (int) (frameCount % frameCapacity);
+        scopeCounts[frame] = 0;
+        cpuPhases[frame] = 0;
+        gpuPhases[frame] = 0;
+        Arrays.fill(cpuTotals, frame * MAX_PHASES, (frame + 1) * MAX_PHASES, 0);
+        Arrays.fill(gpuTotals, frame * MAX_PHASES, (frame + 1) * MAX_PHASES, 0);
+        inFrame = true;
+        begin(FRAME);
+    }
+
+    public void endFrame() {
+        if (!inFrame)
+            throw new IllegalStateException("No frame has begun");
+        // A phase that didn't end is cut off at the end of the frame
+        for (int phase = phaseCount - 1; phase >= FRAME; phase--) {
+            end(phase);
+        }
+        int frame = (int) (frameCount % frameCapacity);
+        for (int phase = 0; phase < phaseCount; phase++) {
+            if ((cpuPhases[frame] & 1 << phase) != 0)
+                cpuHistograms[phase].record(cpuTotals[frame * MAX_PHASES + phase]);
+        }
+        inFrame = false;
+        frameCount++;
+        if (gpuTimer != null) {
+            while (resolvedFrameCount + GPU_LATENCY <= frameCount) {
+                resolveGpuTimes(resolvedFrameCount++, false);
+            }
+        }
+    }
+
+    /**
+     * Starts a scope of the phase. Outside of a frame, or when the frame has no room for more scopes, nothing happens.
+     */
+    public void begin(int phase) {
+        if (!inFrame || openScopes[phase] >= 0)
+            return;
+        int frame = (int) (frameCount % frameCapacity);
+        if (scopeCounts[frame] == maxScopes) {
+            droppedScopes++;
+            return;
+        }
+        int scope = frame * maxScopes + scopeCounts[frame]++;
+        scopePhases[scope] = phase;
+        openScopes[phase] = scope;
+        if (gpuTimer != null) {
+            if (startQueries[scope] == 0) {
+                startQueries[scope] = gpuTimer.create();
+                endQueries[scope] = gpuTimer.create();
+            }
+            gpuTimer.record(startQueries[scope]);
+        }
+        // Last, so the GPU timer isn't part of the measured time
+        scopeStarts[scope] = System.nanoTime();
+    }
+
+    public void end(int phase) {
+        int scope = openScopes[phase];
+        if (scope < 0)
+            return;
+        long time = System.nanoTime();
+        scopeEnds[scope] = time;
+        openScopes[phase] = -1;
+        if (gpuTimer != null && endQueries[scope] != 0)
+            gpuTimer.record(endQueries[scope]);
+        int frame = scope / maxScopes;
+        cpuTotals[frame * MAX_PHASES + phase] += time - scopeStarts[scope];
+        cpuPhases[frame] |= 1 << phase;
+    }
+
+    /**
+     * Reads the GPU times of the frames that haven't been read yet, waiting for the GPU if needed, and deletes the
+     * queries. Call it at the end, while the context is still current.
+     */
+    public void close() {
+        if (gpuTimer != null) {
+            while (resolvedFrameCount < frameCount) {
+                resolveGpuTimes(resolvedFrameCount++, true);
+            }
+            setGpuTimer(null);
+        }
+    }
+
+    private void resolveGpuTimes(long frameNumber, boolean wait) {
+        int frame = (int) (frameNumber % frameCapacity);
+        int first = frame * maxScopes;
+        for (int scope = first; scope < first + scopeCounts[frame]; scope++) {
+            gpuStarts[scope] = -1;
+            gpuEnds[scope] = -1;
+            if (startQueries[scope] == 0)
+                continue;
+            if (!wait && !gpuTimer.isAvailable(endQueries[scope])) {
+                unavailableGpuTimes++;
+                continue;
+            }
+            gpuStarts[scope] = gpuTimer.getTime(startQueries[scope]);
+            gpuEnds[scope] = gpuTimer.getTime(endQueries[scope]);
+            int phase = scopePhases[scope];
+            gpuTotals[frame * MAX_PHASES + phase] += gpuEnds[scope] - gpuStarts[scope];
+            gpuPhases[frame] |= 1 << phase;
+        }
+        for (int phase = 0; phase < phaseCount; phase++) {
+            if ((gpuPhases[frame] & 1 << phase) != 0)
+                gpuHistograms[phase].record(gpuTotals[frame * MAX_PHASES + phase]);
+        }
+    }
+
+    /**
+     * @return the number of frames that have ended
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return the number of scopes that were dropped because their frame was full
+     */
+    public long getDroppedScopes() {
+        return droppedScopes;
+    }
+
+    /**
+     * @return the number of GPU times that weren't available in time and were skipped
+     */
+    public long getUnavailableGpuTimes() {
+        return unavailableGpuTimes;
+    }
+
+    /**
+     * @param percentile from 0 to 100, for example 50, 95 or 99
+     * @return the CPU time in nanoseconds of the phase at the percentile of the frames that are kept, or 0
+     */
+    public long getPercentile(int phase, double percentile) {
+        return getPercentile(cpuTotals, cpuPhases, frameCount, phase, percentile);
+    }
+
+    /**
+     * @return the GPU time in nanoseconds of the phase at the percentile of the frames that are kept, or 0
+     */
+    public long getGpuPercentile(int phase, double percentile) {
+        // Frames of which the GPU times aren't known yet have no phases with GPU times
+        return getPercentile(gpuTotals, gpuPhases, frameCount, phase, percentile);
+    }
+
+    private long getPercentile(long[] totals, int[] phases, long end, int phase, double percentile) {
+        int count = 0;
+        for (long frameNumber = Math.max(0, end - frameCapacity); frameNumber < end; frameNumber++) {
+            int frame = (int) (frameNumber % frameCapacity);
+            if ((phases[frame] & 1 << phase) != 0)
+                percentileValues[count++] = totals[frame * MAX_PHASES + phase];
+        }
+        if (count == 0)
+            return 0;
+        Arrays.sort(percentileValues, 0, count);
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return percentileValues[Math.min(Math.max(rank, 1), count) - 1];
+    }
+
+    /**
+     * @return the histogram of the CPU times of the phase over all frames
+     */
+    public Histogram getHistogram(int phase) {
+        return cpuHistograms[phase];
+    }
+
+    public Histogram getGpuHistogram(int phase) {
+        return gpuHistograms[phase];
+    }
+
+    /**
+     * @return a table with the count, mean, percentiles and maximum of every phase over all frames, in milliseconds
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format(Locale.ROOT, "%-24s %8s %9s %9s %9s %9s %9s %9s%n", "phase (ms)", "frames", "mean",
+                "p50", "p95", "p99", "p99.9", "max"));
+        for (int phase = 0; phase < phaseCount; phase++) {
+            appendSummary(summary, phaseNames[phase], cpuHistograms[phase]);
+        }
+        for (int phase = 0; phase < phaseCount; phase++) {
+            appendSummary(summary, phaseNames[phase] + " (gpu)", gpuHistograms[phase]);
+        }
+        if (droppedScopes > 0 || unavailableGpuTimes > 0)
+            summary.append(droppedScopes).append(" scopes dropped, ").append(unavailableGpuTimes)
+                    .append(" GPU times not available in time").append(System.lineSeparator());
+        return summary.toString();
+    }
+
+    private static void appendSummary(StringBuilder summary, String name, Histogram histogram) {
+        if (histogram.getCount() == 0)
+            return;
+        summary.append(String.format(Locale.ROOT, "%-24s %8d %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n", name,
+                histogram.getCount(), histogram.getMean() / 1e6, histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(95) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMax() / 1e6));
+    }
+
+    /**
+     * Writes the scopes of the frames that are kept as CSV, one scope per line: the frame number, the phase, and the
+     * start and end in nanoseconds since the start of the frame on the CPU and, if known, on the GPU.
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("frame,phase,cpu_start,cpu_end,gpu_start,gpu_end\n");
+        for (long frameNumber = Math.max(0, frameCount - frameCapacity); frameNumber < frameCount; frameNumber++) {
+            int frame = (int) (frameNumber % frameCapacity);
+            int first = frame * maxScopes;
+            // The scope of the frame itself is always the first one
+            long cpuOrigin = scopeStarts[first];
+            long gpuOrigin = (gpuPhases[frame] & 1 << FRAME) != 0 ? gpuStarts[first] : -1;
+            for (int scope = first; scope < first + scopeCounts[frame]; scope++) {
+                writer.write(frameNumber + "," + phaseNames[scopePhases[scope]] + "," + (scopeStarts[scope] - cpuOrigin)
+                        + "," + (scopeEnds[scope] - cpuOrigin));
+                if (gpuOrigin >= 0 && gpuStarts[scope] >= 0)
+                    writer.write("," + (gpuStarts[scope] - gpuOrigin) + "," + (gpuEnds[scope] - gpuOrigin) + "\n");
+                else
+                    writer.write(",,\n");
+            }
+        }
+    }
+
+    public void writeCsv(Path location) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(location, StandardCharsets.UTF_8)) {
+            writeCsv(writer);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.scene;
+
+/**
+ * An axis-aligned bounding box, together with the sphere around it. A new box is empty: it contains nothing, and
+ * including a point or another box makes it grow just enough to contain that.
+ */
+public class BoundingBox {
+
+    public float minX, minY, minZ;
+    public float maxX, maxY, maxZ;
+
+    public BoundingBox() {
+        clear();
+    }
+
+    public BoundingBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        set(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    public BoundingBox set(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        return this;
+    }
+
+    public BoundingBox set(BoundingBox box) {
+        return set(box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ);
+    }
+
+    /**
+     * Makes the box empty.
+     */
+    public BoundingBox clear() {
+        return set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+    }
+
+    public boolean isEmpty() {
+        return minX > maxX || minY > maxY || minZ > maxZ;
+    }
+
+    public BoundingBox include(float x, float y, float z) {
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        minZ = Math.min(minZ, z);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+        maxZ = Math.max(maxZ, z);
+        return this;
+    }
+
+    public BoundingBox include(BoundingBox box) {
+        if (box.isEmpty())
+            return this;
+        include(box.minX, box.minY, box.minZ);
+        return include(box.maxX, box.maxY, box.maxZ);
+    }
+
+    public float getCentreX() {
+        return (minX + maxX) * 0.5f;
+    }
+
+    public float getCentreY() {
+        return (minY + maxY) * 0.5f;
+    }
+
+    public float getCentreZ() {
+        return (minZ + maxZ) * 0.5f;
+    }
+
+    /**
+     * @return the radius of the sphere around the box, centred on the centre of the box
+     */
+    public float getRadius() {
+        float x = maxX - minX, y = maxY - minY, z = maxZ - minZ;
+        return (float) Math.sqrt(x * x + y * y + z * z) * 0.5f;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundingBox[(" + minX + ", " + minY + ", " + minZ + ") - (" + maxX + ", " + maxY + ", " + maxZ + ")]";
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.scene;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A binary tree of bounding boxes over a set of objects, to find the objects in a frustum without testing every one of
+ * them. Every node holds the box around the objects below it; a node outside the frustum rules out all of its objects
+ * with a single test, and a node completely inside accepts them all.
+ * <p>
+ * The objects are numbered from 0 and only known by their boxes: set them with {@link #setBounds}, then {@link #build}
+ * the tree. When the objects move a little, {@link #refit()} recalculates the boxes of the nodes without changing the
+ * tree; rebuild it when they move far.
+ * <p>
+ * The tree is built by splitting the objects at the median of their centres, along the longest side of the box around
+ * those centres, until at most {@value #LEAF_SIZE} objects are left. The nodes are stored depth-first in arrays: the
+ * left child of a node directly follows it, and the objects of every subtree are next to each other in the order of
+ * the tree. Large trees are culled on the common fork-join pool, one task per subtree of more than
+ * {@value #PARALLEL_THRESHOLD} objects.
+ */
+public class BoundingVolumeHierarchy {
+
+    private static final int LEAF_SIZE = 4;
+    private static final int PARALLEL_THRESHOLD = 8192;
+
+    private final int capacity;
+    // The boxes of the objects, six floats per object: minimum x, y, z and maximum x, y, z
+    private final float[] objectBounds;
+    // The objects in the order of the tree
+    private final int[] order;
+    // The boxes of the nodes, the first object of every node in order, the number of objects below it and the index of
+    // its right child, or -1 for a leaf
+    private final float[] nodeBounds;
+    private final int[] nodeFirst;
+    private final int[] nodeSize;
+    private final int[] nodeRight;
+    private int objectCount;
+    private int nodeCount;
+
+    public BoundingVolumeHierarchy(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("The hierarchy must hold at least one object");
+        this.capacity = capacity;
+        this.objectBounds = new float[capacity * 6];
+        this.order = new int[capacity];
+        // A binary tree with leaves of at least one object has fewer than twice as many nodes as objects
+        int maxNodes = 2 * capacity;
+        this.nodeBounds = new float[maxNodes * 6];
+        this.nodeFirst = new int[maxNodes];
+        this.nodeSize = new int[maxNodes];
+        this.nodeRight = new int[maxNodes];
+    }
+
+    public void setBounds(int object, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        if (object < 0 || object >= capacity)
+            throw new IndexOutOfBoundsException("Object " + object + " of " + capacity);
+        int offset = object * 6;
+        objectBounds[offset] = minX;
+        objectBounds[offset + 1] = minY;
+        objectBounds[offset + 2] = minZ;
+        objectBounds[offset + 3] = maxX;
+        objectBounds[offset + 4] = maxY;
+        objectBounds[offset + 5] = maxZ;
+    }
+
+    public void setBounds(int object, BoundingBox box) {
+        setBounds(object, box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ);
+    }
+
+    /**
+     * Builds the tree over the objects 0 to objectCount - 1.
+     */
+    public void build(int objectCount) {
+        if (objectCount < 0 || objectCount > capacity)
+            throw new IllegalArgumentException("The number of objects must be between 0 and " + capacity + ": " + objectCount);
+        this.objectCount = objectCount;
+        for (int i = 0; i < objectCount; i++) {
+            order[i] = i;
+        }
+        nodeCount = 0;
+        if (objectCount > 0)
+            build(0, objectCount);
+    }
+
+    private int build(int first, int last) {
+        int node = nodeCount++;
+        nodeFirst[node] = first;
+        nodeSize[node] = last - first;
+        if (last - first <= LEAF_SIZE) {
+            nodeRight[node] = -1;
+            fitLeaf(node);
+            return node;
+        }
+        // Split along the longest side of the box around the centres of the objects
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = first; i < last; i++) {
+            int offset = order[i] * 6;
+            float x = objectBounds[offset] + objectBounds[offset + 3];
+            float y = objectBounds[offset + 1] + objectBounds[offset + 4];
+            float z = objectBounds[offset + 2] + objectBounds[offset + 5];
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+        float sizeX = maxX - minX, sizeY = maxY - minY, sizeZ = maxZ - minZ;
+        int axis = sizeX >= sizeY && sizeX >= sizeZ ? 0 : sizeY >= sizeZ ? 1 : 2;
+        int middle = (first + last) >>> 1;
+        select(first, last - 1, middle, axis);
+        build(first, middle);
+        nodeRight[node] = build(middle, last);
+        fitInner(node);
+        return node;
+    }
+
+    /**
+     * Partially sorts the objects from first to last (inclusive) on the centre along the axis, so the object at index k
+     * is in its sorted place, with smaller ones before and larger ones after it (Hoare's quickselect).
+     */
+    private void select(int first, int last, int k, int axis) {
+        while (first < last) {
+            float pivot = centre(order[(first + last) >>> 1], axis);
+            int i = first, j = last;
+            while (i <= j) {
+                while (centre(order[i], axis) < pivot)
+                    i++;
+                while (centre(order[j], axis) > pivot)
+                    j--;
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                last = j;
+            } else if (k >= i) {
+                first = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    // Twice the centre, which sorts the same
+    private float centre(int object, int axis) {
+        return objectBounds[object * 6 + axis] + objectBounds[object * 6 + 3 + axis];
+    }
+
+    /**
+     * Recalculates the boxes of all nodes from the current boxes of the objects, without changing the tree.
+     */
+    public void refit() {
+        // The children of a node always come after it, so going backwards every child is done before its parent
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            if (nodeRight[node] < 0) {
+                fitLeaf(node);
+            } else {
+                fitInner(node);
+            }
+        }
+    }
+
+    private void fitLeaf(int node) {
+        int offset = node * 6;
+        nodeBounds[offset] = nodeBounds[offset + 1] = nodeBounds[offset + 2] = Float.POSITIVE_INFINITY;
+        nodeBounds[offset + 3] = nodeBounds[offset + 4] = nodeBounds[offset + 5] = Float.NEGATIVE_INFINITY;
+        for (int i = nodeFirst[node], last = i + nodeSize[node]; i < last; i++) {
+            int object = order[i] * 6;
+            for (int axis = 0; axis < 3; axis++) {
+                nodeBounds[offset + axis] = Math.min(nodeBounds[offset + axis], objectBounds[object + axis]);
+                nodeBounds[offset + 3 + axis] = Math.max(nodeBounds[offset + 3 + axis], objectBounds[object + 3 + axis]);
+            }
+        }
+    }
+
+    private void fitInner(int node) {
+        int offset = node * 6, left = (node + 1) * 6, right = nodeRight[node] * 6;
+        for (int axis = 0; axis < 3; axis++) {
+            nodeBounds[offset + axis] = Math.min(nodeBounds[left + axis], nodeBounds[right + axis]);
+            nodeBounds[offset + 3 + axis] = Math.max(nodeBounds[left + 3 + axis], nodeBounds[right + 3 + axis]);
+        }
+    }
+
+    public int getObjectCount() {
+        return objectCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Finds the objects of which the box may be visible, on the fork-join pool if there are many objects.
+     *
+     * @param visible receives the visible objects, must have room for all objects
+     * @return the number of visible objects
+     */
+    public int cull(Frustum frustum, int[] visible) {
+        return cull(frustum, visible, objectCount > PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Same as {@link #cull(Frustum, int[])}, but decides whether to use the fork-join pool. The visible objects are
+     * found in the same order either way.
+     */
+    public int cull(Frustum frustum, int[] visible, boolean parallel) {
+        if (visible.length < objectCount)
+            throw new IllegalArgumentException("The array has room for " + visible.length + " of " + objectCount + " objects");
+        if (objectCount == 0)
+            return 0;
+        if (parallel)
+            return new CullTask(frustum, visible, 0).invoke();
+        return cull(frustum, visible, 0, 0, false);
+    }
+
+    /**
+     * Culls the subtree of a node sequentially.
+     *
+     * @param count  the index in visible to write the next visible object to
+     * @param inside whether the node is known to be completely inside the frustum, so no more tests are needed
+     * @return count plus the number of visible objects in the subtree
+     */
+    private int cull(Frustum frustum, int[] visible, int node, int count, boolean inside) {
+        if (!inside) {
+            int result = frustum.testBox(nodeBounds, node * 6);
+            if (result == Frustum.OUTSIDE)
+                return count;
+            inside = result == Frustum.INSIDE;
+        }
+        if (inside) {
+            // Everything below the node is visible
+            System.arraycopy(order, nodeFirst[node], visible, count, nodeSize[node]);
+            return count + nodeSize[node];
+        }
+        int right = nodeRight[node];
+        if (right >= 0) {
+            count = cull(frustum, visible, node + 1, count, inside);
+            return cull(frustum, visible, right, count, inside);
+        }
+        for (int i = nodeFirst[node], last = i + nodeSize[node]; i < last; i++) {
+            int object = order[i];
+            if (frustum.testBox(objectBounds, object * 6) != Frustum.OUTSIDE)
+                visible[count++] = object;
+        }
+        return count;
+    }
+
+    /**
+     * Culls a subtree on the fork-join pool. The visible objects of a subtree are written to visible from the index of
+     * its first object, since there can't be more of them than it has objects; the results of the right child are then
+     * moved behind those of the left child.
+     */
+    private class CullTask extends RecursiveTask<Integer> {
+
+        // Fork-join tasks are serializable, but these are never serialized
+        private static final long serialVersionUID = 1L;
+
+        private final Frustum frustum;
+        private final int[] visible;
+        private final int node;
+
+        CullTask(Frustum frustum, int[] visible, int node) {
+            this.frustum = frustum;
+            this.visible = visible;
+            this.node = node;
+        }
+
+        @Override
+        protected Integer compute() {
+            int first = nodeFirst[node];
+            int right = nodeRight[node];
+            if (right < 0 || nodeSize[node] <= PARALLEL_THRESHOLD)
+                return cull(frustum, visible, node, first, false) - first;
+            int result = frustum.testBox(nodeBounds, node * 6);
+            if (result == Frustum.OUTSIDE)
+                return 0;
+            if (result == Frustum.INSIDE) {
+                System.arraycopy(order, first, visible, first, nodeSize[node]);
+                return nodeSize[node];
+            }
+            CullTask rightTask = new CullTask(frustum, visible, right);
+            rightTask.fork();
+            int leftCount = new CullTask(frustum, visible, node + 1).compute();
+            int rightCount = rightTask.join();
+            System.arraycopy(visible, nodeFirst[right], visible, first + leftCount, rightCount);
+            return leftCount + rightCount;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.scene;
+
+import com.joml.matrix.Matrix4f;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The six planes of the volume a camera can see, taken from its modelview-projection matrix. A point is inside the
+ * frustum if it's on the inner side of all planes. Bounding volumes are tested against the planes to find out whether
+ * the objects in them can be seen, before the objects cost a draw call.
+ * <p>
+ * The planes come straight out of the rows of the matrix (Gribb and Hartmann, "Fast Extraction of Viewing Frustum
+ * Planes from the World-View-Projection Matrix"): a point is inside when -w &lt;= x, y, z &lt;= w after the
+ * projection, and each of those six comparisons is a plane in world space.
+ */
+public class Frustum {
+
+    /**
+     * The results of the tests: the volume is completely outside, partly inside or completely inside the frustum.
+     */
+    public static final int OUTSIDE = 0, INTERSECTING = 1, INSIDE = 2;
+
+    // The planes (left, right, bottom, top, near, far) as a, b, c, d with ax + by + cz + d >= 0 on the inner side, and
+    // (a, b, c) of unit length, so the result is the distance to the plane
+    private final float[] planes = new float[6 * 4];
+
+    /**
+     * Extracts the planes of a modelview-projection matrix that is stored in column-major order, like the buffer of
+     * {@link utility.Camera#getModelviewProjection()}. The position of the buffer is ignored.
+     */
+    public Frustum set(FloatBuffer matrix) {
+        return set(
+                matrix.get(0), matrix.get(4), matrix.get(8), matrix.get(12),
+                matrix.get(1), matrix.get(5), matrix.get(9), matrix.get(13),
+                matrix.get(2), matrix.get(6), matrix.get(10), matrix.get(14),
+                matrix.get(3), matrix.get(7), matrix.get(11), matrix.get(15));
+    }
+
+    /**
+     * Extracts the planes of a modelview-projection matrix, projectionMatrix * modelviewMatrix.
+     */
+    public Frustum set(Matrix4f matrix) {
+        // mCR is the element in column C and row R
+        return set(
+                matrix.m00, matrix.m10, matrix.m20, matrix.m30,
+                matrix.m01, matrix.m11, matrix.m21, matrix.m31,
+                matrix.m02, matrix.m12, matrix.m22, matrix.m32,
+                matrix.m03, matrix.m13, matrix.m23, matrix.m33);
+    }
+
+    // The arguments are the matrix row by row
+    private Frustum set(float r00, float r01, float r02, float r03,
+                        float r10, float r11, float r12, float r13,
+                        float r20, float r21, float r22, float r23,
+                        float r30, float r31, float r32, float r33) {
+        setPlane(0, r30 + r00, r31 + r01, r32 + r02, r33 + r03); // left
+        setPlane(1, r30 - r00, r31 - r01, r32 - r02, r33 - r03); // right
+        setPlane(2, r30 + r10, r31 + r11, r32 + r12, r33 + r13); // bottom
+        setPlane(3, r30 - r10, r31 - r11, r32 - r12, r33 - r13); // top
+        setPlane(4, r30 + r20, r31 + r21, r32 + r22, r33 + r23); // near
+        setPlane(5, r30 - r20, r31 - r21, r32 - r22, r33 - r23); // far
+        return this;
+    }
+
+    private void setPlane(int plane, float a, float b, float c, float d) {
+        float length = (float) Math.sqrt(a * a + b * b + c * c);
+        planes[plane * 4] = a / length;
+        planes[plane * 4 + 1] = b / length;
+        planes[plane * 4 + 2] = c / length;
+        planes[plane * 4 + 3] = d / length;
+    }
+
+    public boolean contains(float x, float y, float z) {
+        for (int i = 0; i < planes.length; i += 4) {
+            if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return {@link #OUTSIDE}, {@link #INTERSECTING} or {@link #INSIDE}
+     */
+    public int testSphere(float x, float y, float z, float radius) {
+        int result = INSIDE;
+        for (int i = 0; i < planes.length; i += 4) {
+            float distance = planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3];
+            if (distance < -radius)
+                return OUTSIDE;
+            if (distance < radius)
+                result = INTERSECTING;
+        }
+        return result;
+    }
+
+    /**
+     * Tests a box with the corner that lies furthest along the normal of every plane: if that one is outside, the whole
+     * box is. The box may be reported as intersecting while it's just outside near a corner of the frustum, which only
+     * means it's drawn for nothing.
+     *
+     * @return {@link #OUTSIDE}, {@link #INTERSECTING} or {@link #INSIDE}
+     */
+    public int testBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int result = INSIDE;
+        for (int i = 0; i < planes.length; i += 4) {
+            float a = planes[i], b = planes[i + 1], c = planes[i + 2], d = planes[i + 3];
+            float furthest = a * (a > 0 ? maxX : minX) + b * (b > 0 ? maxY : minY) + c * (c > 0 ? maxZ : minZ) + d;
+            if (furthest < 0)
+                return OUTSIDE;
+            float nearest = a * (a > 0 ? minX : maxX) + b * (b > 0 ? minY : maxY) + c * (c > 0 ? minZ : maxZ) + d;
+            if (nearest < 0)
+                result = INTERSECTING;
+        }
+        return result;
+    }
+
+    public int testBox(BoundingBox box) {
+        return testBox(box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ);
+    }
+
+    /**
+     * Same as {@link #testBox(float, float, float, float, float, float)} for a box stored as six floats (minimum x, y,
+     * z and maximum x, y, z) in an array.
+     */
+    public int testBox(float[] boxes, int offset) {
+        return testBox(boxes[offset], boxes[offset + 1], boxes[offset + 2],
+                boxes[offset + 3], boxes[offset + 4], boxes[offset + 5]);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.scene;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A node of a scene graph: it's placed relative to its parent with a translation and a uniform scale, and it may have
+ * geometry of its own, described by a bounding box in its local space. After {@link #update()} every node knows the
+ * box around its geometry in world space, and the box around its geometry and that of all its descendants.
+ * <p>
+ * The subtree boxes make {@link #cull(Frustum, List)} hierarchical: a subtree that is completely outside the frustum is
+ * skipped without looking at its nodes, and one that is completely inside is accepted without testing them. For large
+ * numbers of objects that don't form a useful hierarchy by themselves, put their world boxes in a
+ * {@link BoundingVolumeHierarchy} instead.
+ */
+public class SceneNode {
+
+    private final String name;
+    private final List<SceneNode> children = new ArrayList<>();
+    private SceneNode parent;
+    private float x, y, z;
+    private float scale = 1;
+    // The geometry of this node in its own space, empty if the node only groups its children
+    private final BoundingBox localBounds = new BoundingBox();
+    // Calculated by update(): the world transform, the box around the geometry and the box around the subtree
+    private float worldX, worldY, worldZ, worldScale = 1;
+    private final BoundingBox worldBounds = new BoundingBox();
+    private final BoundingBox subtreeBounds = new BoundingBox();
+
+    public SceneNode(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SceneNode getParent() {
+        return parent;
+    }
+
+    public List<SceneNode> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    /**
+     * Adds a child, which is first removed from its current parent.
+     */
+    public SceneNode addChild(SceneNode child) {
+        for (SceneNode ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+            if (ancestor == child)
+                throw new IllegalArgumentException(child + " can't become a descendant of itself");
+        }
+        if (child.parent != null)
+            child.parent.children.remove(child);
+        child.parent = this;
+        children.add(child);
+        return child;
+    }
+
+    public void removeChild(SceneNode child) {
+        if (children.remove(child))
+            child.parent = null;
+    }
+
+    public SceneNode setTranslation(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    public SceneNode setScale(float scale) {
+        if (scale <= 0)
+            throw new IllegalArgumentException("The scale must be positive: " + scale);
+        this.scale = scale;
+        return this;
+    }
+
+    /**
+     * Sets the box around the geometry of this node, in its own space. An empty box means the node has no geometry.
+     */
+    public SceneNode setLocalBounds(BoundingBox bounds) {
+        localBounds.set(bounds);
+        return this;
+    }
+
+    public boolean hasGeometry() {
+        return !localBounds.isEmpty();
+    }
+
+    /**
+     * Calculates the world transforms and boxes of this node and its descendants, after any of them moved or changed.
+     */
+    public void update() {
+        if (parent == null) {
+            worldX = x;
+            worldY = y;
+            worldZ = z;
+            worldScale = scale;
+        } else {
+            worldX = parent.worldX + x * parent.worldScale;
+            worldY = parent.worldY + y * parent.worldScale;
+            worldZ = parent.worldZ + z * parent.worldScale;
+            worldScale = parent.worldScale * scale;
+        }
+        if (localBounds.isEmpty()) {
+            worldBounds.clear();
+        } else {
+            worldBounds.set(
+                    worldX + localBounds.minX * worldScale, worldY + localBounds.minY * worldScale, worldZ + localBounds.minZ * worldScale,
+                    worldX + localBounds.maxX * worldScale, worldY + localBounds.maxY * worldScale, worldZ + localBounds.maxZ * worldScale);
+        }
+        subtreeBounds.set(worldBounds);
+        for (SceneNode child : children) {
+            child.update();
+            subtreeBounds.include(child.subtreeBounds);
+        }
+    }
+
+    /**
+     * @return the box around the geometry of this node in world space, as of the last {@link #update()}
+     */
+    public BoundingBox getWorldBounds() {
+        return worldBounds;
+    }
+
+    /**
+     * @return the box around the geometry of this node and all its descendants in world space
+     */
+    public BoundingBox getSubtreeBounds() {
+        return subtreeBounds;
+    }
+
+    /**
+     * Adds the nodes of this subtree that have geometry which may be visible to the list, in depth-first order.
+     *
+     * @return the number of nodes that were added
+     */
+    public int cull(Frustum frustum, List<SceneNode> visible) {
+        int size = visible.size();
+        cull(frustum, visible, false);
+        return visible.size() - size;
+    }
+
+    private void cull(Frustum frustum, List<SceneNode> visible, boolean inside) {
+        if (subtreeBounds.isEmpty())
+            return;
+        if (!inside) {
+            // The sphere test is cheaper and decides most cases, only the spheres that cross a plane test the box
+            int result = frustum.testSphere(subtreeBounds.getCentreX(), subtreeBounds.getCentreY(), subtreeBounds.getCentreZ(),
+                    subtreeBounds.getRadius());
+            if (result == Frustum.INTERSECTING)
+                result = frustum.testBox(subtreeBounds);
+            if (result == Frustum.OUTSIDE)
+                return;
+            inside = result == Frustum.INSIDE;
+        }
+        if (!worldBounds.isEmpty() && (inside || frustum.testBox(worldBounds) != Frustum.OUTSIDE))
+            visible.add(this);
+        for (SceneNode child : children) {
+            child.cull(frustum, visible, inside);
+        }
+    }
+
+    /**
+     * Adds the nodes of this subtree that have geometry to the list, in depth-first order.
+     */
+    public void collectGeometry(List<SceneNode> nodes) {
+        if (hasGeometry())
+            nodes.add(this);
+        for (SceneNode child : children) {
+            child.collectGeometry(nodes);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SceneNode[" + name + "]";
+    }
+}
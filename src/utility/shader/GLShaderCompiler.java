@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.shader;
+
+import utility.ShaderLoader;
+import utility.gl.LWJGLOpenGL;
+import utility.gl.OpenGL;
+import utility.memory.BufferPool;
+import utility.memory.StackAllocator;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL41.*;
+
+/**
+ * Compiles shader programs with an {@link OpenGL} backend, normally the current OpenGL context. Program binaries are
+ * used when the context supports OpenGL 4.1 or ARB_get_program_binary and the driver offers at least one binary format.
+ */
+public class GLShaderCompiler implements ShaderCompiler {
+
+    private final OpenGL gl;
+    private final String binaryDriver;
+    private final int[] binaryFormats;
+
+    /**
+     * Queries the binary support of the current OpenGL context.
+     */
+    public GLShaderCompiler() {
+        this(new LWJGLOpenGL());
+    }
+
+    /**
+     * Queries the binary support of an OpenGL backend.
+     */
+    public GLShaderCompiler(OpenGL gl) {
+        this.gl = gl;
+        int formatCount = gl.isProgramBinarySupported() ? gl.glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS) : 0;
+        if (formatCount > 0) {
+            StackAllocator stack = StackAllocator.get();
+            int frame = stack.push();
+            IntBuffer formats = stack.allocateInts(formatCount);
+            gl.glGetInteger(GL_PROGRAM_BINARY_FORMATS, formats);
+            binaryFormats = new int[formatCount];
+            formats.get(binaryFormats);
+            stack.pop(frame);
+            binaryDriver = gl.glGetString(GL_VENDOR) + " / " + gl.glGetString(GL_RENDERER) + " / " + gl.glGetString(GL_VERSION);
+        } else {
+            binaryFormats = new int[0];
+            binaryDriver = null;
+        }
+    }
+
+    @Override
+    public int compile(CharSequence vertexShaderSource, CharSequence fragmentShaderSource) {
+        return ShaderLoader.createShaderProgram(gl, vertexShaderSource, fragmentShaderSource, binaryDriver != null);
+    }
+
+    @Override
+    public String getBinaryDriver() {
+        return binaryDriver;
+    }
+
+    @Override
+    public ProgramBinary getBinary(int shaderProgram) {
+        if (binaryDriver == null)
+            return null;
+        int length = gl.glGetProgrami(shaderProgram, GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0)
+            return null;
+        // A binary can be hundreds of kilobytes, too large for the stack
+        BufferPool pool = BufferPool.getDefault();
+        ByteBuffer data = pool.acquire(length);
+        StackAllocator stack = StackAllocator.get();
+        int frame = stack.push();
+        try {
+            IntBuffer written = stack.allocateInts(1);
+            IntBuffer format = stack.allocateInts(1);
+            gl.glGetProgramBinary(shaderProgram, written, format, data);
+            byte[] bytes = new byte[written.get(0)];
+            data.get(bytes);
+            return new ProgramBinary(format.get(0), bytes);
+        } finally {
+            stack.pop(frame);
+            pool.release(data);
+        }
+    }
+
+    @Override
+    public int loadBinary(ProgramBinary binary) {
+        if (!isSupported(binary.getFormat()))
+            return -1;
+        BufferPool pool = BufferPool.getDefault();
+        ByteBuffer data = pool.acquire(binary.getData().length);
+        int shaderProgram;
+        try {
+            data.put(binary.getData()).flip();
+            shaderProgram = gl.glCreateProgram();
+            gl.glProgramBinary(shaderProgram, binary.getFormat(), data);
+        } finally {
+            pool.release(data);
+        }
+        // A driver update or a different graphics card makes old binaries fail to "link", the caller then compiles
+        if (gl.glGetProgrami(shaderProgram, GL_LINK_STATUS) == GL_FALSE) {
+            gl.glDeleteProgram(shaderProgram);
+            return -1;
+        }
+        return shaderProgram;
+    }
+
+    @Override
+    public void delete(int shaderProgram) {
+        gl.glDeleteProgram(shaderProgram);
+    }
+
+    private boolean isSupported(int format) {
+        for (int binaryFormat : binaryFormats) {
+            if (binaryFormat == format)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.shader;
+
+/**
+ * Turns shader sources and program binaries into shader programs. {@link GLShaderCompiler} does this with OpenGL; the
+ * {@link ShaderProgramCache} only talks to this interface, so its logic can run without an OpenGL context.
+ */
+public interface ShaderCompiler {
+
+    /**
+     * Compiles and links a shader program. If binaries are supported, the binary of the program must be retrievable.
+     *
+     * @return the shader program or -1 if the compiling or linking failed
+     */
+    int compile(CharSequence vertexShaderSource, CharSequence fragmentShaderSource);
+
+    /**
+     * @return a description of the driver (vendor, renderer and version), or null if the driver can't store program
+     * binaries; binaries created by a different driver are never handed to {@link #loadBinary(ProgramBinary)}
+     */
+    String getBinaryDriver();
+
+    /**
+     * @return the binary of a linked shader program or null if it isn't available
+     */
+    ProgramBinary getBinary(int shaderProgram);
+
+    /**
+     * Creates a shader program from a binary that was returned by {@link #getBinary(int)}.
+     *
+     * @return the shader program or -1 if the driver rejected the binary
+     */
+    int loadBinary(ProgramBinary binary);
+
+    void delete(int shaderProgram);
+}
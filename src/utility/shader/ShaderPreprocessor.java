@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.shader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Expands GLSL sources before they are handed to OpenGL. It does two things the GLSL compiler can't:
+ * <ul>
+ * <li>{@code #include "file"} lines are replaced by the contents of that file, relative to the including file. Included
+ * files may include other files, but not the file that includes them.</li>
+ * <li>Defines are injected right after the {@code #version} line, so one shader file can be compiled into several
+ * variants that select their code with {@code #ifdef}, without any branches at run time.</li>
+ * </ul>
+ * Everything else, including {@code #ifdef}, is left to the GLSL compiler. The expanded sources are cached per
+ * permutation: the file together with its set of defines.
+ */
+public class ShaderPreprocessor {
+
+    private static final String INCLUDE = "#include";
+    private static final String VERSION = "#version";
+
+    private final Map<String, String> cache = new HashMap<>();
+
+    /**
+     * Expands a shader file, or returns the cached result of an earlier call with the same file and defines.
+     *
+     * @param location the location of the shader file
+     * @param defines  the names of the defines, optionally followed by a space and a value, for example
+     *                 "MODELVIEW_PROJECTION" or "LIGHT_COUNT 4"
+     * @return the expanded source, every line ends with a newline
+     * @throws IOException if a file can't be read, or if the includes are malformed or recursive
+     */
+    public synchronized String preprocess(String location, String... defines) throws IOException {
+        String[] sortedDefines = sort(defines);
+        String key = getPermutationKey(location, sortedDefines);
+        String source = cache.get(key);
+        if (source == null) {
+            source = expand(Paths.get(location), sortedDefines);
+            cache.put(key, source);
+        }
+        return source;
+    }
+
+    /**
+     * @return the key of a permutation, which is the same for the same defines in a different order
+     */
+    public static String getPermutationKey(String location, String... defines) {
+        StringBuilder key = new StringBuilder(location);
+        for (String define : sort(defines)) {
+            key.append('|').append(define);
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the number of cached permutations
+     */
+    public synchronized int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Forgets the expanded sources, for example after the shader files were edited.
+     */
+    public synchronized void clearCache() {
+        cache.clear();
+    }
+
+    private static String[] sort(String[] defines) {
+        String[] sorted = new String[defines.length];
+        for (int i = 0; i < defines.length; i++) {
+            sorted[i] = defines[i].trim();
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static String expand(Path location, String[] defines) throws IOException {
+        StringBuilder source = new StringBuilder();
+        include(location, source, new ArrayDeque<Path>());
+        StringBuilder defineLines = new StringBuilder();
+        for (String define : defines) {
+            defineLines.append("#define ").append(define).append('\n');
+        }
+        // The #version line must stay the first statement of the shader, so the defines go right after it
+        int versionStart = findVersion(source);
+        int insertAt = versionStart == -1 ? 0 : source.indexOf("\n", versionStart) + 1;
+        source.insert(insertAt, defineLines);
+        return source.toString();
+    }
+
+    private static void include(Path location, StringBuilder source, Deque<Path> includeStack) throws IOException {
+        Path normalized = location.toAbsolutePath().normalize();
+        if (includeStack.contains(normalized))
+            throw new IOException("Recursive #include of " + location + " via " + includeStack);
+        includeStack.push(normalized);
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(location, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.startsWith(INCLUDE)) {
+                String argument = trimmed.substring(INCLUDE.length()).trim();
+                if (argument.length() < 2 || argument.charAt(0) != '"' || argument.indexOf('"', 1) != argument.length() - 1)
+                    throw new IOException(location + ":" + lineNumber + ": expected #include \"file\" but got " + trimmed);
+                Path included = location.resolveSibling(argument.substring(1, argument.length() - 1));
+                include(included, source, includeStack);
+            } else {
+                if (trimmed.startsWith(VERSION) && includeStack.size() > 1)
+                    throw new IOException(location + ":" + lineNumber + ": #version is only allowed in the main shader file");
+                source.append(line).append('\n');
+            }
+        }
+        includeStack.pop();
+    }
+
+    private static int findVersion(StringBuilder source) {
+        int lineStart = 0;
+        while (lineStart < source.length()) {
+            int lineEnd = source.indexOf("\n", lineStart);
+            if (source.substring(lineStart, lineEnd).trim().startsWith(VERSION))
+                return lineStart;
+            lineStart = lineEnd + 1;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.shader;
+
+import utility.ShaderLoader;
+import utility.log.Level;
+import utility.log.Log;
+import utility.log.Logger;
+import utility.memory.BufferPool;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out shader programs by the content of their sources: loading the same pair of sources twice returns the same
+ * program, without compiling again. The key of a program is the SHA-256 hash of its sources, so an edited shader file
+ * automatically gets a new program.
+ * <p>
+ * If a cache directory is given and the driver supports it, the binaries of linked programs are written to that
+ * directory and loaded on the next start instead of compiling the sources. A binary that was made by a different
+ * driver, or that the driver rejects, is deleted and the program is compiled from source again.
+ */
+public class ShaderProgramCache {
+
+    private static final Logger log = Log.getLogger(ShaderProgramCache.class);
+    private static final int MAGIC = 0x47535043; // "GSPC"
+    private static final int VERSION = 1;
+
+    private final ShaderCompiler compiler;
+    private final Path directory;
+    private final Map<String, Integer> programs = new HashMap<>();
+    private int hitCount;
+    private int compileCount;
+    private int binaryLoadCount;
+    private int binaryRejectCount;
+
+    /**
+     * @param directory the directory to store program binaries in, or null to keep the programs in memory only
+     */
+    public ShaderProgramCache(ShaderCompiler compiler, Path directory) {
+        this.compiler = compiler;
+        this.directory = directory;
+    }
+
+    public ShaderProgramCache(ShaderCompiler compiler) {
+        this(compiler, null);
+    }
+
+    /**
+     * Loads a shader program from two source files and a set of defines, see
+     * {@link ShaderLoader#loadShaderSource(String, String...)} and
+     * {@link #getShaderProgram(CharSequence, CharSequence)}.
+     *
+     * @return the shader program or -1 if the files couldn't be read or the sources didn't compile
+     */
+    public int loadShaderPair(String vertexShaderLocation, String fragmentShaderLocation, String... defines) {
+        StringBuilder vertexShaderSource = ShaderLoader.loadShaderSource(vertexShaderLocation, defines);
+        StringBuilder fragmentShaderSource = ShaderLoader.loadShaderSource(fragmentShaderLocation, defines);
+        if (vertexShaderSource == null || fragmentShaderSource == null)
+            return -1;
+        return getShaderProgram(vertexShaderSource, fragmentShaderSource);
+    }
+
+    /**
+     * Returns the program of these sources: from memory if it was requested before, otherwise from a stored binary,
+     * otherwise by compiling the sources.
+     *
+     * @return the shader program or -1 if the sources didn't compile
+     */
+    public int getShaderProgram(CharSequence vertexShaderSource, CharSequence fragmentShaderSource) {
+        String key = getKey(vertexShaderSource, fragmentShaderSource);
+        Integer shaderProgram = programs.get(key);
+        if (shaderProgram != null) {
+            hitCount++;
+            return shaderProgram;
+        }
+        int program = loadBinary(key);
+        if (program == -1) {
+            program = compiler.compile(vertexShaderSource, fragmentShaderSource);
+            if (program == -1)
+                return -1;
+            compileCount++;
+            storeBinary(key, program);
+        }
+        programs.put(key, program);
+        return program;
+    }
+
+    /**
+     * @return the key under which the program of these sources is cached: a hexadecimal SHA-256 hash
+     */
+    public static String getKey(CharSequence vertexShaderSource, CharSequence fragmentShaderSource) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(vertexShaderSource)));
+        // GLSL sources can't contain a null character, so this separates the sources unambiguously
+        digest.update((byte) 0);
+        digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(fragmentShaderSource)));
+        StringBuilder key = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    public boolean contains(String key) {
+        return programs.containsKey(key);
+    }
+
+    /**
+     * @return the file the binary of a program is stored in, or null if there is no cache directory
+     */
+    public Path getBinaryPath(String key) {
+        return directory == null ? null : directory.resolve(key + ".bin");
+    }
+
+    /**
+     * Deletes the program of a key and its stored binary, the next request compiles the sources again.
+     */
+    public void invalidate(String key) {
+        Integer shaderProgram = programs.remove(key);
+        if (shaderProgram != null)
+            compiler.delete(shaderProgram);
+        deleteBinary(key);
+    }
+
+    /**
+     * Deletes all programs, the stored binaries are kept for the next start.
+     */
+    public void delete() {
+        for (int shaderProgram : programs.values()) {
+            compiler.delete(shaderProgram);
+        }
+        programs.clear();
+    }
+
+    /**
+     * @return the number of requests that were answered with a program in memory
+     */
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of programs that were compiled from source
+     */
+    public int getCompileCount() {
+        return compileCount;
+    }
+
+    /**
+     * @return the number of programs that were created from a stored binary
+     */
+    public int getBinaryLoadCount() {
+        return binaryLoadCount;
+    }
+
+    /**
+     * @return the number of stored binaries that were thrown away because of a different driver or a failed load
+     */
+    public int getBinaryRejectCount() {
+        return binaryRejectCount;
+    }
+
+    private int loadBinary(String key) {
+        String driver = compiler.getBinaryDriver();
+        if (directory == null || driver == null)
+            return -1;
+        ProgramBinary binary;
+        try (SeekableByteChannel channel = Files.newByteChannel(getBinaryPath(key))) {
+            binary = readBinary(channel, driver);
+        } catch (NoSuchFileException e) {
+            return -1;
+        } catch (IOException e) {
+            // A truncated or otherwise unreadable file is treated like a binary of another driver
+            binary = null;
+        }
+        int shaderProgram = binary == null ? -1 : compiler.loadBinary(binary);
+        if (shaderProgram == -1) {
+            binaryRejectCount++;
+            deleteBinary(key);
+            return -1;
+        }
+        binaryLoadCount++;
+        return shaderProgram;
+    }
+
+    private static ProgramBinary readBinary(SeekableByteChannel channel, String driver) throws IOException {
+        // Not buffered, so the position of the channel is the number of bytes read
+        DataInputStream input = new DataInputStream(Channels.newInputStream(channel));
+        if (input.readInt() != MAGIC || input.readInt() != VERSION || !input.readUTF().equals(driver))
+            return null;
+        int format = input.readInt();
+        int length = input.readInt();
+        // A corrupt length must neither allocate more than the file holds nor give the driver an empty binary, and the
+        // compiler copies the binary into a buffer of the pool
+        if (length <= 0 || length > BufferPool.MAX_SIZE || length > channel.size() - channel.position())
+            return null;
+        byte[] data = new byte[length];
+        input.readFully(data);
+        return new ProgramBinary(format, data);
+    }
+
+    private void storeBinary(String key, int shaderProgram) {
+        String driver = compiler.getBinaryDriver();
+        if (directory == null || driver == null)
+            return;
+        ProgramBinary binary = compiler.getBinary(shaderProgram);
+        if (binary == null)
+            return;
+        try {
+            Files.createDirectories(directory);
+            // Write to a temporary file first, so another process never reads a half-written binary
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+            try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(temporary))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeUTF(driver);
+                output.writeInt(binary.getFormat());
+                output.writeInt(binary.getData().length);
+                output.write(binary.getData());
+            }
+            Files.move(temporary, getBinaryPath(key), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // The program works fine without a stored binary, it will just be compiled again on the next start
+            log.log(Level.WARN, "Couldn't store the program binary: {}", e);
+        }
+    }
+
+    private void deleteBinary(String key) {
+        if (directory == null)
+            return;
+        try {
+            Files.deleteIfExists(getBinaryPath(key));
+        } catch (IOException e) {
+            log.log(Level.WARN, "Couldn't delete the rejected program binary: {}", e);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.sprite;
+
+import utility.gl.OpenGL;
+import utility.memory.BufferPool;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+
+/**
+ * Draws sprite batches with the fixed-function pipeline of a legacy OpenGL context: every batch is copied into one
+ * vertex buffer object and drawn with a single glDrawElements call. The index buffer never changes, it simply contains
+ * two triangles for every sprite.
+ * <p>
+ * Every batch binds the buffers and sets the client arrays and texture it needs, but nothing is unbound afterwards.
+ * With a {@link utility.gl.GLStateCache} only the first batch of a frame (and a change of texture) reaches the driver.
+ */
+public class GLSpriteRenderer implements SpriteRenderer {
+
+    /**
+     * The largest number of sprites of which the vertices can be addressed by unsigned short indices.
+     */
+    public static final int MAX_SPRITES = 65536 / SpriteBatch.VERTICES_PER_SPRITE;
+    private static final int INDICES_PER_SPRITE = 6;
+
+    private final OpenGL gl;
+    private final int capacity;
+    private final int vertexBuffer;
+    private final int indexBuffer;
+    private int drawCalls;
+
+    /**
+     * Creates the buffers, requires a current OpenGL context.
+     *
+     * @param maxSprites the largest batch that will be drawn, at most {@link #MAX_SPRITES}
+     */
+    public GLSpriteRenderer(OpenGL gl, int maxSprites) {
+        if (maxSprites <= 0 || maxSprites > MAX_SPRITES)
+            throw new IllegalArgumentException("The number of sprites must be between 1 and " + MAX_SPRITES + ": " + maxSprites);
+        this.gl = gl;
+        this.capacity = maxSprites * SpriteBatch.VERTICES_PER_SPRITE * SpriteBatch.VERTEX_FORMAT.getStride();
+        // The indices are only needed until they're uploaded, and can be larger than the stack of the thread
+        ShortBuffer indices = BufferPool.getDefault().acquireShorts(maxSprites * INDICES_PER_SPRITE);
+        for (int sprite = 0; sprite < maxSprites; sprite++) {
+            int first = sprite * SpriteBatch.VERTICES_PER_SPRITE;
+            indices.put((short) first).put((short) (first + 1)).put((short) (first + 2));
+            indices.put((short) first).put((short) (first + 2)).put((short) (first + 3));
+        }
+        indices.flip();
+        indexBuffer = gl.glGenBuffers();
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+        gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+        BufferPool.getDefault().release(indices);
+        vertexBuffer = gl.glGenBuffers();
+        gl.glBindBuffer(GL_ARRAY_BUFFER, vertexBuffer);
+        gl.glBufferData(GL_ARRAY_BUFFER, capacity, GL_STREAM_DRAW);
+    }
+
+    @Override
+    public void drawSprites(int texture, ByteBuffer vertices, int spriteCount) {
+        int stride = SpriteBatch.VERTEX_FORMAT.getStride();
+        gl.glBindBuffer(GL_ARRAY_BUFFER, vertexBuffer);
+        // Orphan the old storage, so OpenGL doesn't have to wait until the previous batch has been drawn
+        gl.glBufferData(GL_ARRAY_BUFFER, capacity, GL_STREAM_DRAW);
+        gl.glBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+        gl.glEnableClientState(GL_VERTEX_ARRAY);
+        gl.glEnableClientState(GL_COLOR_ARRAY);
+        gl.glVertexPointer(2, GL_FLOAT, stride, SpriteBatch.VERTEX_FORMAT.getOffset(0));
+        gl.glColorPointer(4, GL_UNSIGNED_BYTE, stride, SpriteBatch.VERTEX_FORMAT.getOffset(1));
+        if (texture != 0) {
+            gl.glEnable(GL_TEXTURE_2D);
+            gl.glBindTexture(GL_TEXTURE_2D, texture);
+            gl.glEnableClientState(GL_TEXTURE_COORD_ARRAY);
+            gl.glTexCoordPointer(2, GL_FLOAT, stride, SpriteBatch.VERTEX_FORMAT.getOffset(2));
+        } else {
+            gl.glDisable(GL_TEXTURE_2D);
+            gl.glDisableClientState(GL_TEXTURE_COORD_ARRAY);
+        }
+        gl.glDrawElements(GL_TRIANGLES, spriteCount * INDICES_PER_SPRITE, GL_UNSIGNED_SHORT, 0);
+        drawCalls++;
+    }
+
+    /**
+     * @return the number of glDrawElements calls since the renderer was created
+     */
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public void delete() {
+        gl.glDeleteBuffers(vertexBuffer);
+        gl.glDeleteBuffers(indexBuffer);
+    }
+}
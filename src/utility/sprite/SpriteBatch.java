@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.sprite;
+
+import org.lwjgl.BufferUtils;
+import utility.vertex.ComponentType;
+import utility.vertex.VertexAttribute;
+import utility.vertex.VertexFormat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Collects sprites (quads with a position, colour and texture coordinates per vertex) in a single off-heap buffer and
+ * hands them to a {@link SpriteRenderer} in as few batches as possible. A batch is only drawn when the texture changes,
+ * when the buffer is full, or at {@link #end()}, so thousands of sprites cost a handful of draw calls instead of a few
+ * OpenGL calls per vertex like glBegin/glEnd.
+ * <p>
+ * Usage: call {@link #begin()}, add sprites with {@link #draw(float, float, float, float)} or four calls to
+ * {@link #vertex(float, float, float, float)} each, and call {@link #end()}. A triangle can be drawn as a quad of which
+ * the last two vertices are the same.
+ */
+public class SpriteBatch {
+
+    /**
+     * The layout of a sprite vertex: a 2D position, an RGBA colour and texture coordinates.
+     */
+    public static final VertexFormat VERTEX_FORMAT = new VertexFormat(
+            new VertexAttribute("position", 0, 2, ComponentType.FLOAT),
+            new VertexAttribute("colour", 1, 4, ComponentType.UNSIGNED_BYTE),
+            new VertexAttribute("texture coordinate", 2, 2, ComponentType.FLOAT));
+    public static final int VERTICES_PER_SPRITE = 4;
+    private static final int STRIDE = VERTEX_FORMAT.getStride();
+    private static final int COLOUR_OFFSET = VERTEX_FORMAT.getOffset(1);
+    private static final int TEXTURE_COORDINATE_OFFSET = VERTEX_FORMAT.getOffset(2);
+
+    private final SpriteRenderer renderer;
+    private final int maxSprites;
+    private final ByteBuffer vertices;
+    private boolean drawing;
+    private int texture;
+    private byte red = (byte) 255, green = (byte) 255, blue = (byte) 255, alpha = (byte) 255;
+    // The number of complete sprites in the buffer and the number of vertices of the sprite that is being added
+    private int spriteCount;
+    private int vertexCount;
+    // Statistics of the last begin/end pair
+    private int flushCount;
+    private int spritesDrawn;
+
+    /**
+     * @param maxSprites the number of sprites that fit in the buffer, when it is full a batch is drawn
+     */
+    public SpriteBatch(SpriteRenderer renderer, int maxSprites) {
+        if (maxSprites <= 0)
+            throw new IllegalArgumentException("A sprite batch must hold at least one sprite");
+        this.renderer = renderer;
+        this.maxSprites = maxSprites;
+        this.vertices = BufferUtils.createByteBuffer(maxSprites * VERTICES_PER_SPRITE * STRIDE).order(ByteOrder.nativeOrder());
+    }
+
+    public void begin() {
+        if (drawing)
+            throw new IllegalStateException("SpriteBatch.end must be called before begin");
+        drawing = true;
+        flushCount = 0;
+        spritesDrawn = 0;
+    }
+
+    /**
+     * Draws the remaining sprites.
+     */
+    public void end() {
+        if (!drawing)
+            throw new IllegalStateException("SpriteBatch.begin must be called before end");
+        flush();
+        drawing = false;
+    }
+
+    /**
+     * Sets the texture of the following sprites. If it differs from the current texture, the sprites added so far are
+     * drawn first.
+     *
+     * @param texture the OpenGL texture, or 0 for untextured sprites
+     */
+    public void setTexture(int texture) {
+        if (texture != this.texture) {
+            flush();
+            this.texture = texture;
+        }
+    }
+
+    /**
+     * Sets the colour of the following vertices, the components range from 0 to 1.
+     */
+    public void setColour(float red, float green, float blue, float alpha) {
+        this.red = toByte(red);
+        this.green = toByte(green);
+        this.blue = toByte(blue);
+        this.alpha = toByte(alpha);
+    }
+
+    public void setColour(float red, float green, float blue) {
+        setColour(red, green, blue, 1);
+    }
+
+    /**
+     * Adds an untextured vertex. Every four vertices make up a sprite.
+     */
+    public void vertex(float x, float y) {
+        vertex(x, y, 0, 0);
+    }
+
+    /**
+     * Adds a vertex with the current colour. Every four vertices make up a sprite, given in clockwise or
+     * counter-clockwise order.
+     */
+    public void vertex(float x, float y, float u, float v) {
+        if (!drawing)
+            throw new IllegalStateException("SpriteBatch.begin must be called before drawing");
+        int index = (spriteCount * VERTICES_PER_SPRITE + vertexCount) * STRIDE;
+        vertices.putFloat(index, x);
+        vertices.putFloat(index + 4, y);
+        vertices.put(index + COLOUR_OFFSET, red);
+        vertices.put(index + COLOUR_OFFSET + 1, green);
+        vertices.put(index + COLOUR_OFFSET + 2, blue);
+        vertices.put(index + COLOUR_OFFSET + 3, alpha);
+        vertices.putFloat(index + TEXTURE_COORDINATE_OFFSET, u);
+        vertices.putFloat(index + TEXTURE_COORDINATE_OFFSET + 4, v);
+        if (++vertexCount == VERTICES_PER_SPRITE) {
+            vertexCount = 0;
+            if (++spriteCount == maxSprites)
+                flush();
+        }
+    }
+
+    /**
+     * Adds a rectangle covering the whole texture in the current colour.
+     */
+    public void draw(float x, float y, float width, float height) {
+        draw(x, y, width, height, 0, 0, 1, 1);
+    }
+
+    /**
+     * Adds a rectangle in the current colour. The first corner (x, y) gets the texture coordinates (u0, v0), the
+     * opposite corner (x + width, y + height) gets (u1, v1).
+     */
+    public void draw(float x, float y, float width, float height, float u0, float v0, float u1, float v1) {
+        vertex(x, y, u0, v0);
+        vertex(x + width, y, u1, v0);
+        vertex(x + width, y + height, u1, v1);
+        vertex(x, y + height, u0, v1);
+    }
+
+    /**
+     * Hands the complete sprites in the buffer to the renderer.
+     */
+    public void flush() {
+        if (vertexCount != 0)
+            throw new IllegalStateException("A sprite needs " + VERTICES_PER_SPRITE + " vertices, only got " + vertexCount);
+        if (spriteCount == 0)
+            return;
+        vertices.position(0).limit(spriteCount * VERTICES_PER_SPRITE * STRIDE);
+        renderer.drawSprites(texture, vertices, spriteCount);
+        vertices.clear();
+        spritesDrawn += spriteCount;
+        spriteCount = 0;
+        flushCount++;
+    }
+
+    /**
+     * @return the number of batches handed to the renderer since the last {@link #begin()}
+     */
+    public int getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * @return the number of sprites handed to the renderer since the last {@link #begin()}
+     */
+    public int getSpritesDrawn() {
+        return spritesDrawn;
+    }
+
+    public int getMaxSprites() {
+        return maxSprites;
+    }
+
+    private static byte toByte(float component) {
+        return (byte) Math.round(Math.max(0, Math.min(1, component)) * 255);
+    }
+}
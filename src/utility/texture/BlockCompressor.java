@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.texture;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compresses RGBA pixels into BC1 (DXT1) or BC3 (DXT5) blocks. The end points of every block are the corners of the
+ * bounding box of its colours, moved slightly inwards; that is not the best possible quality, but it is fast and it
+ * always produces the same output for the same pixels.
+ */
+public class BlockCompressor {
+
+    private BlockCompressor() {
+    }
+
+    /**
+     * @param pixels the RGBA pixels, row by row, from the position of the buffer
+     * @param format {@link TextureFormat#BC1} or {@link TextureFormat#BC3}
+     * @return the blocks, row by row; partial blocks at the right and bottom edges repeat the edge pixels
+     */
+    public static ByteBuffer compress(ByteBuffer pixels, int width, int height, TextureFormat format) {
+        if (format != TextureFormat.BC1 && format != TextureFormat.BC3)
+            throw new IllegalArgumentException(format + " is not a block compressed format");
+        boolean alpha = format == TextureFormat.BC3;
+        ByteBuffer blocks = ByteBuffer.allocate(format.getLevelSize(width, height)).order(ByteOrder.LITTLE_ENDIAN);
+        int[] block = new int[16 * 4];
+        for (int blockY = 0; blockY < height; blockY += 4) {
+            for (int blockX = 0; blockX < width; blockX += 4) {
+                for (int i = 0; i < 16; i++) {
+                    int x = Math.min(blockX + (i & 3), width - 1);
+                    int y = Math.min(blockY + (i >> 2), height - 1);
+                    int index = pixels.position() + (y * width + x) * 4;
+                    for (int component = 0; component < 4; component++) {
+                        block[i * 4 + component] = pixels.get(index + component) & 0xFF;
+                    }
+                }
+                if (alpha)
+                    putAlphaBlock(block, blocks);
+                putColourBlock(block, blocks);
+            }
+        }
+        blocks.flip();
+        return blocks;
+    }
+
+    private static void putColourBlock(int[] block, ByteBuffer blocks) {
+        int[] min = {255, 255, 255};
+        int[] max = {0, 0, 0};
+        for (int i = 0; i < 16; i++) {
+            for (int component = 0; component < 3; component++) {
+                min[component] = Math.min(min[component], block[i * 4 + component]);
+                max[component] = Math.max(max[component], block[i * 4 + component]);
+            }
+        }
+        // Moving the end points inwards by 1/16 of the range lowers the average error
+        for (int component = 0; component < 3; component++) {
+            int inset = (max[component] - min[component]) >> 4;
+            min[component] += inset;
+            max[component] -= inset;
+        }
+        int colour0 = toRGB565(max[0], max[1], max[2]);
+        int colour1 = toRGB565(min[0], min[1], min[2]);
+        if (colour0 < colour1) {
+            int swap = colour0;
+            colour0 = colour1;
+            colour1 = swap;
+        }
+        blocks.putShort((short) colour0).putShort((short) colour1);
+        if (colour0 == colour1) {
+            // A single colour; in BC1 this selects the three colour mode, in which index 0 still means colour0
+            blocks.putInt(0);
+            return;
+        }
+        // With colour0 > colour1, BC1 interpolates two more colours at 1/3 and 2/3
+        int[] palette = new int[4 * 3];
+        fromRGB565(colour0, palette, 0);
+        fromRGB565(colour1, palette, 3);
+        for (int component = 0; component < 3; component++) {
+            palette[6 + component] = (2 * palette[component] + palette[3 + component]) / 3;
+            palette[9 + component] = (palette[component] + 2 * palette[3 + component]) / 3;
+        }
+        int indices = 0;
+        for (int i = 0; i < 16; i++) {
+            int best = 0;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int entry = 0; entry < 4; entry++) {
+                int distance = 0;
+                for (int component = 0; component < 3; component++) {
+                    int difference = block[i * 4 + component] - palette[entry * 3 + component];
+                    distance += difference * difference;
+                }
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = entry;
+                }
+            }
+            indices |= best << (2 * i);
+        }
+        blocks.putInt(indices);
+    }
+
+    private static void putAlphaBlock(int[] block, ByteBuffer blocks) {
+        int min = 255;
+        int max = 0;
+        for (int i = 0; i < 16; i++) {
+            min = Math.min(min, block[i * 4 + 3]);
+            max = Math.max(max, block[i * 4 + 3]);
+        }
+        blocks.put((byte) max).put((byte) min);
+        long indices = 0;
+        if (max != min) {
+            // With alpha0 > alpha1, BC3 interpolates six more values between them
+            int[] palette = new int[8];
+            palette[0] = max;
+            palette[1] = min;
+            for (int entry = 2; entry < 8; entry++) {
+                palette[entry] = ((8 - entry) * max + (entry - 1) * min) / 7;
+            }
+            for (int i = 0; i < 16; i++) {
+                int best = 0;
+                int bestDistance = Integer.MAX_VALUE;
+                for (int entry = 0; entry < 8; entry++) {
+                    int distance = Math.abs(block[i * 4 + 3] - palette[entry]);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = entry;
+                    }
+                }
+                indices |= (long) best << (3 * i);
+            }
+        }
+        // 16 indices of 3 bits make 6 bytes
+        for (int i = 0; i < 6; i++) {
+            blocks.put((byte) (indices >> (8 * i)));
+        }
+    }
+
+    private static int toRGB565(int red, int green, int blue) {
+        return (red * 31 + 127) / 255 << 11 | (green * 63 + 127) / 255 << 5 | (blue * 31 + 127) / 255;
+    }
+
+    private static void fromRGB565(int colour, int[] destination, int offset) {
+        int red = colour >> 11 & 0x1F;
+        int green = colour >> 5 & 0x3F;
+        int blue = colour & 0x1F;
+        destination[offset] = red << 3 | red >> 2;
+        destination[offset + 1] = green << 2 | green >> 4;
+        destination[offset + 2] = blue << 3 | blue >> 2;
+    }
+}
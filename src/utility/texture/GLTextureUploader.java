@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.texture;
+
+import utility.gl.LWJGLOpenGL;
+import utility.gl.OpenGL;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+
+/**
+ * Uploads RGBA pixels or {@link TextureContainer}s into new OpenGL textures with nearest filtering, like the textures
+ * tutorial.
+ */
+public class GLTextureUploader implements TextureUploader {
+
+    private final OpenGL gl;
+
+    /**
+     * Creates the textures in the current OpenGL context.
+     */
+    public GLTextureUploader() {
+        this(new LWJGLOpenGL());
+    }
+
+    public GLTextureUploader(OpenGL gl) {
+        this.gl = gl;
+    }
+
+    @Override
+    public int upload(int width, int height, ByteBuffer pixels) {
+        // Create a texture ID
+        int texture = gl.glGenTextures();
+        // Bind the texture to the TEXTURE_2D slot (there can only be one bound texture at a time)
+        gl.glBindTexture(GL_TEXTURE_2D, texture);
+        // Magnification and minification filters
+        gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        // Hand the texture data from Java to OpenGL:
+        gl.glTexImage2D(GL_TEXTURE_2D, // Texture type (1D, 2D, 3D)
+                0, // Level, always set this to zero
+                GL_RGBA, // Internal format, RGBA works best
+                width, // Width of the texture in pixels
+                height, // Height of the texture in pixels
+                0, // Border, always set this to zero
+                GL_RGBA, // Texture format, the loader always decodes to RGBA
+                GL_UNSIGNED_BYTE, // Type of the texture data, this is always unsigned byte
+                pixels);
+        // Unbind the texture, so the next texture operation doesn't accidentally modify it
+        gl.glBindTexture(GL_TEXTURE_2D, 0);
+        return texture;
+    }
+
+    @Override
+    public int upload(TextureContainer container) {
+        TextureFormat format = container.getFormat();
+        int texture = gl.glGenTextures();
+        gl.glBindTexture(GL_TEXTURE_2D, texture);
+        gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, container.getLevelCount() > 1 ? GL_NEAREST_MIPMAP_LINEAR : GL_NEAREST);
+        // Without this, OpenGL considers a texture with fewer levels than down to 1x1 incomplete
+        gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, container.getLevelCount() - 1);
+        for (int level = 0; level < container.getLevelCount(); level++) {
+            // The data goes straight from the (mapped) buffer to OpenGL, it is never copied into a Java array
+            if (format.isCompressed()) {
+                gl.glCompressedTexImage2D(GL_TEXTURE_2D, level, format.getGLInternalFormat(),
+                        container.getWidth(level), container.getHeight(level), 0, container.getLevel(level));
+            } else {
+                gl.glTexImage2D(GL_TEXTURE_2D, level, format.getGLInternalFormat(),
+                        container.getWidth(level), container.getHeight(level), 0, GL_RGBA, GL_UNSIGNED_BYTE, container.getLevel(level));
+            }
+        }
+        gl.glBindTexture(GL_TEXTURE_2D, 0);
+        return texture;
+    }
+}
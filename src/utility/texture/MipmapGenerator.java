@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.texture;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Generates the mipmap levels of an RGBA image on the CPU. Every level is half the size of the previous one and is
+ * computed in two passes, first horizontally and then vertically; the rows of each pass are spread over all cores.
+ */
+public class MipmapGenerator {
+
+    /**
+     * The filter that decides how the pixels of a level are combined into the pixels of the next level.
+     */
+    public enum Filter {
+        /**
+         * Averages every 2x2 pixels. Fast, but a little blurry and prone to aliasing in fine patterns.
+         */
+        BOX(new float[]{0.5f, 0.5f}),
+        /**
+         * A sinc function windowed with a Kaiser window over 8x8 pixels. Keeps the next level sharper and aliases less
+         * than the box filter, at the price of 8 instead of 2 samples per pixel in each pass.
+         */
+        KAISER(createKaiserWeights(8, 4));
+
+        // The weights of the source pixels 2i - (length / 2 - 1) to 2i + length / 2 for destination pixel i
+        private final float[] weights;
+
+        Filter(float[] weights) {
+            this.weights = weights;
+        }
+    }
+
+    private MipmapGenerator() {
+    }
+
+    /**
+     * @return the number of levels down to 1x1, including the level of the image itself
+     */
+    public static int getLevelCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    /**
+     * Generates the complete chain of mipmap levels.
+     *
+     * @param pixels the RGBA pixels of the image, row by row, from the position of the buffer
+     * @return the levels, of which the first is a view of the given pixels
+     */
+    public static ByteBuffer[] generate(ByteBuffer pixels, int width, int height, Filter filter) {
+        ByteBuffer[] levels = new ByteBuffer[getLevelCount(width, height)];
+        levels[0] = pixels.slice();
+        levels[0].limit(4 * width * height);
+        for (int level = 1; level < levels.length; level++) {
+            levels[level] = downsample(levels[level - 1], Math.max(1, width >> (level - 1)), Math.max(1, height >> (level - 1)), filter);
+        }
+        return levels;
+    }
+
+    /**
+     * Computes a single level that is half the size of the given one (rounded down, but at least 1).
+     */
+    public static ByteBuffer downsample(final ByteBuffer pixels, final int width, final int height, Filter filter) {
+        final int halfWidth = Math.max(1, width / 2);
+        final int halfHeight = Math.max(1, height / 2);
+        // A dimension of 1 stays 1, then the pass over that dimension only has to copy
+        final float[] horizontalWeights = width == 1 ? new float[]{1} : filter.weights;
+        final float[] verticalWeights = height == 1 ? new float[]{1} : filter.weights;
+        final float[] horizontal = new float[4 * halfWidth * height];
+        final ByteBuffer half = ByteBuffer.allocate(4 * halfWidth * halfHeight);
+        IntStream.range(0, height).parallel().forEach(new IntConsumer() {
+            @Override
+            public void accept(int y) {
+                int firstTap = horizontalWeights.length / 2 - 1;
+                for (int x = 0; x < halfWidth; x++) {
+                    for (int component = 0; component < 4; component++) {
+                        float sum = 0;
+                        for (int tap = 0; tap < horizontalWeights.length; tap++) {
+                            int sourceX = clamp(2 * x - firstTap + tap, width);
+                            sum += horizontalWeights[tap] * (pixels.get(pixels.position() + (y * width + sourceX) * 4 + component) & 0xFF);
+                        }
+                        horizontal[(y * halfWidth + x) * 4 + component] = sum;
+                    }
+                }
+            }
+        });
+        IntStream.range(0, halfHeight).parallel().forEach(new IntConsumer() {
+            @Override
+            public void accept(int y) {
+                int firstTap = verticalWeights.length / 2 - 1;
+                for (int x = 0; x < halfWidth; x++) {
+                    for (int component = 0; component < 4; component++) {
+                        float sum = 0;
+                        for (int tap = 0; tap < verticalWeights.length; tap++) {
+                            int sourceY = clamp(2 * y - firstTap + tap, height);
+                            sum += verticalWeights[tap] * horizontal[(sourceY * halfWidth + x) * 4 + component];
+                        }
+                        // The negative lobes of the Kaiser filter can overshoot, so the result is clamped
+                        int value = Math.round(sum);
+                        half.put((y * halfWidth + x) * 4 + component, (byte) Math.max(0, Math.min(255, value)));
+                    }
+                }
+            }
+        });
+        return half;
+    }
+
+    private static int clamp(int coordinate, int size) {
+        return coordinate < 0 ? 0 : coordinate >= size ? size - 1 : coordinate;
+    }
+
+    /**
+     * Creates the weights of a 2:1 downsampling filter: sinc(d / 2) * kaiser(d / 2), where d is the distance between
+     * the centres of the source pixel and the destination pixel in source pixels, normalized to a sum of 1.
+     */
+    private static float[] createKaiserWeights(int taps, double beta) {
+        float[] weights = new float[taps];
+        double radius = taps / 4.0;
+        double total = 0;
+        double[] raw = new double[taps];
+        for (int tap = 0; tap < taps; tap++) {
+            double x = (tap - taps / 2 + 0.5) / 2;
+            double sinc = x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+            double ratio = x / radius;
+            double window = besselI0(beta * Math.sqrt(Math.max(0, 1 - ratio * ratio))) / besselI0(beta);
+            raw[tap] = sinc * window;
+            total += raw[tap];
+        }
+        for (int tap = 0; tap < taps; tap++) {
+            weights[tap] = (float) (raw[tap] / total);
+        }
+        return weights;
+    }
+
+    /**
+     * The modified Bessel function of the first kind of order 0, used by the Kaiser window.
+     */
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 25; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+        }
+        return sum;
+    }
+}
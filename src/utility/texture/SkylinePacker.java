@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.texture;
+
+import java.util.Arrays;
+
+/**
+ * Packs rectangles into a fixed-size page with the skyline bottom-left algorithm. The packer only remembers the top
+ * edge (the "skyline") of everything placed so far, as a list of horizontal segments. A new rectangle goes where its
+ * top ends up lowest, on ties where it wastes the least space underneath it.
+ */
+public class SkylinePacker {
+
+    private final int width;
+    private final int height;
+    // The segments of the skyline from left to right: segment i starts at x[i], is width[i] wide and y[i] high
+    private int[] segmentX;
+    private int[] segmentY;
+    private int[] segmentWidth;
+    private int segmentCount;
+    private long usedArea;
+    private int usedHeight;
+
+    public SkylinePacker(int width, int height) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("The page must have a size: " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        segmentX = new int[16];
+        segmentY = new int[16];
+        segmentWidth = new int[16];
+        segmentWidth[0] = width;
+        segmentCount = 1;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Finds a place for a rectangle and marks it as used.
+     *
+     * @param position receives the x and y coordinates of the upper-left corner
+     * @return false if the rectangle doesn't fit anymore
+     */
+    public boolean pack(int rectangleWidth, int rectangleHeight, int[] position) {
+        int bestSegment = -1;
+        int bestY = Integer.MAX_VALUE;
+        long bestWaste = Long.MAX_VALUE;
+        for (int segment = 0; segment < segmentCount; segment++) {
+            int x = segmentX[segment];
+            if (x + rectangleWidth > width)
+                break;
+            // The rectangle rests on the highest segment below it
+            int y = 0;
+            int right = x + rectangleWidth;
+            for (int covered = segment; covered < segmentCount && segmentX[covered] < right; covered++) {
+                y = Math.max(y, segmentY[covered]);
+            }
+            if (y + rectangleHeight > height)
+                continue;
+            long waste = 0;
+            for (int covered = segment; covered < segmentCount && segmentX[covered] < right; covered++) {
+                int coveredWidth = Math.min(right, segmentX[covered] + segmentWidth[covered]) - segmentX[covered];
+                waste += (long) coveredWidth * (y - segmentY[covered]);
+            }
+            if (y + rectangleHeight < bestY || (y + rectangleHeight == bestY && waste < bestWaste)) {
+                bestSegment = segment;
+                bestY = y + rectangleHeight;
+                bestWaste = waste;
+            }
+        }
+        if (bestSegment == -1)
+            return false;
+        position[0] = segmentX[bestSegment];
+        position[1] = bestY - rectangleHeight;
+        addSegment(bestSegment, position[0], bestY, rectangleWidth);
+        usedArea += (long) rectangleWidth * rectangleHeight;
+        usedHeight = Math.max(usedHeight, bestY);
+        return true;
+    }
+
+    /**
+     * @return the area of all packed rectangles divided by the area of the page up to the highest rectangle
+     */
+    public float getEfficiency() {
+        return usedHeight == 0 ? 0 : (float) usedArea / ((long) width * usedHeight);
+    }
+
+    /**
+     * @return the y coordinate of the bottom of the lowest rectangle
+     */
+    public int getUsedHeight() {
+        return usedHeight;
+    }
+
+    /**
+     * Replaces the skyline from x to x + newWidth by a single segment at height y.
+     */
+    private void addSegment(int index, int x, int y, int newWidth) {
+        int right = x + newWidth;
+        // Find the segments that are completely covered, and cut the one that is partially covered
+        int end = index;
+        while (end < segmentCount && segmentX[end] + segmentWidth[end] <= right) {
+            end++;
+        }
+        if (end < segmentCount && segmentX[end] < right) {
+            segmentWidth[end] -= right - segmentX[end];
+            segmentX[end] = right;
+        }
+        // Segments index to end - 1 are replaced by the new one
+        int removed = end - index;
+        if (removed == 0) {
+            ensureCapacity(segmentCount + 1);
+            System.arraycopy(segmentX, index, segmentX, index + 1, segmentCount - index);
+            System.arraycopy(segmentY, index, segmentY, index + 1, segmentCount - index);
+            System.arraycopy(segmentWidth, index, segmentWidth, index + 1, segmentCount - index);
+            segmentCount++;
+        } else if (removed > 1) {
+            System.arraycopy(segmentX, end, segmentX, index + 1, segmentCount - end);
+            System.arraycopy(segmentY, end, segmentY, index + 1, segmentCount - end);
+            System.arraycopy(segmentWidth, end, segmentWidth, index + 1, segmentCount - end);
+            segmentCount -= removed - 1;
+        }
+        segmentX[index] = x;
+        segmentY[index] = y;
+        segmentWidth[index] = newWidth;
+        // Merge with neighbours of the same height, which keeps the skyline short
+        if (index + 1 < segmentCount && segmentY[index + 1] == y)
+            mergeWithNext(index);
+        if (index > 0 && segmentY[index - 1] == y)
+            mergeWithNext(index - 1);
+    }
+
+    private void mergeWithNext(int index) {
+        segmentWidth[index] += segmentWidth[index + 1];
+        System.arraycopy(segmentX, index + 2, segmentX, index + 1, segmentCount - index - 2);
+        System.arraycopy(segmentY, index + 2, segmentY, index + 1, segmentCount - index - 2);
+        System.arraycopy(segmentWidth, index + 2, segmentWidth, index + 1, segmentCount - index - 2);
+        segmentCount--;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > segmentX.length) {
+            segmentX = Arrays.copyOf(segmentX, capacity * 2);
+            segmentY = Arrays.copyOf(segmentY, capacity * 2);
+            segmentWidth = Arrays.copyOf(segmentWidth, capacity * 2);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.texture;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs many small images into a single page, so they can all be drawn with one texture bind: a sprite of image i
+ * simply uses the texture coordinates {@link #getU0(int)} to {@link #getV1(int)} of the page instead of 0 to 1.
+ * <p>
+ * Every image gets a border of its own edge pixels ("padding"). Without it, the mipmap filter and linear filtering
+ * would mix the edges of neighbouring images.
+ * <p>
+ * Usage: {@link #add(ByteBuffer, int, int)} the decoded images, {@link #build(MipmapGenerator.Filter)} the page and
+ * upload {@link #toContainer()}.
+ */
+public class TextureAtlas {
+
+    private final int pageWidth;
+    private final int pageHeight;
+    private final int padding;
+    private final List<Image> images = new ArrayList<>();
+    private ByteBuffer[] levels;
+    private float[] textureCoordinates;
+    private float efficiency;
+
+    /**
+     * @param padding the number of pixels repeated around every image, at least the number of mipmap levels that
+     *                should stay clean
+     */
+    public TextureAtlas(int pageWidth, int pageHeight, int padding) {
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.padding = padding;
+    }
+
+    /**
+     * Adds an image to the atlas, before it is built.
+     *
+     * @param pixels the RGBA pixels of the image, row by row, from the position of the buffer; read during
+     *               {@link #build(MipmapGenerator.Filter)}
+     * @return the index of the image in the texture coordinate table
+     */
+    public int add(ByteBuffer pixels, int width, int height) {
+        if (levels != null)
+            throw new IllegalStateException("The atlas has already been built");
+        images.add(new Image(images.size(), pixels.slice(), width, height));
+        return images.size() - 1;
+    }
+
+    /**
+     * Packs the images, copies them into the page and generates its mipmap levels.
+     *
+     * @param mipmapFilter the filter for the mipmap levels, or null to create only the page itself
+     * @throws IllegalStateException if the images don't fit into the page
+     */
+    public void build(MipmapGenerator.Filter mipmapFilter) {
+        SkylinePacker packer = new SkylinePacker(pageWidth, pageHeight);
+        // Packing the highest images first leaves the fewest holes in the skyline
+        Image[] sorted = images.toArray(new Image[images.size()]);
+        Arrays.sort(sorted, new Comparator<Image>() {
+            @Override
+            public int compare(Image a, Image b) {
+                return a.height != b.height ? b.height - a.height : b.width - a.width;
+            }
+        });
+        ByteBuffer page = ByteBuffer.allocate(4 * pageWidth * pageHeight);
+        textureCoordinates = new float[4 * images.size()];
+        int[] position = new int[2];
+        for (Image image : sorted) {
+            if (!packer.pack(image.width + 2 * padding, image.height + 2 * padding, position))
+                throw new IllegalStateException("Image " + image.index + " (" + image.width + "x" + image.height
+                        + ") doesn't fit into the " + pageWidth + "x" + pageHeight + " page anymore");
+            copy(image, page, position[0], position[1]);
+            int x = position[0] + padding;
+            int y = position[1] + padding;
+            textureCoordinates[4 * image.index] = (float) x / pageWidth;
+            textureCoordinates[4 * image.index + 1] = (float) y / pageHeight;
+            textureCoordinates[4 * image.index + 2] = (float) (x + image.width) / pageWidth;
+            textureCoordinates[4 * image.index + 3] = (float) (y + image.height) / pageHeight;
+        }
+        efficiency = packer.getEfficiency();
+        if (mipmapFilter != null) {
+            levels = MipmapGenerator.generate(page, pageWidth, pageHeight, mipmapFilter);
+        } else {
+            levels = new ByteBuffer[]{page};
+        }
+    }
+
+    /**
+     * @return the page and its mipmap levels as an uncompressed texture
+     */
+    public TextureContainer toContainer() {
+        return new TextureContainer(TextureFormat.RGBA8, pageWidth, pageHeight, getLevels());
+    }
+
+    /**
+     * @return the RGBA pixels of the page followed by its mipmap levels
+     */
+    public ByteBuffer[] getLevels() {
+        checkBuilt();
+        ByteBuffer[] views = new ByteBuffer[levels.length];
+        for (int level = 0; level < levels.length; level++) {
+            views[level] = levels[level].duplicate();
+        }
+        return views;
+    }
+
+    /**
+     * @return the texture coordinates of all images: u0, v0, u1, v1 for every image, in the order they were added
+     */
+    public float[] getTextureCoordinates() {
+        checkBuilt();
+        return textureCoordinates.clone();
+    }
+
+    public float getU0(int image) {
+        return textureCoordinates[4 * image];
+    }
+
+    public float getV0(int image) {
+        return textureCoordinates[4 * image + 1];
+    }
+
+    public float getU1(int image) {
+        return textureCoordinates[4 * image + 2];
+    }
+
+    public float getV1(int image) {
+        return textureCoordinates[4 * image + 3];
+    }
+
+    /**
+     * @return the area of the images including their padding divided by the used area of the page
+     */
+    public float getEfficiency() {
+        return efficiency;
+    }
+
+    public int getImageCount() {
+        return images.size();
+    }
+
+    /**
+     * Copies an image and its padding into the page; the padding repeats the edge pixels of the image.
+     */
+    private void copy(Image image, ByteBuffer page, int left, int top) {
+        for (int y = 0; y < image.height + 2 * padding; y++) {
+            int sourceY = Math.max(0, Math.min(image.height - 1, y - padding));
+            for (int x = 0; x < image.width + 2 * padding; x++) {
+                int sourceX = Math.max(0, Math.min(image.width - 1, x - padding));
+                page.putInt(((top + y) * pageWidth + left + x) * 4, image.pixels.getInt((sourceY * image.width + sourceX) * 4));
+            }
+        }
+    }
+
+    private void checkBuilt() {
+        if (levels == null)
+            throw new IllegalStateException("The atlas hasn't been built yet");
+    }
+
+    private static class Image {
+
+        private final int index;
+        private final ByteBuffer pixels;
+        private final int width;
+        private final int height;
+
+        private Image(int index, ByteBuffer pixels, int width, int height) {
+            this.index = index;
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.texture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A texture that is ready to be handed to OpenGL: a pixel format and a chain of mipmap levels, as written by the
+ * {@link TextureConverter}. Loading one is nothing more than mapping the file into memory, the levels are views of the
+ * mapped file that go straight to glTexImage2D or glCompressedTexImage2D.
+ * <p>
+ * The file layout, all integers little-endian:
+ * <pre>
+ * int    magic       "LTEX"
+ * int    version     1
+ * int    format      see {@link TextureFormat#getID()}
+ * int    width       of level 0, in pixels
+ * int    height      of level 0, in pixels
+ * int    levelCount
+ * levelCount times:
+ *   int  width, height, offset, size
+ * the data of every level, starting at its offset, which is a multiple of 16
+ * </pre>
+ */
+public class TextureContainer {
+
+    public static final String FILE_EXTENSION = ".ltex";
+    private static final int MAGIC = 'L' | 'T' << 8 | 'E' << 16 | 'X' << 24;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int LEVEL_ENTRY_SIZE = 16;
+    private static final int ALIGNMENT = 16;
+
+    private final TextureFormat format;
+    private final int width;
+    private final int height;
+    private final ByteBuffer[] levels;
+
+    /**
+     * @param levels the data of the mipmap levels, each level half the size of the previous one (rounded down, but at
+     *               least 1), from the position to the limit of the buffer
+     */
+    public TextureContainer(TextureFormat format, int width, int height, ByteBuffer... levels) {
+        if (width <= 0 || height <= 0 || levels.length == 0)
+            throw new IllegalArgumentException("A texture needs a size and at least one level");
+        for (int level = 0; level < levels.length; level++) {
+            int expected = format.getLevelSize(Math.max(1, width >> level), Math.max(1, height >> level));
+            if (levels[level].remaining() != expected)
+                throw new IllegalArgumentException("Level " + level + " has " + levels[level].remaining() + " bytes instead of " + expected);
+        }
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.levels = levels.clone();
+    }
+
+    public TextureFormat getFormat() {
+        return format;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public int getWidth(int level) {
+        return Math.max(1, width >> level);
+    }
+
+    public int getHeight(int level) {
+        return Math.max(1, height >> level);
+    }
+
+    /**
+     * @return a view of the data of a mipmap level
+     */
+    public ByteBuffer getLevel(int level) {
+        return levels[level].duplicate();
+    }
+
+    /**
+     * Maps a container file into memory. The file stays mapped until the returned container is garbage collected.
+     */
+    public static TextureContainer map(Path location) throws IOException {
+        try (FileChannel channel = FileChannel.open(location, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(data);
+        }
+    }
+
+    /**
+     * Reads a container from the position to the limit of a buffer. The levels of the container are views of the
+     * buffer, no data is copied.
+     */
+    public static TextureContainer read(ByteBuffer data) throws IOException {
+        ByteBuffer buffer = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a texture container");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported texture container version " + buffer.getInt(4));
+        TextureFormat format;
+        try {
+            format = TextureFormat.fromID(buffer.getInt(8));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        int width = buffer.getInt(12);
+        int height = buffer.getInt(16);
+        int levelCount = buffer.getInt(20);
+        if (levelCount <= 0 || levelCount > 32 || buffer.remaining() < HEADER_SIZE + levelCount * LEVEL_ENTRY_SIZE)
+            throw new IOException("Invalid number of levels " + levelCount);
+        ByteBuffer[] levels = new ByteBuffer[levelCount];
+        for (int level = 0; level < levelCount; level++) {
+            int entry = HEADER_SIZE + level * LEVEL_ENTRY_SIZE;
+            int offset = buffer.getInt(entry + 8);
+            int size = buffer.getInt(entry + 12);
+            if (offset < 0 || size < 0 || offset > buffer.capacity() - size)
+                throw new IOException("Level " + level + " lies outside the file");
+            ByteBuffer levelData = buffer.duplicate();
+            levelData.limit(offset + size).position(offset);
+            levels[level] = levelData.slice();
+        }
+        try {
+            return new TextureContainer(format, width, height, levels);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * @return the number of bytes the container file takes up
+     */
+    public int getFileSize() {
+        int size = getDataStart();
+        for (ByteBuffer level : levels) {
+            size = align(size) + level.remaining();
+        }
+        return size;
+    }
+
+    /**
+     * Writes the container in the file layout into a buffer, starting at its position.
+     */
+    public void write(ByteBuffer destination) {
+        ByteBuffer buffer = destination.slice().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(format.getID()).putInt(width).putInt(height).putInt(levels.length);
+        int offset = getDataStart();
+        for (int level = 0; level < levels.length; level++) {
+            offset = align(offset);
+            buffer.putInt(getWidth(level)).putInt(getHeight(level)).putInt(offset).putInt(levels[level].remaining());
+            offset += levels[level].remaining();
+        }
+        for (ByteBuffer level : levels) {
+            // Zero the padding, so the same texture always produces the same file
+            while (buffer.position() != align(buffer.position())) {
+                buffer.put((byte) 0);
+            }
+            buffer.put(level.duplicate());
+        }
+        destination.position(destination.position() + buffer.position());
+    }
+
+    /**
+     * Writes the container to a file.
+     */
+    public void write(Path location) throws IOException {
+        try (FileChannel channel = FileChannel.open(location, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer data = ByteBuffer.allocate(getFileSize());
+            write(data);
+            data.flip();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+
+    private int getDataStart() {
+        return HEADER_SIZE + levels.length * LEVEL_ENTRY_SIZE;
+    }
+
+    private static int align(int offset) {
+        return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
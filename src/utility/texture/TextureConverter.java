@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.texture;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+
+/**
+ * Converts PNG images into {@link TextureContainer} files ahead of time, so the program only has to map them into
+ * memory instead of decoding them on every start. Run it from the project directory:
+ * <pre>
+ * java utility.texture.TextureConverter res/texture.png res/texture.ltex [rgba8|bc1|bc3] [box|kaiser|nomipmaps]
+ * </pre>
+ */
+public class TextureConverter {
+
+    /**
+     * Builds a container from RGBA pixels.
+     *
+     * @param pixels        the RGBA pixels, row by row, from the position of the buffer
+     * @param mipmapFilter  the filter for the chain of mipmap levels down to 1x1, or null to store only the image itself
+     */
+    public static TextureContainer convert(ByteBuffer pixels, int width, int height, TextureFormat format, MipmapGenerator.Filter mipmapFilter) {
+        ByteBuffer[] levels;
+        if (mipmapFilter != null) {
+            levels = MipmapGenerator.generate(pixels, width, height, mipmapFilter);
+        } else {
+            levels = new ByteBuffer[]{pixels.slice()};
+            levels[0].limit(4 * width * height);
+        }
+        if (format.isCompressed()) {
+            for (int level = 0; level < levels.length; level++) {
+                levels[level] = BlockCompressor.compress(levels[level], Math.max(1, width >> level), Math.max(1, height >> level), format);
+            }
+        }
+        return new TextureContainer(format, width, height, levels);
+    }
+
+    /**
+     * Decodes a PNG file and builds a container from it.
+     */
+    public static TextureContainer convert(String pngLocation, TextureFormat format, MipmapGenerator.Filter mipmapFilter) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(pngLocation))) {
+            PNGDecoder decoder = new PNGDecoder(inputStream);
+            ByteBuffer pixels = ByteBuffer.allocate(4 * decoder.getWidth() * decoder.getHeight());
+            decoder.decode(pixels, 4 * decoder.getWidth(), PNGDecoder.Format.RGBA);
+            pixels.flip();
+            return convert(pixels, decoder.getWidth(), decoder.getHeight(), format, mipmapFilter);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: TextureConverter <input.png> <output" + TextureContainer.FILE_EXTENSION + "> [rgba8|bc1|bc3] [box|kaiser|nomipmaps]");
+            System.exit(1);
+        }
+        TextureFormat format = args.length > 2 ? TextureFormat.valueOf(args[2].toUpperCase()) : TextureFormat.RGBA8;
+        MipmapGenerator.Filter mipmapFilter = MipmapGenerator.Filter.BOX;
+        if (args.length > 3)
+            mipmapFilter = args[3].equalsIgnoreCase("nomipmaps") ? null : MipmapGenerator.Filter.valueOf(args[3].toUpperCase());
+        TextureContainer container = convert(args[0], format, mipmapFilter);
+        container.write(Paths.get(args[1]));
+        System.out.println(args[0] + " -> " + args[1] + ": " + format + ", " + container.getLevelCount() + " levels, "
+                + container.getFileSize() + " bytes");
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.texture;
+
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGB_S3TC_DXT1_EXT;
+import static org.lwjgl.opengl.GL11.GL_RGBA8;
+
+/**
+ * The pixel formats a {@link TextureContainer} can store. The compressed formats store blocks of 4x4 pixels, which the
+ * graphics card decompresses on the fly, so they stay compressed in video memory as well.
+ */
+public enum TextureFormat {
+
+    /**
+     * Uncompressed, 4 bytes per pixel.
+     */
+    RGBA8(0, 1, 4, GL_RGBA8, false),
+    /**
+     * DXT1: 8 bytes per 4x4 block, colour only, the alpha channel is dropped.
+     */
+    BC1(1, 4, 8, GL_COMPRESSED_RGB_S3TC_DXT1_EXT, true),
+    /**
+     * DXT5: 16 bytes per 4x4 block, an interpolated alpha block followed by a BC1 colour block.
+     */
+    BC3(2, 4, 16, GL_COMPRESSED_RGBA_S3TC_DXT5_EXT, true);
+
+    private final int id;
+    private final int blockSize;
+    private final int blockBytes;
+    private final int glInternalFormat;
+    private final boolean compressed;
+
+    TextureFormat(int id, int blockSize, int blockBytes, int glInternalFormat, boolean compressed) {
+        this.id = id;
+        this.blockSize = blockSize;
+        this.blockBytes = blockBytes;
+        this.glInternalFormat = glInternalFormat;
+        this.compressed = compressed;
+    }
+
+    /**
+     * @return the number that identifies this format in a container file
+     */
+    public int getID() {
+        return id;
+    }
+
+    public int getGLInternalFormat() {
+        return glInternalFormat;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @return the number of bytes a mipmap level of this size takes up
+     */
+    public int getLevelSize(int width, int height) {
+        int blocksWide = (width + blockSize - 1) / blockSize;
+        int blocksHigh = (height + blockSize - 1) / blockSize;
+        return blocksWide * blocksHigh * blockBytes;
+    }
+
+    public static TextureFormat fromID(int id) {
+        for (TextureFormat format : values()) {
+            if (format.id == id)
+                return format;
+        }
+        throw new IllegalArgumentException("Unknown texture format " + id);
+    }
+}
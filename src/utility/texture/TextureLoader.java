@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.texture;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import utility.log.Level;
+import utility.log.Log;
+import utility.log.Logger;
+import utility.memory.BufferPool;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads textures in the background. PNG images are decoded by a pool of worker threads into buffers from a
+ * {@link BufferPool}, {@link TextureContainer} files are mapped into memory. Only the uploads happen on the OpenGL
+ * thread, a few per frame, within a time budget. This way the set-up time depends on the number of cores instead of the
+ * number of textures, and a long list of textures doesn't make a single frame stutter.
+ * <p>
+ * Usage: call {@link #load(String)} for every texture during set-up, and {@link #upload(long)} once per frame on the
+ * OpenGL thread. A texture can be drawn once {@link Texture#isLoaded()} returns true.
+ */
+public class TextureLoader {
+
+    private static final Logger log = Log.getLogger(TextureLoader.class);
+
+    private final TextureUploader uploader;
+    private final BufferPool bufferPool = new BufferPool();
+    private final ExecutorService workers;
+    // Decoded images waiting for the OpenGL thread
+    private final Queue<DecodedImage> decodedImages = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * @param threadCount the number of worker threads that decode images
+     */
+    public TextureLoader(TextureUploader uploader, int threadCount) {
+        this.uploader = uploader;
+        this.workers = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "TextureLoader-" + threadNumber.incrementAndGet());
+                // The workers must not keep the program running after the window has been closed
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Creates a loader with a worker thread for every core.
+     */
+    public TextureLoader(TextureUploader uploader) {
+        this(uploader, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Starts decoding a PNG file on a worker thread. Files ending in {@link TextureContainer#FILE_EXTENSION} are
+     * mapped into memory instead of decoded.
+     *
+     * @return the texture, which gets its ID once it has been uploaded by {@link #upload(long)}
+     */
+    public Texture load(final String location) {
+        final Texture texture = new Texture(location);
+        pendingCount.incrementAndGet();
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (location.endsWith(TextureContainer.FILE_EXTENSION)) {
+                        decodedImages.add(map(texture));
+                    } else {
+                        decodedImages.add(decode(texture));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.log(Level.ERROR, "Couldn't load the texture: {}", e);
+                    texture.setError(e);
+                    pendingCount.decrementAndGet();
+                }
+            }
+        });
+        return texture;
+    }
+
+    /**
+     * Uploads decoded images until the budget is used up. At least one image is uploaded if one is waiting, so loading
+     * always makes progress. Must be called on the thread that owns the OpenGL context.
+     *
+     * @param budgetNanos the time that may be spent on uploading, in nanoseconds
+     * @return the number of uploaded textures
+     */
+    public int upload(long budgetNanos) {
+        long start = System.nanoTime();
+        int uploadCount = 0;
+        DecodedImage image;
+        while ((uploadCount == 0 || System.nanoTime() - start < budgetNanos) && (image = decodedImages.poll()) != null) {
+            try {
+                if (image.container != null) {
+                    image.texture.setID(uploader.upload(image.container));
+                } else {
+                    image.texture.setID(uploader.upload(image.width, image.height, image.pixels));
+                }
+            } finally {
+                if (image.pixels != null)
+                    bufferPool.release(image.pixels);
+                pendingCount.decrementAndGet();
+            }
+            uploadCount++;
+        }
+        return uploadCount;
+    }
+
+    /**
+     * @return the number of textures that are still being decoded or waiting to be uploaded
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Stops the worker threads. Textures that haven't been uploaded yet won't be.
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+        DecodedImage image;
+        while ((image = decodedImages.poll()) != null) {
+            if (image.pixels != null)
+                bufferPool.release(image.pixels);
+        }
+    }
+
+    private DecodedImage decode(Texture texture) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(texture.getLocation()))) {
+            PNGDecoder decoder = new PNGDecoder(inputStream);
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            ByteBuffer pixels = bufferPool.acquire(4 * width * height);
+            try {
+                decoder.decode(pixels, 4 * width, PNGDecoder.Format.RGBA);
+            } catch (IOException | RuntimeException e) {
+                bufferPool.release(pixels);
+                throw e;
+            }
+            pixels.flip();
+            texture.setSize(width, height);
+            return new DecodedImage(texture, width, height, pixels, null);
+        }
+    }
+
+    private DecodedImage map(Texture texture) throws IOException {
+        TextureContainer container = TextureContainer.map(Paths.get(texture.getLocation()));
+        texture.setSize(container.getWidth(0), container.getHeight(0));
+        return new DecodedImage(texture, container.getWidth(0), container.getHeight(0), null, container);
+    }
+
+    private static class DecodedImage {
+
+        private final Texture texture;
+        private final int width;
+        private final int height;
+        // Either pooled pixels that were decoded from a PNG file, or a mapped container
+        private final ByteBuffer pixels;
+        private final TextureContainer container;
+
+        private DecodedImage(Texture texture, int width, int height, ByteBuffer pixels, TextureContainer container) {
+            this.texture = texture;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+            this.container = container;
+        }
+    }
+}
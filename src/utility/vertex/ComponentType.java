@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.vertex;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL30.GL_HALF_FLOAT;
+
+/**
+ * The data type of the components of a {@link VertexAttribute}, together with the conversion from float.
+ */
+public enum ComponentType {
+
+    /**
+     * 32-bit floating point.
+     */
+    FLOAT(GL_FLOAT, 4, false) {
+        @Override
+        void write(ByteBuffer buffer, int index, float value) {
+            buffer.putFloat(index, value);
+        }
+    },
+    /**
+     * 16-bit floating point, half the size of a float with about three significant digits.
+     */
+    HALF_FLOAT(GL_HALF_FLOAT, 2, false) {
+        @Override
+        void write(ByteBuffer buffer, int index, float value) {
+            buffer.putShort(index, toHalfFloat(value));
+        }
+    },
+    /**
+     * Unsigned byte that is normalized to 0..1 by OpenGL, used for colours.
+     */
+    UNSIGNED_BYTE(GL_UNSIGNED_BYTE, 1, true) {
+        @Override
+        void write(ByteBuffer buffer, int index, float value) {
+            buffer.put(index, (byte) Math.round(Math.max(0, Math.min(1, value)) * 255));
+        }
+    },
+    /**
+     * Signed byte that is normalized to -1..1 by OpenGL, used for normals.
+     */
+    BYTE(GL_BYTE, 1, true) {
+        @Override
+        void write(ByteBuffer buffer, int index, float value) {
+            buffer.put(index, (byte) Math.round(Math.max(-1, Math.min(1, value)) * 127));
+        }
+    };
+
+    private final int glType;
+    private final int size;
+    private final boolean normalized;
+
+    ComponentType(int glType, int size, boolean normalized) {
+        this.glType = glType;
+        this.size = size;
+        this.normalized = normalized;
+    }
+
+    /**
+     * @return the type as passed to glVertexAttribPointer, for example GL_FLOAT
+     */
+    public int getGLType() {
+        return glType;
+    }
+
+    /**
+     * @return the size of one component in bytes
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return true if OpenGL has to map the integer values to the -1..1 or 0..1 range
+     */
+    public boolean isNormalized() {
+        return normalized;
+    }
+
+    /**
+     * Writes a component at an absolute byte index, converting it to this type.
+     */
+    abstract void write(ByteBuffer buffer, int index, float value);
+
+    /**
+     * Converts a float to the bits of an IEEE 754 half-precision float, rounding to the nearest value. Values that are
+     * too large become infinity, values that are too small become (signed) zero or a denormal.
+     */
+    public static short toHalfFloat(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xff;
+        int mantissa = bits & 0x7fffff;
+        if (exponent == 0xff) {
+            // Infinity or NaN (keep NaN a NaN)
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1f) {
+            // Too large: infinity
+            return (short) (sign | 0x7c00);
+        }
+        if (halfExponent <= 0) {
+            // Too small for a normal half float: a denormal or zero
+            if (halfExponent < -10)
+                return (short) sign;
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int halfMantissa = mantissa >> shift;
+            // Round to nearest
+            if ((mantissa >> (shift - 1) & 1) != 0)
+                halfMantissa++;
+            return (short) (sign | halfMantissa);
+        }
+        int half = sign | halfExponent << 10 | mantissa >> 13;
+        // Round to nearest, a carry into the exponent is correct (it may even round up to infinity)
+        if ((mantissa & 0x1000) != 0)
+            half++;
+        return (short) half;
+    }
+}
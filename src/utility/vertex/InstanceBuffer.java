@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.vertex;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The per-instance data of instanced rendering: a transform (position, rotation around the y axis and a uniform scale)
+ * and a colour for every copy of a mesh. The transforms are kept as separate arrays and only turned into model matrices
+ * by {@link #pack()}, which spreads the work over all cores.
+ * <p>
+ * The packed data follows {@link #VERTEX_FORMAT}: the model matrix as four columns of four floats, which the vertex
+ * shader reads as a single mat4 attribute, followed by an RGBA colour that the colours of the mesh are multiplied by.
+ */
+public class InstanceBuffer {
+
+    /**
+     * The location of the model matrix in the vertex shader, its columns use this location and the next three.
+     */
+    public static final int MODEL_LOCATION = 2;
+    public static final int COLOUR_LOCATION = MODEL_LOCATION + 4;
+    public static final VertexFormat VERTEX_FORMAT = new VertexFormat(
+            new VertexAttribute("model column 0", MODEL_LOCATION, 4, ComponentType.FLOAT),
+            new VertexAttribute("model column 1", MODEL_LOCATION + 1, 4, ComponentType.FLOAT),
+            new VertexAttribute("model column 2", MODEL_LOCATION + 2, 4, ComponentType.FLOAT),
+            new VertexAttribute("model column 3", MODEL_LOCATION + 3, 4, ComponentType.FLOAT),
+            new VertexAttribute("colour", COLOUR_LOCATION, 4, ComponentType.UNSIGNED_BYTE));
+    private static final int STRIDE = VERTEX_FORMAT.getStride();
+    private static final int COLOUR_OFFSET = VERTEX_FORMAT.getOffset(4);
+    // The number of instances packed by one task, smaller batches are packed on the calling thread
+    private static final int CHUNK_SIZE = 4096;
+
+    private final int capacity;
+    private final float[] x, y, z, rotation, scale;
+    private final int[] colour;
+    // The packed instances are written to data, which always has room for all of them, and handed out through packed
+    private final ByteBuffer data, packed;
+    private int count;
+
+    public InstanceBuffer(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("An instance buffer must hold at least one instance");
+        this.capacity = capacity;
+        this.x = new float[capacity];
+        this.y = new float[capacity];
+        this.z = new float[capacity];
+        this.rotation = new float[capacity];
+        this.scale = new float[capacity];
+        this.colour = new int[capacity];
+        this.data = BufferUtils.createByteBuffer(capacity * STRIDE);
+        this.packed = data.duplicate().order(data.order());
+    }
+
+    /**
+     * @param rotation the rotation around the y axis in radians
+     */
+    public void setTransform(int index, float x, float y, float z, float rotation, float scale) {
+        checkIndex(index);
+        this.x[index] = x;
+        this.y[index] = y;
+        this.z[index] = z;
+        this.rotation[index] = rotation;
+        this.scale[index] = scale;
+    }
+
+    public void setRotation(int index, float rotation) {
+        checkIndex(index);
+        this.rotation[index] = rotation;
+    }
+
+    /**
+     * Sets the colour of an instance, the components range from 0 to 1.
+     */
+    public void setColour(int index, float red, float green, float blue, float alpha) {
+        checkIndex(index);
+        colour[index] = toByte(red) | toByte(green) << 8 | toByte(blue) << 16 | toByte(alpha) << 24;
+    }
+
+    /**
+     * Sets the number of instances that are packed and drawn, the instances from 0 to count - 1.
+     */
+    public void setCount(int count) {
+        if (count < 0 || count > capacity)
+            throw new IllegalArgumentException("The number of instances must be between 0 and " + capacity + ": " + count);
+        this.count = count;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the size of the packed data of all instances that fit in the buffer, in bytes
+     */
+    public int getSizeInBytes() {
+        return capacity * STRIDE;
+    }
+
+    /**
+     * Packs the model matrices and colours of all instances. Large numbers of instances are divided into chunks that are
+     * packed in parallel; every chunk writes to its own part of the buffer.
+     *
+     * @return the packed data from position 0 to the end of the last instance, the buffer is reused by the next call
+     */
+    public ByteBuffer pack() {
+        pack(data, 0, null, count);
+        packed.limit(count * STRIDE).position(0);
+        return packed;
+    }
+
+    /**
+     * Same as {@link #pack()}, but writes the instances to the given buffer (for example mapped buffer memory) from its
+     * position onwards, and moves the position past them. The floats are always written in the native byte order, which
+     * is what OpenGL reads, whatever the order of the buffer is.
+     */
+    public void pack(ByteBuffer destination) {
+        pack(destination, null, count);
+    }
+
+    /**
+     * Same as {@link #pack(ByteBuffer)}, but only packs the given instances, in the given order. This is how the
+     * instances that survived culling are drawn.
+     *
+     * @param selection the indices of the instances to pack, or null for all instances up to selectionCount
+     */
+    public void pack(ByteBuffer destination, int[] selection, int selectionCount) {
+        if (selectionCount < 0 || selectionCount > count)
+            throw new IllegalArgumentException("The number of selected instances must be between 0 and " + count + ": " + selectionCount);
+        if (destination.remaining() < selectionCount * STRIDE)
+            throw new IllegalArgumentException("The buffer has room for " + destination.remaining() / STRIDE + " of " + selectionCount + " instances");
+        pack(destination.duplicate().order(ByteOrder.nativeOrder()), destination.position(), selection, selectionCount);
+        destination.position(destination.position() + selectionCount * STRIDE);
+    }
+
+    /**
+     * Packs the instances from first to last - 1 on the calling thread, without changing the position and limit of the
+     * buffer returned by {@link #pack()}.
+     */
+    public void pack(int first, int last) {
+        if (first < 0 || first > last || last > count)
+            throw new IllegalArgumentException("The instances to pack must be within 0 and " + count + ": " + first + " to " + last);
+        pack(data, 0, null, first, last);
+    }
+
+    private void pack(final ByteBuffer destination, final int base, final int[] selection, final int packCount) {
+        int chunks = (packCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (chunks <= 1) {
+            pack(destination, base, selection, 0, packCount);
+        } else {
+            IntStream.range(0, chunks).parallel().forEach(new IntConsumer() {
+                @Override
+                public void accept(int chunk) {
+                    pack(destination, base, selection, chunk * CHUNK_SIZE, Math.min(packCount, (chunk + 1) * CHUNK_SIZE));
+                }
+            });
+        }
+    }
+
+    // Packs the selected instances first to last - 1 (all instances without a selection) into place first to last - 1
+    private void pack(ByteBuffer data, int base, int[] selection, int first, int last) {
+        for (int place = first; place < last; place++) {
+            int instance = selection == null ? place : selection[place];
+            int index = base + place * STRIDE;
+            float s = scale[instance];
+            float sin = (float) Math.sin(rotation[instance]) * s;
+            float cos = (float) Math.cos(rotation[instance]) * s;
+            // Column 0
+            data.putFloat(index, cos);
+            data.putFloat(index + 4, 0);
+            data.putFloat(index + 8, -sin);
+            data.putFloat(index + 12, 0);
+            // Column 1
+            data.putFloat(index + 16, 0);
+            data.putFloat(index + 20, s);
+            data.putFloat(index + 24, 0);
+            data.putFloat(index + 28, 0);
+            // Column 2
+            data.putFloat(index + 32, sin);
+            data.putFloat(index + 36, 0);
+            data.putFloat(index + 40, cos);
+            data.putFloat(index + 44, 0);
+            // Column 3: the translation
+            data.putFloat(index + 48, x[instance]);
+            data.putFloat(index + 52, y[instance]);
+            data.putFloat(index + 56, z[instance]);
+            data.putFloat(index + 60, 1);
+            // The colour bytes in the order red, green, blue, alpha
+            int rgba = colour[instance];
+            data.put(index + COLOUR_OFFSET, (byte) rgba);
+            data.put(index + COLOUR_OFFSET + 1, (byte) (rgba >> 8));
+            data.put(index + COLOUR_OFFSET + 2, (byte) (rgba >> 16));
+            data.put(index + COLOUR_OFFSET + 3, (byte) (rgba >> 24));
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= capacity)
+            throw new IndexOutOfBoundsException("Instance " + index + " of " + capacity);
+    }
+
+    private static int toByte(float component) {
+        return Math.round(Math.max(0, Math.min(1, component)) * 255);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.vertex;
+
+/**
+ * A single attribute of a vertex, such as its position or colour, bound to an attribute location of the shader.
+ */
+public class VertexAttribute {
+
+    private final String name;
+    private final int location;
+    private final int components;
+    private final ComponentType type;
+
+    /**
+     * @param name       a descriptive name, for example "position"
+     * @param location   the attribute location in the vertex shader, as in layout(location = ..)
+     * @param components the number of components, from 1 to 4
+     * @param type       the data type of the components
+     */
+    public VertexAttribute(String name, int location, int components, ComponentType type) {
+        if (components < 1 || components > 4)
+            throw new IllegalArgumentException("A vertex attribute has 1 to 4 components: " + components);
+        this.name = name;
+        this.location = location;
+        this.components = components;
+        this.type = type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLocation() {
+        return location;
+    }
+
+    public int getComponents() {
+        return components;
+    }
+
+    public ComponentType getType() {
+        return type;
+    }
+
+    /**
+     * @return the number of bytes the attribute takes up in a vertex, rounded up to a multiple of four because OpenGL
+     * prefers attributes that start on a four byte boundary
+     */
+    public int getSize() {
+        return (components * type.getSize() + 3) & ~3;
+    }
+
+    @Override
+    public String toString() {
+        return name + "(location = " + location + ", " + components + " x " + type + ")";
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.vertex;
+
+import utility.gl.OpenGL;
+
+import java.util.Arrays;
+
+/**
+ * Describes the layout of interleaved vertex data: the attributes of a vertex are stored next to each other, in the
+ * order they are declared, and the vertices follow each other without gaps.
+ * <p>
+ * Compared to separate blocks of doubles (like the tutorials used to upload), this halves or quarters the memory a
+ * vertex takes, and all attributes of a vertex are fetched from the same cache line.
+ */
+public class VertexFormat {
+
+    private final VertexAttribute[] attributes;
+    private final int[] offsets;
+    private final int stride;
+
+    public VertexFormat(VertexAttribute... attributes) {
+        if (attributes.length == 0)
+            throw new IllegalArgumentException("A vertex format needs at least one attribute");
+        this.attributes = attributes.clone();
+        this.offsets = new int[attributes.length];
+        int offset = 0;
+        for (int i = 0; i < attributes.length; i++) {
+            offsets[i] = offset;
+            offset += attributes[i].getSize();
+        }
+        this.stride = offset;
+    }
+
+    /**
+     * @return the number of attributes
+     */
+    public int size() {
+        return attributes.length;
+    }
+
+    public VertexAttribute getAttribute(int index) {
+        return attributes[index];
+    }
+
+    /**
+     * @return the byte offset of an attribute from the start of a vertex
+     */
+    public int getOffset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * @return the size of a vertex in bytes
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * @return the number of components of all attributes together
+     */
+    public int getComponentCount() {
+        int count = 0;
+        for (VertexAttribute attribute : attributes) {
+            count += attribute.getComponents();
+        }
+        return count;
+    }
+
+    /**
+     * Enables all attributes and tells OpenGL where to find them in the buffer that is bound to GL_ARRAY_BUFFER. When a
+     * vertex array object is bound, it remembers these settings.
+     *
+     * @param baseOffset the byte offset of the first vertex in the buffer
+     */
+    public void enable(OpenGL gl, long baseOffset) {
+        for (VertexAttribute attribute : attributes) {
+            gl.glEnableVertexAttribArray(attribute.getLocation());
+        }
+        setPointers(gl, baseOffset);
+    }
+
+    /**
+     * Only tells OpenGL where to find the attributes, which are already enabled: for data that moves around in the buffer
+     * bound to GL_ARRAY_BUFFER, like the regions of a {@link utility.gl.StreamingBuffer}.
+     *
+     * @param baseOffset the byte offset of the first vertex in the buffer
+     */
+    public void setPointers(OpenGL gl, long baseOffset) {
+        for (int i = 0; i < attributes.length; i++) {
+            VertexAttribute attribute = attributes[i];
+            gl.glVertexAttribPointer(
+                    attribute.getLocation(),
+                    attribute.getComponents(),
+                    attribute.getType().getGLType(),
+                    attribute.getType().isNormalized(),
+                    stride,
+                    baseOffset + offsets[i]);
+        }
+    }
+
+    /**
+     * Same as {@link #enable(OpenGL, long)} with the vertices starting at the beginning of the buffer.
+     */
+    public void enable(OpenGL gl) {
+        enable(gl, 0);
+    }
+
+    /**
+     * Same as {@link #enable(OpenGL)} for per-instance data: the attributes advance once every divisor instances instead
+     * of once every vertex. Requires OpenGL 3.3.
+     */
+    public void enableInstanced(OpenGL gl, int divisor) {
+        enable(gl);
+        for (VertexAttribute attribute : attributes) {
+            gl.glVertexAttribDivisor(attribute.getLocation(), divisor);
+        }
+    }
+
+    public void disable(OpenGL gl) {
+        for (VertexAttribute attribute : attributes) {
+            gl.glDisableVertexAttribArray(attribute.getLocation());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "VertexFormat" + Arrays.toString(attributes) + " stride = " + stride;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.vertex;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes vertices into a ByteBuffer in the layout of a {@link VertexFormat}, converting the float values to the
+ * component types of the attributes. Padding bytes are zeroed, so the same vertices always produce the same bytes.
+ * <p>
+ * The vertices are written from the position of the buffer onwards; after each {@link #endVertex()} the position of
+ * the buffer is just after the finished vertex, so the buffer can simply be flipped before it is uploaded.
+ */
+public class VertexWriter {
+
+    private final VertexFormat format;
+    private final ByteBuffer buffer;
+    private int vertexStart;
+    private int vertexCount;
+
+    public VertexWriter(VertexFormat format, ByteBuffer buffer) {
+        this.format = format;
+        // OpenGL reads the data in the byte order of the machine
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+        this.vertexStart = buffer.position();
+    }
+
+    public VertexFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the number of vertices finished with {@link #endVertex()}
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public VertexWriter put(int attribute, float x) {
+        int index = begin(attribute, 1);
+        ComponentType type = format.getAttribute(attribute).getType();
+        type.write(buffer, index, x);
+        return end(attribute, 1);
+    }
+
+    public VertexWriter put(int attribute, float x, float y) {
+        int index = begin(attribute, 2);
+        ComponentType type = format.getAttribute(attribute).getType();
+        type.write(buffer, index, x);
+        type.write(buffer, index + type.getSize(), y);
+        return end(attribute, 2);
+    }
+
+    public VertexWriter put(int attribute, float x, float y, float z) {
+        int index = begin(attribute, 3);
+        ComponentType type = format.getAttribute(attribute).getType();
+        type.write(buffer, index, x);
+        type.write(buffer, index + type.getSize(), y);
+        type.write(buffer, index + 2 * type.getSize(), z);
+        return end(attribute, 3);
+    }
+
+    public VertexWriter put(int attribute, float x, float y, float z, float w) {
+        int index = begin(attribute, 4);
+        ComponentType type = format.getAttribute(attribute).getType();
+        type.write(buffer, index, x);
+        type.write(buffer, index + type.getSize(), y);
+        type.write(buffer, index + 2 * type.getSize(), z);
+        type.write(buffer, index + 3 * type.getSize(), w);
+        return end(attribute, 4);
+    }
+
+    /**
+     * Writes a complete vertex: the components of all attributes, in the order of the format. This is convenient for
+     * writing hard-coded geometry, in loops the put methods are faster because they don't need an array.
+     */
+    public VertexWriter putVertex(float... components) {
+        if (components.length != format.getComponentCount())
+            throw new IllegalArgumentException("Expected " + format.getComponentCount() + " components but got " + components.length);
+        int component = 0;
+        for (int attribute = 0; attribute < format.size(); attribute++) {
+            VertexAttribute vertexAttribute = format.getAttribute(attribute);
+            ComponentType type = vertexAttribute.getType();
+            int index = vertexStart + format.getOffset(attribute);
+            for (int i = 0; i < vertexAttribute.getComponents(); i++) {
+                type.write(buffer, index + i * type.getSize(), components[component++]);
+            }
+            end(attribute, vertexAttribute.getComponents());
+        }
+        return endVertex();
+    }
+
+    /**
+     * Finishes the current vertex and moves on to the next.
+     */
+    public VertexWriter endVertex() {
+        vertexStart += format.getStride();
+        vertexCount++;
+        buffer.position(vertexStart);
+        return this;
+    }
+
+    private int begin(int attribute, int components) {
+        if (format.getAttribute(attribute).getComponents() != components)
+            throw new IllegalArgumentException("Attribute " + format.getAttribute(attribute) + " doesn't have " + components + " components");
+        return vertexStart + format.getOffset(attribute);
+    }
+
+    private VertexWriter end(int attribute, int components) {
+        VertexAttribute vertexAttribute = format.getAttribute(attribute);
+        int start = vertexStart + format.getOffset(attribute);
+        // Zero the padding after the components
+        for (int i = components * vertexAttribute.getType().getSize(); i < vertexAttribute.getSize(); i++) {
+            buffer.put(start + i, (byte) 0);
+        }
+        return this;
+    }
+}
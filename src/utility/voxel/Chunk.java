@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.voxel;
+
+import utility.mesh.Mesh;
+
+/**
+ * A cube of {@link #SIZE} x {@link #SIZE} x {@link #SIZE} blocks of a {@link VoxelWorld}, stored in a
+ * {@link ChunkStorage}, with the mesh that {@link GreedyMesher} made of it. A block is a block type number, and
+ * {@link #AIR} is empty space.
+ */
+public class Chunk {
+
+    public static final int SHIFT = 5;
+    /**
+     * The number of blocks along every side.
+     */
+    public static final int SIZE = 1 << SHIFT;
+    public static final int MASK = SIZE - 1;
+    public static final int VOLUME = SIZE * SIZE * SIZE;
+    /**
+     * The block type of empty space, which has no faces and doesn't hide the faces next to it.
+     */
+    public static final int AIR = 0;
+
+    private final int x;
+    private final int y;
+    private final int z;
+    private final ChunkStorage storage = new ChunkStorage(VOLUME, AIR);
+    private int solidCount;
+    // Whether the chunk waits in the dirty queue of the world
+    private boolean dirty;
+    private Mesh mesh;
+    private int faceCount;
+    private int visibleFaceCount;
+
+    /**
+     * @param x the x of the chunk in chunks: its first block is at x * SIZE
+     */
+    Chunk(int x, int y, int z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    /**
+     * @return the index of a block in the storage; x changes fastest, then z, then y
+     */
+    public static int index(int x, int y, int z) {
+        return (y << SHIFT | z) << SHIFT | x;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * @param x the x within the chunk, from 0 to SIZE - 1
+     */
+    public int getBlock(int x, int y, int z) {
+        return storage.get(index(x, y, z));
+    }
+
+    /**
+     * @return if the block changed
+     */
+    boolean setBlock(int x, int y, int z, int block) {
+        int previous = storage.set(index(x, y, z), block);
+        if (previous == block)
+            return false;
+        if (previous == AIR)
+            solidCount++;
+        else if (block == AIR)
+            solidCount--;
+        return true;
+    }
+
+    public ChunkStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * @return if every block is air
+     */
+    public boolean isEmpty() {
+        return solidCount == 0;
+    }
+
+    public int getSolidCount() {
+        return solidCount;
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
+    /**
+     * @return the mesh of the last remesh, in world coordinates; null if the chunk has no faces or wasn't meshed yet
+     */
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * @return the number of quads in the mesh, after merging
+     */
+    public int getFaceCount() {
+        return faceCount;
+    }
+
+    /**
+     * @return the number of block faces the mesh covers, one per block side that touches air
+     */
+    public int getVisibleFaceCount() {
+        return visibleFaceCount;
+    }
+
+    void setMesh(Mesh mesh, int faceCount, int visibleFaceCount) {
+        this.mesh = mesh;
+        this.faceCount = faceCount;
+        this.visibleFaceCount = visibleFaceCount;
+    }
+
+    @Override
+    public String toString() {
+        return "Chunk(" + x + ", " + y + ", " + z + ", " + solidCount + " solid blocks, " + faceCount + " faces)";
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.voxel;
+
+import java.util.Arrays;
+
+/**
+ * The blocks of a chunk in as little memory as possible: a palette of the distinct block types in the chunk, and for
+ * every block the number of its type in the palette, packed into longs with as few bits as the palette needs. A chunk of
+ * only air has a palette of one and no array at all, and a chunk of up to 16 block types needs 4 bits per block: 16 KB
+ * for 32768 blocks instead of 128 KB of ints. The numbers grow to more bits when a new type doesn't fit. The bits per
+ * block are always a power of two, so a number never straddles two longs and reading a block is a shift and a mask.
+ * <p>
+ * Not thread-safe; reading from several threads is fine while nothing is set.
+ */
+public class ChunkStorage {
+
+    /**
+     * The most blocks a storage can have, so the numbers never need more than 16 bits.
+     */
+    public static final int MAX_VOLUME = 1 << 16;
+
+    private final int volume;
+    private int bitsPerBlock;
+    private long[] data;
+    private int[] palette;
+    private int paletteSize;
+    // Open addressing from a block type to its number in the palette + 1, 0 for an empty slot
+    private int[] lookup;
+
+    /**
+     * @param volume the number of blocks, at most {@link #MAX_VOLUME}
+     * @param block  the type of every block to start with
+     */
+    public ChunkStorage(int volume, int block) {
+        if (volume > MAX_VOLUME)
+            throw new IllegalArgumentException("At most " + MAX_VOLUME + " blocks, not " + volume);
+        this.volume = volume;
+        palette = new int[]{block};
+        paletteSize = 1;
+        lookup = new int[4];
+        insertLookup(block, 0);
+    }
+
+    public int get(int index) {
+        if (bitsPerBlock == 0)
+            return palette[0];
+        int bit = index * bitsPerBlock;
+        return palette[(int) (data[bit >>> 6] >>> (bit & 63)) & ((1 << bitsPerBlock) - 1)];
+    }
+
+    /**
+     * @return the type the block had before
+     */
+    public int set(int index, int block) {
+        int number = find(block);
+        // Types that no block has anymore make room before the palette needs more than 16 bits
+        if (number < 0 && paletteSize == MAX_VOLUME)
+            compact();
+        if (number < 0) {
+            if (paletteSize == palette.length) {
+                int[] grown = new int[paletteSize * 2];
+                System.arraycopy(palette, 0, grown, 0, paletteSize);
+                palette = grown;
+            }
+            number = paletteSize;
+            palette[paletteSize++] = block;
+            if (paletteSize * 2 > lookup.length)
+                rebuildLookup();
+            else
+                insertLookup(block, number);
+            if (paletteSize > 1 << bitsPerBlock)
+                resize(bitsPerBlock == 0 ? 1 : bitsPerBlock * 2);
+        }
+        // A single type needs no bits: the block already has it
+        if (bitsPerBlock == 0)
+            return block;
+        int previous = get(index);
+        int bit = index * bitsPerBlock;
+        long mask = (1L << bitsPerBlock) - 1;
+        data[bit >>> 6] = data[bit >>> 6] & ~(mask << (bit & 63)) | (long) number << (bit & 63);
+        return previous;
+    }
+
+    /**
+     * Writes the type of every block into an array, which is much faster than calling {@link #get(int)} for all of them.
+     */
+    public void unpack(int[] blocks) {
+        if (bitsPerBlock == 0) {
+            Arrays.fill(blocks, 0, volume, palette[0]);
+            return;
+        }
+        int mask = (1 << bitsPerBlock) - 1;
+        int perLong = 64 / bitsPerBlock;
+        int index = 0;
+        for (int i = 0; index < volume; i++) {
+            long word = data[i];
+            int end = Math.min(volume, index + perLong);
+            for (; index < end; index++) {
+                blocks[index] = palette[(int) word & mask];
+                word >>>= bitsPerBlock;
+            }
+        }
+    }
+
+    /**
+     * Drops the types from the palette that no block has anymore, and packs the blocks with fewer bits if that's enough
+     * for the types that are left.
+     */
+    public void compact() {
+        int[] blocks = new int[volume];
+        unpack(blocks);
+        int[] oldPalette = palette;
+        int oldSize = paletteSize;
+        boolean[] used = new boolean[oldSize];
+        int usedCount = 0;
+        for (int block : blocks) {
+            int number = find(block);
+            if (!used[number]) {
+                used[number] = true;
+                usedCount++;
+            }
+        }
+        if (usedCount == oldSize)
+            return;
+        palette = new int[Math.max(1, usedCount)];
+        paletteSize = 0;
+        for (int number = 0; number < oldSize; number++) {
+            if (used[number])
+                palette[paletteSize++] = oldPalette[number];
+        }
+        rebuildLookup();
+        bitsPerBlock = 0;
+        while (paletteSize > 1 << bitsPerBlock) {
+            bitsPerBlock = bitsPerBlock == 0 ? 1 : bitsPerBlock * 2;
+        }
+        data = bitsPerBlock == 0 ? null : new long[(volume * bitsPerBlock + 63) / 64];
+        if (bitsPerBlock > 0) {
+            for (int index = 0; index < volume; index++) {
+                int bit = index * bitsPerBlock;
+                data[bit >>> 6] |= (long) find(blocks[index]) << (bit & 63);
+            }
+        }
+    }
+
+    public int getBitsPerBlock() {
+        return bitsPerBlock;
+    }
+
+    /**
+     * @return the number of types in the palette, including types that no block has anymore until {@link #compact()}
+     */
+    public int getPaletteSize() {
+        return paletteSize;
+    }
+
+    /**
+     * @return the size of the palette and the packed blocks in bytes
+     */
+    public int getSizeInBytes() {
+        return (data == null ? 0 : data.length * 8) + palette.length * 4 + lookup.length * 4;
+    }
+
+    private void resize(int bits) {
+        long[] resized = new long[(volume * bits + 63) / 64];
+        if (bitsPerBlock > 0) {
+            int oldMask = (1 << bitsPerBlock) - 1;
+            for (int index = 0; index < volume; index++) {
+                int oldBit = index * bitsPerBlock;
+                long number = (data[oldBit >>> 6] >>> (oldBit & 63)) & oldMask;
+                int bit = index * bits;
+                resized[bit >>> 6] |= number << (bit & 63);
+            }
+        }
+        data = resized;
+        bitsPerBlock = bits;
+    }
+
+    private int find(int block) {
+        int slot = hash(block) & (lookup.length - 1);
+        while (lookup[slot] != 0) {
+            if (palette[lookup[slot] - 1] == block)
+                return lookup[slot] - 1;
+            slot = (slot + 1) & (lookup.length - 1);
+        }
+        return -1;
+    }
+
+    private void insertLookup(int block, int number) {
+        int slot = hash(block) & (lookup.length - 1);
+        while (lookup[slot] != 0) {
+            slot = (slot + 1) & (lookup.length - 1);
+        }
+        lookup[slot] = number + 1;
+    }
+
+    private void rebuildLookup() {
+        lookup = new int[Math.max(4, Integer.highestOneBit(paletteSize * 2 - 1) << 1)];
+        for (int number = 0; number < paletteSize; number++) {
+            insertLookup(palette[number], number);
+        }
+    }
+
+    private static int hash(int block) {
+        int hash = block * 0x9E3779B1;
+        return hash ^ hash >>> 16;
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.voxel;
+
+import org.lwjgl.BufferUtils;
+import utility.mesh.Mesh;
+import utility.vertex.ComponentType;
+import utility.vertex.VertexAttribute;
+import utility.vertex.VertexFormat;
+import utility.vertex.VertexWriter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Turns the blocks of a chunk into a mesh of the faces that touch air, with the faces that lie in the same plane and have
+ * the same block type merged into rectangles ("greedy meshing", after Mikola Lysenko's "Meshing in a Minecraft Game").
+ * For every side and every layer of the chunk the visible faces form a mask; the mesher takes the first face of the mask,
+ * grows it as wide as the row allows and then as high as whole rows allow, and emits that rectangle as one quad. A flat
+ * floor of 32 x 32 blocks is a single quad instead of 1024.
+ * <p>
+ * The vertices are in the layout of the cube of CoreCube: a float position and an unsigned byte colour, at the same
+ * attribute locations, so the chunks are drawn with the same shaders. A block at (x, y, z) fills the cube from (x, y, z)
+ * to (x + 1, y + 1, z + 1) in world coordinates. Every block type has its own colour, shaded by the side it faces.
+ * <p>
+ * A mesher keeps its work arrays between chunks, so every thread needs its own.
+ */
+public class GreedyMesher {
+
+    public static final int VERTEX_POSITION = Mesh.POSITION_LOCATION, VERTEX_COLOUR = 0;
+    public static final VertexFormat VERTEX_FORMAT = new VertexFormat(
+            new VertexAttribute("position", VERTEX_POSITION, 3, ComponentType.FLOAT),
+            new VertexAttribute("colour", VERTEX_COLOUR, 3, ComponentType.UNSIGNED_BYTE));
+
+    // The chunk with a layer of the neighbouring chunks around it, so the faces on the sides know what's next to them
+    private static final int PADDED_SIZE = Chunk.SIZE + 2;
+    // The distance in the padded array between neighbouring blocks along x, y and z
+    private static final int[] STRIDES = {1, PADDED_SIZE * PADDED_SIZE, PADDED_SIZE};
+    // How much light the sides facing +x, -x, +y, -y, +z and -z get
+    private static final float[] SIDE_SHADES = {0.8f, 0.8f, 1, 0.5f, 0.65f, 0.65f};
+    // Every quad is its direction, layer, u and v of its corner, width, height and block
+    private static final int QUAD_SIZE = 7;
+
+    private final int[] blocks = new int[PADDED_SIZE * PADDED_SIZE * PADDED_SIZE];
+    private final int[] chunkBlocks = new int[Chunk.VOLUME];
+    private final int[] mask = new int[Chunk.SIZE * Chunk.SIZE];
+    private final int[] coordinates = new int[3];
+    private final float[] colour = new float[3];
+    private int[] quads = new int[QUAD_SIZE * 1024];
+    private int quadCount;
+    private int visibleFaceCount;
+
+    /**
+     * Meshes a chunk, with the sides of its neighbours in the world.
+     *
+     * @return the mesh, or null if the chunk has no visible faces
+     */
+    public Mesh mesh(VoxelWorld world, Chunk chunk) {
+        quadCount = 0;
+        visibleFaceCount = 0;
+        if (chunk.isEmpty())
+            return null;
+        gather(world, chunk);
+        for (int direction = 0; direction < 6; direction++) {
+            meshDirection(direction);
+        }
+        if (quadCount == 0)
+            return null;
+        return build(chunk);
+    }
+
+    /**
+     * @return the number of quads of the last mesh
+     */
+    public int getFaceCount() {
+        return quadCount;
+    }
+
+    /**
+     * @return the number of block faces of the last mesh before merging
+     */
+    public int getVisibleFaceCount() {
+        return visibleFaceCount;
+    }
+
+    private static int paddedIndex(int x, int y, int z) {
+        return ((y + 1) * PADDED_SIZE + z + 1) * PADDED_SIZE + x + 1;
+    }
+
+    private void gather(VoxelWorld world, Chunk chunk) {
+        Arrays.fill(blocks, Chunk.AIR);
+        chunk.getStorage().unpack(chunkBlocks);
+        for (int y = 0; y < Chunk.SIZE; y++) {
+            for (int z = 0; z < Chunk.SIZE; z++) {
+                System.arraycopy(chunkBlocks, Chunk.index(0, y, z), blocks, paddedIndex(0, y, z), Chunk.SIZE);
+            }
+        }
+        // The layer of every neighbour that touches the chunk
+        for (int direction = 0; direction < 6; direction++) {
+            int axis = direction >> 1;
+            int sign = (direction & 1) == 0 ? 1 : -1;
+            coordinates[0] = chunk.getX();
+            coordinates[1] = chunk.getY();
+            coordinates[2] = chunk.getZ();
+            coordinates[axis] += sign;
+            Chunk neighbour = world.getChunk(coordinates[0], coordinates[1], coordinates[2]);
+            if (neighbour == null || neighbour.isEmpty())
+                continue;
+            int u = (axis + 1) % 3;
+            int v = (axis + 2) % 3;
+            for (int i = 0; i < Chunk.SIZE; i++) {
+                for (int j = 0; j < Chunk.SIZE; j++) {
+                    coordinates[axis] = sign > 0 ? 0 : Chunk.MASK;
+                    coordinates[u] = i;
+                    coordinates[v] = j;
+                    int block = neighbour.getBlock(coordinates[0], coordinates[1], coordinates[2]);
+                    coordinates[axis] = sign > 0 ? Chunk.SIZE : -1;
+                    blocks[paddedIndex(coordinates[0], coordinates[1], coordinates[2])] = block;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the visible faces of one side of every layer and merges them into quads.
+     *
+     * @param direction +x, -x, +y, -y, +z or -z
+     */
+    private void meshDirection(int direction) {
+        int axis = direction >> 1;
+        int u = (axis + 1) % 3;
+        int v = (axis + 2) % 3;
+        int toNeighbour = (direction & 1) == 0 ? STRIDES[axis] : -STRIDES[axis];
+        int strideU = STRIDES[u];
+        int strideV = STRIDES[v];
+        for (int layer = 0; layer < Chunk.SIZE; layer++) {
+            int layerStart = paddedIndex(0, 0, 0) + layer * STRIDES[axis];
+            int visible = 0;
+            for (int j = 0; j < Chunk.SIZE; j++) {
+                int index = layerStart + j * strideV;
+                for (int i = 0; i < Chunk.SIZE; i++, index += strideU) {
+                    int block = blocks[index];
+                    if (block != Chunk.AIR && blocks[index + toNeighbour] == Chunk.AIR) {
+                        mask[j * Chunk.SIZE + i] = block;
+                        visible++;
+                    } else {
+                        mask[j * Chunk.SIZE + i] = Chunk.AIR;
+                    }
+                }
+            }
+            if (visible == 0)
+                continue;
+            visibleFaceCount += visible;
+
+            for (int j = 0; j < Chunk.SIZE; j++) {
+                for (int i = 0; i < Chunk.SIZE; ) {
+                    int start = j * Chunk.SIZE + i;
+                    int block = mask[start];
+                    if (block == Chunk.AIR) {
+                        i++;
+                        continue;
+                    }
+                    // As wide as the row has the same block, then as high as all of those columns do
+                    int width = 1;
+                    while (i + width < Chunk.SIZE && mask[start + width] == block) {
+                        width++;
+                    }
+                    int height = 1;
+                    grow:
+                    while (j + height < Chunk.SIZE) {
+                        int row = start + height * Chunk.SIZE;
+                        for (int k = 0; k < width; k++) {
+                            if (mask[row + k] != block)
+                                break grow;
+                        }
+                        height++;
+                    }
+                    for (int row = 0; row < height; row++) {
+                        Arrays.fill(mask, start + row * Chunk.SIZE, start + row * Chunk.SIZE + width, Chunk.AIR);
+                    }
+                    addQuad(direction, layer, i, j, width, height, block);
+                    i += width;
+                }
+            }
+        }
+    }
+
+    private void addQuad(int direction, int layer, int u, int v, int width, int height, int block) {
+        if ((quadCount + 1) * QUAD_SIZE > quads.length)
+            quads = Arrays.copyOf(quads, quads.length * 2);
+        int offset = quadCount * QUAD_SIZE;
+        quads[offset] = direction;
+        quads[offset + 1] = layer;
+        quads[offset + 2] = u;
+        quads[offset + 3] = v;
+        quads[offset + 4] = width;
+        quads[offset + 5] = height;
+        quads[offset + 6] = block;
+        quadCount++;
+    }
+
+    private Mesh build(Chunk chunk) {
+        ByteBuffer vertexData = BufferUtils.createByteBuffer(quadCount * 4 * VERTEX_FORMAT.getStride());
+        VertexWriter writer = new VertexWriter(VERTEX_FORMAT, vertexData);
+        int[] indices = new int[quadCount * 6];
+        float originX = chunk.getX() * Chunk.SIZE;
+        float originY = chunk.getY() * Chunk.SIZE;
+        float originZ = chunk.getZ() * Chunk.SIZE;
+        for (int quad = 0; quad < quadCount; quad++) {
+            int offset = quad * QUAD_SIZE;
+            int direction = quads[offset];
+            int axis = direction >> 1;
+            boolean positive = (direction & 1) == 0;
+            int u = (axis + 1) % 3;
+            int v = (axis + 2) % 3;
+            getColour(quads[offset + 6], SIDE_SHADES[direction]);
+            // The face of a block facing the positive direction is on the far side of the block
+            coordinates[axis] = quads[offset + 1] + (positive ? 1 : 0);
+            for (int corner = 0; corner < 4; corner++) {
+                // Counter-clockwise seen from outside the block: u then v faces the positive direction
+                int c = positive ? corner : (4 - corner) & 3;
+                coordinates[u] = quads[offset + 2] + (c == 1 || c == 2 ? quads[offset + 4] : 0);
+                coordinates[v] = quads[offset + 3] + (c >= 2 ? quads[offset + 5] : 0);
+                writer.put(0, originX + coordinates[0], originY + coordinates[1], originZ + coordinates[2]);
+                writer.put(1, colour[0], colour[1], colour[2]);
+                writer.endVertex();
+            }
+            int first = quad * 4;
+            indices[quad * 6] = first;
+            indices[quad * 6 + 1] = first + 1;
+            indices[quad * 6 + 2] = first + 2;
+            indices[quad * 6 + 3] = first;
+            indices[quad * 6 + 4] = first + 2;
+            indices[quad * 6 + 5] = first + 3;
+        }
+        vertexData.flip();
+        return new Mesh(VERTEX_FORMAT, vertexData, indices);
+    }
+
+    /**
+     * Picks a colour for a block type, spreading the hues of consecutive types by the golden ratio, and shades it.
+     */
+    private void getColour(int block, float shade) {
+        float hue = (block * 0.618034f) % 1 * 6;
+        int sector = (int) hue;
+        float fraction = hue - sector;
+        float value = 0.9f * shade;
+        float low = value * 0.45f;
+        float falling = value * (1 - 0.55f * fraction);
+        float rising = value * (0.45f + 0.55f * fraction);
+        switch (sector) {
+            case 0:
+                colour[0] = value;
+                colour[1] = rising;
+                colour[2] = low;
+                break;
+            case 1:
+                colour[0] = falling;
+                colour[1] = value;
+                colour[2] = low;
+                break;
+            case 2:
+                colour[0] = low;
+                colour[1] = value;
+                colour[2] = rising;
+                break;
+            case 3:
+                colour[0] = low;
+                colour[1] = falling;
+                colour[2] = value;
+                break;
+            case 4:
+                colour[0] = rising;
+                colour[1] = low;
+                colour[2] = value;
+                break;
+            default:
+                colour[0] = value;
+                colour[1] = low;
+                colour[2] = falling;
+                break;
+        }
+    }
+}
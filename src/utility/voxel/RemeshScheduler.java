@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.voxel;
+
+import utility.log.Level;
+import utility.log.Log;
+import utility.log.Logger;
+import utility.mesh.Mesh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meshes the dirty chunks of a {@link VoxelWorld} in parallel. Only the chunks in the dirty queue of the world are
+ * meshed, so placing a block costs one or a few chunks, not the world. Every call takes a batch from the queue and
+ * spreads it over the worker threads, each with its own {@link GreedyMesher}; the threads take the next chunk of the
+ * batch when they are done with one, so a few expensive chunks don't leave the other threads waiting. The call returns
+ * when the whole batch is meshed, so the meshes can be uploaded right after it.
+ * <pre>
+ * // Once per frame, at most 16 chunks so a lot of changes don't make a single frame stutter
+ * scheduler.remesh(16);
+ * </pre>
+ * The scheduler counts the chunks, the faces and the time it spent, see {@link #getFacesPerChunk()} and
+ * {@link #getChunksPerSecond()}.
+ */
+public class RemeshScheduler {
+
+    private static final Logger log = Log.getLogger(RemeshScheduler.class);
+
+    private final VoxelWorld world;
+    private final int threadCount;
+    // Null for a single thread, which meshes on the calling thread
+    private final ExecutorService workers;
+    private final GreedyMesher[] meshers;
+    private Chunk[] batch = new Chunk[64];
+    // Whether each chunk of the batch got its mesh
+    private boolean[] meshed = new boolean[64];
+    private long chunksMeshed;
+    private long facesEmitted;
+    private long visibleFaces;
+    private long meshingNanos;
+
+    /**
+     * @param threadCount the number of threads that mesh chunks
+     */
+    public RemeshScheduler(VoxelWorld world, int threadCount) {
+        this.world = world;
+        this.threadCount = Math.max(1, threadCount);
+        meshers = new GreedyMesher[this.threadCount];
+        for (int thread = 0; thread < meshers.length; thread++) {
+            meshers[thread] = new GreedyMesher();
+        }
+        if (this.threadCount == 1) {
+            workers = null;
+            return;
+        }
+        workers = Executors.newFixedThreadPool(this.threadCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "RemeshScheduler-" + threadNumber.incrementAndGet());
+                // The workers must not keep the program running after the window has been closed
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Creates a scheduler with a thread for every core.
+     */
+    public RemeshScheduler(VoxelWorld world) {
+        this(world, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Meshes the chunks that have been waiting the longest, and waits for them. If meshing a chunk fails, the chunks
+     * that didn't get a mesh are queued again before the exception is passed on, in an IllegalStateException if it
+     * happened on a worker thread.
+     *
+     * @param maxChunks the most chunks to mesh; the others stay in the queue
+     * @return the number of meshed chunks
+     */
+    public int remesh(int maxChunks) {
+        int count = 0;
+        Chunk chunk;
+        while (count < maxChunks && (chunk = world.pollDirty()) != null) {
+            if (count == batch.length) {
+                Chunk[] grown = new Chunk[batch.length * 2];
+                System.arraycopy(batch, 0, grown, 0, count);
+                batch = grown;
+                meshed = new boolean[grown.length];
+            }
+            batch[count++] = chunk;
+        }
+        if (count == 0)
+            return 0;
+
+        long start = System.nanoTime();
+        final AtomicInteger next = new AtomicInteger();
+        final int batchSize = count;
+        try {
+            meshChunks(next, batchSize);
+        } finally {
+            meshingNanos += System.nanoTime() - start;
+            // If meshing a chunk failed, the chunks without a mesh go back into the queue instead of getting lost
+            for (int i = 0; i < count; i++) {
+                if (meshed[i]) {
+                    chunksMeshed++;
+                    facesEmitted += batch[i].getFaceCount();
+                    visibleFaces += batch[i].getVisibleFaceCount();
+                } else {
+                    world.markDirty(batch[i]);
+                }
+                batch[i] = null;
+                meshed[i] = false;
+            }
+        }
+        return count;
+    }
+
+    private void meshChunks(final AtomicInteger next, final int batchSize) {
+        if (workers == null || batchSize == 1) {
+            meshBatch(meshers[0], next, batchSize);
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int thread = 0; thread < Math.min(threadCount, batchSize); thread++) {
+                final GreedyMesher mesher = meshers[thread];
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        meshBatch(mesher, next, batchSize);
+                        return null;
+                    }
+                });
+            }
+            try {
+                for (Future<Void> future : workers.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while meshing chunks", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Meshing a chunk failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Meshes every dirty chunk.
+     *
+     * @return the number of meshed chunks
+     */
+    public int remeshAll() {
+        return remesh(Integer.MAX_VALUE);
+    }
+
+    private void meshBatch(GreedyMesher mesher, AtomicInteger next, int count) {
+        int i;
+        while ((i = next.getAndIncrement()) < count) {
+            Chunk chunk = batch[i];
+            Mesh mesh = mesher.mesh(world, chunk);
+            chunk.setMesh(mesh, mesher.getFaceCount(), mesher.getVisibleFaceCount());
+            // Read on the calling thread after invokeAll, which waits for every task
+            meshed[i] = true;
+        }
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public long getChunksMeshed() {
+        return chunksMeshed;
+    }
+
+    /**
+     * @return the number of quads of all meshed chunks
+     */
+    public long getFacesEmitted() {
+        return facesEmitted;
+    }
+
+    public double getFacesPerChunk() {
+        return chunksMeshed == 0 ? 0 : (double) facesEmitted / chunksMeshed;
+    }
+
+    /**
+     * @return the number of block faces per quad: how much greedy meshing saved
+     */
+    public double getMergeRatio() {
+        return facesEmitted == 0 ? 0 : (double) visibleFaces / facesEmitted;
+    }
+
+    /**
+     * @return the number of chunks meshed per second of the time {@link #remesh(int)} took
+     */
+    public double getChunksPerSecond() {
+        return meshingNanos == 0 ? 0 : chunksMeshed * 1e9 / meshingNanos;
+    }
+
+    public void logStatistics() {
+        log.log(Level.INFO, "Meshed {} chunks into {} faces on {} threads", chunksMeshed, facesEmitted, threadCount);
+        log.log(Level.INFO, "{} faces per chunk, {} block faces per face, {} chunks per second",
+                Math.round(getFacesPerChunk() * 10) / 10.0, Math.round(getMergeRatio() * 100) / 100.0,
+                Math.round(getChunksPerSecond() * 10) / 10.0);
+    }
+
+    public void resetStatistics() {
+        chunksMeshed = 0;
+        facesEmitted = 0;
+        visibleFaces = 0;
+        meshingNanos = 0;
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        if (workers != null)
+            workers.shutdownNow();
+    }
+}
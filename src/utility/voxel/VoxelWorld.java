@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.voxel;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A world of blocks, split into {@link Chunk}s that are created when the first block is placed in them. Changing a block
+ * puts its chunk in a queue of dirty chunks, and the neighbouring chunk as well if the block is on the side of its chunk,
+ * because faces of the neighbour may appear or disappear. {@link RemeshScheduler} only meshes the chunks in that queue.
+ * <pre>
+ * VoxelWorld world = new VoxelWorld();
+ * world.setBlock(10, 64, -3, STONE);
+ * RemeshScheduler scheduler = new RemeshScheduler(world);
+ * scheduler.remesh(16);
+ * </pre>
+ * Not thread-safe: change blocks on the same thread that calls {@link RemeshScheduler#remesh(int)}, which only reads the
+ * blocks on its worker threads while it runs.
+ */
+public class VoxelWorld {
+
+    private final Map<Long, Chunk> chunks = new HashMap<>();
+    private final ArrayDeque<Chunk> dirtyChunks = new ArrayDeque<>();
+
+    /**
+     * @return the type of the block at a position in blocks, {@link Chunk#AIR} where there is no chunk
+     */
+    public int getBlock(int x, int y, int z) {
+        Chunk chunk = getChunk(x >> Chunk.SHIFT, y >> Chunk.SHIFT, z >> Chunk.SHIFT);
+        if (chunk == null)
+            return Chunk.AIR;
+        return chunk.getBlock(x & Chunk.MASK, y & Chunk.MASK, z & Chunk.MASK);
+    }
+
+    public void setBlock(int x, int y, int z, int block) {
+        int chunkX = x >> Chunk.SHIFT;
+        int chunkY = y >> Chunk.SHIFT;
+        int chunkZ = z >> Chunk.SHIFT;
+        Chunk chunk = getChunk(chunkX, chunkY, chunkZ);
+        if (chunk == null) {
+            if (block == Chunk.AIR)
+                return;
+            chunk = new Chunk(chunkX, chunkY, chunkZ);
+            chunks.put(key(chunkX, chunkY, chunkZ), chunk);
+        }
+        int localX = x & Chunk.MASK;
+        int localY = y & Chunk.MASK;
+        int localZ = z & Chunk.MASK;
+        if (!chunk.setBlock(localX, localY, localZ, block))
+            return;
+        markDirty(chunk);
+        // The faces of the neighbour that touch this block change as well
+        if (localX == 0)
+            markDirty(chunkX - 1, chunkY, chunkZ);
+        else if (localX == Chunk.MASK)
+            markDirty(chunkX + 1, chunkY, chunkZ);
+        if (localY == 0)
+            markDirty(chunkX, chunkY - 1, chunkZ);
+        else if (localY == Chunk.MASK)
+            markDirty(chunkX, chunkY + 1, chunkZ);
+        if (localZ == 0)
+            markDirty(chunkX, chunkY, chunkZ - 1);
+        else if (localZ == Chunk.MASK)
+            markDirty(chunkX, chunkY, chunkZ + 1);
+    }
+
+    /**
+     * @param x the x of the chunk in chunks
+     * @return the chunk, or null if no block was ever placed in it
+     */
+    public Chunk getChunk(int x, int y, int z) {
+        return chunks.get(key(x, y, z));
+    }
+
+    public Collection<Chunk> getChunks() {
+        return chunks.values();
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * Queues a chunk to be meshed again, for example after the colours of the blocks changed.
+     */
+    public void markDirty(Chunk chunk) {
+        if (!chunk.isDirty()) {
+            chunk.setDirty(true);
+            dirtyChunks.add(chunk);
+        }
+    }
+
+    private void markDirty(int x, int y, int z) {
+        Chunk chunk = getChunk(x, y, z);
+        if (chunk != null)
+            markDirty(chunk);
+    }
+
+    /**
+     * @return the number of chunks that wait to be meshed
+     */
+    public int getDirtyCount() {
+        return dirtyChunks.size();
+    }
+
+    /**
+     * @return the chunk that has been waiting the longest to be meshed, or null if none is
+     */
+    Chunk pollDirty() {
+        Chunk chunk = dirtyChunks.poll();
+        if (chunk != null)
+            chunk.setDirty(false);
+        return chunk;
+    }
+
+    private static long key(int x, int y, int z) {
+        // 21 bits for every coordinate, which is a million chunks in every direction
+        return ((long) x & 0x1FFFFF) << 42 | ((long) y & 0x1FFFFF) << 21 | (long) z & 0x1FFFFF;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility;
+
+import java.util.Arrays;
+
+/**
+ * The checks the tests use. A failed check throws an {@link AssertionError} with the message, so a test stops at the
+ * first thing that's wrong and {@link RunTests} reports it.
+ */
+public final class Assert {
+
+    private Assert() {
+    }
+
+    public static void fail(String message) {
+        throw new AssertionError(message);
+    }
+
+    public static void assertTrue(String message, boolean condition) {
+        if (!condition)
+            fail(message);
+    }
+
+    public static void assertFalse(String message, boolean condition) {
+        if (condition)
+            fail(message);
+    }
+
+    public static void assertEquals(String message, long expected, long actual) {
+        if (expected != actual)
+            fail(message + ": expected " + expected + " but was " + actual);
+    }
+
+    public static void assertEquals(String message, double expected, double actual, double tolerance) {
+        if (!(Math.abs(expected - actual) <= tolerance))
+            fail(message + ": expected " + expected + " but was " + actual);
+    }
+
+    public static void assertEquals(String message, Object expected, Object actual) {
+        if (expected == null ? actual != null : !expected.equals(actual))
+            fail(message + ": expected " + expected + " but was " + actual);
+    }
+
+    public static void assertSame(String message, Object expected, Object actual) {
+        if (expected != actual)
+            fail(message + ": expected " + expected + " but was " + actual);
+    }
+
+    public static void assertNull(String message, Object object) {
+        if (object != null)
+            fail(message + ": expected null but was " + object);
+    }
+
+    public static void assertNotNull(String message, Object object) {
+        if (object == null)
+            fail(message + ": was null");
+    }
+
+    public static void assertArrayEquals(String message, int[] expected, int[] actual) {
+        if (!Arrays.equals(expected, actual))
+            fail(message + ": expected " + Arrays.toString(expected) + " but was " + Arrays.toString(actual));
+    }
+
+    public static void assertArrayEquals(String message, byte[] expected, byte[] actual) {
+        if (!Arrays.equals(expected, actual))
+            fail(message + ": the arrays differ");
+    }
+
+    /**
+     * Checks that running the code throws an exception of the given type.
+     */
+    public static void assertThrows(String message, Class<? extends Throwable> type, Runnable code) {
+        try {
+            code.run();
+        } catch (Throwable e) {
+            if (type.isInstance(e))
+                return;
+            fail(message + ": expected " + type.getSimpleName() + " but got " + e);
+        }
+        fail(message + ": expected " + type.getSimpleName() + " but nothing was thrown");
+    }
+}
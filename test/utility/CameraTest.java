@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility;
+
+import utility.gl.RecordingOpenGL;
+
+import java.nio.FloatBuffer;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertFalse;
+import static utility.Assert.assertTrue;
+
+/**
+ * Checks that the camera of CoreCube doesn't allocate per frame and only uploads its matrix after it moved.
+ */
+public class CameraTest {
+
+    private static final int FRAMES = 100_000;
+
+    public static void main(String[] args) {
+        noAllocationPerFrame();
+        uploadsOnlyWhenDirty();
+    }
+
+    private static void noAllocationPerFrame() {
+        if (!Allocations.isSupported()) {
+            System.out.println("Skipped noAllocationPerFrame: the JVM doesn't count thread allocations");
+            return;
+        }
+        final Camera camera = new Camera();
+        camera.setPerspective(60, 4 / 3f, 0.3f, 1000);
+        camera.setTarget(0, 0, 0);
+        // The recording backend boxes the arguments to describe each call, so count the uploads without describing them
+        final int[] uploads = {0};
+        final RecordingOpenGL gl = new RecordingOpenGL() {
+            @Override
+            public void glUniformMatrix4(int location, boolean transpose, FloatBuffer value) {
+                uploads[0]++;
+            }
+        };
+        final int[] frame = {0};
+        long bytes = Allocations.measure(new Runnable() {
+            @Override
+            public void run() {
+                // What CoreCube does every frame: move between two ticks, rebuild the matrix and upload it
+                float alpha = frame[0]++ % 100 / 100f;
+                camera.interpolatePosition(0, 0, 5, 1, 0, 5, alpha);
+                camera.upload(gl, 0);
+            }
+        }, FRAMES);
+        assertEquals("Bytes allocated by " + FRAMES + " frames", 0, bytes);
+        assertTrue("Uploads of a moving camera", uploads[0] > 0);
+    }
+
+    private static void uploadsOnlyWhenDirty() {
+        Camera camera = new Camera();
+        camera.setPerspective(60, 1, 0.3f, 1000);
+        camera.setPosition(0, 0, 5);
+        RecordingOpenGL gl = new RecordingOpenGL();
+        assertTrue("First upload", camera.upload(gl, 0));
+        assertFalse("Upload of an unchanged camera", camera.upload(gl, 0));
+        camera.setPosition(0, 0, 5);
+        assertFalse("Upload after setting the same position", camera.upload(gl, 0));
+        camera.setPosition(0, 0, 6);
+        assertTrue("Upload after moving", camera.upload(gl, 0));
+        // Looking down -z from z = 6 at the origin, which is 6 units away
+        FloatBuffer matrix = camera.getModelviewProjection();
+        assertEquals("Clip w of the origin", 6, matrix.get(15), 1e-4);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Runs every test of the tutorials. The tests don't need a window, a GPU or the native libraries: they render to a
+ * {@link utility.gl.RecordingOpenGL} and a {@link utility.engine.HeadlessDisplay}. Compile test/ together with src/ and
+ * run this class from the root of the project, so the tests find res/:
+ * <pre>
+ * javac -cp "jar/*" -d out $(find src test -name '*.java')
+ * java -cp "out:jar/*" utility.RunTests
+ * </pre>
+ * Every test is a class with a main method, so a single one can be run on its own as well. The exit code is the number
+ * of failed tests.
+ */
+public class RunTests {
+
+    private static final String[] TESTS = {
+            "utility.engine.FixedTimestepTest",
+            "utility.CameraTest",
+            "utility.vertex.VertexFormatTest",
+            "utility.sprite.SpriteBatchTest",
+            "utility.shader.ShaderProgramCacheTest",
+            "utility.shader.ShaderPreprocessorTest",
+            "utility.texture.TextureLoaderTest",
+            "utility.texture.TextureContainerTest",
+            "utility.texture.TextureAtlasTest",
+            "utility.gl.GLStateCacheTest",
+            "utility.gl.StreamingBufferTest",
+            "utility.scene.BoundingVolumeHierarchyTest",
+            "utility.command.CommandQueueTest",
+            "utility.input.InputQueueTest",
+            "utility.memory.BufferPoolTest",
+            "utility.memory.StackAllocatorTest",
+            "utility.mesh.MeshTest",
+            "utility.mesh.MeshLoaderTest",
+            "utility.mesh.MeshOptimizerTest",
+            "utility.mesh.LodMeshTest",
+            "utility.voxel.GreedyMesherTest",
+            "utility.voxel.RemeshSchedulerTest",
+            "utility.vertex.InstanceBufferTest",
+            "utility.log.LogBufferTest",
+            "utility.profile.HistogramTest",
+            "utility.profile.FrameProfilerTest",
+    };
+
+    public static void main(String[] args) {
+        int failed = 0;
+        for (String test : args.length > 0 ? args : TESTS) {
+            long start = System.nanoTime();
+            try {
+                Method main = Class.forName(test).getMethod("main", String[].class);
+                main.invoke(null, (Object) new String[0]);
+                System.out.printf("PASS %s (%d ms)%n", test, (System.nanoTime() - start) / 1_000_000);
+            } catch (InvocationTargetException e) {
+                failed++;
+                System.out.println("FAIL " + test);
+                e.getCause().printStackTrace(System.out);
+            } catch (ReflectiveOperationException e) {
+                failed++;
+                System.out.println("FAIL " + test + ": " + e);
+            }
+        }
+        System.out.println(failed == 0 ? "All tests passed" : failed + " tests failed");
+        System.exit(failed);
+    }
+}
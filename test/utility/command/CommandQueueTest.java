@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.command;
+
+import org.lwjgl.BufferUtils;
+import utility.Allocations;
+import utility.gl.GLStateCache;
+import utility.gl.RecordingOpenGL;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertFalse;
+import static utility.Assert.assertThrows;
+import static utility.Assert.assertTrue;
+
+/**
+ * Checks the order the fields of a {@link SortKey} sort in, and that merging lists recorded in parallel gives the same
+ * sequence as one stable sort of all packets.
+ */
+public class CommandQueueTest {
+
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) {
+        sortKeys();
+        mergeOrder();
+        resorting();
+        submission();
+        recordingWithoutAllocations();
+    }
+
+    private static void sortKeys() {
+        long key = SortKey.encode(3, 1234, 56789, 0.5f);
+        assertEquals("Layer", 3, SortKey.getLayer(key));
+        assertEquals("Program", 1234, SortKey.getProgram(key));
+        assertEquals("Texture", 56789, SortKey.getTexture(key));
+        assertEquals("Depth", SortKey.MAX_DEPTH / 2, SortKey.getDepth(key), 1);
+        long largest = SortKey.encode(SortKey.MAX_LAYER, SortKey.MAX_PROGRAM, SortKey.MAX_TEXTURE, 1f);
+        assertTrue("The largest key is positive, so keys compare as signed longs", largest > 0);
+        assertEquals("Largest depth", SortKey.MAX_DEPTH, SortKey.getDepth(largest));
+        assertEquals("Depth in front of the near plane", 0, SortKey.encode(0, 0, 0, -1f));
+        assertEquals("Depth that isn't a number", 0, SortKey.encode(0, 0, 0, Float.NaN));
+        assertEquals("Depth behind the far plane", SortKey.MAX_DEPTH, SortKey.getDepth(SortKey.encode(0, 0, 0, 2f)));
+
+        // Every field decides before all the fields after it
+        assertTrue("Layer first", SortKey.encode(1, 0, 0, 0f) > SortKey.encode(0, SortKey.MAX_PROGRAM, SortKey.MAX_TEXTURE, 1f));
+        assertTrue("Program before texture", SortKey.encode(0, 2, 0, 0f) > SortKey.encode(0, 1, SortKey.MAX_TEXTURE, 1f));
+        assertTrue("Texture before depth", SortKey.encode(0, 1, 2, 0f) > SortKey.encode(0, 1, 1, 1f));
+        assertTrue("Front to back", SortKey.encode(0, 1, 1, 0.2f) < SortKey.encode(0, 1, 1, 0.3f));
+
+        assertThrows("Layer out of range", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                SortKey.encode(SortKey.MAX_LAYER + 1, 0, 0, 0f);
+            }
+        });
+        assertThrows("Program out of range", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                SortKey.encode(0, SortKey.MAX_PROGRAM + 1, 0, 0f);
+            }
+        });
+        assertThrows("Negative texture", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                SortKey.encode(0, 0, -1, 0f);
+            }
+        });
+    }
+
+    /**
+     * Lists of random length with many equal keys, so the tie breaking is checked as well.
+     */
+    private static void mergeOrder() {
+        Random random = new Random(3);
+        for (int round = 0; round < ROUNDS; round++) {
+            int listCount = 1 + random.nextInt(6);
+            final long[][] keys = new long[listCount][];
+            // The packets as key, list and the order in which they were recorded
+            List<long[]> packets = new ArrayList<>();
+            for (int list = 0; list < listCount; list++) {
+                keys[list] = new long[random.nextInt(300)];
+                for (int i = 0; i < keys[list].length; i++) {
+                    keys[list][i] = SortKey.encode(random.nextInt(2), random.nextInt(3), random.nextInt(3), random.nextInt(4));
+                    packets.add(new long[]{keys[list][i], list, i});
+                }
+            }
+            CommandQueue queue = new CommandQueue(listCount);
+            queue.record(new CommandQueue.Recorder() {
+                @Override
+                public void record(CommandList list, int index, int count) {
+                    for (long key : keys[index]) {
+                        list.draw(key, 1, 1, 1, 4, 3, 0, 0, 1);
+                    }
+                }
+            });
+
+            Collections.sort(packets, new Comparator<long[]>() {
+                @Override
+                public int compare(long[] a, long[] b) {
+                    for (int i = 0; i < 3; i++) {
+                        if (a[i] != b[i])
+                            return Long.compare(a[i], b[i]);
+                    }
+                    return 0;
+                }
+            });
+            assertEquals("Packets of round " + round, packets.size(), queue.merge());
+            for (int i = 0; i < packets.size(); i++) {
+                assertEquals("Key " + i + " of round " + round, packets.get(i)[0], queue.getMergedKey(i));
+                assertEquals("List " + i + " of round " + round, packets.get(i)[1], queue.getMergedList(i));
+            }
+            // Within a list, packets with the same key stay in the order they were recorded
+            for (int list = 0; list < listCount; list++) {
+                CommandList commands = queue.getList(list);
+                for (int place = 1; place < commands.size(); place++) {
+                    long previous = commands.getSortedKey(place - 1);
+                    long key = commands.getSortedKey(place);
+                    assertTrue("Stable order in list " + list + " of round " + round, previous < key
+                            || previous == key && commands.getSortedPacket(place - 1) < commands.getSortedPacket(place));
+                }
+            }
+        }
+    }
+
+    private static void resorting() {
+        CommandList list = new CommandList(1);
+        list.draw(5, 1, 0, 1, 4, 3, 0, 0, 1);
+        list.draw(9, 1, 0, 1, 4, 3, 0, 0, 1);
+        list.draw(1, 1, 0, 1, 4, 3, 0, 0, 1);
+        list.sort();
+        assertTrue("Sorted", list.isSorted());
+        list.draw(7, 1, 0, 1, 4, 3, 0, 0, 1);
+        assertFalse("A new packet needs another sort", list.isSorted());
+        list.sort();
+        long[] expected = {1, 5, 7, 9};
+        for (int place = 0; place < expected.length; place++) {
+            assertEquals("Key at place " + place, expected[place], list.getSortedKey(place));
+        }
+        assertEquals("Packet recorded last but sorted first", 2, list.getSortedPacket(0));
+        list.clear();
+        assertEquals("Packets after clearing", 0, list.size());
+    }
+
+    /**
+     * Three lists of ten packets that alternate between two programs and three textures. Sorted and submitted through
+     * the state cache, each program is used once and each texture is bound once per program.
+     */
+    private static void submission() {
+        RecordingOpenGL recording = new RecordingOpenGL(true);
+        GLStateCache gl = new GLStateCache(recording);
+        final FloatBuffer matrix = BufferUtils.createFloatBuffer(16);
+        CommandQueue queue = new CommandQueue(3);
+        queue.record(new CommandQueue.Recorder() {
+            @Override
+            public void record(CommandList list, int index, int count) {
+                for (int i = 0; i < 10; i++) {
+                    int program = 1 + (i + index) % 2;
+                    int texture = 10 + i % 3;
+                    list.draw(SortKey.encode(0, program, texture, i / 10f), program, texture, 7, 4, 36,
+                            GL_UNSIGNED_SHORT, 0, i == 0 ? 5 : 1);
+                    if (i == 3)
+                        list.setMatrix(2, matrix);
+                }
+            }
+        });
+        assertEquals("Draw calls", 30, queue.submit(gl));
+        assertEquals("Program changes", 2, count(recording, "glUseProgram"));
+        assertEquals("Texture binds", 6, count(recording, "glBindTexture"));
+        assertEquals("Vertex array binds", 1, count(recording, "glBindVertexArray"));
+        assertEquals("Instanced draw calls", 3, count(recording, "glDrawElementsInstanced"));
+        // Three packets set the same matrix, but two of them belong to the same program
+        assertEquals("Matrix uploads", 2, count(recording, "glUniformMatrix4"));
+    }
+
+    private static int count(RecordingOpenGL gl, String call) {
+        int count = 0;
+        for (String command : gl.getCommands()) {
+            if (command.startsWith(call))
+                count++;
+        }
+        return count;
+    }
+
+    private static void recordingWithoutAllocations() {
+        if (!Allocations.isSupported())
+            return;
+        final CommandQueue queue = new CommandQueue(1);
+        final CommandList list = queue.getList(0);
+        long bytes = Allocations.measure(new Runnable() {
+            @Override
+            public void run() {
+                list.clear();
+                for (int i = 0; i < 1000; i++) {
+                    list.draw(SortKey.encode(0, i % 7, i % 13, (i % 100) / 100f), 1, 1, 1, 4, 3, 0, 0, 1);
+                }
+                queue.merge();
+            }
+        }, 100);
+        assertEquals("Bytes allocated by recording, sorting and merging the same packets again", 0, bytes);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.engine;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertTrue;
+
+/**
+ * Runs the engine on a {@link HeadlessDisplay} with simulated frame times, so the simulation has to come out the same
+ * whatever the frame rate is.
+ */
+public class FixedTimestepTest {
+
+    // Ten simulated seconds at 60 ticks per second
+    private static final int SECONDS = 10;
+    private static final int TICKS = SECONDS * 60;
+    private static final float SPEED = 1.8f;
+
+    public static void main(String[] args) {
+        sameStateAtEveryFrameRate();
+        alphaStaysWithinATick();
+        longFramesAreClamped();
+    }
+
+    private static void sameStateAtEveryFrameRate() {
+        float expected = simulate(60);
+        for (double framesPerSecond : new double[]{30, 59.94, 144, 1000}) {
+            assertEquals("Position at " + framesPerSecond + " fps", Float.floatToIntBits(expected),
+                    Float.floatToIntBits(simulate(framesPerSecond)));
+        }
+    }
+
+    /**
+     * @return the position of something that moves with a constant speed, after the ticks of ten seconds
+     */
+    private static float simulate(double framesPerSecond) {
+        final float[] position = {0};
+        final long[] ticks = {0};
+        // A frame more than the ten seconds, because a tick is a little longer than 1 / 60 in whole nanoseconds
+        int frames = (int) Math.ceil(framesPerSecond * SECONDS) + 2;
+        Engine engine = new Engine(new HeadlessDisplay(frames, 1 / framesPerSecond));
+        engine.run(new Application() {
+            @Override
+            public void setUp(Display display) {
+            }
+
+            @Override
+            public void update(double delta) {
+                // Stops at the same tick at every frame rate, wherever the last frame ends
+                if (ticks[0]++ < TICKS)
+                    position[0] += SPEED * (float) delta;
+            }
+
+            @Override
+            public void render(double alpha) {
+            }
+
+            @Override
+            public void cleanUp() {
+            }
+        });
+        assertTrue("Simulated at least " + TICKS + " ticks at " + framesPerSecond + " fps",
+                engine.getTimestep().getTickCount() >= TICKS);
+        return position[0];
+    }
+
+    private static void alphaStaysWithinATick() {
+        FixedTimestep timestep = new FixedTimestep(60);
+        long tick = Math.round(1e9 / 60);
+        assertEquals("Ticks of a short frame", 0, timestep.advance(tick / 4));
+        assertEquals("Alpha after a quarter tick", 0.25, timestep.getAlpha(), 1e-6);
+        assertEquals("Ticks after one and a quarter tick", 1, timestep.advance(tick));
+        assertEquals("Alpha keeps the remainder", 0.25, timestep.getAlpha(), 1e-6);
+        for (int frame = 0; frame < 1000; frame++) {
+            timestep.advance(frame * 7919 % 40_000_000);
+            assertTrue("Alpha is within [0, 1)", timestep.getAlpha() >= 0 && timestep.getAlpha() < 1);
+        }
+    }
+
+    private static void longFramesAreClamped() {
+        FixedTimestep timestep = new FixedTimestep(60);
+        // A frame of ten seconds, like a breakpoint, simulates a quarter of a second at most
+        long tick = Math.round(1e9 / 60);
+        assertEquals("Ticks of a stalled frame", 250_000_000 / tick, timestep.advance(10_000_000_000L));
+        assertEquals("Ticks of a negative frame", 0, timestep.advance(-1));
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.gl;
+
+import core_06.Core3D;
+import core_06.CoreCube;
+import core_06.CoreOpenGL;
+import input_04.Input;
+import rendering_03.Rendering;
+import textures_05.Textures;
+import utility.engine.Application;
+import utility.engine.Display;
+import utility.engine.Engine;
+import utility.engine.HeadlessDisplay;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.GL_DEPTH_TEST;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.GL_VERTEX_ARRAY;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE1;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertFalse;
+import static utility.Assert.assertTrue;
+
+/**
+ * Runs the state cache against a {@link RecordingOpenGL} and checks which calls reach it, and runs the tutorials
+ * headless to check that they don't set the same state again every frame.
+ */
+public class GLStateCacheTest {
+
+    private static final String[] STATE_CALLS = {"glBind", "glUseProgram", "glActiveTexture", "glEnable", "glDisable", "glUniform"};
+    private static final int FRAMES = 100;
+
+    public static void main(String[] args) {
+        bindings();
+        textureUnits();
+        capabilities();
+        uniforms();
+        invalidation();
+        tutorials();
+    }
+
+    private static void bindings() {
+        RecordingOpenGL gl = new RecordingOpenGL(true);
+        GLStateCache cache = new GLStateCache(gl);
+        cache.glBindBuffer(GL_ARRAY_BUFFER, 1);
+        cache.glBindBuffer(GL_ARRAY_BUFFER, 1);
+        cache.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 1);
+        // A new context has nothing bound
+        cache.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        cache.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        cache.glBindVertexArray(0);
+        cache.glUseProgram(0);
+        assertEquals("Buffer commands", Arrays.asList("glBindBuffer(34962, 1)", "glBindBuffer(34963, 1)",
+                "glBindBuffer(34962, 0)"), gl.getCommands());
+        assertEquals("Issued", 3, cache.getIssuedCount());
+        assertEquals("Elided", 4, cache.getElidedCount());
+
+        // The index buffer belongs to the vertex array object, the array buffer doesn't
+        cache.glBindVertexArray(2);
+        cache.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 1);
+        cache.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        // Deleting a bound buffer unbinds it
+        cache.glBindBuffer(GL_ARRAY_BUFFER, 5);
+        cache.glDeleteBuffers(5);
+        cache.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        assertEquals("Commands after a vertex array switch", Arrays.asList("glBindVertexArray(2)",
+                "glBindBuffer(34963, 1)", "glBindBuffer(34962, 5)", "glDeleteBuffers(5)"), tail(gl, 4));
+        cache.resetCounters();
+        assertEquals("Issued after a reset", 0, cache.getIssuedCount());
+        assertEquals("Elided after a reset", 0, cache.getElidedCount());
+    }
+
+    private static void textureUnits() {
+        RecordingOpenGL gl = new RecordingOpenGL(true);
+        GLStateCache cache = new GLStateCache(gl);
+        cache.glActiveTexture(GL_TEXTURE0);
+        cache.glBindTexture(GL_TEXTURE_2D, 3);
+        cache.glActiveTexture(GL_TEXTURE1);
+        // The same texture on another unit is a binding of its own
+        cache.glBindTexture(GL_TEXTURE_2D, 3);
+        cache.glActiveTexture(GL_TEXTURE0);
+        cache.glBindTexture(GL_TEXTURE_2D, 3);
+        assertEquals("Texture commands", Arrays.asList("glBindTexture(3553, 3)", "glActiveTexture(33985)",
+                "glBindTexture(3553, 3)", "glActiveTexture(33984)"), gl.getCommands());
+        // Deleting a texture unbinds it from every unit
+        cache.glDeleteTextures(3);
+        cache.glBindTexture(GL_TEXTURE_2D, 0);
+        cache.glActiveTexture(GL_TEXTURE1);
+        cache.glBindTexture(GL_TEXTURE_2D, 0);
+        assertEquals("Commands after deleting", Arrays.asList("glDeleteTextures(3)", "glActiveTexture(33985)"), tail(gl, 2));
+    }
+
+    private static void capabilities() {
+        RecordingOpenGL gl = new RecordingOpenGL(true);
+        GLStateCache cache = new GLStateCache(gl);
+        // Some capabilities start out enabled, so the first call is always passed on
+        cache.glEnable(GL_DEPTH_TEST);
+        cache.glEnable(GL_DEPTH_TEST);
+        cache.glDisable(GL_DEPTH_TEST);
+        cache.glDisable(GL_DEPTH_TEST);
+        cache.glEnableClientState(GL_VERTEX_ARRAY);
+        cache.glEnableClientState(GL_VERTEX_ARRAY);
+        // Client arrays belong to the vertex array object
+        cache.glBindVertexArray(1);
+        cache.glEnableClientState(GL_VERTEX_ARRAY);
+        assertEquals("Capability commands", Arrays.asList("glEnable(2929)", "glDisable(2929)",
+                "glEnableClientState(32884)", "glBindVertexArray(1)", "glEnableClientState(32884)"), gl.getCommands());
+    }
+
+    private static void uniforms() {
+        RecordingOpenGL gl = new RecordingOpenGL(true);
+        GLStateCache cache = new GLStateCache(gl);
+        FloatBuffer matrix = FloatBuffer.allocate(16);
+        cache.glUseProgram(1);
+        cache.glUniformMatrix4(0, false, matrix);
+        cache.glUniformMatrix4(0, false, matrix);
+        cache.glUniform1f(1, 0.5f);
+        // Every program has its own values
+        cache.glUseProgram(2);
+        cache.glUniformMatrix4(0, false, matrix);
+        cache.glUseProgram(1);
+        cache.glUniformMatrix4(0, false, matrix);
+        cache.glUniform1f(1, 0.5f);
+        assertEquals("Uploads", 3, gl.getCurrentFrame().getUniformUploads());
+        matrix.put(5, 1);
+        cache.glUniformMatrix4(0, false, matrix);
+        cache.glUniformMatrix4(0, true, matrix);
+        // Location -1 is ignored by OpenGL, so nothing can be known about it
+        cache.glUniform4f(-1, 1, 2, 3, 4);
+        cache.glUniform4f(-1, 1, 2, 3, 4);
+        assertEquals("Uploads after a change", 7, gl.getCurrentFrame().getUniformUploads());
+        // A deleted program may come back with the same name and new uniforms
+        cache.glDeleteProgram(2);
+        cache.glUseProgram(2);
+        cache.glUniformMatrix4(0, false, FloatBuffer.allocate(16));
+        assertEquals("Uploads to a new program", 8, gl.getCurrentFrame().getUniformUploads());
+    }
+
+    private static void invalidation() {
+        RecordingOpenGL gl = new RecordingOpenGL(true);
+        GLStateCache cache = new GLStateCache(gl);
+        cache.glUseProgram(1);
+        cache.glBindBuffer(GL_ARRAY_BUFFER, 2);
+        cache.glUniform1i(0, 7);
+        cache.invalidate();
+        cache.glUseProgram(1);
+        cache.glBindBuffer(GL_ARRAY_BUFFER, 2);
+        cache.glActiveTexture(GL_TEXTURE0);
+        cache.glUniform1i(0, 7);
+        cache.glUniform1i(0, 7);
+        assertEquals("Commands after invalidating", Arrays.asList("glUseProgram(1)", "glBindBuffer(34962, 2)",
+                "glActiveTexture(33984)", "glUniform1i(0, 7)"), tail(gl, 4));
+    }
+
+    private static List<String> tail(RecordingOpenGL gl, int count) {
+        List<String> commands = gl.getCommands();
+        return commands.subList(commands.size() - count, commands.size());
+    }
+
+    /**
+     * A tutorial that bound everything again every frame would make state calls between its draw calls. Behind the
+     * state cache only the calls that set up the first draw remain, and nothing moves headless, so neither does a
+     * uniform change after it.
+     */
+    private static void tutorials() {
+        Application[] tutorials = {new Rendering(), new Input(), new Textures(), new CoreOpenGL(), new Core3D(), new CoreCube()};
+        for (Application tutorial : tutorials) {
+            String name = tutorial.getClass().getSimpleName();
+            RecordingOpenGL gl = new RecordingOpenGL(true);
+            new Engine(new HeadlessDisplay(FRAMES, 1 / 60.0, gl)).run(paced(tutorial));
+            List<String> commands = gl.getCommands();
+            int firstDraw = 0;
+            while (firstDraw < commands.size() && !commands.get(firstDraw).startsWith("glDraw")) {
+                firstDraw++;
+            }
+            assertTrue("Draw calls of " + name, firstDraw < commands.size());
+            for (String command : commands.subList(firstDraw, commands.size())) {
+                assertFalse(name + " sets state after the first draw: " + command, isStateCall(command));
+            }
+            // Textures only starts drawing once its texture has been loaded in the background
+            if (!(tutorial instanceof Textures))
+                assertEquals("Draw calls of " + name, FRAMES, gl.getTotal().getDrawCalls());
+        }
+    }
+
+    /**
+     * @return the application, with a frame that lasts at least a millisecond like on a real display
+     */
+    private static Application paced(final Application application) {
+        return new Application() {
+            @Override
+            public void setUp(Display display) {
+                application.setUp(display);
+            }
+
+            @Override
+            public void update(double delta) {
+                application.update(delta);
+            }
+
+            @Override
+            public void render(double alpha) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                application.render(alpha);
+            }
+
+            @Override
+            public void cleanUp() {
+                application.cleanUp();
+            }
+        };
+    }
+
+    private static boolean isStateCall(String command) {
+        for (String call : STATE_CALLS) {
+            if (command.startsWith(call))
+                return true;
+        }
+        return false;
+    }
+}
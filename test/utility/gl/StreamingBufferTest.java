@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.gl;
+
+import core_06.CoreCube;
+import utility.engine.Engine;
+import utility.engine.HeadlessDisplay;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertFalse;
+import static utility.Assert.assertThrows;
+import static utility.Assert.assertTrue;
+import static utility.Assert.fail;
+
+/**
+ * Runs the ring of a {@link StreamingBuffer} with fences that pass whenever the test decides, and checks the offsets,
+ * the waits and the fences, and the orphaning fallback without buffer storage.
+ */
+public class StreamingBufferTest {
+
+    private static final int REGION_SIZE = 100;
+    private static final int REGION_COUNT = 3;
+
+    /**
+     * Numbers its fences from 1. A fence has been passed by the GPU once the test says so, or once it was waited for.
+     */
+    private static class FakeFences implements FenceProvider {
+
+        final Set<Long> live = new HashSet<>();
+        final Set<Long> passed = new HashSet<>();
+        final List<String> log = new ArrayList<>();
+        long nextFence = 1;
+
+        @Override
+        public long insert() {
+            live.add(nextFence);
+            log.add("insert " + nextFence);
+            return nextFence++;
+        }
+
+        @Override
+        public boolean waitFor(long fence) {
+            if (!live.contains(fence))
+                fail("Waiting for fence " + fence + ", which was deleted");
+            boolean stall = passed.add(fence);
+            log.add(stall ? "stall " + fence : "wait " + fence);
+            return stall;
+        }
+
+        @Override
+        public void delete(long fence) {
+            if (!live.remove(fence))
+                fail("Fence " + fence + " deleted twice");
+            log.add("delete " + fence);
+        }
+    }
+
+    public static void main(String[] args) {
+        persistentRing();
+        misuse();
+        orphaning();
+        coreCube();
+    }
+
+    private static void persistentRing() {
+        RecordingOpenGL gl = new RecordingOpenGL(true);
+        gl.setBufferStorageSupported(true);
+        FakeFences fences = new FakeFences();
+        StreamingBuffer buffer = new StreamingBuffer(gl, fences, GL_ARRAY_BUFFER, REGION_SIZE, REGION_COUNT);
+        assertTrue("Persistent with buffer storage", buffer.isPersistent());
+        assertEquals("Storage of the whole ring", "glBufferStorage(34962, 300, 194)", gl.getCommands().get(2));
+
+        long[] offsets = new long[7];
+        for (int frame = 0; frame < offsets.length; frame++) {
+            // The GPU finished frame 1 before frame 4 writes its region again, the other frames it hasn't finished yet
+            if (frame == 4)
+                fences.passed.add(2L);
+            ByteBuffer memory = buffer.map();
+            assertEquals("Position of frame " + frame, 0, memory.position());
+            assertEquals("Space of frame " + frame, REGION_SIZE, memory.remaining());
+            // The region still holds what was written a ring of frames ago, no other frame wrote into it
+            if (frame >= REGION_COUNT)
+                assertEquals("Region of frame " + frame, frame - REGION_COUNT, memory.getInt(REGION_SIZE - 4));
+            memory.putInt(REGION_SIZE - 4, frame);
+            offsets[frame] = buffer.unmap();
+            buffer.fence();
+        }
+        assertArrayEquals("Offsets", new long[]{0, 100, 200, 0, 100, 200, 0}, offsets);
+        assertEquals("Fences", Arrays.asList("insert 1", "insert 2", "insert 3", "stall 1", "delete 1", "insert 4",
+                "wait 2", "delete 2", "insert 5", "stall 3", "delete 3", "insert 6", "stall 4", "delete 4", "insert 7"),
+                fences.log);
+        assertEquals("Stalls", 3, buffer.getStalls());
+        // After generating, binding, allocating and mapping the buffer nothing reaches OpenGL anymore
+        assertEquals("Commands", 4, gl.getCommands().size());
+        buffer.delete();
+        assertTrue("Fences deleted with the buffer", fences.live.isEmpty());
+    }
+
+    private static void assertArrayEquals(String message, long[] expected, long[] actual) {
+        assertEquals(message, Arrays.toString(expected), Arrays.toString(actual));
+    }
+
+    private static void misuse() {
+        final StreamingBuffer buffer = new StreamingBuffer(persistentGL(), new FakeFences(), GL_ARRAY_BUFFER, REGION_SIZE, REGION_COUNT);
+        assertThrows("Unmapping an unmapped buffer", IllegalStateException.class, new Runnable() {
+            @Override
+            public void run() {
+                buffer.unmap();
+            }
+        });
+        buffer.map();
+        assertThrows("Mapping twice", IllegalStateException.class, new Runnable() {
+            @Override
+            public void run() {
+                buffer.map();
+            }
+        });
+        assertThrows("Fencing a mapped buffer", IllegalStateException.class, new Runnable() {
+            @Override
+            public void run() {
+                buffer.fence();
+            }
+        });
+        assertThrows("No regions", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                new StreamingBuffer(persistentGL(), new FakeFences(), GL_ARRAY_BUFFER, REGION_SIZE, 0);
+            }
+        });
+        assertThrows("Empty regions", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                new StreamingBuffer(persistentGL(), new FakeFences(), GL_ARRAY_BUFFER, 0, REGION_COUNT);
+            }
+        });
+    }
+
+    private static RecordingOpenGL persistentGL() {
+        RecordingOpenGL gl = new RecordingOpenGL(false);
+        gl.setBufferStorageSupported(true);
+        return gl;
+    }
+
+    private static void orphaning() {
+        RecordingOpenGL gl = new RecordingOpenGL(true);
+        FakeFences fences = new FakeFences();
+        StreamingBuffer buffer = new StreamingBuffer(gl, fences, GL_ARRAY_BUFFER, REGION_SIZE, REGION_COUNT);
+        assertFalse("Orphaning without buffer storage", buffer.isPersistent());
+        int setUp = gl.getCommands().size();
+        for (int frame = 0; frame < 2; frame++) {
+            ByteBuffer memory = buffer.map();
+            assertEquals("Space of frame " + frame, REGION_SIZE, memory.remaining());
+            assertEquals("Offset of frame " + frame, 0, buffer.unmap());
+            buffer.fence();
+        }
+        List<String> frame = Arrays.asList("glBindBuffer(34962, 1)", "glBufferData(34962, 100, 35040)",
+                "glMapBufferRange(34962, 0, 100, 10)", "glBindBuffer(34962, 1)", "glUnmapBuffer(34962)");
+        assertEquals("Commands of a frame", frame, gl.getCommands().subList(setUp, setUp + frame.size()));
+        assertEquals("Commands of two frames", setUp + 2 * frame.size(), gl.getCommands().size());
+        assertTrue("No fences without buffer storage", fences.log.isEmpty());
+        buffer.delete();
+    }
+
+    /**
+     * CoreCube streams the transformations of its instances every frame; both ways must draw every frame.
+     */
+    private static void coreCube() {
+        for (boolean bufferStorage : new boolean[]{false, true}) {
+            RecordingOpenGL gl = new RecordingOpenGL(true);
+            gl.setBufferStorageSupported(bufferStorage);
+            new Engine(new HeadlessDisplay(30, 1 / 60.0, gl)).run(new CoreCube());
+            for (int frame = 1; frame < gl.getFrameCount(); frame++) {
+                assertEquals("Draw calls of frame " + frame + " with buffer storage " + bufferStorage, 1,
+                        gl.getFrame(frame).getDrawCalls());
+            }
+            int fenceSyncs = 0;
+            for (String command : gl.getCommands()) {
+                if (command.startsWith("glFenceSync"))
+                    fenceSyncs++;
+            }
+            assertEquals("Fences with buffer storage " + bufferStorage, bufferStorage ? 30 : 0, fenceSyncs);
+        }
+    }
+}
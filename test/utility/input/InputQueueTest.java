@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.input;
+
+import utility.Allocations;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertFalse;
+import static utility.Assert.assertThrows;
+import static utility.Assert.assertTrue;
+import static utility.Assert.fail;
+
+/**
+ * Pushes millions of events of every type through a small queue from a producer thread and checks on the consumer side
+ * that every event arrives once, in order and with all its fields.
+ */
+public class InputQueueTest {
+
+    private static final int EVENT_COUNT = 2_000_000;
+    private static final long TIMEOUT_NANOS = 120_000_000_000L;
+
+    public static void main(String[] args) throws InterruptedException {
+        capacity();
+        droppedWhenFull();
+        producerAndConsumer();
+        pollingWithoutAllocations();
+    }
+
+    private static void capacity() {
+        assertEquals("Capacity of 1", 1, new InputQueue(1).getCapacity());
+        assertEquals("Capacity rounded up", 4, new InputQueue(3).getCapacity());
+        assertEquals("Capacity of a power of two", 256, new InputQueue(256).getCapacity());
+        assertThrows("No capacity", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                new InputQueue(0);
+            }
+        });
+    }
+
+    private static void droppedWhenFull() {
+        InputQueue queue = new InputQueue(3);
+        for (int i = 0; i < 6; i++) {
+            assertEquals("Offer " + i, i < 4, queue.offerCursor(i, i, 0));
+        }
+        assertEquals("Size of a full queue", 4, queue.size());
+        assertEquals("Dropped", 2, queue.getDropped());
+        // The oldest events are kept, the newest are dropped
+        InputEvent event = new InputEvent();
+        for (int i = 0; i < 4; i++) {
+            assertTrue("Poll " + i, queue.poll(event));
+            assertEquals("Time of event " + i, i, event.getTime());
+        }
+        assertFalse("Empty after polling everything", queue.poll(event));
+        assertTrue("Room again", queue.offerKey(9, -1, 1, 0));
+        assertTrue("Poll after wrapping around", queue.poll(event));
+        assertEquals("Unknown key after wrapping around", -1, event.getCode());
+    }
+
+    /**
+     * The producer retries an event until there is room, so nothing may be lost; the consumer checks every field of
+     * every event against the number it was made from.
+     */
+    private static void producerAndConsumer() throws InterruptedException {
+        final InputQueue queue = new InputQueue(64);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < EVENT_COUNT; i++) {
+                        while (!offer(queue, i)) {
+                            Thread.yield();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        }, "Input producer");
+        producer.start();
+
+        InputEvent event = new InputEvent();
+        long start = System.nanoTime();
+        int next = 0;
+        while (next < EVENT_COUNT) {
+            if (!queue.poll(event)) {
+                if (failure.get() != null)
+                    throw new AssertionError("The producer failed", failure.get());
+                if (System.nanoTime() - start > TIMEOUT_NANOS)
+                    fail("Timed out after " + next + " events");
+                Thread.yield();
+                continue;
+            }
+            check(event, next++);
+        }
+        producer.join();
+        assertFalse("No events after the last one", queue.poll(event));
+        assertEquals("Size after polling everything", 0, queue.size());
+    }
+
+    private static boolean offer(InputQueue queue, int i) {
+        switch (i % 3) {
+            case 0:
+                return queue.offerCursor(i, i + 0.5, -i);
+            case 1:
+                // Unknown keys are -1
+                return queue.offerKey(i, i % 7 == 0 ? -1 : i, i & 3, i & 0xFFFF);
+            default:
+                return queue.offerMouseButton(i, i & 7, i & 1, i >> 3 & 0xF);
+        }
+    }
+
+    private static void check(InputEvent event, int i) {
+        if (event.getTime() != i)
+            fail("Event " + event.getTime() + " where " + i + " was expected");
+        boolean correct;
+        switch (i % 3) {
+            case 0:
+                correct = event.getType() == InputEvent.CURSOR && event.getX() == i + 0.5 && event.getY() == -i;
+                break;
+            case 1:
+                correct = event.getType() == InputEvent.KEY && event.getCode() == (i % 7 == 0 ? -1 : i)
+                        && event.getAction() == (i & 3) && event.getMods() == (i & 0xFFFF);
+                break;
+            default:
+                correct = event.getType() == InputEvent.MOUSE_BUTTON && event.getCode() == (i & 7)
+                        && event.getAction() == (i & 1) && event.getMods() == (i >> 3 & 0xF);
+        }
+        if (!correct)
+            fail("Fields of event " + i + ": " + event);
+    }
+
+    private static void pollingWithoutAllocations() {
+        if (!Allocations.isSupported())
+            return;
+        final InputQueue queue = new InputQueue(256);
+        final InputEvent event = new InputEvent();
+        long bytes = Allocations.measure(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 200; i++) {
+                    offer(queue, i);
+                }
+                while (queue.poll(event)) {
+                    check(event, (int) event.getTime());
+                }
+            }
+        }, 1000);
+        assertEquals("Bytes allocated by offering and polling", 0, bytes);
+    }
+}
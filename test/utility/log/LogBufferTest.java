@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertNull;
+import static utility.Assert.assertSame;
+import static utility.Assert.assertTrue;
+import static utility.Assert.fail;
+
+/**
+ * Logs through small ring buffers into memory and checks what comes out: every message in order, drops counted and
+ * reported, nothing left behind by flush and close, and nothing lost between threads that log at the same time.
+ */
+public class LogBufferTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int MESSAGES_PER_PRODUCER = 20_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        singleProducerOrder();
+        droppedWhenFull();
+        flushAndClose();
+        concurrentProducers();
+        parseLevel();
+    }
+
+    private static void singleProducerOrder() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LogBuffer buffer = new LogBuffer(4096, out, Level.INFO);
+        Logger logger = buffer.getLogger("Order");
+        for (int i = 0; i < 1000; i++) {
+            logger.log(Level.INFO, "Message {} of {}", i, 1000);
+        }
+        logger.log(Level.DEBUG, "Below the level");
+        buffer.close();
+        List<String> messages = messages(out);
+        assertEquals("Messages", 1000, messages.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("Message " + i, "INFO [Order] Message " + i + " of 1000", messages.get(i));
+        }
+        assertEquals("Dropped", 0, buffer.getDropped());
+    }
+
+    /**
+     * Blocks the writer thread in the output while the ring fills up, so the number of messages that fit is known.
+     */
+    private static void droppedWhenFull() throws InterruptedException {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStream blockingOut = new OutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                out.write(b, off, len);
+            }
+        };
+        LogBuffer buffer = new LogBuffer(8, blockingOut, Level.INFO);
+        Logger logger = buffer.getLogger("Full");
+        logger.log(Level.INFO, "First");
+        assertTrue("Writer thread started writing", writing.await(60, TimeUnit.SECONDS));
+        // The first message is taken out of the ring, so all 8 records are free again
+        for (int i = 0; i < 13; i++) {
+            logger.log(Level.INFO, "Message {}", i);
+        }
+        assertEquals("Dropped", 5, buffer.getDropped());
+        release.countDown();
+        buffer.close();
+
+        List<String> lines = lines(out);
+        assertEquals("Lines", 10, lines.size());
+        assertEquals("Line 0", "INFO [Full] First", stripTime(lines.get(0)));
+        assertEquals("Report of the drops", "5 log messages were dropped, the buffer was full", lines.get(1));
+        for (int i = 0; i < 8; i++) {
+            assertEquals("Message " + i, "INFO [Full] Message " + i, stripTime(lines.get(i + 2)));
+        }
+    }
+
+    private static void flushAndClose() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LogBuffer buffer = new LogBuffer(256, out, Level.INFO);
+        Logger logger = buffer.getLogger("Flush");
+        for (int round = 1; round <= 3; round++) {
+            for (int i = 0; i < 100; i++) {
+                logger.log(Level.WARN, "Round {}, message {}", round, i);
+            }
+            buffer.flush();
+            assertEquals("Messages after flush " + round, round * 100, messages(out).size());
+        }
+        buffer.close();
+
+        out = new ByteArrayOutputStream();
+        buffer = new LogBuffer(256, out, Level.INFO);
+        logger = buffer.getLogger("Close");
+        for (int i = 0; i < 200; i++) {
+            logger.log(Level.ERROR, "Message {}", i);
+        }
+        buffer.close();
+        List<String> messages = messages(out);
+        assertEquals("Messages after close", 200, messages.size());
+        assertEquals("Last message", "ERROR [Close] Message 199", messages.get(199));
+    }
+
+    /**
+     * The ring has room for every message, so none may be dropped; the messages of every thread must come out in the
+     * order that thread logged them.
+     */
+    private static void concurrentProducers() throws InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final LogBuffer buffer = new LogBuffer(PRODUCERS * MESSAGES_PER_PRODUCER, out, Level.INFO);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            final Logger logger = buffer.getLogger("Producer" + p);
+            producers[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < MESSAGES_PER_PRODUCER; i++) {
+                            logger.log(Level.INFO, "{}", i);
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            }, "Log producer " + p);
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        buffer.close();
+        assertNull("Failure of a producer", failure.get());
+        assertEquals("Dropped", 0, buffer.getDropped());
+
+        int[] next = new int[PRODUCERS];
+        for (String message : messages(out)) {
+            // INFO [ProducerN] i
+            int producer = message.charAt("INFO [Producer".length()) - '0';
+            int i = Integer.parseInt(message.substring(message.indexOf("] ") + 2));
+            if (i != next[producer])
+                fail("Message " + i + " of producer " + producer + " where " + next[producer] + " was expected");
+            next[producer]++;
+        }
+        for (int p = 0; p < PRODUCERS; p++) {
+            assertEquals("Messages of producer " + p, MESSAGES_PER_PRODUCER, next[p]);
+        }
+    }
+
+    private static void parseLevel() {
+        assertSame("Upper case", Level.WARN, Log.parseLevel("WARN"));
+        assertSame("Lower case", Level.DEBUG, Log.parseLevel("debug"));
+        assertSame("Surrounding spaces", Level.OFF, Log.parseLevel(" Off "));
+        assertNull("Unknown level", Log.parseLevel("verbose"));
+    }
+
+    private static List<String> lines(ByteArrayOutputStream out) {
+        List<String> lines = new ArrayList<>();
+        for (String line : out.toString().split("\\R")) {
+            if (!line.isEmpty())
+                lines.add(line);
+        }
+        return lines;
+    }
+
+    // The lines of the messages without their time
+    private static List<String> messages(ByteArrayOutputStream out) {
+        List<String> messages = new ArrayList<>();
+        for (String line : lines(out)) {
+            messages.add(stripTime(line));
+        }
+        return messages;
+    }
+
+    private static String stripTime(String line) {
+        return line.substring(line.indexOf(' ') + 1);
+    }
+}
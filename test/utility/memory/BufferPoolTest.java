@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.List;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertFalse;
+import static utility.Assert.assertSame;
+import static utility.Assert.assertThrows;
+import static utility.Assert.assertTrue;
+
+/**
+ * Checks the size classes of the pool, that released buffers are handed out again instead of allocating new memory,
+ * and that buffers that are never released are reported with the place they were acquired.
+ */
+public class BufferPoolTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        sizeClasses();
+        reuse();
+        byteOrder();
+        release();
+        leaks();
+        otherThread();
+    }
+
+    private static void sizeClasses() {
+        final BufferPool pool = new BufferPool();
+        ByteBuffer bytes = pool.acquire(100);
+        assertEquals("Capacity of 100 bytes", 128, bytes.capacity());
+        assertEquals("Limit of 100 bytes", 100, bytes.limit());
+        assertEquals("Position", 0, bytes.position());
+        assertEquals("Capacity of a power of two", 64, pool.acquire(64).capacity());
+        assertEquals("Capacity of one byte", 1, pool.acquire(1).capacity());
+        FloatBuffer floats = pool.acquireFloats(16);
+        assertEquals("Floats", 16, floats.remaining());
+        assertEquals("Outstanding buffers", 4, pool.getOutstandingCount());
+        assertEquals("Outstanding bytes", 128 + 64 + 1 + 64, pool.getOutstandingBytes());
+        assertThrows("Empty buffer", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                pool.acquire(0);
+            }
+        });
+        assertThrows("Negative count", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                pool.acquireInts(-1);
+            }
+        });
+        assertThrows("More doubles than a size class holds", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                pool.acquireDoubles(Integer.MAX_VALUE / 4);
+            }
+        });
+        assertEquals("Failed acquires don't count", 4, pool.getAcquireCount());
+    }
+
+    private static void reuse() {
+        BufferPool pool = new BufferPool();
+        ByteBuffer first = pool.acquire(1000);
+        pool.release(first);
+        assertSame("Same size class", first, pool.acquire(600));
+        // After one buffer of every size class has been allocated, acquiring only hands out released buffers
+        churn(pool);
+        long allocations = pool.getAllocationCount();
+        long allocated = pool.getAllocatedBytes();
+        churn(pool);
+        assertEquals("Allocations of the second round", allocations, pool.getAllocationCount());
+        assertEquals("Bytes allocated by the second round", allocated, pool.getAllocatedBytes());
+        assertEquals("Acquires", 1 + 2 * 2 * 10000 + 1, pool.getAcquireCount());
+    }
+
+    private static void churn(BufferPool pool) {
+        for (int i = 0; i < 10000; i++) {
+            ShortBuffer shorts = pool.acquireShorts(1 + i % 30);
+            IntBuffer ints = pool.acquireInts(1 + i % 7);
+            pool.release(shorts);
+            pool.release(ints);
+        }
+    }
+
+    private static void byteOrder() {
+        BufferPool pool = new BufferPool();
+        ByteBuffer buffer = pool.acquire(16);
+        assertEquals("Byte order", ByteOrder.nativeOrder(), buffer.order());
+        ByteOrder other = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        buffer.order(other).position(8);
+        pool.release(buffer);
+        ByteBuffer again = pool.acquire(16);
+        assertSame("Recycled buffer", buffer, again);
+        assertEquals("Byte order of a recycled buffer", ByteOrder.nativeOrder(), again.order());
+        assertEquals("Position of a recycled buffer", 0, again.position());
+        assertEquals("Ints of a recycled buffer", ByteOrder.nativeOrder(), pool.acquireInts(2).order());
+    }
+
+    private static void release() {
+        final BufferPool pool = new BufferPool();
+        // Buffers with the same contents are still different buffers
+        ByteBuffer a = pool.acquire(8);
+        ByteBuffer b = pool.acquire(8);
+        a.clear();
+        b.clear();
+        pool.release(b);
+        assertEquals("Outstanding after releasing one of two equal buffers", 1, pool.getOutstandingCount());
+        pool.release(a);
+        assertEquals("Outstanding bytes after releasing everything", 0, pool.getOutstandingBytes());
+
+        final FloatBuffer floats = pool.acquireFloats(4);
+        pool.release(floats);
+        assertThrows("Released twice", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                pool.release(floats);
+            }
+        });
+        assertThrows("Not from the pool", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                pool.release(ByteBuffer.allocateDirect(16));
+            }
+        });
+        assertThrows("From another pool", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                pool.release(new BufferPool().acquire(16));
+            }
+        });
+    }
+
+    private static void leaks() {
+        BufferPool pool = new BufferPool(true);
+        ByteBuffer released = pool.acquire(32);
+        pool.acquireFloats(5);
+        pool.release(released);
+        List<String> leaks = pool.getLeaks();
+        assertEquals("Leaks", 1, leaks.size());
+        String[] lines = leaks.get(0).split("\n");
+        assertTrue("Description " + lines[0], lines[0].endsWith(" of 20 bytes"));
+        // The site starts at the caller of the pool, not inside it
+        assertTrue("Site " + lines[1], lines[1].contains(BufferPoolTest.class.getName() + ".leaks"));
+        assertEquals("Leaks reported by the check", 1, pool.checkLeaks());
+
+        BufferPool untracked = new BufferPool();
+        untracked.acquire(10);
+        assertFalse("No site without tracking", untracked.getLeaks().get(0).contains("\n"));
+    }
+
+    /**
+     * Pixels are decoded into pooled buffers on the loader threads and released on the OpenGL thread.
+     */
+    private static void otherThread() throws InterruptedException {
+        final BufferPool pool = new BufferPool();
+        final ByteBuffer[] buffers = new ByteBuffer[100];
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = pool.acquire(256);
+                }
+            }
+        }, "Pool worker");
+        worker.start();
+        worker.join();
+        assertEquals("Outstanding after the worker", buffers.length, pool.getOutstandingCount());
+        for (ByteBuffer buffer : buffers) {
+            pool.release(buffer);
+        }
+        assertEquals("Outstanding after releasing on this thread", 0, pool.getOutstandingCount());
+        assertEquals("Leaks", 0, pool.checkLeaks());
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertFalse;
+import static utility.Assert.assertSame;
+import static utility.Assert.assertThrows;
+
+/**
+ * Checks the alignment and reuse of the memory of the stack, the order in which frames must be popped, and that
+ * frames that are never popped are found at the end of a frame.
+ */
+public class StackAllocatorTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        frames();
+        misuse();
+        unpoppedFrames();
+        perThread();
+    }
+
+    private static void frames() {
+        StackAllocator stack = new StackAllocator(1024);
+        int outer = stack.push();
+        ByteBuffer bytes = stack.allocate(3);
+        assertEquals("Bytes", 3, bytes.remaining());
+        IntBuffer ints = stack.allocateInts(4);
+        // The ints start at the next multiple of 4
+        assertEquals("Used after aligning", 4 + 16, stack.getUsed());
+        ints.put(0, 42);
+
+        int inner = stack.push();
+        assertEquals("Depth", 2, stack.getDepth());
+        DoubleBuffer doubles = stack.allocateDoubles(10);
+        doubles.put(0, 1.5);
+        assertEquals("Ints untouched by the inner frame", 42, ints.get(0));
+        stack.pop(inner);
+        assertEquals("Used after popping the inner frame", 20, stack.getUsed());
+
+        int again = stack.push();
+        assertEquals("Memory of the popped frame reused", 1.5, stack.allocateDoubles(10).get(0), 0);
+        stack.pop(again);
+        stack.pop(outer);
+        assertEquals("Used after popping everything", 0, stack.getUsed());
+        assertEquals("Depth after popping everything", 0, stack.getDepth());
+        assertEquals("High water mark", 24 + 80, stack.getHighWaterMark());
+        stack.push();
+        stack.allocate(1);
+        stack.allocate(1, 64);
+        assertEquals("Used after aligning to 64", 65, stack.getUsed());
+    }
+
+    private static void misuse() {
+        final StackAllocator stack = new StackAllocator(1024);
+        assertThrows("Allocating without a frame", IllegalStateException.class, new Runnable() {
+            @Override
+            public void run() {
+                stack.allocate(4);
+            }
+        });
+        final int outer = stack.push();
+        stack.push();
+        assertThrows("Popping out of order", IllegalStateException.class, new Runnable() {
+            @Override
+            public void run() {
+                stack.pop(outer);
+            }
+        });
+        assertThrows("Larger than the stack", IllegalStateException.class, new Runnable() {
+            @Override
+            public void run() {
+                stack.allocate(2000);
+            }
+        });
+    }
+
+    private static void unpoppedFrames() {
+        StackAllocator stack = new StackAllocator(1024);
+        stack.push();
+        stack.push();
+        stack.allocate(10);
+        assertEquals("Frames left at the end of the frame", 2, stack.endFrame());
+        assertEquals("Depth after the end of the frame", 0, stack.getDepth());
+        assertEquals("Used after the end of the frame", 0, stack.getUsed());
+        assertEquals("A clean frame", 0, stack.endFrame());
+    }
+
+    private static void perThread() throws InterruptedException {
+        final StackAllocator[] other = new StackAllocator[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                other[0] = StackAllocator.get();
+            }
+        }, "Stack owner");
+        thread.start();
+        thread.join();
+        assertSame("Same stack on the same thread", StackAllocator.get(), StackAllocator.get());
+        assertFalse("Another stack on another thread", other[0] == StackAllocator.get());
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.mesh;
+
+import org.lwjgl.BufferUtils;
+import utility.Camera;
+import utility.vertex.ComponentType;
+import utility.vertex.VertexAttribute;
+import utility.vertex.VertexFormat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertTrue;
+
+/**
+ * Builds the levels of detail of a finely divided sphere and checks that every level roughly halves the triangles,
+ * stays within the error bound and really is that close to the original surface; and that flat areas, borders and
+ * seams survive the simplification.
+ */
+public class LodMeshTest {
+
+    private static final VertexFormat POSITIONS = new VertexFormat(
+            new VertexAttribute("position", Mesh.POSITION_LOCATION, 3, ComponentType.FLOAT));
+
+    public static void main(String[] args) {
+        sphere();
+        plane();
+        seam();
+        selection();
+    }
+
+    private static void sphere() {
+        List<float[]> vertices = new ArrayList<>();
+        int[] indices = icosphere(5, vertices);
+        float[] positions = new float[vertices.size() * 3];
+        for (int vertex = 0; vertex < vertices.size(); vertex++) {
+            System.arraycopy(vertices.get(vertex), 0, positions, vertex * 3, 3);
+        }
+        LodMesh lod = LodMesh.create(mesh(positions, indices));
+        assertEquals("Radius", 1, lod.getRadius(), 1e-3);
+        assertTrue("Levels of the sphere: " + lod.getLevelCount(), lod.getLevelCount() >= 4);
+        assertEquals("Offset of level 1", (long) lod.getIndexCount(0) * 2, lod.getIndexOffset(1));
+        float maxError = lod.getRadius() * LodMesh.MAX_RELATIVE_ERROR;
+        for (int level = 1; level < lod.getLevelCount(); level++) {
+            int[] levelIndices = lod.getIndexArray(level);
+            double reduction = lod.getTriangleCount(level) / (double) lod.getTriangleCount(level - 1);
+            assertEquals("Reduction of level " + level, LodMesh.REDUCTION, reduction, 0.05);
+            assertTrue("Error of level " + level + ": " + lod.getError(level), lod.getError(level) <= maxError);
+            assertTrue("Errors grow with the levels", lod.getError(level) >= lod.getError(level - 1));
+            // The reported error is an estimate from the quadrics; the actual distance may not be far off it
+            double distance = getDistance(positions, indices, levelIndices);
+            assertTrue("Distance of level " + level + " is " + distance + " for an error of " + lod.getError(level),
+                    distance <= 3 * lod.getError(level) + 1e-3);
+            assertEquals("Flipped triangles of level " + level, 0, countInwardTriangles(positions, levelIndices));
+        }
+    }
+
+    /**
+     * A flat grid can lose nearly all of its triangles without any error, but keeps its outline.
+     */
+    private static void plane() {
+        int size = 64;
+        float[] positions = gridPositions(size);
+        int[] indices = gridIndices(size);
+        MeshSimplifier simplifier = new MeshSimplifier(positions);
+        int[] simplified = simplifier.simplify(indices, 2, 1e-4f);
+        assertTrue("Triangles of the plane: " + simplified.length / 3, simplified.length / 3 < indices.length / 3 / 20);
+        assertEquals("Area of the plane", 1, getArea(positions, simplified), 1e-4);
+        assertEquals("Error of the plane", 0, simplifier.getError(), 1e-4);
+    }
+
+    /**
+     * The vertices along column 32 are doubled, as if the texture coordinates were different on either side. Every
+     * one of them must stay, or a crack opens between the halves.
+     */
+    private static void seam() {
+        int size = 64;
+        float[] grid = gridPositions(size);
+        int gridVertices = grid.length / 3;
+        float[] positions = Arrays.copyOf(grid, grid.length + (size + 1) * 3);
+        for (int y = 0; y <= size; y++) {
+            System.arraycopy(grid, (y * (size + 1) + 32) * 3, positions, (gridVertices + y) * 3, 3);
+        }
+        int[] indices = gridIndices(size);
+        for (int triangle = 0; triangle < indices.length; triangle += 3) {
+            boolean right = false;
+            for (int corner = 0; corner < 3; corner++) {
+                right |= indices[triangle + corner] % (size + 1) > 32;
+            }
+            for (int corner = 0; corner < 3 && right; corner++) {
+                int vertex = indices[triangle + corner];
+                if (vertex % (size + 1) == 32)
+                    indices[triangle + corner] = gridVertices + vertex / (size + 1);
+            }
+        }
+        int[] simplified = new MeshSimplifier(positions).simplify(indices, 2, 1e-4f);
+        Set<Integer> used = new HashSet<>();
+        for (int index : simplified) {
+            used.add(index);
+        }
+        for (int y = 0; y <= size; y++) {
+            assertTrue("Seam vertex on the left in row " + y, used.contains(y * (size + 1) + 32));
+            assertTrue("Seam vertex on the right in row " + y, used.contains(gridVertices + y));
+        }
+        assertEquals("Area with a seam", 1, getArea(positions, simplified), 1e-4);
+    }
+
+    /**
+     * The further away, the coarser the level, and the error of the chosen level covers at most a pixel.
+     */
+    private static void selection() {
+        List<float[]> vertices = new ArrayList<>();
+        int[] indices = icosphere(4, vertices);
+        float[] positions = new float[vertices.size() * 3];
+        for (int vertex = 0; vertex < vertices.size(); vertex++) {
+            System.arraycopy(vertices.get(vertex), 0, positions, vertex * 3, 3);
+        }
+        LodMesh lod = LodMesh.create(mesh(positions, indices));
+        Camera camera = new Camera();
+        camera.setPerspective(60, 640f / 480f, 0.3f, 1000);
+        LodSelector selector = new LodSelector(LodSelector.DEFAULT_THRESHOLD);
+        selector.setProjection(camera.getProjectionMatrix(), 480);
+        assertEquals("Pixels of a unit at a distance of 10", 240 / Math.tan(Math.toRadians(30)) / 10,
+                selector.getProjectedSize(1, 10), 0.01);
+        int previous = 0;
+        for (float distance : new float[]{0.5f, 2, 5, 10, 20, 50, 100, 200, 500, 1000}) {
+            int level = selector.select(lod, 1, 0, 0, -distance - 1, 0, 0, 0);
+            assertTrue("Level " + level + " at a distance of " + distance, level >= previous);
+            assertTrue("Projected error at a distance of " + distance,
+                    level == 0 || selector.getProjectedSize(lod.getError(level), distance) <= 1);
+            previous = level;
+        }
+        assertEquals("Far away", lod.getLevelCount() - 1, previous);
+        assertEquals("Inside the object", 0, selector.select(lod, 1, 0, 0, 0, 0, 0, 0));
+    }
+
+    private static Mesh mesh(float[] positions, int[] indices) {
+        ByteBuffer vertices = BufferUtils.createByteBuffer(positions.length * 4);
+        for (float position : positions) {
+            vertices.putFloat(position);
+        }
+        vertices.flip();
+        return new Mesh(POSITIONS, vertices, indices);
+    }
+
+    /**
+     * @return the triangles of an icosahedron with every triangle divided into four the given number of times, with the
+     * vertices on the unit sphere
+     */
+    private static int[] icosphere(int subdivisions, List<float[]> vertices) {
+        float t = (float) ((1 + Math.sqrt(5)) / 2);
+        float[][] corners = {{-1, t, 0}, {1, t, 0}, {-1, -t, 0}, {1, -t, 0}, {0, -1, t}, {0, 1, t}, {0, -1, -t},
+                {0, 1, -t}, {t, 0, -1}, {t, 0, 1}, {-t, 0, -1}, {-t, 0, 1}};
+        for (float[] corner : corners) {
+            addNormalized(vertices, corner[0], corner[1], corner[2]);
+        }
+        int[][] triangles = {{0, 11, 5}, {0, 5, 1}, {0, 1, 7}, {0, 7, 10}, {0, 10, 11}, {1, 5, 9}, {5, 11, 4},
+                {11, 10, 2}, {10, 7, 6}, {7, 1, 8}, {3, 9, 4}, {3, 4, 2}, {3, 2, 6}, {3, 6, 8}, {3, 8, 9}, {4, 9, 5},
+                {2, 4, 11}, {6, 2, 10}, {8, 6, 7}, {9, 8, 1}};
+        Map<Long, Integer> middles = new HashMap<>();
+        for (int subdivision = 0; subdivision < subdivisions; subdivision++) {
+            int[][] divided = new int[triangles.length * 4][];
+            for (int i = 0; i < triangles.length; i++) {
+                int[] triangle = triangles[i];
+                int ab = middle(vertices, middles, triangle[0], triangle[1]);
+                int bc = middle(vertices, middles, triangle[1], triangle[2]);
+                int ca = middle(vertices, middles, triangle[2], triangle[0]);
+                divided[i * 4] = new int[]{triangle[0], ab, ca};
+                divided[i * 4 + 1] = new int[]{triangle[1], bc, ab};
+                divided[i * 4 + 2] = new int[]{triangle[2], ca, bc};
+                divided[i * 4 + 3] = new int[]{ab, bc, ca};
+            }
+            triangles = divided;
+        }
+        int[] indices = new int[triangles.length * 3];
+        for (int i = 0; i < triangles.length; i++) {
+            System.arraycopy(triangles[i], 0, indices, i * 3, 3);
+        }
+        return indices;
+    }
+
+    private static int middle(List<float[]> vertices, Map<Long, Integer> middles, int a, int b) {
+        long key = (long) Math.min(a, b) << 32 | Math.max(a, b);
+        Integer middle = middles.get(key);
+        if (middle == null) {
+            float[] p = vertices.get(a);
+            float[] q = vertices.get(b);
+            middle = addNormalized(vertices, p[0] + q[0], p[1] + q[1], p[2] + q[2]);
+            middles.put(key, middle);
+        }
+        return middle;
+    }
+
+    private static int addNormalized(List<float[]> vertices, float x, float y, float z) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        vertices.add(new float[]{x / length, y / length, z / length});
+        return vertices.size() - 1;
+    }
+
+    private static float[] gridPositions(int size) {
+        float[] positions = new float[(size + 1) * (size + 1) * 3];
+        for (int y = 0; y <= size; y++) {
+            for (int x = 0; x <= size; x++) {
+                int vertex = y * (size + 1) + x;
+                positions[vertex * 3] = x / (float) size;
+                positions[vertex * 3 + 1] = y / (float) size;
+            }
+        }
+        return positions;
+    }
+
+    private static int[] gridIndices(int size) {
+        int[] indices = new int[size * size * 6];
+        int i = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int vertex = y * (size + 1) + x;
+                int[] quad = {vertex, vertex + 1, vertex + size + 1, vertex + 1, vertex + size + 2, vertex + size + 1};
+                System.arraycopy(quad, 0, indices, i, 6);
+                i += 6;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * @return the largest distance from a vertex of the original triangles to the nearest simplified triangle, of every
+     * fourth vertex
+     */
+    private static double getDistance(float[] positions, int[] original, int[] simplified) {
+        boolean[] used = new boolean[positions.length / 3];
+        for (int index : original) {
+            used[index] = true;
+        }
+        double largest = 0;
+        for (int vertex = 0; vertex < used.length; vertex += 4) {
+            if (!used[vertex])
+                continue;
+            double nearest = Double.MAX_VALUE;
+            for (int triangle = 0; triangle < simplified.length; triangle += 3) {
+                nearest = Math.min(nearest, getDistance(positions, vertex, simplified[triangle],
+                        simplified[triangle + 1], simplified[triangle + 2]));
+            }
+            largest = Math.max(largest, nearest);
+        }
+        return largest;
+    }
+
+    /**
+     * @return the distance from a vertex to the closest point of a triangle, after "Real-Time Collision Detection"
+     */
+    private static double getDistance(float[] positions, int vertex, int a, int b, int c) {
+        double[] p = point(positions, vertex);
+        double[] pointA = point(positions, a);
+        double[] pointB = point(positions, b);
+        double[] pointC = point(positions, c);
+        double[] ab = subtract(pointB, pointA);
+        double[] ac = subtract(pointC, pointA);
+        double[] ap = subtract(p, pointA);
+        double d1 = dot(ab, ap);
+        double d2 = dot(ac, ap);
+        if (d1 <= 0 && d2 <= 0)
+            return distance(p, pointA);
+        double[] bp = subtract(p, pointB);
+        double d3 = dot(ab, bp);
+        double d4 = dot(ac, bp);
+        if (d3 >= 0 && d4 <= d3)
+            return distance(p, pointB);
+        double vc = d1 * d4 - d3 * d2;
+        if (vc <= 0 && d1 >= 0 && d3 <= 0)
+            return distance(p, along(pointA, ab, d1 / (d1 - d3)));
+        double[] cp = subtract(p, pointC);
+        double d5 = dot(ab, cp);
+        double d6 = dot(ac, cp);
+        if (d6 >= 0 && d5 <= d6)
+            return distance(p, pointC);
+        double vb = d5 * d2 - d1 * d6;
+        if (vb <= 0 && d2 >= 0 && d6 <= 0)
+            return distance(p, along(pointA, ac, d2 / (d2 - d6)));
+        double va = d3 * d6 - d5 * d4;
+        if (va <= 0 && d4 - d3 >= 0 && d5 - d6 >= 0)
+            return distance(p, along(pointB, subtract(pointC, pointB), (d4 - d3) / ((d4 - d3) + (d5 - d6))));
+        double denominator = 1 / (va + vb + vc);
+        return distance(p, along(along(pointA, ab, vb * denominator), ac, vc * denominator));
+    }
+
+    private static int countInwardTriangles(float[] positions, int[] indices) {
+        int inward = 0;
+        for (int triangle = 0; triangle < indices.length; triangle += 3) {
+            double[] a = point(positions, indices[triangle]);
+            double[] b = point(positions, indices[triangle + 1]);
+            double[] c = point(positions, indices[triangle + 2]);
+            double[] normal = cross(subtract(b, a), subtract(c, a));
+            double[] centre = {a[0] + b[0] + c[0], a[1] + b[1] + c[1], a[2] + b[2] + c[2]};
+            if (dot(normal, centre) <= 0)
+                inward++;
+        }
+        return inward;
+    }
+
+    private static double getArea(float[] positions, int[] indices) {
+        double area = 0;
+        for (int triangle = 0; triangle < indices.length; triangle += 3) {
+            double[] a = point(positions, indices[triangle]);
+            double[] normal = cross(subtract(point(positions, indices[triangle + 1]), a),
+                    subtract(point(positions, indices[triangle + 2]), a));
+            area += Math.sqrt(dot(normal, normal)) / 2;
+        }
+        return area;
+    }
+
+    private static double[] point(float[] positions, int vertex) {
+        return new double[]{positions[vertex * 3], positions[vertex * 3 + 1], positions[vertex * 3 + 2]};
+    }
+
+    private static double[] subtract(double[] a, double[] b) {
+        return new double[]{a[0] - b[0], a[1] - b[1], a[2] - b[2]};
+    }
+
+    private static double[] along(double[] start, double[] direction, double distance) {
+        return new double[]{start[0] + direction[0] * distance, start[1] + direction[1] * distance,
+                start[2] + direction[2] * distance};
+    }
+
+    private static double[] cross(double[] a, double[] b) {
+        return new double[]{a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0]};
+    }
+
+    private static double dot(double[] a, double[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+    }
+
+    private static double distance(double[] a, double[] b) {
+        double[] difference = subtract(a, b);
+        return Math.sqrt(dot(difference, difference));
+    }
+}
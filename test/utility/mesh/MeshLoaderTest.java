@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.mesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertTrue;
+import static utility.Assert.fail;
+
+/**
+ * Loads OBJ and PLY models written by the test and checks the vertex deduplication, the triangulation of faces with more
+ * than three corners, the index size, the numbers and the errors of malformed files. The grids are large enough to be
+ * parsed in parallel chunks.
+ */
+public class MeshLoaderTest {
+
+    // 250 000 vertices, more than 16-bit indices can address
+    private static final int GRID_SIZE = 500;
+    private static final float[] CORNERS = {0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0, 0.5f, 1.5f, 0};
+
+    public static void main(String[] args) throws IOException {
+        deduplication();
+        negativeIndices();
+        polygons();
+        indexSize();
+        numbers();
+        grids();
+        errors();
+        file();
+    }
+
+    /**
+     * A cube of quads with a normal per side: the 8 corners become 24 vertices, each shared by the two triangles of
+     * its side; repeating a face adds triangles but no vertices.
+     */
+    private static void deduplication() throws IOException {
+        Mesh cube = MeshLoader.readObj(text(CUBE));
+        assertEquals("Vertices of the cube", 24, cube.getVertexCount());
+        assertEquals("Triangles of the cube", 12, cube.getTriangleCount());
+        assertEquals("Attributes", 3, cube.getFormat().size());
+        assertEquals("Stride of a position, a normal and a texture coordinate", 12 + 4 + 8, cube.getFormat().getStride());
+        assertEquals("Shared first corner", cube.getIndex(0), cube.getIndex(3));
+        assertEquals("Shared third corner", cube.getIndex(2), cube.getIndex(4));
+
+        Mesh repeated = MeshLoader.readObj(text("v 0 0 0\nv 1 0 0\nv 0 1 0\nv 1 1 0\nf 1 2 3\nf 2 4 3\nf 1 2 3\n"));
+        assertEquals("Vertices with a repeated face", 4, repeated.getVertexCount());
+        assertEquals("Triangles with a repeated face", 3, repeated.getTriangleCount());
+        assertEquals("Only positions", 1, repeated.getFormat().size());
+
+        // Vertices of a PLY file with the same position are merged, vertices no face uses are dropped
+        Mesh ply = MeshLoader.readPly(text(plyHeader("ascii", 5, 2) + "0 0 0\n1 0 0\n0 1 0\n1 0 0\n9 9 9\n3 0 1 2\n3 3 2 0\n"));
+        assertEquals("Vertices of the PLY file", 3, ply.getVertexCount());
+        assertEquals("Merged vertex", ply.getIndex(1), ply.getIndex(3));
+    }
+
+    private static void negativeIndices() throws IOException {
+        // -1 is the last vertex read so far, not the last vertex of the file
+        Mesh mesh = MeshLoader.readObj(text("v 0 0 0\nv 1 0 0\nv 0 1 0\nf -3 -2 -1\nv 7 7 7\nf 1 -1 3\n"));
+        float[] positions = mesh.getPositions();
+        assertEquals("Vertices", 4, mesh.getVertexCount());
+        assertEquals("x of the relative corner", 1, positions[3 * mesh.getIndex(1)], 0);
+        assertEquals("x of the corner after the new vertex", 7, positions[3 * mesh.getIndex(4)], 0);
+    }
+
+    /**
+     * Faces with more corners are split into a fan around their first corner.
+     */
+    private static void polygons() throws IOException {
+        StringBuilder obj = new StringBuilder();
+        for (int corner = 0; corner < CORNERS.length; corner += 3) {
+            obj.append("v ").append(CORNERS[corner]).append(' ').append(CORNERS[corner + 1]).append(' ')
+                    .append(CORNERS[corner + 2]).append('\n');
+        }
+        obj.append("f 1 2 3 4 5\n");
+        Mesh pentagon = MeshLoader.readObj(text(obj.toString()));
+        assertEquals("Triangles of a pentagon", 3, pentagon.getTriangleCount());
+        float[] positions = pentagon.getPositions();
+        int[][] fan = {{0, 1, 2}, {0, 2, 3}, {0, 3, 4}};
+        for (int triangle = 0; triangle < fan.length; triangle++) {
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = pentagon.getIndex(triangle * 3 + corner);
+                int expected = fan[triangle][corner];
+                assertEquals("x of corner " + corner + " of triangle " + triangle, CORNERS[expected * 3], positions[vertex * 3], 0);
+                assertEquals("y of corner " + corner + " of triangle " + triangle, CORNERS[expected * 3 + 1], positions[vertex * 3 + 1], 0);
+            }
+        }
+
+        Mesh ply = MeshLoader.readPly(text(plyHeader("ascii", 5, 1) + "0 0 0\n1 0 0\n1 1 0\n0 1 0\n0.5 1.5 0\n5 0 1 2 3 4\n"));
+        assertEquals("Triangles of a PLY pentagon", 3, ply.getTriangleCount());
+    }
+
+    /**
+     * A strip of triangles that uses every vertex once more than the last: up to 65536 vertices fit in 16 bits.
+     */
+    private static void indexSize() throws IOException {
+        assertEquals("Index type of 65536 vertices", GL_UNSIGNED_SHORT,
+                MeshLoader.readObj(text(strip(Mesh.MAX_SHORT_INDEXED_VERTICES))).getIndexType());
+        Mesh large = MeshLoader.readObj(text(strip(Mesh.MAX_SHORT_INDEXED_VERTICES + 1)));
+        assertEquals("Vertices of the large strip", Mesh.MAX_SHORT_INDEXED_VERTICES + 1, large.getVertexCount());
+        assertEquals("Index type of 65537 vertices", GL_UNSIGNED_INT, large.getIndexType());
+        assertEquals("Last index", Mesh.MAX_SHORT_INDEXED_VERTICES, large.getIndex(large.getIndexCount() - 1));
+    }
+
+    private static String strip(int vertexCount) {
+        StringBuilder obj = new StringBuilder();
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            obj.append("v ").append(vertex % 2).append(' ').append(vertex / 2).append(" 0\n");
+        }
+        for (int vertex = 1; vertex + 2 <= vertexCount; vertex++) {
+            obj.append("f ").append(vertex).append(' ').append(vertex + 1).append(' ').append(vertex + 2).append('\n');
+        }
+        return obj.toString();
+    }
+
+    /**
+     * The loader parses numbers itself; they must come out as Float.parseFloat reads them, apart from the rare last bit.
+     */
+    private static void numbers() throws IOException {
+        Random random = new Random(1);
+        String[] texts = new String[3 * 3 * 3333];
+        for (int i = 0; i < texts.length; i++) {
+            switch (i % 4) {
+                case 0:
+                    texts[i] = Float.toString(random.nextFloat() * 1e6f - 5e5f);
+                    break;
+                case 1:
+                    texts[i] = String.format(Locale.ROOT, "%.6f", random.nextFloat() * 2000 - 1000);
+                    break;
+                case 2:
+                    texts[i] = String.format(Locale.ROOT, "%e", random.nextGaussian());
+                    break;
+                default:
+                    texts[i] = Integer.toString(random.nextInt(1000000) - 500000);
+            }
+        }
+        texts[0] = "+3.5";
+        texts[1] = "1e-50";
+        texts[2] = "0.00000000000000000000000000001234567";
+        StringBuilder obj = new StringBuilder();
+        for (int i = 0; i < texts.length; i += 3) {
+            obj.append("v ").append(texts[i]).append(' ').append(texts[i + 1]).append(' ').append(texts[i + 2]).append('\n');
+        }
+        for (int vertex = 1; vertex + 2 <= texts.length / 3; vertex += 3) {
+            obj.append("f ").append(vertex).append(' ').append(vertex + 1).append(' ').append(vertex + 2).append('\n');
+        }
+        // The vertices are numbered in the order they are first used, which is the order of the file here
+        float[] positions = MeshLoader.readObj(text(obj.toString())).getPositions();
+        int different = 0;
+        for (int i = 0; i < texts.length; i++) {
+            if (Float.floatToIntBits(positions[i]) != Float.floatToIntBits(Float.parseFloat(texts[i])))
+                different++;
+        }
+        assertTrue(different + " of " + texts.length + " numbers differ from Float.parseFloat", different * 1000 < texts.length);
+        assertEquals("Explicit plus sign", 3.5, positions[0], 0);
+        assertEquals("Underflow", 0, positions[1], 0);
+    }
+
+    /**
+     * The same grid of quads as OBJ, binary PLY of either byte order with properties and elements the loader skips, and
+     * ASCII PLY. Every format must give the same corners, and parsing takes a fraction of a second per million corners.
+     */
+    private static void grids() throws IOException {
+        ByteBuffer obj = text(objGrid(GRID_SIZE));
+        long start = System.nanoTime();
+        Mesh objMesh = MeshLoader.readObj(obj);
+        long nanos = System.nanoTime() - start;
+        checkGrid("OBJ", objMesh, GRID_SIZE);
+        assertEquals("Index type of the OBJ grid", GL_UNSIGNED_INT, objMesh.getIndexType());
+        // A generous bound that only a parser that creates strings or objects per number misses
+        double megabytesPerSecond = obj.capacity() / 1e6 / (nanos / 1e9);
+        assertTrue("OBJ throughput of " + megabytesPerSecond + " MB/s", megabytesPerSecond > 5);
+
+        Mesh again = MeshLoader.readObj(text(objGrid(GRID_SIZE)));
+        assertTrue("The same vertices whatever the chunks", again.getVertices().equals(objMesh.getVertices()));
+        assertTrue("The same indices whatever the chunks", again.getIndices().equals(objMesh.getIndices()));
+
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            checkGrid("Binary PLY " + order, MeshLoader.readPly(binaryPly(GRID_SIZE, order)), GRID_SIZE);
+        }
+        checkGrid("ASCII PLY", MeshLoader.readPly(text(asciiPly(60))), 60);
+    }
+
+    private static void checkGrid(String name, Mesh mesh, int size) {
+        assertEquals("Vertices of the " + name + " grid", size * size, mesh.getVertexCount());
+        assertEquals("Triangles of the " + name + " grid", 2 * (size - 1) * (size - 1), mesh.getTriangleCount());
+        float[] positions = mesh.getPositions();
+        int[] corners = {0, 1, size + 1, 0, size + 1, size};
+        for (int i = 0; i < mesh.getIndexCount(); i++) {
+            int quad = i / 6;
+            int expected = quad / (size - 1) * size + quad % (size - 1) + corners[i % 6];
+            int vertex = mesh.getIndex(i);
+            for (int axis = 0; axis < 3; axis++) {
+                if (positions[vertex * 3 + axis] != coordinate(expected, axis, size))
+                    fail("Axis " + axis + " of corner " + i + " of the " + name + " grid: " + positions[vertex * 3 + axis]);
+            }
+        }
+    }
+
+    /**
+     * @return a coordinate that is exactly the same float whether it is written as text or as binary
+     */
+    private static float coordinate(int vertex, int axis, int size) {
+        switch (axis) {
+            case 0:
+                return vertex % size * 0.25f - 3;
+            case 1:
+                return vertex / size * -0.125f;
+            default:
+                return vertex % 7;
+        }
+    }
+
+    private static String objGrid(int size) {
+        StringBuilder obj = new StringBuilder("# grid\r\no grid\nmtllib grid.mtl\n");
+        for (int vertex = 0; vertex < size * size; vertex++) {
+            obj.append("v ").append(coordinate(vertex, 0, size)).append(' ').append(coordinate(vertex, 1, size))
+                    .append('\t').append(coordinate(vertex, 2, size)).append('\n');
+        }
+        obj.append("vn 0 0 1\n");
+        for (int y = 0; y < size - 1; y++) {
+            for (int x = 0; x < size - 1; x++) {
+                int corner = y * size + x + 1;
+                obj.append("f ").append(corner).append("//1 ").append(corner + 1).append("//1 ").append(corner + 1 + size)
+                        .append("//-1 ").append(corner + size).append("//1 # quad\n");
+            }
+        }
+        return obj.toString();
+    }
+
+    private static String plyHeader(String format, int vertexCount, int faceCount) {
+        return "ply\nformat " + format + " 1.0\ncomment written by the test\nelement vertex " + vertexCount
+                + "\nproperty float x\nproperty float y\nproperty float z\nelement face " + faceCount
+                + "\nproperty list uchar int vertex_indices\nend_header\n";
+    }
+
+    /**
+     * A header with an element before the vertices, properties of the vertices and faces the loader doesn't use, and an
+     * element after the faces.
+     */
+    private static String extendedPlyHeader(String format, int vertexCount, int faceCount) {
+        return "ply\nformat " + format + " 1.0\nelement material 1\nproperty list uchar float values\nelement vertex "
+                + vertexCount + "\nproperty float x\nproperty double y\nproperty float z\nproperty uchar red\n"
+                + "property list uchar int junk\nelement face " + faceCount + "\nproperty uchar flags\n"
+                + "property list uchar uint vertex_indices\nelement edge 1\nproperty int a\nproperty int b\nend_header\n";
+    }
+
+    private static ByteBuffer binaryPly(int size, ByteOrder order) {
+        int faceCount = (size - 1) * (size - 1);
+        byte[] header = extendedPlyHeader(order == ByteOrder.LITTLE_ENDIAN ? "binary_little_endian" : "binary_big_endian",
+                size * size, faceCount).getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer data = ByteBuffer.allocateDirect(header.length + 9 + size * size * 30 + faceCount * 18 + 8).order(order);
+        data.put(header);
+        data.put((byte) 2).putFloat(1).putFloat(2);
+        for (int vertex = 0; vertex < size * size; vertex++) {
+            data.putFloat(coordinate(vertex, 0, size)).putDouble(coordinate(vertex, 1, size)).putFloat(coordinate(vertex, 2, size));
+            data.put((byte) 7).put((byte) (vertex % 3));
+            for (int i = 0; i < vertex % 3; i++) {
+                data.putInt(i);
+            }
+        }
+        for (int y = 0; y < size - 1; y++) {
+            for (int x = 0; x < size - 1; x++) {
+                int corner = y * size + x;
+                data.put((byte) 0).put((byte) 4).putInt(corner).putInt(corner + 1).putInt(corner + 1 + size).putInt(corner + size);
+            }
+        }
+        data.putInt(0).putInt(1);
+        data.flip();
+        return data;
+    }
+
+    private static String asciiPly(int size) {
+        StringBuilder ply = new StringBuilder(extendedPlyHeader("ascii", size * size, (size - 1) * (size - 1)));
+        ply.append("2 1 2\n");
+        for (int vertex = 0; vertex < size * size; vertex++) {
+            ply.append(coordinate(vertex, 0, size)).append(' ').append(coordinate(vertex, 1, size)).append(' ')
+                    .append(coordinate(vertex, 2, size)).append(" 7 2 5 6\n");
+        }
+        for (int y = 0; y < size - 1; y++) {
+            for (int x = 0; x < size - 1; x++) {
+                int corner = y * size + x;
+                ply.append("0 4 ").append(corner).append(' ').append(corner + 1).append(' ').append(corner + 1 + size)
+                        .append(' ').append(corner + size).append('\n');
+            }
+        }
+        ply.append("0 1\n");
+        return ply.toString();
+    }
+
+    private static void errors() {
+        String triangle = "v 0 0 0\nv 1 0 0\nv 0 1 0\n";
+        malformedObj("Index out of range", triangle + "f 1 2 4\n");
+        malformedObj("Index zero", triangle + "f 0 1 2\n");
+        malformedObj("Relative index before the first vertex", "v 0 0 0\nv 1 0 0\nf -1 -2 -3\nv 0 1 0\n");
+        malformedObj("Two corners", triangle + "f 1 2\n");
+        malformedObj("Malformed number", "v 0 0x 0\n");
+        malformedObj("Malformed corner", triangle + "f 1 2 3a\n");
+        malformedObj("Missing normal", triangle + "f 1//1 2//1 3//1\n");
+        malformedPly("Not a PLY file", text("plx\n"));
+        malformedPly("No end of the header", text("ply\nformat ascii 1.0\n"));
+        malformedPly("PLY index out of range", text(plyHeader("ascii", 3, 1) + "0 0 0\n1 0 0\n0 1 0\n3 0 1 3\n"));
+        ByteBuffer truncated = binaryPly(4, ByteOrder.LITTLE_ENDIAN);
+        truncated.limit(truncated.limit() - 12);
+        malformedPly("Truncated binary PLY", truncated);
+    }
+
+    private static void malformedObj(String message, String obj) {
+        try {
+            MeshLoader.readObj(text(obj));
+        } catch (IOException e) {
+            return;
+        }
+        fail(message + ": no IOException");
+    }
+
+    private static void malformedPly(String message, ByteBuffer ply) {
+        try {
+            MeshLoader.readPly(ply);
+        } catch (IOException e) {
+            return;
+        }
+        fail(message + ": no IOException");
+    }
+
+    private static void file() throws IOException {
+        Path file = Files.createTempFile("cube", ".obj");
+        try {
+            Files.write(file, CUBE.getBytes(StandardCharsets.US_ASCII));
+            assertEquals("Vertices of the mapped file", 24, MeshLoader.load(file).getVertexCount());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static ByteBuffer text(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer data = ByteBuffer.allocateDirect(bytes.length);
+        data.put(bytes).flip();
+        return data;
+    }
+
+    private static final String CUBE = "# cube\r\nv -1 -1 1\r\nv 1 -1 1\nv 1 1 1\nv -1 1 1\nv -1 -1 -1\nv 1 -1 -1\nv 1 1 -1\n"
+            + "v -1 1 -1\nvt 0 0\nvt 1 0\nvt 1 1\nvt 0 1\nvn 0 0 1\nvn 0 0 -1\nvn 1 0 0\nvn -1 0 0\nvn 0 1 0\nvn 0 -1 0\n"
+            + "g cube\nusemtl red\ns off\nf 1/1/1 2/2/1 3/3/1 4/4/1\nf 6/1/2 5/2/2 8/3/2 7/4/2\nf 2/1/3 6/2/3 7/3/3 3/4/3\n"
+            + "f 5/1/4 1/2/4 4/3/4 8/4/4\nf -5/1/5 -6/2/5 -2/3/5 -1/4/5\nf 5/1/6 6/2/6 2/3/6 1/4/6\n";
+}
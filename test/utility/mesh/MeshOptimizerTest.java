@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.mesh;
+
+import org.lwjgl.BufferUtils;
+import utility.vertex.ComponentType;
+import utility.vertex.VertexAttribute;
+import utility.vertex.VertexFormat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertTrue;
+
+/**
+ * Measures the average cache miss ratio (ACMR, vertex cache misses per triangle) of grids before and after
+ * optimizing, and checks that every step keeps the same triangles facing the same way.
+ */
+public class MeshOptimizerTest {
+
+    private static final int GRID_SIZE = 256;
+    private static final VertexFormat POSITIONS = new VertexFormat(
+            new VertexAttribute("position", Mesh.POSITION_LOCATION, 3, ComponentType.FLOAT));
+
+    public static void main(String[] args) {
+        vertexCache();
+        overdraw();
+        vertexFetch();
+        degenerateTriangles();
+        wholeMesh();
+    }
+
+    /**
+     * Triangles in random order miss the cache for nearly every corner; the optimized order of a regular grid gets
+     * below 0.7 misses per triangle, better than the rows of the grid in order.
+     */
+    private static void vertexCache() {
+        int vertexCount = GRID_SIZE * GRID_SIZE;
+        int[] rows = grid(GRID_SIZE);
+        int[] shuffled = shuffle(rows.clone(), 7);
+        double rowRatio = MeshOptimizer.getAverageCacheMissRatio(rows, vertexCount, MeshOptimizer.FIFO_CACHE_SIZE);
+        double shuffledRatio = MeshOptimizer.getAverageCacheMissRatio(shuffled, vertexCount, MeshOptimizer.FIFO_CACHE_SIZE);
+        assertEquals("ACMR of the rows", 1, rowRatio, 0.01);
+        assertEquals("ACMR of the shuffled triangles", 3, shuffledRatio, 0.01);
+
+        int[] optimized = MeshOptimizer.optimizeVertexCache(shuffled, vertexCount);
+        assertEquals("Same triangles after optimizing the cache", triangles(shuffled, null), triangles(optimized, null));
+        double optimizedRatio = MeshOptimizer.getAverageCacheMissRatio(optimized, vertexCount, MeshOptimizer.FIFO_CACHE_SIZE);
+        assertTrue("ACMR of the optimized triangles: " + optimizedRatio, optimizedRatio < 0.7);
+        assertTrue("Better than the rows", optimizedRatio < rowRatio * 0.75);
+        // Each vertex of a grid is used by six triangles, so at best it is transformed once: half a miss per triangle
+        assertTrue("Never better than the vertex count allows", optimizedRatio >= vertexCount / (double) (optimized.length / 3));
+        double transformRatio = MeshOptimizer.getAverageTransformRatio(optimized, vertexCount, MeshOptimizer.FIFO_CACHE_SIZE);
+        assertTrue("ATVR of the optimized triangles: " + transformRatio, transformRatio < 1.45);
+        assertTrue("Tuned for a 16 entry FIFO, still fine with a larger one",
+                MeshOptimizer.getAverageCacheMissRatio(optimized, vertexCount, 32) <= optimizedRatio);
+    }
+
+    /**
+     * Reordering the clusters of a sphere for overdraw may cost at most the allowed ACMR threshold.
+     */
+    private static void overdraw() {
+        int size = 200;
+        float[] positions = new float[size * size * 3];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                double theta = Math.PI * y / (size - 1);
+                double phi = 2 * Math.PI * x / (size - 1);
+                int offset = (y * size + x) * 3;
+                positions[offset] = (float) (Math.sin(theta) * Math.cos(phi));
+                positions[offset + 1] = (float) Math.cos(theta);
+                positions[offset + 2] = (float) (Math.sin(theta) * Math.sin(phi));
+            }
+        }
+        int[] sphere = shuffle(grid(size), 3);
+        int[] cacheOptimized = MeshOptimizer.optimizeVertexCache(sphere, size * size);
+        int[] overdrawOptimized = cacheOptimized.clone();
+        MeshOptimizer.optimizeOverdraw(overdrawOptimized, positions, MeshOptimizer.FIFO_CACHE_SIZE);
+        assertEquals("Same triangles after optimizing overdraw", triangles(sphere, null), triangles(overdrawOptimized, null));
+        double before = MeshOptimizer.getAverageCacheMissRatio(cacheOptimized, size * size, MeshOptimizer.FIFO_CACHE_SIZE);
+        double after = MeshOptimizer.getAverageCacheMissRatio(overdrawOptimized, size * size, MeshOptimizer.FIFO_CACHE_SIZE);
+        assertTrue("ACMR went from " + before + " to " + after, after <= before * MeshOptimizer.OVERDRAW_THRESHOLD);
+    }
+
+    private static void vertexFetch() {
+        int vertexCount = GRID_SIZE * GRID_SIZE;
+        int[] shuffled = shuffle(grid(GRID_SIZE), 5);
+        int[] indices = MeshOptimizer.optimizeVertexCache(shuffled, vertexCount);
+        int[] order = MeshOptimizer.optimizeVertexFetch(indices, vertexCount);
+        assertEquals("Every vertex is used", vertexCount, order.length);
+        // The vertices are numbered in the order the triangles first use them
+        int highest = -1;
+        for (int index : indices) {
+            assertTrue("Index " + index + " after " + highest, index <= highest + 1);
+            highest = Math.max(highest, index);
+        }
+        assertEquals("Same triangles after renumbering", triangles(shuffled, null), triangles(indices, order));
+    }
+
+    private static void degenerateTriangles() {
+        int[] indices = {0, 1, 2, 2, 2, 3, 5, 4, 3, 0, 0, 0};
+        int[] optimized = MeshOptimizer.optimizeVertexCache(indices, 9);
+        assertEquals("Same degenerate triangles", triangles(indices, null), triangles(optimized, null));
+        assertEquals("Unused vertices are dropped", 6, MeshOptimizer.optimizeVertexFetch(optimized.clone(), 9).length);
+        assertEquals("No triangles", 0, MeshOptimizer.optimizeVertexCache(new int[0], 0).length);
+    }
+
+    /**
+     * Optimizes a mesh of shuffled triangles and compares the triangles by the positions of their corners.
+     */
+    private static void wholeMesh() {
+        int size = 120;
+        ByteBuffer vertices = BufferUtils.createByteBuffer(size * size * POSITIONS.getStride());
+        for (int vertex = 0; vertex < size * size; vertex++) {
+            vertices.putFloat(vertex % size).putFloat(vertex / size).putFloat((float) Math.sin(vertex));
+        }
+        vertices.flip();
+        Mesh mesh = new Mesh(POSITIONS, vertices, shuffle(grid(size), 11));
+        Mesh optimized = MeshOptimizer.optimize(mesh);
+        assertEquals("Vertices", mesh.getVertexCount(), optimized.getVertexCount());
+        assertEquals("Triangles", mesh.getTriangleCount(), optimized.getTriangleCount());
+        assertEquals("Index type", mesh.getIndexType(), optimized.getIndexType());
+        assertEquals("Same corners", corners(mesh), corners(optimized));
+        double before = MeshOptimizer.getAverageCacheMissRatio(mesh.getIndexArray(), mesh.getVertexCount(), MeshOptimizer.FIFO_CACHE_SIZE);
+        double after = MeshOptimizer.getAverageCacheMissRatio(optimized.getIndexArray(), optimized.getVertexCount(), MeshOptimizer.FIFO_CACHE_SIZE);
+        assertTrue("ACMR of the mesh went from " + before + " to " + after, after < before / 4);
+    }
+
+    /**
+     * @return the triangles of a grid of quads, row by row
+     */
+    private static int[] grid(int size) {
+        int[] indices = new int[(size - 1) * (size - 1) * 6];
+        int i = 0;
+        for (int y = 0; y < size - 1; y++) {
+            for (int x = 0; x < size - 1; x++) {
+                int corner = y * size + x;
+                int[] quad = {corner, corner + 1, corner + size + 1, corner, corner + size + 1, corner + size};
+                System.arraycopy(quad, 0, indices, i, 6);
+                i += 6;
+            }
+        }
+        return indices;
+    }
+
+    private static int[] shuffle(int[] indices, long seed) {
+        Random random = new Random(seed);
+        for (int triangle = indices.length / 3 - 1; triangle > 0; triangle--) {
+            int other = random.nextInt(triangle + 1);
+            for (int corner = 0; corner < 3; corner++) {
+                int swap = indices[triangle * 3 + corner];
+                indices[triangle * 3 + corner] = indices[other * 3 + corner];
+                indices[other * 3 + corner] = swap;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * @param vertices the original vertex of every index, or null if the indices are the original vertices
+     * @return the triangles in a form that doesn't depend on their order or on which corner comes first, but does
+     * depend on the way they face
+     */
+    private static List<Long> triangles(int[] indices, int[] vertices) {
+        List<Long> triangles = new ArrayList<>();
+        for (int triangle = 0; triangle < indices.length / 3; triangle++) {
+            long[] corners = new long[3];
+            for (int corner = 0; corner < 3; corner++) {
+                int index = indices[triangle * 3 + corner];
+                corners[corner] = vertices == null ? index : vertices[index];
+            }
+            while (corners[0] > corners[1] || corners[0] > corners[2]) {
+                long first = corners[0];
+                corners[0] = corners[1];
+                corners[1] = corners[2];
+                corners[2] = first;
+            }
+            triangles.add(corners[0] << 42 | corners[1] << 21 | corners[2]);
+        }
+        Collections.sort(triangles);
+        return triangles;
+    }
+
+    private static List<String> corners(Mesh mesh) {
+        float[] positions = mesh.getPositions();
+        List<String> triangles = new ArrayList<>();
+        for (int triangle = 0; triangle < mesh.getTriangleCount(); triangle++) {
+            String[] corners = new String[3];
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = mesh.getIndex(triangle * 3 + corner);
+                corners[corner] = Arrays.toString(Arrays.copyOfRange(positions, vertex * 3, vertex * 3 + 3));
+            }
+            int first = 0;
+            for (int corner = 1; corner < 3; corner++) {
+                if (corners[corner].compareTo(corners[first]) < 0)
+                    first = corner;
+            }
+            triangles.add(corners[first] + corners[(first + 1) % 3] + corners[(first + 2) % 3]);
+        }
+        Collections.sort(triangles);
+        return triangles;
+    }
+}
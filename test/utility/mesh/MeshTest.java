@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.mesh;
+
+import org.lwjgl.BufferUtils;
+import utility.vertex.ComponentType;
+import utility.vertex.VertexAttribute;
+import utility.vertex.VertexFormat;
+import utility.voxel.GreedyMesher;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static utility.Assert.assertArrayEquals;
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertNotNull;
+import static utility.Assert.assertNull;
+import static utility.Assert.assertThrows;
+
+/**
+ * Checks the switch from 16-bit to 32-bit indices, and that the positions are found in the meshes of the loader and of
+ * the voxel chunks alike.
+ */
+public class MeshTest {
+
+    private static final VertexFormat POSITIONS = new VertexFormat(
+            new VertexAttribute("position", Mesh.POSITION_LOCATION, 3, ComponentType.FLOAT));
+
+    public static void main(String[] args) {
+        indexSize();
+        positions();
+        invalid();
+    }
+
+    private static void indexSize() {
+        int[] indices = {0, 1, Mesh.MAX_SHORT_INDEXED_VERTICES - 1};
+        Mesh largestShort = new Mesh(POSITIONS, vertices(POSITIONS, Mesh.MAX_SHORT_INDEXED_VERTICES), indices);
+        assertEquals("Index type of 65536 vertices", GL_UNSIGNED_SHORT, largestShort.getIndexType());
+        assertEquals("Index data of 65536 vertices", 6, largestShort.getIndices().remaining());
+        assertArrayEquals("Largest short index read back unsigned", indices, largestShort.getIndexArray());
+
+        Mesh smallestInt = new Mesh(POSITIONS, vertices(POSITIONS, Mesh.MAX_SHORT_INDEXED_VERTICES + 1),
+                new int[]{0, 1, Mesh.MAX_SHORT_INDEXED_VERTICES});
+        assertEquals("Index type of 65537 vertices", GL_UNSIGNED_INT, smallestInt.getIndexType());
+        assertEquals("Index size of 65537 vertices", 4, smallestInt.getIndexSize());
+        assertEquals("Last index of 65537 vertices", Mesh.MAX_SHORT_INDEXED_VERTICES, smallestInt.getIndex(2));
+    }
+
+    /**
+     * The voxel chunks put their position at the location of vertex_position, like the cubes of the core tutorials; the
+     * optimizer and the simplifier need those positions as well.
+     */
+    private static void positions() {
+        ByteBuffer data = vertices(GreedyMesher.VERTEX_FORMAT, 3);
+        data.putFloat(0, 1).putFloat(4, 2).putFloat(8, 3);
+        data.putFloat(GreedyMesher.VERTEX_FORMAT.getStride() * 2 + 8, 5);
+        float[] positions = new Mesh(GreedyMesher.VERTEX_FORMAT, data, new int[]{0, 1, 2}).getPositions();
+        assertNotNull("Positions of a voxel mesh", positions);
+        assertEquals("x", 1, positions[0], 0);
+        assertEquals("z", 3, positions[2], 0);
+        assertEquals("z of the last vertex", 5, positions[8], 0);
+        assertNotNull("Positions of a loaded mesh", new Mesh(POSITIONS, vertices(POSITIONS, 3), new int[]{0, 1, 2}).getPositions());
+
+        VertexFormat colours = new VertexFormat(new VertexAttribute("colour", 0, 3, ComponentType.FLOAT));
+        assertNull("No position", new Mesh(colours, vertices(colours, 3), new int[]{0, 1, 2}).getPositions());
+    }
+
+    private static void invalid() {
+        assertThrows("Index out of range", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                new Mesh(POSITIONS, vertices(POSITIONS, 3), new int[]{0, 1, 3});
+            }
+        });
+        assertThrows("Not a whole number of triangles", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                new Mesh(POSITIONS, vertices(POSITIONS, 3), new int[]{0, 1});
+            }
+        });
+        assertThrows("Not a whole number of vertices", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                new Mesh(POSITIONS, BufferUtils.createByteBuffer(13), new int[0]);
+            }
+        });
+    }
+
+    private static ByteBuffer vertices(VertexFormat format, int count) {
+        return BufferUtils.createByteBuffer(count * format.getStride());
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.profile;
+
+import utility.gl.GpuTimer;
+
+import java.util.Random;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertTrue;
+import static utility.Assert.fail;
+
+/**
+ * Profiles frames with a GPU timer of which the test sets the clock and whether results are available, and checks when
+ * the GPU times are read, that missing times are skipped, that close() reads the rest and the percentiles of known
+ * durations.
+ */
+public class FrameProfilerTest {
+
+    public static void main(String[] args) {
+        gpuLatency();
+        unavailableTimesSkipped();
+        closeDrainsQueries();
+        gpuPercentiles();
+        cpuPercentiles();
+    }
+
+    private static void gpuLatency() {
+        FrameProfiler profiler = new FrameProfiler(16, 4);
+        StubGpuTimer timer = new StubGpuTimer();
+        profiler.setGpuTimer(timer);
+        for (int frame = 0; frame < 10; frame++) {
+            frame(profiler, timer, 1000);
+            // The times of frame n are read at the end of frame n + GPU_LATENCY - 1
+            long resolved = Math.max(0, profiler.getFrameCount() - FrameProfiler.GPU_LATENCY + 1);
+            assertEquals("GPU times after frame " + frame, resolved,
+                    profiler.getGpuHistogram(FrameProfiler.FRAME).getCount());
+            assertEquals("Reads after frame " + frame, resolved * 2, timer.reads);
+        }
+        assertEquals("Waits for the GPU", 0, timer.waits);
+        assertEquals("GPU time of a frame", 1000, profiler.getGpuHistogram(FrameProfiler.FRAME).getMax());
+        profiler.close();
+    }
+
+    private static void unavailableTimesSkipped() {
+        FrameProfiler profiler = new FrameProfiler(16, 4);
+        StubGpuTimer timer = new StubGpuTimer();
+        profiler.setGpuTimer(timer);
+        for (int frame = 0; frame < 10; frame++) {
+            // The GPU falls behind in frames 4 and 5, which are read in frames 6 and 7
+            timer.available = frame != 6 && frame != 7;
+            frame(profiler, timer, 2000);
+        }
+        Histogram histogram = profiler.getGpuHistogram(FrameProfiler.FRAME);
+        assertEquals("Unavailable GPU times", 2, profiler.getUnavailableGpuTimes());
+        assertEquals("Frames with GPU times", 8 - 2, histogram.getCount());
+        assertEquals("Shortest GPU time", 2000, histogram.getMin());
+        assertEquals("Lowest GPU percentile", 2000, profiler.getGpuPercentile(FrameProfiler.FRAME, 0));
+        assertEquals("Waits for the GPU", 0, timer.waits);
+        profiler.close();
+    }
+
+    private static void closeDrainsQueries() {
+        FrameProfiler profiler = new FrameProfiler(16, 4);
+        StubGpuTimer timer = new StubGpuTimer();
+        profiler.setGpuTimer(timer);
+        int draw = profiler.addPhase("draw");
+        for (int frame = 0; frame < 20; frame++) {
+            profiler.beginFrame();
+            profiler.begin(draw);
+            timer.clock += 300;
+            profiler.end(draw);
+            timer.clock += 200;
+            profiler.endFrame();
+        }
+        assertEquals("Frames with GPU times before closing", 20 - FrameProfiler.GPU_LATENCY + 1,
+                profiler.getGpuHistogram(draw).getCount());
+        timer.available = false;
+        profiler.close();
+        assertEquals("Frames with GPU times after closing", 20, profiler.getGpuHistogram(draw).getCount());
+        assertEquals("GPU time of the frame", 500, profiler.getGpuHistogram(FrameProfiler.FRAME).getMax());
+        assertEquals("GPU time of the phase", 300, profiler.getGpuHistogram(draw).getMax());
+        // The last two frames weren't available yet, so close() had to wait for the 2 queries of their 2 scopes each
+        assertEquals("Waits for the GPU", 8, timer.waits);
+        assertEquals("Queries left after closing", 0, timer.created - timer.deleted);
+        // Another frame doesn't use the deleted queries
+        frame(profiler, timer, 100);
+        assertEquals("Queries after a frame without a timer", 0, timer.created - timer.deleted);
+    }
+
+    /**
+     * Frames of 1 to 100 microseconds in a random order, with a phase that takes a quarter of that.
+     */
+    private static void gpuPercentiles() {
+        FrameProfiler profiler = new FrameProfiler();
+        StubGpuTimer timer = new StubGpuTimer();
+        profiler.setGpuTimer(timer);
+        int draw = profiler.addPhase("draw");
+        int[] durations = new int[100];
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = (i + 1) * 1000;
+        }
+        Random random = new Random(1);
+        for (int i = durations.length - 1; i > 0; i--) {
+            int other = random.nextInt(i + 1);
+            int swap = durations[i];
+            durations[i] = durations[other];
+            durations[other] = swap;
+        }
+        for (int duration : durations) {
+            profiler.beginFrame();
+            profiler.begin(draw);
+            timer.clock += duration / 4;
+            profiler.end(draw);
+            timer.clock += duration - duration / 4;
+            profiler.endFrame();
+        }
+        profiler.close();
+
+        int frame = FrameProfiler.FRAME;
+        assertEquals("p50", 50_000, profiler.getGpuPercentile(frame, 50));
+        assertEquals("p95", 95_000, profiler.getGpuPercentile(frame, 95));
+        assertEquals("p99", 99_000, profiler.getGpuPercentile(frame, 99));
+        assertEquals("p100", 100_000, profiler.getGpuPercentile(frame, 100));
+        assertEquals("p50 of the phase", 12_500, profiler.getGpuPercentile(draw, 50));
+        assertEquals("p99 of the phase", 24_750, profiler.getGpuPercentile(draw, 99));
+        // The histogram of all frames gives the same within its precision
+        Histogram histogram = profiler.getGpuHistogram(frame);
+        checkPercentile(histogram, 50, 50_000);
+        checkPercentile(histogram, 95, 95_000);
+        checkPercentile(histogram, 99, 99_000);
+        assertEquals("Mean", 50_500, histogram.getMean(), 1e-9);
+    }
+
+    /**
+     * The CPU times come from the system clock, so only check that the phase that waits longest has the highest
+     * percentiles and that they are at least as long as the waits.
+     */
+    private static void cpuPercentiles() {
+        FrameProfiler profiler = new FrameProfiler();
+        int shortPhase = profiler.addPhase("short");
+        int longPhase = profiler.addPhase("long");
+        for (int frame = 0; frame < 20; frame++) {
+            profiler.beginFrame();
+            profiler.begin(shortPhase);
+            spin(100_000);
+            profiler.end(shortPhase);
+            profiler.begin(longPhase);
+            spin(frame < 19 ? 1_000_000 : 5_000_000);
+            profiler.end(longPhase);
+            profiler.endFrame();
+        }
+        assertTrue("p50 of the short phase", profiler.getPercentile(shortPhase, 50) >= 100_000);
+        assertTrue("p50 of the long phase", profiler.getPercentile(longPhase, 50) >= 1_000_000);
+        assertTrue("p99 of the long phase", profiler.getPercentile(longPhase, 99) >= 5_000_000);
+        assertTrue("p50 of the frame", profiler.getPercentile(FrameProfiler.FRAME, 50) >= 1_100_000);
+        assertEquals("Frames in the histogram", 20, profiler.getHistogram(longPhase).getCount());
+        assertTrue("p95 not below p50", profiler.getPercentile(longPhase, 95) >= profiler.getPercentile(longPhase, 50));
+    }
+
+    private static void checkPercentile(Histogram histogram, double percentile, long expected) {
+        long value = histogram.getValueAtPercentile(percentile);
+        if (value < expected || value > expected + expected / 64)
+            fail("p" + percentile + " of the histogram is " + value + " where " + expected + " was expected");
+    }
+
+    // A frame of the given GPU time
+    private static void frame(FrameProfiler profiler, StubGpuTimer timer, long gpuTime) {
+        profiler.beginFrame();
+        timer.clock += gpuTime;
+        profiler.endFrame();
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * A GPU that reaches every query at the moment it's recorded, at the time of its clock.
+     */
+    private static class StubGpuTimer implements GpuTimer {
+
+        private final long[] times = new long[1024];
+        private final boolean[] live = new boolean[1024];
+        long clock;
+        boolean available = true;
+        int created, deleted, reads, waits;
+
+        @Override
+        public int create() {
+            live[++created] = true;
+            return created;
+        }
+
+        @Override
+        public void record(int query) {
+            check(query);
+            times[query] = clock;
+        }
+
+        @Override
+        public boolean isAvailable(int query) {
+            check(query);
+            return available;
+        }
+
+        @Override
+        public long getTime(int query) {
+            check(query);
+            reads++;
+            if (!available)
+                waits++;
+            return times[query];
+        }
+
+        @Override
+        public void delete(int query) {
+            check(query);
+            live[query] = false;
+            deleted++;
+        }
+
+        private void check(int query) {
+            if (query <= 0 || query > created || !live[query])
+                fail("Query " + query + " was never created or is deleted");
+        }
+    }
+}
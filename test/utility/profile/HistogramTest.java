@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.profile;
+
+import java.util.Random;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.fail;
+
+/**
+ * Checks which values share a bucket of the histogram and that a percentile is never more than 1/64 above the value it
+ * stands for.
+ */
+public class HistogramTest {
+
+    public static void main(String[] args) {
+        smallValuesExact();
+        bucketPlacement();
+        relativeError();
+        statistics();
+    }
+
+    private static void smallValuesExact() {
+        // Every value below 128 has a bucket of its own
+        for (long value = 0; value < 128; value++) {
+            Histogram histogram = new Histogram();
+            histogram.record(value);
+            histogram.record(1_000_000);
+            assertEquals("p50 of " + value, value, histogram.getValueAtPercentile(50));
+        }
+    }
+
+    private static void bucketPlacement() {
+        // From 2^n on, every power of two is split into 64 buckets of 2^(n - 6) values: 1000 is in 1000 to 1007
+        long[][] buckets = {{128, 129}, {255, 255}, {256, 259}, {1000, 1007}, {1008, 1015}, {4096, 4159},
+                {1L << 40, (1L << 40) + (1L << 34) - 1}, {Long.MAX_VALUE, Long.MAX_VALUE}};
+        for (long[] bucket : buckets) {
+            Histogram histogram = new Histogram();
+            histogram.record(bucket[0]);
+            histogram.record(Long.MAX_VALUE);
+            assertEquals("Highest value in the bucket of " + bucket[0], bucket[1], histogram.getValueAtPercentile(50));
+            if (bucket[1] < Long.MAX_VALUE) {
+                // The next value starts a new bucket
+                histogram = new Histogram();
+                histogram.record(bucket[1]);
+                histogram.record(bucket[1] + 1);
+                assertEquals("Lowest of " + bucket[1] + " and " + (bucket[1] + 1), bucket[1],
+                        histogram.getValueAtPercentile(50));
+            }
+        }
+        // The largest value recorded limits the percentiles
+        Histogram histogram = new Histogram();
+        histogram.record(1000);
+        assertEquals("Single value", 1000, histogram.getValueAtPercentile(50));
+    }
+
+    private static void relativeError() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            // Values of every magnitude up to Long.MAX_VALUE
+            long value = random.nextLong() >>> 1 + random.nextInt(63);
+            Histogram histogram = new Histogram();
+            histogram.record(value);
+            histogram.record(Long.MAX_VALUE);
+            long reported = histogram.getValueAtPercentile(50);
+            if (reported < value || reported - value > value / 64)
+                fail(value + " is reported as " + reported);
+        }
+    }
+
+    private static void statistics() {
+        Histogram histogram = new Histogram();
+        assertEquals("Percentile of an empty histogram", 0, histogram.getValueAtPercentile(99));
+        assertEquals("Minimum of an empty histogram", 0, histogram.getMin());
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        histogram.record(-5);
+        assertEquals("Count", 101, histogram.getCount());
+        assertEquals("Minimum, negative values count as 0", 0, histogram.getMin());
+        assertEquals("Maximum", 100, histogram.getMax());
+        assertEquals("Mean", 5050 / 101.0, histogram.getMean(), 1e-9);
+        assertEquals("p50", 50, histogram.getValueAtPercentile(50));
+        assertEquals("p99", 99, histogram.getValueAtPercentile(99));
+        assertEquals("p100", 100, histogram.getValueAtPercentile(100));
+        histogram.reset();
+        assertEquals("Count after reset", 0, histogram.getCount());
+        assertEquals("Maximum after reset", 0, histogram.getMax());
+    }
+}
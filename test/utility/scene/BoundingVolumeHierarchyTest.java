@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.scene;
+
+import utility.Camera;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static utility.Assert.assertArrayEquals;
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertFalse;
+import static utility.Assert.assertThrows;
+import static utility.Assert.assertTrue;
+
+/**
+ * Culls random boxes from random cameras with the hierarchy, sequentially and on the fork-join pool, and compares the
+ * result with testing every box against the frustum.
+ */
+public class BoundingVolumeHierarchyTest {
+
+    // Above 8192 objects the hierarchy is culled on the fork-join pool
+    private static final int[] OBJECT_COUNTS = {0, 1, 3, 5, 100, 20000};
+    private static final int CAMERAS = 40;
+
+    public static void main(String[] args) {
+        frustum();
+        Random random = new Random(7);
+        for (int objectCount : OBJECT_COUNTS) {
+            bruteForce(random, objectCount);
+        }
+        sceneGraph(random);
+    }
+
+    private static void frustum() {
+        Camera camera = new Camera();
+        camera.setPerspective(60, 4 / 3f, 0.3f, 200);
+        camera.setPosition(0, 0, 5);
+        camera.setTarget(0, 0, 0);
+        Frustum frustum = new Frustum().set(camera.getModelviewProjection());
+        assertTrue("The target is visible", frustum.contains(0, 0, 0));
+        assertFalse("Behind the camera", frustum.contains(0, 0, 10));
+        assertFalse("Beyond the far plane", frustum.contains(0, 0, -300));
+        assertFalse("Far to the side", frustum.contains(100, 0, 0));
+        assertEquals("Sphere around the target", Frustum.INSIDE, frustum.testSphere(0, 0, 0, 1));
+        assertEquals("Box around everything", Frustum.INTERSECTING, frustum.testBox(-1000, -1000, -1000, 1000, 1000, 1000));
+        assertEquals("Box behind the camera", Frustum.OUTSIDE, frustum.testBox(0, 0, 10, 1, 1, 11));
+    }
+
+    private static void bruteForce(Random random, int objectCount) {
+        final BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(Math.max(1, objectCount));
+        float[] bounds = new float[6 * objectCount];
+        for (int object = 0; object < objectCount; object++) {
+            float x = random.nextFloat() * 400 - 200;
+            float y = random.nextFloat() * 400 - 200;
+            float z = random.nextFloat() * 400 - 200;
+            float size = random.nextFloat() * 3;
+            setBounds(hierarchy, bounds, object, x - size, y - size, z - size, x + size, y + size, z + size);
+        }
+        hierarchy.build(objectCount);
+        assertEquals("Objects", objectCount, hierarchy.getObjectCount());
+
+        Camera camera = new Camera();
+        camera.setPerspective(60, 4 / 3f, 0.3f, 200);
+        final Frustum frustum = new Frustum();
+        int[] sequential = new int[Math.max(1, objectCount)];
+        int[] parallel = new int[Math.max(1, objectCount)];
+        for (int i = 0; i < CAMERAS; i++) {
+            camera.setPosition(random.nextFloat() * 100 - 50, random.nextFloat() * 100 - 50, random.nextFloat() * 100 - 50);
+            camera.setTarget(random.nextFloat() * 100 - 50, random.nextFloat() * 100 - 50, random.nextFloat() * 100 - 50);
+            frustum.set(camera.getModelviewProjection());
+            int sequentialCount = hierarchy.cull(frustum, sequential, false);
+            int parallelCount = hierarchy.cull(frustum, parallel, true);
+            String name = objectCount + " objects, camera " + i;
+            // The hierarchy only skips boxes that can't be visible, so it finds exactly what testing every box finds
+            assertArrayEquals("Visible of " + name, visible(frustum, bounds, objectCount), sorted(sequential, sequentialCount));
+            assertArrayEquals("Order on the fork-join pool with " + name, Arrays.copyOf(sequential, sequentialCount),
+                    Arrays.copyOf(parallel, parallelCount));
+        }
+
+        // Moving every object a little and refitting keeps the tree correct
+        for (int object = 0; object < objectCount; object++) {
+            int offset = 6 * object;
+            setBounds(hierarchy, bounds, object, bounds[offset] + 1, bounds[offset + 1], bounds[offset + 2] - 2,
+                    bounds[offset + 3] + 1, bounds[offset + 4], bounds[offset + 5] - 2);
+        }
+        hierarchy.refit();
+        int count = hierarchy.cull(frustum, sequential);
+        assertArrayEquals("Visible after refitting " + objectCount + " objects", visible(frustum, bounds, objectCount),
+                sorted(sequential, count));
+
+        if (objectCount > 0) {
+            assertThrows("Too little room for the result", IllegalArgumentException.class, new Runnable() {
+                @Override
+                public void run() {
+                    hierarchy.cull(frustum, new int[hierarchy.getObjectCount() - 1]);
+                }
+            });
+        }
+    }
+
+    private static void setBounds(BoundingVolumeHierarchy hierarchy, float[] bounds, int object,
+                                  float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        hierarchy.setBounds(object, minX, minY, minZ, maxX, maxY, maxZ);
+        float[] box = {minX, minY, minZ, maxX, maxY, maxZ};
+        System.arraycopy(box, 0, bounds, 6 * object, 6);
+    }
+
+    /**
+     * @return the objects of which the box isn't outside the frustum, in ascending order
+     */
+    private static int[] visible(Frustum frustum, float[] bounds, int objectCount) {
+        int[] visible = new int[objectCount];
+        int count = 0;
+        for (int object = 0; object < objectCount; object++) {
+            if (frustum.testBox(bounds, 6 * object) != Frustum.OUTSIDE)
+                visible[count++] = object;
+        }
+        return Arrays.copyOf(visible, count);
+    }
+
+    private static int[] sorted(int[] objects, int count) {
+        int[] sorted = Arrays.copyOf(objects, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static void sceneGraph(Random random) {
+        SceneNode root = new SceneNode("root");
+        List<SceneNode> leaves = new ArrayList<>();
+        for (int group = 0; group < 20; group++) {
+            SceneNode parent = root.addChild(new SceneNode("group " + group))
+                    .setTranslation(random.nextFloat() * 200 - 100, 0, random.nextFloat() * 200 - 100).setScale(2);
+            for (int leaf = 0; leaf < 20; leaf++) {
+                SceneNode child = parent.addChild(new SceneNode("leaf " + leaf))
+                        .setTranslation(random.nextFloat() * 10, random.nextFloat() * 10, random.nextFloat() * 10)
+                        .setLocalBounds(new BoundingBox(-1, -1, -1, 1, 1, 1));
+                leaves.add(child);
+            }
+        }
+        root.update();
+        BoundingBox bounds = leaves.get(0).getWorldBounds();
+        assertEquals("Scaled world bounds", 4, bounds.maxX - bounds.minX, 1e-5);
+
+        Camera camera = new Camera();
+        camera.setPerspective(60, 4 / 3f, 0.3f, 200);
+        Frustum frustum = new Frustum();
+        for (int i = 0; i < CAMERAS; i++) {
+            camera.setPosition(random.nextFloat() * 100 - 50, random.nextFloat() * 10, random.nextFloat() * 100 - 50);
+            camera.setTarget(random.nextFloat() * 100 - 50, 0, random.nextFloat() * 100 - 50);
+            frustum.set(camera.getModelviewProjection());
+            List<SceneNode> visible = new ArrayList<>();
+            root.cull(frustum, visible);
+            List<SceneNode> expected = new ArrayList<>();
+            for (SceneNode leaf : leaves) {
+                if (frustum.testBox(leaf.getWorldBounds()) != Frustum.OUTSIDE)
+                    expected.add(leaf);
+            }
+            assertEquals("Visible nodes from camera " + i, expected, visible);
+        }
+        List<SceneNode> geometry = new ArrayList<>();
+        root.collectGeometry(geometry);
+        assertEquals("Nodes with geometry", leaves, geometry);
+        final SceneNode leaf = leaves.get(0);
+        final SceneNode ancestor = root;
+        assertThrows("A node can't become its own descendant", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                leaf.addChild(ancestor);
+            }
+        });
+    }
+}
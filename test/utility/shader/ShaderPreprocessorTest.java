@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.shader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertFalse;
+import static utility.Assert.assertSame;
+import static utility.Assert.assertTrue;
+import static utility.Assert.fail;
+
+/**
+ * Expands the shaders in res/ and checks includes, injected defines, the permutation cache and malformed includes.
+ */
+public class ShaderPreprocessorTest {
+
+    public static void main(String[] args) throws IOException {
+        includesOfResources();
+        injectedDefines();
+        permutationCache();
+        Path directory = Files.createTempDirectory("shader-preprocessor");
+        try {
+            nestedIncludes(directory);
+            malformedIncludes(directory);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void includesOfResources() throws IOException {
+        String source = new ShaderPreprocessor().preprocess("res/shader.vs");
+        List<String> attributes = Files.readAllLines(Paths.get("res/vertex_attributes.glsl"), StandardCharsets.UTF_8);
+        for (String line : attributes) {
+            assertTrue("Expanded shader.vs contains \"" + line + "\"", source.contains(line + "\n"));
+        }
+        assertFalse("No #include is left", source.contains("#include"));
+        assertTrue("Every line ends with a newline", source.endsWith("\n"));
+        assertTrue("#version stays the first line", source.startsWith("#version 330 core\n"));
+        // The included lines replace the #include line, after the comment that precedes it
+        assertTrue("Include in place", source.indexOf("If this version") < source.indexOf(attributes.get(0)));
+        assertTrue("Include before main", source.indexOf(attributes.get(0)) < source.indexOf("void main()"));
+    }
+
+    private static void injectedDefines() throws IOException {
+        ShaderPreprocessor preprocessor = new ShaderPreprocessor();
+        String plain = preprocessor.preprocess("res/shader.vs");
+        String transformed = preprocessor.preprocess("res/shader.vs", "MODELVIEW_PROJECTION", "INSTANCED");
+        assertFalse("Without defines nothing is injected", plain.contains("#define"));
+        String defines = "#define INSTANCED\n#define MODELVIEW_PROJECTION\n";
+        assertTrue("Defines right after #version, sorted", transformed.startsWith("#version 330 core\n" + defines));
+        assertEquals("The rest is the same", plain, transformed.replace(defines, ""));
+        String valued = preprocessor.preprocess("res/shader.fs", "LIGHT_COUNT 4");
+        assertTrue("Define with a value", valued.contains("\n#define LIGHT_COUNT 4\n"));
+    }
+
+    private static void permutationCache() throws IOException {
+        ShaderPreprocessor preprocessor = new ShaderPreprocessor();
+        String first = preprocessor.preprocess("res/shader.vs", "MODELVIEW_PROJECTION", "INSTANCED");
+        assertSame("Same defines in another order", first, preprocessor.preprocess("res/shader.vs", " INSTANCED", "MODELVIEW_PROJECTION"));
+        preprocessor.preprocess("res/shader.vs");
+        preprocessor.preprocess("res/shader.vs", "MODELVIEW_PROJECTION");
+        preprocessor.preprocess("res/shader.fs");
+        assertEquals("Permutations", 4, preprocessor.getCacheSize());
+        assertEquals("Permutation key", ShaderPreprocessor.getPermutationKey("a", "X", "Y"),
+                ShaderPreprocessor.getPermutationKey("a", "Y", "X"));
+        assertFalse("Key of another file",
+                ShaderPreprocessor.getPermutationKey("a", "X").equals(ShaderPreprocessor.getPermutationKey("b", "X")));
+        preprocessor.clearCache();
+        assertEquals("Permutations after clearing", 0, preprocessor.getCacheSize());
+        assertFalse("Expanded again after clearing",
+                first == preprocessor.preprocess("res/shader.vs", "MODELVIEW_PROJECTION", "INSTANCED"));
+    }
+
+    private static void nestedIncludes(Path directory) throws IOException {
+        // Includes are relative to the including file, also in a subdirectory
+        write(directory.resolve("main.glsl"), "#version 150\n#include \"lib/a.glsl\"\nmain\n");
+        write(directory.resolve("lib/a.glsl"), "a\n  #include \"b.glsl\"\n");
+        write(directory.resolve("lib/b.glsl"), "b");
+        // The same file twice is fine, as long as it doesn't include itself
+        write(directory.resolve("twice.glsl"), "#include \"lib/b.glsl\"\n#include \"lib/b.glsl\"\n");
+        ShaderPreprocessor preprocessor = new ShaderPreprocessor();
+        assertEquals("Nested includes", "#version 150\n#define X\na\nb\nmain\n",
+                preprocessor.preprocess(directory.resolve("main.glsl").toString(), "X"));
+        assertEquals("Defines without #version go first", "#define X\nb\nb\n",
+                preprocessor.preprocess(directory.resolve("twice.glsl").toString(), "X"));
+    }
+
+    private static void malformedIncludes(Path directory) throws IOException {
+        write(directory.resolve("self.glsl"), "#include \"self.glsl\"\n");
+        write(directory.resolve("ping.glsl"), "#include \"pong.glsl\"\n");
+        write(directory.resolve("pong.glsl"), "#include \"ping.glsl\"\n");
+        write(directory.resolve("quotes.glsl"), "#include 'a.glsl'\n");
+        write(directory.resolve("unclosed.glsl"), "#include \"a.glsl\n");
+        write(directory.resolve("version.glsl"), "#include \"versioned.glsl\"\n");
+        write(directory.resolve("versioned.glsl"), "#version 330 core\n");
+        write(directory.resolve("missing.glsl"), "#include \"nothing.glsl\"\n");
+        ShaderPreprocessor preprocessor = new ShaderPreprocessor();
+        for (String file : new String[]{"self.glsl", "ping.glsl", "quotes.glsl", "unclosed.glsl", "version.glsl", "missing.glsl"}) {
+            try {
+                preprocessor.preprocess(directory.resolve(file).toString());
+                fail("Expected an error for " + file);
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+        assertEquals("Failed files aren't cached", 0, preprocessor.getCacheSize());
+    }
+
+    private static void write(Path file, String contents) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            for (Path child : Files.newDirectoryStream(path)) {
+                delete(child);
+            }
+        }
+        Files.delete(path);
+    }
+}
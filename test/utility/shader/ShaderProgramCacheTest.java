@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.shader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertFalse;
+import static utility.Assert.assertTrue;
+
+/**
+ * Runs the hashing, lookup, binary and invalidation logic of the shader program cache against a compiler without an
+ * OpenGL context.
+ */
+public class ShaderProgramCacheTest {
+
+    private static final int FORMAT = 42;
+
+    /**
+     * Numbers its programs from 1 and stores a program as a binary that holds its number.
+     */
+    private static class FakeCompiler implements ShaderCompiler {
+
+        String driver = "Fake 1.0";
+        boolean rejectBinaries;
+        int nextProgram = 1;
+        int compiled;
+        int binariesOffered;
+        int deleted;
+
+        @Override
+        public int compile(CharSequence vertexShaderSource, CharSequence fragmentShaderSource) {
+            if (vertexShaderSource.toString().contains("error"))
+                return -1;
+            compiled++;
+            return nextProgram++;
+        }
+
+        @Override
+        public String getBinaryDriver() {
+            return driver;
+        }
+
+        @Override
+        public ProgramBinary getBinary(int shaderProgram) {
+            return new ProgramBinary(FORMAT, new byte[]{1, 2, 3, (byte) shaderProgram});
+        }
+
+        @Override
+        public int loadBinary(ProgramBinary binary) {
+            binariesOffered++;
+            if (rejectBinaries || binary.getFormat() != FORMAT || binary.getData().length != 4)
+                return -1;
+            return 100 + binary.getData()[3];
+        }
+
+        @Override
+        public void delete(int shaderProgram) {
+            deleted++;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        keys();
+        Path directory = Files.createTempDirectory("shader-cache");
+        try {
+            lookup(directory);
+            binaries(directory);
+            corruptBinaries(directory);
+            invalidation(directory);
+        } finally {
+            for (Path file : Files.newDirectoryStream(directory)) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static void keys() {
+        // The hash of a single null byte, which separates the two empty sources
+        assertEquals("Key of empty sources", "6e340b9cffb37a989ca544e6bb780a2c78901d3fb33738768511a30617afa01d",
+                ShaderProgramCache.getKey("", ""));
+        assertEquals("Same sources", ShaderProgramCache.getKey("void main() {}", "a"),
+                ShaderProgramCache.getKey(new StringBuilder("void main() {}"), "a"));
+        assertFalse("Moving text from one source to the other changes the key",
+                ShaderProgramCache.getKey("ab", "").equals(ShaderProgramCache.getKey("a", "b")));
+        assertFalse("Swapped sources",
+                ShaderProgramCache.getKey("a", "b").equals(ShaderProgramCache.getKey("b", "a")));
+    }
+
+    private static void lookup(Path directory) {
+        FakeCompiler compiler = new FakeCompiler();
+        ShaderProgramCache cache = new ShaderProgramCache(compiler);
+        int program = cache.loadShaderPair("res/shader.vs", "res/shader.fs", "MODELVIEW_PROJECTION");
+        assertTrue("Program of the files in res/", program > 0);
+        assertEquals("Loading the same pair again", program, cache.loadShaderPair("res/shader.vs", "res/shader.fs", "MODELVIEW_PROJECTION"));
+        assertEquals("Compiles", 1, compiler.compiled);
+        assertEquals("Hits", 1, cache.getHitCount());
+        assertTrue("Other sources get another program", cache.getShaderProgram("a", "b") != program);
+        assertEquals("Sources that don't compile", -1, cache.getShaderProgram("error", "b"));
+        assertFalse("A failed program isn't cached", cache.contains(ShaderProgramCache.getKey("error", "b")));
+        assertEquals("Missing file", -1, cache.loadShaderPair("res/missing.vs", "res/shader.fs"));
+        cache.delete();
+        assertEquals("Programs deleted", 2, compiler.deleted);
+
+        // Without a driver that stores binaries nothing is written
+        compiler.driver = null;
+        new ShaderProgramCache(compiler, directory).getShaderProgram("a", "b");
+        assertEquals("Files without binary support", 0, directory.toFile().list().length);
+    }
+
+    private static void binaries(Path directory) {
+        FakeCompiler compiler = new FakeCompiler();
+        ShaderProgramCache first = new ShaderProgramCache(compiler, directory);
+        int program = first.getShaderProgram("a", "b");
+        String key = ShaderProgramCache.getKey("a", "b");
+        assertTrue("Binary stored", Files.exists(first.getBinaryPath(key)));
+
+        // The next start loads the binary instead of compiling
+        ShaderProgramCache second = new ShaderProgramCache(compiler, directory);
+        assertEquals("Program from the binary", 100 + program, second.getShaderProgram("a", "b"));
+        assertEquals("Binary loads", 1, second.getBinaryLoadCount());
+        assertEquals("Compiles of the second start", 0, second.getCompileCount());
+
+        // A binary of another driver is thrown away and replaced
+        compiler.driver = "Fake 2.0";
+        ShaderProgramCache third = new ShaderProgramCache(compiler, directory);
+        assertTrue("Program of a new driver", third.getShaderProgram("a", "b") > 0);
+        assertEquals("Rejects of a new driver", 1, third.getBinaryRejectCount());
+        assertEquals("Compiles of a new driver", 1, third.getCompileCount());
+        assertTrue("Binary of the new driver", new ShaderProgramCache(compiler, directory).getShaderProgram("a", "b") > 100);
+
+        // A binary the driver rejects falls back to compiling
+        compiler.rejectBinaries = true;
+        ShaderProgramCache fourth = new ShaderProgramCache(compiler, directory);
+        assertTrue("Program after a rejected binary", fourth.getShaderProgram("a", "b") > 0);
+        assertEquals("Rejects", 1, fourth.getBinaryRejectCount());
+        assertEquals("Compiles after a rejected binary", 1, fourth.getCompileCount());
+        compiler.rejectBinaries = false;
+    }
+
+    private static void corruptBinaries(Path directory) throws IOException {
+        FakeCompiler compiler = new FakeCompiler();
+        String key = ShaderProgramCache.getKey("a", "b");
+        Path path = new ShaderProgramCache(compiler, directory).getBinaryPath(key);
+        // Truncated, empty, larger than the file, a length larger than the buffer pool takes and a negative length
+        byte[][] files = {
+                {1, 2},
+                binaryFile(compiler.driver, 0, new byte[0]),
+                binaryFile(compiler.driver, 5, new byte[4]),
+                binaryFile(compiler.driver, Integer.MAX_VALUE, new byte[4]),
+                binaryFile(compiler.driver, -1, new byte[4]),
+        };
+        for (int i = 0; i < files.length; i++) {
+            Files.write(path, files[i]);
+            ShaderProgramCache cache = new ShaderProgramCache(compiler, directory);
+            int compiled = compiler.compiled;
+            int offered = compiler.binariesOffered;
+            assertTrue("Program of corrupt file " + i, cache.getShaderProgram("a", "b") > 0);
+            assertEquals("Corrupt file " + i + " never reaches the driver", offered, compiler.binariesOffered);
+            assertEquals("Corrupt file " + i + " rejected", 1, cache.getBinaryRejectCount());
+            assertEquals("Corrupt file " + i + " compiled", compiled + 1, compiler.compiled);
+        }
+        // The file written after the last rejection is valid again
+        assertTrue("Binary loads after a rewrite", new ShaderProgramCache(compiler, directory).getShaderProgram("a", "b") > 100);
+    }
+
+    /**
+     * @return a binary file in the format of the cache, with a length that may not match the data
+     */
+    private static byte[] binaryFile(String driver, int length, byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(0x47535043);
+            output.writeInt(1);
+            output.writeUTF(driver);
+            output.writeInt(FORMAT);
+            output.writeInt(length);
+            output.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void invalidation(Path directory) {
+        FakeCompiler compiler = new FakeCompiler();
+        ShaderProgramCache cache = new ShaderProgramCache(compiler, directory);
+        cache.getShaderProgram("c", "d");
+        String key = ShaderProgramCache.getKey("c", "d");
+        assertTrue("Cached", cache.contains(key));
+        cache.invalidate(key);
+        assertFalse("Invalidated program", cache.contains(key));
+        assertFalse("Invalidated binary", Files.exists(cache.getBinaryPath(key)));
+        assertEquals("Invalidated program deleted", 1, compiler.deleted);
+        int compiled = compiler.compiled;
+        assertTrue("Program after invalidation", cache.getShaderProgram("c", "d") > 0);
+        assertEquals("Compiled again after invalidation", compiled + 1, compiler.compiled);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.sprite;
+
+import utility.gl.GLStatistics;
+import utility.gl.RecordingOpenGL;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static utility.Assert.assertArrayEquals;
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertThrows;
+
+/**
+ * Checks when a sprite batch flushes, the exact vertex bytes it hands to the renderer, and the draw calls and bytes that
+ * reach OpenGL through {@link GLSpriteRenderer}.
+ */
+public class SpriteBatchTest {
+
+    private static final int STRIDE = SpriteBatch.VERTEX_FORMAT.getStride();
+
+    /**
+     * Remembers the texture, sprite count and a copy of the vertices of every batch.
+     */
+    private static class Batches implements SpriteRenderer {
+
+        final List<String> batches = new ArrayList<>();
+        final List<byte[]> vertices = new ArrayList<>();
+
+        @Override
+        public void drawSprites(int texture, ByteBuffer vertices, int spriteCount) {
+            assertEquals("Bytes of " + spriteCount + " sprites", spriteCount * 4 * STRIDE, vertices.remaining());
+            byte[] copy = new byte[vertices.remaining()];
+            vertices.duplicate().get(copy);
+            this.vertices.add(copy);
+            batches.add(texture + ":" + spriteCount);
+        }
+    }
+
+    public static void main(String[] args) {
+        flushesOnTextureSwitch();
+        flushesWhenFull();
+        exactVertexBytes();
+        incompleteSprite();
+        drawCallsAndBytesOnRecordingOpenGL();
+    }
+
+    private static void flushesOnTextureSwitch() {
+        Batches batches = new Batches();
+        SpriteBatch batch = new SpriteBatch(batches, 100);
+        batch.begin();
+        batch.setTexture(5);
+        batch.draw(0, 0, 1, 1);
+        batch.draw(1, 0, 1, 1);
+        // Setting the same texture again doesn't flush
+        batch.setTexture(5);
+        batch.draw(2, 0, 1, 1);
+        batch.setTexture(7);
+        batch.draw(3, 0, 1, 1);
+        batch.draw(4, 0, 1, 1);
+        batch.setTexture(0);
+        // Switching to another texture before drawing anything doesn't make an empty batch
+        batch.setTexture(9);
+        batch.setTexture(0);
+        batch.draw(5, 0, 1, 1);
+        batch.end();
+        assertEquals("Batches", Arrays.asList("5:3", "7:2", "0:1"), batches.batches);
+        assertEquals("Flush count", 3, batch.getFlushCount());
+        assertEquals("Sprites drawn", 6, batch.getSpritesDrawn());
+
+        // The statistics start over at every begin, and a frame without sprites doesn't draw anything
+        batch.begin();
+        batch.end();
+        assertEquals("Flush count of an empty frame", 0, batch.getFlushCount());
+        assertEquals("Batches after an empty frame", 3, batches.batches.size());
+    }
+
+    private static void flushesWhenFull() {
+        Batches batches = new Batches();
+        SpriteBatch batch = new SpriteBatch(batches, 4);
+        batch.begin();
+        for (int sprite = 0; sprite < 10; sprite++) {
+            batch.draw(sprite, 0, 1, 1);
+        }
+        batch.end();
+        assertEquals("Batches of a full buffer", Arrays.asList("0:4", "0:4", "0:2"), batches.batches);
+    }
+
+    private static void exactVertexBytes() {
+        Batches batches = new Batches();
+        SpriteBatch batch = new SpriteBatch(batches, 8);
+        batch.begin();
+        batch.setTexture(3);
+        batch.setColour(1, 0, 0.5f, 0.2f);
+        batch.draw(10, 20, 30, 40, 0.25f, 0.5f, 0.75f, 1);
+        batch.setColour(0, 1, 0);
+        batch.vertex(1, 2);
+        batch.vertex(3, 4);
+        batch.vertex(5, 6);
+        batch.vertex(5, 6);
+        batch.end();
+
+        ByteBuffer expected = ByteBuffer.allocate(2 * 4 * STRIDE).order(ByteOrder.nativeOrder());
+        byte[] red = {(byte) 255, 0, (byte) 128, 51};
+        vertex(expected, 10, 20, red, 0.25f, 0.5f);
+        vertex(expected, 40, 20, red, 0.75f, 0.5f);
+        vertex(expected, 40, 60, red, 0.75f, 1);
+        vertex(expected, 10, 60, red, 0.25f, 1);
+        byte[] green = {0, (byte) 255, 0, (byte) 255};
+        vertex(expected, 1, 2, green, 0, 0);
+        vertex(expected, 3, 4, green, 0, 0);
+        vertex(expected, 5, 6, green, 0, 0);
+        vertex(expected, 5, 6, green, 0, 0);
+        assertEquals("Batches", Arrays.asList("3:2"), batches.batches);
+        assertArrayEquals("Vertex bytes", expected.array(), batches.vertices.get(0));
+    }
+
+    private static void vertex(ByteBuffer buffer, float x, float y, byte[] colour, float u, float v) {
+        buffer.putFloat(x).putFloat(y).put(colour).putFloat(u).putFloat(v);
+    }
+
+    private static void incompleteSprite() {
+        final SpriteBatch batch = new SpriteBatch(new Batches(), 4);
+        batch.begin();
+        batch.vertex(0, 0);
+        assertThrows("Ending with an incomplete sprite", IllegalStateException.class, new Runnable() {
+            @Override
+            public void run() {
+                batch.end();
+            }
+        });
+        assertThrows("Drawing outside begin and end", IllegalStateException.class, new Runnable() {
+            @Override
+            public void run() {
+                new SpriteBatch(new Batches(), 4).draw(0, 0, 1, 1);
+            }
+        });
+    }
+
+    private static void drawCallsAndBytesOnRecordingOpenGL() {
+        RecordingOpenGL gl = new RecordingOpenGL();
+        GLSpriteRenderer renderer = new GLSpriteRenderer(gl, 1000);
+        gl.endFrame();
+        SpriteBatch batch = new SpriteBatch(renderer, 1000);
+        // 20000 sprites in runs of 2500 with the same texture: 8 runs of 3 batches each (1000, 1000 and 500)
+        batch.begin();
+        for (int sprite = 0; sprite < 20000; sprite++) {
+            batch.setTexture(1 + sprite / 2500 % 2);
+            batch.draw(sprite % 640, sprite / 640, 8, 8);
+        }
+        batch.end();
+        gl.endFrame();
+        GLStatistics frame = gl.getFrame(1);
+        assertEquals("Flush count", 24, batch.getFlushCount());
+        assertEquals("Draw calls", 24, frame.getDrawCalls());
+        assertEquals("Renderer draw calls", 24, renderer.getDrawCalls());
+        assertEquals("Bytes uploaded", 20000L * 4 * STRIDE, frame.getBytesUploaded());
+        // The indices are uploaded once, when the renderer is created
+        assertEquals("Bytes uploaded by the set-up", 1000 * 6 * 2, gl.getFrame(0).getBytesUploaded());
+        renderer.delete();
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.texture;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertFalse;
+import static utility.Assert.assertTrue;
+import static utility.Assert.fail;
+
+/**
+ * Packs random rectangles and images and checks that nothing overlaps or leaves the page, that the texture coordinate
+ * table points at the right pixels, and that the mipmap levels have the right sizes and contents.
+ */
+public class TextureAtlasTest {
+
+    private static final int PAGE_SIZE = 1024;
+    private static final int PADDING = 2;
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        exactFit();
+        noOverlaps();
+        atlasCoordinates();
+        levelSizes();
+        uniformLevels();
+        boxAverages();
+        sameLevelsOnAnyNumberOfThreads();
+    }
+
+    private static void exactFit() {
+        SkylinePacker packer = new SkylinePacker(100, 100);
+        int[] position = new int[2];
+        for (int i = 0; i < 4; i++) {
+            assertTrue("Quarter " + i + " fits", packer.pack(50, 50, position));
+        }
+        assertFalse("A full page takes nothing more", packer.pack(1, 1, position));
+        assertEquals("Efficiency of a full page", 1, packer.getEfficiency(), 0);
+        assertEquals("Used height of a full page", 100, packer.getUsedHeight());
+        assertFalse("Wider than the page", new SkylinePacker(100, 100).pack(101, 1, position));
+        assertFalse("Higher than the page", new SkylinePacker(100, 100).pack(1, 101, position));
+    }
+
+    private static void noOverlaps() {
+        Random random = new Random(3);
+        SkylinePacker packer = new SkylinePacker(PAGE_SIZE, PAGE_SIZE);
+        List<int[]> packed = new ArrayList<>();
+        int[] position = new int[2];
+        while (true) {
+            int width = 4 + random.nextInt(60);
+            int height = 4 + random.nextInt(60);
+            if (!packer.pack(width, height, position))
+                break;
+            int[] rectangle = {position[0], position[1], width, height};
+            assertTrue("Inside the page: " + position[0] + ", " + position[1], position[0] >= 0 && position[1] >= 0
+                    && position[0] + width <= PAGE_SIZE && position[1] + height <= PAGE_SIZE);
+            for (int[] other : packed) {
+                if (overlap(rectangle, other))
+                    fail("Rectangle " + packed.size() + " overlaps one at " + other[0] + ", " + other[1]);
+            }
+            packed.add(rectangle);
+        }
+        assertTrue("Rectangles packed: " + packed.size(), packed.size() > 300);
+        // Unsorted input wastes more than the sorted input of the atlas, but most of the page is still used
+        assertTrue("Efficiency of unsorted rectangles: " + packer.getEfficiency(), packer.getEfficiency() > 0.75f);
+    }
+
+    private static boolean overlap(int[] a, int[] b) {
+        return a[0] < b[0] + b[2] && b[0] < a[0] + a[2] && a[1] < b[1] + b[3] && b[1] < a[1] + a[3];
+    }
+
+    private static void atlasCoordinates() {
+        Random random = new Random(5);
+        TextureAtlas atlas = new TextureAtlas(PAGE_SIZE, PAGE_SIZE, PADDING);
+        List<ByteBuffer> images = new ArrayList<>();
+        List<int[]> sizes = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int width = 8 + random.nextInt(56);
+            int height = 8 + random.nextInt(56);
+            byte[] pixels = new byte[4 * width * height];
+            random.nextBytes(pixels);
+            images.add(ByteBuffer.wrap(pixels));
+            sizes.add(new int[]{width, height});
+            assertEquals("Index of image " + i, i, atlas.add(ByteBuffer.wrap(pixels), width, height));
+        }
+        atlas.build(null);
+        assertEquals("Levels without a filter", 1, atlas.getLevels().length);
+        assertTrue("Efficiency of the atlas: " + atlas.getEfficiency(), atlas.getEfficiency() > 0.85f);
+
+        ByteBuffer page = atlas.getLevels()[0];
+        for (int i = 0; i < images.size(); i++) {
+            int width = sizes.get(i)[0];
+            int height = sizes.get(i)[1];
+            int left = Math.round(atlas.getU0(i) * PAGE_SIZE);
+            int top = Math.round(atlas.getV0(i) * PAGE_SIZE);
+            assertEquals("Width of image " + i, width, Math.round(atlas.getU1(i) * PAGE_SIZE) - left);
+            assertEquals("Height of image " + i, height, Math.round(atlas.getV1(i) * PAGE_SIZE) - top);
+            assertTrue("Padding of image " + i + " inside the page", left >= PADDING && top >= PADDING
+                    && left + width + PADDING <= PAGE_SIZE && top + height + PADDING <= PAGE_SIZE);
+            ByteBuffer image = images.get(i);
+            for (int y = -PADDING; y < height + PADDING; y++) {
+                for (int x = -PADDING; x < width + PADDING; x++) {
+                    // The padding repeats the nearest edge pixel
+                    int sourceX = Math.max(0, Math.min(width - 1, x));
+                    int sourceY = Math.max(0, Math.min(height - 1, y));
+                    if (page.getInt(((top + y) * PAGE_SIZE + left + x) * 4) != image.getInt((sourceY * width + sourceX) * 4))
+                        fail("Pixel " + x + ", " + y + " of image " + i);
+                }
+            }
+        }
+        float[] table = atlas.getTextureCoordinates();
+        assertEquals("Table entries", 4 * images.size(), table.length);
+        assertEquals("Table matches the getters", atlas.getV1(17), table[4 * 17 + 3], 0);
+
+        TextureAtlas tooSmall = new TextureAtlas(64, 64, PADDING);
+        for (int i = 0; i < 5; i++) {
+            tooSmall.add(ByteBuffer.allocate(4 * 30 * 30), 30, 30);
+        }
+        try {
+            tooSmall.build(null);
+            fail("Expected an IllegalStateException for images that don't fit");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    private static void levelSizes() {
+        assertEquals("Levels of 1x1", 1, MipmapGenerator.getLevelCount(1, 1));
+        assertEquals("Levels of 64x48", 7, MipmapGenerator.getLevelCount(64, 48));
+        assertEquals("Levels of 5x300", 9, MipmapGenerator.getLevelCount(5, 300));
+        for (MipmapGenerator.Filter filter : MipmapGenerator.Filter.values()) {
+            ByteBuffer[] levels = MipmapGenerator.generate(ByteBuffer.allocate(4 * 5 * 300), 5, 300, filter);
+            assertEquals("Levels of 5x300 with " + filter, 9, levels.length);
+            for (int level = 0; level < levels.length; level++) {
+                int pixels = Math.max(1, 5 >> level) * Math.max(1, 300 >> level);
+                assertEquals("Bytes of level " + level + " with " + filter, 4 * pixels, levels[level].remaining());
+            }
+        }
+    }
+
+    private static void uniformLevels() {
+        byte[] colour = {(byte) 200, 10, 99, (byte) 255};
+        ByteBuffer pixels = ByteBuffer.allocate(4 * 64 * 48);
+        while (pixels.hasRemaining()) {
+            pixels.put(colour);
+        }
+        pixels.flip();
+        // The weights of both filters add up to 1, so a uniform image stays exactly the same colour
+        for (MipmapGenerator.Filter filter : MipmapGenerator.Filter.values()) {
+            ByteBuffer[] levels = MipmapGenerator.generate(pixels, 64, 48, filter);
+            for (int level = 0; level < levels.length; level++) {
+                for (int i = 0; i < levels[level].remaining(); i++) {
+                    if (levels[level].get(i) != colour[i % 4])
+                        fail("Byte " + i + " of level " + level + " with " + filter);
+                }
+            }
+        }
+    }
+
+    private static void boxAverages() {
+        Random random = new Random(8);
+        byte[] bytes = new byte[4 * 16 * 16];
+        random.nextBytes(bytes);
+        ByteBuffer half = MipmapGenerator.downsample(ByteBuffer.wrap(bytes), 16, 16, MipmapGenerator.Filter.BOX);
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                for (int component = 0; component < 4; component++) {
+                    int sum = 0;
+                    for (int i = 0; i < 4; i++) {
+                        sum += bytes[((2 * y + i / 2) * 16 + 2 * x + i % 2) * 4 + component] & 0xFF;
+                    }
+                    assertEquals("Average of pixel " + x + ", " + y, Math.round(sum / 4f),
+                            half.get((y * 8 + x) * 4 + component) & 0xFF);
+                }
+            }
+        }
+    }
+
+    /**
+     * Every pixel of a level is computed from the previous level alone, so the levels must not depend on how the rows
+     * are spread over the threads.
+     */
+    private static void sameLevelsOnAnyNumberOfThreads() throws InterruptedException, ExecutionException {
+        Random random = new Random(13);
+        final byte[] bytes = new byte[4 * 300 * 77];
+        random.nextBytes(bytes);
+        for (final MipmapGenerator.Filter filter : MipmapGenerator.Filter.values()) {
+            Callable<ByteBuffer[]> generate = new Callable<ByteBuffer[]>() {
+                @Override
+                public ByteBuffer[] call() {
+                    return MipmapGenerator.generate(ByteBuffer.wrap(bytes), 300, 77, filter);
+                }
+            };
+            ByteBuffer[] sequential = run(generate, 1);
+            ByteBuffer[] parallel = run(generate, 4);
+            for (int level = 0; level < sequential.length; level++) {
+                assertEquals("Level " + level + " with " + filter, sequential[level], parallel[level]);
+            }
+        }
+    }
+
+    private static ByteBuffer[] run(Callable<ByteBuffer[]> task, int threads) throws InterruptedException, ExecutionException {
+        // Parallel streams started from a task of a pool run on the threads of that pool
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.submit(task).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
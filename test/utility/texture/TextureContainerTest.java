@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.texture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static utility.Assert.assertArrayEquals;
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertTrue;
+import static utility.Assert.fail;
+
+/**
+ * Converts images to texture containers, writes them, maps them again and checks that every byte survives, for every
+ * format, with and without mipmaps.
+ */
+public class TextureContainerTest {
+
+    private static final int[][] SIZES = {{128, 128}, {37, 5}, {1, 1}, {300, 77}};
+    private static final MipmapGenerator.Filter[] FILTERS = {null, MipmapGenerator.Filter.BOX, MipmapGenerator.Filter.KAISER};
+
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("texture-container", TextureContainer.FILE_EXTENSION);
+        try {
+            for (TextureFormat format : TextureFormat.values()) {
+                for (int[] size : SIZES) {
+                    for (MipmapGenerator.Filter filter : FILTERS) {
+                        roundTrip(file, format, size[0], size[1], filter);
+                    }
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+        resourceRoundTrip();
+        uniformBlocks();
+        corruptContainers();
+    }
+
+    private static void roundTrip(Path file, TextureFormat format, int width, int height, MipmapGenerator.Filter filter) throws IOException {
+        String name = format + " " + width + " x " + height + " " + filter;
+        ByteBuffer pixels = randomPixels(width, height);
+        TextureContainer container = TextureConverter.convert(pixels, width, height, format, filter);
+        assertEquals("Levels of " + name, filter == null ? 1 : MipmapGenerator.getLevelCount(width, height), container.getLevelCount());
+        if (format == TextureFormat.RGBA8)
+            assertEquals("Level 0 of " + name + " is the image", pixels, container.getLevel(0));
+
+        container.write(file);
+        byte[] written = Files.readAllBytes(file);
+        assertEquals("File size of " + name, container.getFileSize(), written.length);
+
+        TextureContainer mapped = TextureContainer.map(file);
+        assertEquals("Format of " + name, format, mapped.getFormat());
+        assertEquals("Levels of mapped " + name, container.getLevelCount(), mapped.getLevelCount());
+        for (int level = 0; level < container.getLevelCount(); level++) {
+            assertEquals("Width of level " + level + " of " + name, Math.max(1, width >> level), mapped.getWidth(level));
+            assertEquals("Height of level " + level + " of " + name, Math.max(1, height >> level), mapped.getHeight(level));
+            assertEquals("Level " + level + " of " + name, container.getLevel(level), mapped.getLevel(level));
+            // The levels are views of the mapped file, not copies
+            assertTrue("Level " + level + " of " + name + " is mapped", mapped.getLevel(level).isDirect());
+            assertEquals("Level " + level + " of " + name + " is aligned", 0, levelOffset(written, level) % 16);
+        }
+
+        // Writing the mapped container gives the same file again
+        ByteBuffer rewritten = ByteBuffer.allocate(mapped.getFileSize());
+        mapped.write(rewritten);
+        assertEquals("Position after writing " + name, written.length, rewritten.position());
+        assertArrayEquals("Rewritten file of " + name, written, rewritten.array());
+    }
+
+    private static int levelOffset(byte[] file, int level) {
+        return ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN).getInt(24 + level * 16 + 8);
+    }
+
+    private static ByteBuffer randomPixels(int width, int height) {
+        Random random = new Random(width * 31 + height);
+        byte[] pixels = new byte[4 * width * height];
+        random.nextBytes(pixels);
+        return ByteBuffer.wrap(pixels);
+    }
+
+    /**
+     * res/texture.ltex was made by the converter from res/texture.png with the default settings, so converting again
+     * must give exactly the same file.
+     */
+    private static void resourceRoundTrip() throws IOException {
+        byte[] file = Files.readAllBytes(Paths.get("res/texture.ltex"));
+        TextureContainer converted = TextureConverter.convert("res/texture.png", TextureFormat.RGBA8, MipmapGenerator.Filter.BOX);
+        ByteBuffer bytes = ByteBuffer.allocate(converted.getFileSize());
+        converted.write(bytes);
+        assertArrayEquals("Converted res/texture.png", file, bytes.array());
+        TextureContainer read = TextureContainer.read(ByteBuffer.wrap(file));
+        ByteBuffer again = ByteBuffer.allocate(read.getFileSize());
+        read.write(again);
+        assertArrayEquals("Rewritten res/texture.ltex", file, again.array());
+    }
+
+    /**
+     * A block of one colour compresses to that colour in 5:6:5 bits, which decodes back to it without any error.
+     */
+    private static void uniformBlocks() {
+        int[][] colours = {{0, 0, 0, 255}, {255, 255, 255, 255}, {255, 0, 0, 128}, {0x84, 0x82, 0x08, 0}};
+        for (int[] colour : colours) {
+            ByteBuffer pixels = ByteBuffer.allocate(4 * 16);
+            for (int i = 0; i < 16; i++) {
+                pixels.put((byte) colour[0]).put((byte) colour[1]).put((byte) colour[2]).put((byte) colour[3]);
+            }
+            pixels.flip();
+            ByteBuffer bc1 = BlockCompressor.compress(pixels, 4, 4, TextureFormat.BC1).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals("BC1 block size", 8, bc1.remaining());
+            assertColourBlock("BC1 of " + colour[0] + ", " + colour[1] + ", " + colour[2], colour, bc1, 0);
+            ByteBuffer bc3 = BlockCompressor.compress(pixels, 4, 4, TextureFormat.BC3).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals("BC3 block size", 16, bc3.remaining());
+            assertEquals("BC3 alpha endpoint", colour[3], bc3.get(0) & 0xFF);
+            assertColourBlock("BC3 of " + colour[0] + ", " + colour[1] + ", " + colour[2], colour, bc3, 8);
+        }
+    }
+
+    private static void assertColourBlock(String message, int[] colour, ByteBuffer block, int offset) {
+        int colour0 = block.getShort(offset) & 0xFFFF;
+        int colour1 = block.getShort(offset + 2) & 0xFFFF;
+        int indices = block.getInt(offset + 4);
+        int expected = (colour[0] >> 3) << 11 | (colour[1] >> 2) << 5 | colour[2] >> 3;
+        // Every pixel must use an endpoint that is the colour, the other endpoint doesn't matter
+        for (int i = 0; i < 16; i++) {
+            int index = indices >> 2 * i & 3;
+            assertTrue(message + ": pixel " + i + " uses an endpoint", index < 2);
+            assertEquals(message + ": pixel " + i, expected, index == 0 ? colour0 : colour1);
+        }
+    }
+
+    private static void corruptContainers() throws IOException {
+        TextureContainer container = TextureConverter.convert(randomPixels(16, 16), 16, 16, TextureFormat.RGBA8, MipmapGenerator.Filter.BOX);
+        ByteBuffer valid = ByteBuffer.allocate(container.getFileSize()).order(ByteOrder.LITTLE_ENDIAN);
+        container.write(valid);
+        valid.flip();
+        assertCorrupt("Too short for a header", ByteBuffer.allocate(20));
+        assertCorrupt("Wrong magic", copyWith(valid, 0, 0x12345678));
+        assertCorrupt("Unsupported version", copyWith(valid, 4, 2));
+        assertCorrupt("Unknown format", copyWith(valid, 8, 99));
+        assertCorrupt("No levels", copyWith(valid, 20, 0));
+        assertCorrupt("Too many levels", copyWith(valid, 20, 1000));
+        assertCorrupt("Level outside the file", copyWith(valid, 24 + 8, valid.limit()));
+        assertCorrupt("Negative level size", copyWith(valid, 24 + 12, -1));
+        assertCorrupt("Level of the wrong size", copyWith(valid, 24 + 12, 4));
+        ByteBuffer truncated = valid.duplicate();
+        truncated.limit(valid.limit() - 1);
+        assertCorrupt("Truncated data", truncated);
+    }
+
+    private static ByteBuffer copyWith(ByteBuffer data, int index, int value) {
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        copy.put(data.duplicate()).flip();
+        copy.putInt(index, value);
+        return copy;
+    }
+
+    private static void assertCorrupt(String message, ByteBuffer data) {
+        try {
+            TextureContainer.read(data);
+            fail(message + ": expected an IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.texture;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertFalse;
+import static utility.Assert.assertNotNull;
+import static utility.Assert.assertTrue;
+import static utility.Assert.fail;
+
+/**
+ * Decodes many PNG files on the worker threads of a {@link TextureLoader} and compares the checksums of the uploaded
+ * pixels with the images the files were written from.
+ */
+public class TextureLoaderTest {
+
+    private static final int IMAGE_COUNT = 48;
+    private static final long TIMEOUT_NANOS = 60_000_000_000L;
+
+    /**
+     * Numbers the textures from 1 and remembers the checksum of the pixels of every upload.
+     */
+    private static class ChecksumUploader implements TextureUploader {
+
+        final Map<Integer, Long> checksums = new HashMap<>();
+        int nextTexture = 1;
+
+        @Override
+        public int upload(int width, int height, ByteBuffer pixels) {
+            assertEquals("Bytes of a " + width + " x " + height + " image", 4 * width * height, pixels.remaining());
+            byte[] bytes = new byte[pixels.remaining()];
+            pixels.duplicate().get(bytes);
+            CRC32 checksum = new CRC32();
+            checksum.update(bytes);
+            checksums.put(nextTexture, checksum.getValue());
+            return nextTexture++;
+        }
+
+        @Override
+        public int upload(TextureContainer container) {
+            return nextTexture++;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("texture-loader");
+        try {
+            Map<String, Long> expected = writeImages(directory);
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int threads : new int[]{1, Math.max(2, cores)}) {
+                decodeInParallel(directory, expected, threads);
+            }
+            uploadBudget(directory);
+            missingFile();
+        } finally {
+            for (Path file : Files.newDirectoryStream(directory)) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Writes images of random sizes with random colours and transparency.
+     *
+     * @return the checksum of the RGBA bytes of every file, including the texture in res/
+     */
+    private static Map<String, Long> writeImages(Path directory) throws IOException {
+        Map<String, Long> checksums = new HashMap<>();
+        checksums.put("res/texture.png", checksum(ImageIO.read(new File("res/texture.png"))));
+        Random random = new Random(9);
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            int width = 1 + random.nextInt(200);
+            int height = 1 + random.nextInt(200);
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    // Fully transparent pixels may lose their colour in the PNG writer, so alpha starts at 1
+                    image.setRGB(x, y, (1 + random.nextInt(255)) << 24 | random.nextInt(1 << 24));
+                }
+            }
+            Path file = directory.resolve(i + ".png");
+            ImageIO.write(image, "png", file.toFile());
+            checksums.put(file.toString(), checksum(image));
+        }
+        return checksums;
+    }
+
+    /**
+     * @return the checksum of the pixels of an image as RGBA bytes, row by row from the top
+     */
+    private static long checksum(BufferedImage image) {
+        byte[] rgba = new byte[4 * image.getWidth() * image.getHeight()];
+        int index = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int argb = image.getRGB(x, y);
+                rgba[index++] = (byte) (argb >> 16);
+                rgba[index++] = (byte) (argb >> 8);
+                rgba[index++] = (byte) argb;
+                rgba[index++] = (byte) (argb >>> 24);
+            }
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(rgba);
+        return checksum.getValue();
+    }
+
+    private static void decodeInParallel(Path directory, Map<String, Long> expected, int threads) throws InterruptedException {
+        ChecksumUploader uploader = new ChecksumUploader();
+        TextureLoader loader = new TextureLoader(uploader, threads);
+        List<Texture> textures = new ArrayList<>();
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            textures.add(loader.load(directory.resolve(i + ".png").toString()));
+        }
+        textures.add(loader.load("res/texture.png"));
+        uploadAll(loader, 2_000_000);
+        for (Texture texture : textures) {
+            assertTrue("Loaded " + texture, texture.isLoaded());
+            assertEquals("Checksum of " + texture + " on " + threads + " threads", expected.get(texture.getLocation()),
+                    uploader.checksums.get(texture.getID()));
+        }
+        assertEquals("Pooled buffers returned", 0, loader.getBufferPool().getOutstandingCount());
+        loader.shutdown();
+    }
+
+    private static void uploadBudget(Path directory) throws InterruptedException {
+        ChecksumUploader uploader = new ChecksumUploader();
+        TextureLoader loader = new TextureLoader(uploader, 2);
+        for (int i = 0; i < 8; i++) {
+            loader.load(directory.resolve(i + ".png").toString());
+        }
+        int frames = 0;
+        long start = System.nanoTime();
+        while (loader.getPendingCount() > 0) {
+            if (System.nanoTime() - start > TIMEOUT_NANOS)
+                fail("Loading timed out");
+            // A budget of nothing still uploads one image per frame, so loading always makes progress
+            int uploaded = loader.upload(0);
+            assertTrue("Uploads of a frame without budget: " + uploaded, uploaded <= 1);
+            if (uploaded == 1)
+                frames++;
+            else
+                Thread.sleep(1);
+        }
+        assertEquals("Frames with an upload", 8, frames);
+        loader.shutdown();
+    }
+
+    private static void missingFile() throws InterruptedException {
+        TextureLoader loader = new TextureLoader(new ChecksumUploader(), 1);
+        Texture missing = loader.load("res/missing.png");
+        uploadAll(loader, 1_000_000);
+        assertFalse("Missing file isn't loaded", missing.isLoaded());
+        assertNotNull("Error of a missing file", missing.getError());
+        loader.shutdown();
+    }
+
+    private static void uploadAll(TextureLoader loader, long budgetNanos) throws InterruptedException {
+        long start = System.nanoTime();
+        while (loader.getPendingCount() > 0) {
+            if (System.nanoTime() - start > TIMEOUT_NANOS)
+                fail("Loading timed out with " + loader.getPendingCount() + " textures pending");
+            if (loader.upload(budgetNanos) == 0)
+                Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.vertex;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertSame;
+import static utility.Assert.assertThrows;
+
+/**
+ * Decodes the packed instances of an instance buffer and compares them with the transforms and colours they were made
+ * of, on a single thread and on the parallel path.
+ */
+public class InstanceBufferTest {
+
+    // A model matrix of four columns of four floats and four colour bytes
+    private static final int STRIDE = 68;
+
+    public static void main(String[] args) {
+        stride();
+        packAll();
+        packSelection();
+        packParallel();
+        packRange();
+    }
+
+    private static void stride() {
+        assertEquals("Stride", STRIDE, InstanceBuffer.VERTEX_FORMAT.getStride());
+        assertEquals("Colour offset", 64, InstanceBuffer.VERTEX_FORMAT.getOffset(4));
+    }
+
+    private static void packAll() {
+        InstanceBuffer instances = create(3);
+        ByteBuffer packed = instances.pack();
+        assertEquals("Position", 0, packed.position());
+        assertEquals("Limit", 3 * STRIDE, packed.limit());
+        for (int i = 0; i < 3; i++) {
+            checkInstance(packed, i * STRIDE, i);
+        }
+        // The colour of instance 1 is (1, 0.5, 0.25, 1), with every component rounded to a byte
+        assertEquals("Red", 255, packed.get(STRIDE + 64) & 0xFF);
+        assertEquals("Green", 128, packed.get(STRIDE + 65) & 0xFF);
+        assertEquals("Blue", 64, packed.get(STRIDE + 66) & 0xFF);
+        assertEquals("Alpha", 255, packed.get(STRIDE + 67) & 0xFF);
+    }
+
+    private static void packSelection() {
+        final InstanceBuffer instances = create(3);
+        // A buffer in the other byte order than OpenGL reads, with something in front of the instances
+        ByteOrder foreign = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        final ByteBuffer destination = ByteBuffer.allocate(5 + 2 * STRIDE).order(foreign);
+        destination.position(5);
+        instances.pack(destination, new int[]{2, 0}, 2);
+        assertEquals("Position after packing", 5 + 2 * STRIDE, destination.position());
+        assertSame("Byte order of the destination", foreign, destination.order());
+        ByteBuffer written = destination.duplicate().order(ByteOrder.nativeOrder());
+        checkInstance(written, 5, 2);
+        checkInstance(written, 5 + STRIDE, 0);
+
+        destination.clear();
+        assertThrows("More instances than the count", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                instances.pack(destination, null, 4);
+            }
+        });
+        destination.position(STRIDE);
+        assertThrows("Too little room in the destination", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                instances.pack(destination, null, 2);
+            }
+        });
+    }
+
+    private static void packParallel() {
+        // Enough instances for several chunks, selected in reverse
+        int count = 10000;
+        InstanceBuffer instances = create(count);
+        ByteBuffer packed = instances.pack();
+        for (int i = 0; i < count; i++) {
+            checkInstance(packed, i * STRIDE, i);
+        }
+        int[] selection = new int[count];
+        for (int i = 0; i < count; i++) {
+            selection[i] = count - 1 - i;
+        }
+        ByteBuffer destination = ByteBuffer.allocateDirect(count * STRIDE).order(ByteOrder.nativeOrder());
+        instances.pack(destination, selection, count);
+        for (int i = 0; i < count; i++) {
+            checkInstance(destination, i * STRIDE, count - 1 - i);
+        }
+    }
+
+    private static void packRange() {
+        final InstanceBuffer instances = create(10);
+        ByteBuffer packed = instances.pack();
+        for (int i = 0; i < packed.limit(); i++) {
+            packed.put(i, (byte) 0);
+        }
+        instances.pack(2, 5);
+        assertEquals("Limit after packing a range", 10 * STRIDE, packed.limit());
+        assertEquals("Instance before the range", 0, packed.getFloat(STRIDE + 60), 0);
+        for (int i = 2; i < 5; i++) {
+            checkInstance(packed, i * STRIDE, i);
+        }
+        assertEquals("Instance after the range", 0, packed.getFloat(5 * STRIDE + 60), 0);
+
+        int[][] ranges = {{-1, 2}, {3, 2}, {0, 11}};
+        for (final int[] range : ranges) {
+            assertThrows("Range " + range[0] + " to " + range[1], IllegalArgumentException.class, new Runnable() {
+                @Override
+                public void run() {
+                    instances.pack(range[0], range[1]);
+                }
+            });
+        }
+    }
+
+    private static InstanceBuffer create(int count) {
+        InstanceBuffer instances = new InstanceBuffer(count);
+        for (int i = 0; i < count; i++) {
+            instances.setTransform(i, i, -i * 0.5f, i % 7, i * 0.1f, 1 + i % 3);
+            instances.setColour(i, 1, 0.5f, 0.25f, i % 2);
+        }
+        instances.setCount(count);
+        return instances;
+    }
+
+    // Compares the packed instance at index with the transform and colour that create gave instance
+    private static void checkInstance(ByteBuffer packed, int index, int instance) {
+        float rotation = instance * 0.1f, scale = 1 + instance % 3;
+        float cos = (float) Math.cos(rotation) * scale, sin = (float) Math.sin(rotation) * scale;
+        // The model matrix by rows: the rotation around y, scaled, then the translation
+        float[][] model = {
+                {cos, 0, sin, instance},
+                {0, scale, 0, -instance * 0.5f},
+                {-sin, 0, cos, instance % 7},
+                {0, 0, 0, 1}
+        };
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                assertEquals("Instance " + instance + " row " + row + " column " + column, model[row][column],
+                        packed.getFloat(index + (column * 4 + row) * 4), 1e-6);
+            }
+        }
+        int[] colour = {255, 128, 64, instance % 2 * 255};
+        for (int component = 0; component < 4; component++) {
+            assertEquals("Instance " + instance + " colour byte " + component, colour[component],
+                    packed.get(index + 64 + component) & 0xFF);
+        }
+    }
+}
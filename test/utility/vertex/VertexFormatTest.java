@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.vertex;
+
+import utility.gl.RecordingOpenGL;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL30.GL_HALF_FLOAT;
+import static utility.Assert.assertArrayEquals;
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertFalse;
+import static utility.Assert.assertThrows;
+import static utility.Assert.assertTrue;
+
+/**
+ * Checks the packed byte layouts of vertex formats: offsets, stride, padding and the converted components.
+ */
+public class VertexFormatTest {
+
+    // A float position, a byte colour, half float texture coordinates and a byte normal
+    private static final VertexFormat FORMAT = new VertexFormat(
+            new VertexAttribute("position", 1, 3, ComponentType.FLOAT),
+            new VertexAttribute("colour", 0, 3, ComponentType.UNSIGNED_BYTE),
+            new VertexAttribute("uv", 2, 2, ComponentType.HALF_FLOAT),
+            new VertexAttribute("normal", 3, 3, ComponentType.BYTE));
+
+    public static void main(String[] args) {
+        offsetsAndStride();
+        packedBytes();
+        normalizedBytes();
+        halfFloats();
+        attribPointers();
+        wrongComponentCount();
+    }
+
+    private static void offsetsAndStride() {
+        // 12 bytes of floats, then 3 bytes padded to 4, 4 bytes of half floats and 3 bytes padded to 4
+        assertEquals("Position offset", 0, FORMAT.getOffset(0));
+        assertEquals("Colour offset", 12, FORMAT.getOffset(1));
+        assertEquals("UV offset", 16, FORMAT.getOffset(2));
+        assertEquals("Normal offset", 20, FORMAT.getOffset(3));
+        assertEquals("Stride", 24, FORMAT.getStride());
+        assertEquals("Component count", 11, FORMAT.getComponentCount());
+        // The format of CoreCube: 16 bytes, 12 of floats and 3 colour bytes padded to 4, instead of 48 bytes of doubles
+        VertexFormat cube = new VertexFormat(
+                new VertexAttribute("position", 1, 3, ComponentType.FLOAT),
+                new VertexAttribute("colour", 0, 3, ComponentType.UNSIGNED_BYTE));
+        assertEquals("CoreCube stride", 16, cube.getStride());
+    }
+
+    private static void packedBytes() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(FORMAT.getStride() * 2);
+        // Garbage in the padding must be overwritten
+        for (int i = 0; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0x5A);
+        }
+        VertexWriter writer = new VertexWriter(FORMAT, buffer);
+        writer.putVertex(1, 2, 3, 1, 0, 0.5f, 0.5f, 1, 0, 0, -1);
+        writer.put(0, -1, 0.25f, 8).put(1, 0.2f, 0.4f, 0.6f).put(2, 0, 2).put(3, 1, 0, 0).endVertex();
+        assertEquals("Vertices written", 2, writer.getVertexCount());
+        assertEquals("Position after two vertices", 2 * FORMAT.getStride(), buffer.position());
+
+        ByteBuffer expected = ByteBuffer.allocate(FORMAT.getStride() * 2).order(ByteOrder.nativeOrder());
+        expected.putFloat(1).putFloat(2).putFloat(3);
+        expected.put((byte) 255).put((byte) 0).put((byte) 128).put((byte) 0);
+        expected.putShort((short) 0x3800).putShort((short) 0x3C00);
+        expected.put((byte) 0).put((byte) 0).put((byte) -127).put((byte) 0);
+        expected.putFloat(-1).putFloat(0.25f).putFloat(8);
+        expected.put((byte) 51).put((byte) 102).put((byte) 153).put((byte) 0);
+        expected.putShort((short) 0).putShort((short) 0x4000);
+        expected.put((byte) 127).put((byte) 0).put((byte) 0).put((byte) 0);
+
+        byte[] actual = new byte[buffer.capacity()];
+        buffer.position(0);
+        buffer.get(actual);
+        assertArrayEquals("Packed vertices " + Arrays.toString(actual), expected.array(), actual);
+    }
+
+    private static void normalizedBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        // Rounded to the nearest of the 256 steps and clamped to 0..1
+        float[] values = {0, 1, 0.5f, 1 / 255f, -0.5f, 2};
+        int[] unsigned = {0, 255, 128, 1, 0, 255};
+        for (int i = 0; i < values.length; i++) {
+            ComponentType.UNSIGNED_BYTE.write(buffer, 0, values[i]);
+            assertEquals("Unsigned byte of " + values[i], unsigned[i], buffer.get(0) & 0xFF);
+        }
+        float[] signedValues = {0, 1, -1, 0.5f, -3};
+        int[] signed = {0, 127, -127, 64, -127};
+        for (int i = 0; i < signedValues.length; i++) {
+            ComponentType.BYTE.write(buffer, 0, signedValues[i]);
+            assertEquals("Signed byte of " + signedValues[i], signed[i], buffer.get(0));
+        }
+        assertTrue("Colours are normalized", ComponentType.UNSIGNED_BYTE.isNormalized());
+        assertFalse("Floats aren't normalized", ComponentType.FLOAT.isNormalized());
+    }
+
+    private static void halfFloats() {
+        float[] values = {0, -0f, 1, -2, 0.5f, 65504, 65520, Float.POSITIVE_INFINITY, 6.1035156e-5f, 5.9604645e-8f, 1e-9f};
+        int[] halves = {0x0000, 0x8000, 0x3C00, 0xC000, 0x3800, 0x7BFF, 0x7C00, 0x7C00, 0x0400, 0x0001, 0x0000};
+        for (int i = 0; i < values.length; i++) {
+            assertEquals("Half float of " + values[i], halves[i], ComponentType.toHalfFloat(values[i]) & 0xFFFF);
+        }
+        int nan = ComponentType.toHalfFloat(Float.NaN) & 0xFFFF;
+        assertTrue("NaN stays a NaN", (nan & 0x7C00) == 0x7C00 && (nan & 0x3FF) != 0);
+        // Every half float converts back to itself
+        for (int half = 0; half < 0x7C00; half++) {
+            assertEquals("Round trip of half " + half, half, ComponentType.toHalfFloat(toFloat(half)) & 0xFFFF);
+        }
+    }
+
+    private static float toFloat(int half) {
+        int exponent = half >> 10 & 0x1F;
+        int mantissa = half & 0x3FF;
+        if (exponent == 0)
+            return mantissa * 0x1p-24f;
+        return Math.scalb(1 + mantissa / 1024f, exponent - 15);
+    }
+
+    private static void attribPointers() {
+        RecordingOpenGL gl = new RecordingOpenGL(true);
+        FORMAT.enable(gl, 96);
+        assertEquals("Calls", Arrays.asList(
+                "glEnableVertexAttribArray(1)",
+                "glEnableVertexAttribArray(0)",
+                "glEnableVertexAttribArray(2)",
+                "glEnableVertexAttribArray(3)",
+                "glVertexAttribPointer(1, 3, " + GL_FLOAT + ", false, 24, 96)",
+                "glVertexAttribPointer(0, 3, " + GL_UNSIGNED_BYTE + ", true, 24, 108)",
+                "glVertexAttribPointer(2, 2, " + GL_HALF_FLOAT + ", false, 24, 112)",
+                "glVertexAttribPointer(3, 3, " + GL_BYTE + ", true, 24, 116)"), gl.getCommands());
+    }
+
+    private static void wrongComponentCount() {
+        final VertexWriter writer = new VertexWriter(FORMAT, ByteBuffer.allocate(FORMAT.getStride()));
+        assertThrows("Two components for a position", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                writer.put(0, 1, 2);
+            }
+        });
+        assertThrows("A vertex with a missing component", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                writer.putVertex(1, 2, 3);
+            }
+        });
+        assertThrows("Five components", IllegalArgumentException.class, new Runnable() {
+            @Override
+            public void run() {
+                new VertexAttribute("position", 0, 5, ComponentType.FLOAT);
+            }
+        });
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.voxel;
+
+import utility.mesh.Mesh;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertNull;
+import static utility.Assert.assertTrue;
+import static utility.Assert.fail;
+
+/**
+ * Meshes worlds with a known number of faces, and random worlds of which every block face that touches air is
+ * compared with the quads of the meshes: every such face must be covered once, by a quad that faces away from the block.
+ */
+public class GreedyMesherTest {
+
+    private static final int[][] DIRECTIONS = {{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+
+    public static void main(String[] args) {
+        floor();
+        checkerboard();
+        fullChunks();
+        borders();
+        randomWorlds();
+        parallel();
+    }
+
+    /**
+     * The top and the bottom of a floor of 32 x 32 blocks are one quad each, every side is one more.
+     */
+    private static void floor() {
+        VoxelWorld world = new VoxelWorld();
+        for (int x = 0; x < Chunk.SIZE; x++) {
+            for (int z = 0; z < Chunk.SIZE; z++) {
+                world.setBlock(x, 0, z, 1);
+            }
+        }
+        GreedyMesher mesher = new GreedyMesher();
+        Mesh mesh = mesher.mesh(world, world.getChunk(0, 0, 0));
+        assertEquals("Quads of the floor", 6, mesher.getFaceCount());
+        assertEquals("Block faces of the floor", 2 * 32 * 32 + 4 * 32, mesher.getVisibleFaceCount());
+        assertEquals("Vertices of the floor", 4 * 6, mesh.getVertexCount());
+        assertEquals("Triangles of the floor", 2 * 6, mesh.getTriangleCount());
+        new RemeshScheduler(world, 1).remeshAll();
+        assertCoversVisibleFaces(world);
+    }
+
+    /**
+     * No two neighbouring blocks are the same, so nothing can be merged.
+     */
+    private static void checkerboard() {
+        VoxelWorld floor = new VoxelWorld();
+        VoxelWorld stacked = new VoxelWorld();
+        for (int x = 0; x < Chunk.SIZE; x++) {
+            for (int z = 0; z < Chunk.SIZE; z++) {
+                if ((x + z) % 2 == 0)
+                    floor.setBlock(x, 0, z, 1);
+                for (int y = 0; y < Chunk.SIZE; y++) {
+                    if ((x + y + z) % 2 == 0)
+                        stacked.setBlock(x, y, z, 1);
+                }
+            }
+        }
+        GreedyMesher mesher = new GreedyMesher();
+        mesher.mesh(floor, floor.getChunk(0, 0, 0));
+        assertEquals("Quads of the checkerboard", 6 * 32 * 32 / 2, mesher.getFaceCount());
+        assertEquals("Nothing merged on the checkerboard", mesher.getFaceCount(), mesher.getVisibleFaceCount());
+        mesher.mesh(stacked, stacked.getChunk(0, 0, 0));
+        assertEquals("Quads of the stacked checkerboard", 6 * Chunk.VOLUME / 2, mesher.getFaceCount());
+        assertEquals("Nothing merged in the stacked checkerboard", mesher.getFaceCount(), mesher.getVisibleFaceCount());
+        new RemeshScheduler(stacked, 1).remeshAll();
+        assertCoversVisibleFaces(stacked);
+
+        // Different block types side by side don't merge either
+        VoxelWorld stripes = new VoxelWorld();
+        for (int x = 0; x < Chunk.SIZE; x++) {
+            for (int z = 0; z < Chunk.SIZE; z++) {
+                stripes.setBlock(x, 0, z, 1 + x % 2);
+            }
+        }
+        mesher.mesh(stripes, stripes.getChunk(0, 0, 0));
+        assertEquals("Quads of the stripes", 2 * 32 + 2 * 32 + 2, mesher.getFaceCount());
+    }
+
+    /**
+     * Two full chunks side by side hide the sides they share.
+     */
+    private static void fullChunks() {
+        VoxelWorld world = new VoxelWorld();
+        for (int x = 0; x < 2 * Chunk.SIZE; x++) {
+            for (int y = 0; y < Chunk.SIZE; y++) {
+                for (int z = 0; z < Chunk.SIZE; z++) {
+                    world.setBlock(x, y, z, 1);
+                }
+            }
+        }
+        new RemeshScheduler(world, 1).remeshAll();
+        assertEquals("Quads of the left chunk", 5, world.getChunk(0, 0, 0).getFaceCount());
+        assertEquals("Quads of the right chunk", 5, world.getChunk(1, 0, 0).getFaceCount());
+    }
+
+    /**
+     * A face on the side of a chunk depends on the block in the neighbouring chunk, on either side of the origin.
+     */
+    private static void borders() {
+        VoxelWorld world = new VoxelWorld();
+        world.setBlock(-1, 0, 0, 1);
+        world.setBlock(0, 0, 0, 1);
+        world.setBlock(31, 0, 0, 1);
+        world.setBlock(32, 0, 0, 1);
+        RemeshScheduler scheduler = new RemeshScheduler(world, 1);
+        assertEquals("Chunks meshed", 3, scheduler.remeshAll());
+        assertEquals("Quads of the chunk left of the origin", 5, world.getChunk(-1, 0, 0).getFaceCount());
+        assertEquals("Quads of the chunk at the origin", 2 * 5, world.getChunk(0, 0, 0).getFaceCount());
+        assertEquals("Quads of the chunk on the right", 5, world.getChunk(1, 0, 0).getFaceCount());
+
+        // Removing the block on the other side dirties this chunk as well, and uncovers its face
+        world.setBlock(32, 0, 0, Chunk.AIR);
+        assertEquals("Dirty chunks after removing a block on the side", 2, world.getDirtyCount());
+        scheduler.remeshAll();
+        assertNull("Mesh of an empty chunk", world.getChunk(1, 0, 0).getMesh());
+        assertEquals("Quads of the chunk at the origin", 5 + 6, world.getChunk(0, 0, 0).getFaceCount());
+        world.setBlock(-1, 0, 0, Chunk.AIR);
+        scheduler.remeshAll();
+        assertEquals("Quads with both neighbours gone", 2 * 6, world.getChunk(0, 0, 0).getFaceCount());
+        assertCoversVisibleFaces(world);
+
+        world.setBlock(10, 10, 10, 2);
+        assertEquals("A block inside a chunk dirties only that chunk", 1, world.getDirtyCount());
+        world.setBlock(10, 10, 10, 2);
+        assertEquals("Setting the same block again dirties nothing", 1, world.getDirtyCount());
+    }
+
+    private static void randomWorlds() {
+        for (int trial = 0; trial < 4; trial++) {
+            VoxelWorld world = new VoxelWorld();
+            Random random = new Random(trial);
+            double density = 0.1 + 0.25 * trial;
+            for (int x = -32; x < 32; x++) {
+                for (int y = -16; y < 16; y++) {
+                    for (int z = -8; z < 40; z++) {
+                        if (random.nextDouble() < density)
+                            world.setBlock(x, y, z, 1 + random.nextInt(1 + trial));
+                    }
+                }
+            }
+            new RemeshScheduler(world, 1).remeshAll();
+            assertCoversVisibleFaces(world);
+        }
+    }
+
+    /**
+     * Meshing on several threads gives exactly the same vertices as on one.
+     */
+    private static void parallel() {
+        VoxelWorld single = terrain();
+        VoxelWorld parallel = terrain();
+        new RemeshScheduler(single, 1).remeshAll();
+        RemeshScheduler scheduler = new RemeshScheduler(parallel, 4);
+        try {
+            assertEquals("Chunks meshed on 4 threads", single.getChunkCount(), scheduler.remeshAll());
+        } finally {
+            scheduler.shutdown();
+        }
+        for (Chunk chunk : single.getChunks()) {
+            Mesh expected = chunk.getMesh();
+            Mesh actual = parallel.getChunk(chunk.getX(), chunk.getY(), chunk.getZ()).getMesh();
+            assertEquals("Mesh of " + chunk + " on 4 threads", expected == null ? null : expected.getVertices(),
+                    actual == null ? null : actual.getVertices());
+        }
+        assertTrue("Block faces per quad of the terrain: " + scheduler.getMergeRatio(), scheduler.getMergeRatio() > 2);
+        assertCoversVisibleFaces(parallel);
+    }
+
+    private static VoxelWorld terrain() {
+        VoxelWorld world = new VoxelWorld();
+        for (int x = 0; x < 4 * Chunk.SIZE; x++) {
+            for (int z = 0; z < 4 * Chunk.SIZE; z++) {
+                int height = 24 + (int) (10 * Math.sin(x * 0.07) * Math.cos(z * 0.05) + 4 * Math.sin(x * 0.23 + z * 0.19));
+                for (int y = 0; y < height; y++) {
+                    world.setBlock(x, y, z, y < height - 4 ? 1 : y < height - 1 ? 2 : 3);
+                }
+            }
+        }
+        return world;
+    }
+
+    private static void assertCoversVisibleFaces(VoxelWorld world) {
+        Set<Long> covered = new HashSet<>();
+        for (Chunk chunk : world.getChunks()) {
+            addQuads(chunk, covered);
+        }
+        Set<Long> visible = new HashSet<>();
+        for (Chunk chunk : world.getChunks()) {
+            for (int y = 0; y < Chunk.SIZE; y++) {
+                for (int z = 0; z < Chunk.SIZE; z++) {
+                    for (int x = 0; x < Chunk.SIZE; x++) {
+                        int blockX = chunk.getX() * Chunk.SIZE + x;
+                        int blockY = chunk.getY() * Chunk.SIZE + y;
+                        int blockZ = chunk.getZ() * Chunk.SIZE + z;
+                        if (world.getBlock(blockX, blockY, blockZ) == Chunk.AIR)
+                            continue;
+                        for (int direction = 0; direction < 6; direction++) {
+                            int[] step = DIRECTIONS[direction];
+                            if (world.getBlock(blockX + step[0], blockY + step[1], blockZ + step[2]) == Chunk.AIR)
+                                visible.add(faceKey(blockX, blockY, blockZ, direction));
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals("Block faces covered by quads", visible.size(), covered.size());
+        assertTrue("The quads cover exactly the visible block faces", covered.equals(visible));
+    }
+
+    /**
+     * Adds the block faces a quad of the mesh of a chunk covers, with the direction its winding faces.
+     */
+    private static void addQuads(Chunk chunk, Set<Long> faces) {
+        Mesh mesh = chunk.getMesh();
+        if (mesh == null)
+            return;
+        ByteBuffer vertices = mesh.getVertices();
+        int stride = mesh.getFormat().getStride();
+        int quadCount = mesh.getVertexCount() / 4;
+        assertEquals("Quads of " + chunk, chunk.getFaceCount(), quadCount);
+        float[][] corners = new float[4][3];
+        for (int quad = 0; quad < quadCount; quad++) {
+            for (int corner = 0; corner < 4; corner++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    corners[corner][axis] = vertices.getFloat((quad * 4 + corner) * stride + axis * 4);
+                }
+            }
+            float[] a = new float[3];
+            float[] b = new float[3];
+            float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+            float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+            for (int axis = 0; axis < 3; axis++) {
+                a[axis] = corners[1][axis] - corners[0][axis];
+                b[axis] = corners[2][axis] - corners[0][axis];
+                for (float[] corner : corners) {
+                    min[axis] = Math.min(min[axis], corner[axis]);
+                    max[axis] = Math.max(max[axis], corner[axis]);
+                }
+            }
+            float[] normal = {a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0]};
+            int axis = normal[0] != 0 ? 0 : normal[1] != 0 ? 1 : 2;
+            boolean positive = normal[axis] > 0;
+            int direction = axis * 2 + (positive ? 0 : 1);
+            int u = (axis + 1) % 3;
+            int v = (axis + 2) % 3;
+            int[] block = new int[3];
+            // A face towards +x lies on the far side of its block
+            block[axis] = (int) min[axis] - (positive ? 1 : 0);
+            for (int i = (int) min[u]; i < (int) max[u]; i++) {
+                for (int j = (int) min[v]; j < (int) max[v]; j++) {
+                    block[u] = i;
+                    block[v] = j;
+                    if (!faces.add(faceKey(block[0], block[1], block[2], direction)))
+                        fail("Face " + direction + " of block " + block[0] + ", " + block[1] + ", " + block[2] + " covered twice");
+                }
+            }
+        }
+    }
+
+    private static long faceKey(int x, int y, int z, int direction) {
+        return (((long) (x + 4096) * 8192 + (y + 4096)) * 8192 + (z + 4096)) << 3 | direction;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015, Oskar Veerhoek
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package utility.voxel;
+
+import static utility.Assert.assertEquals;
+import static utility.Assert.assertNotNull;
+import static utility.Assert.fail;
+
+/**
+ * Lets meshing a chunk fail, on one thread and on several, and checks that the chunks that didn't get a mesh go back
+ * into the queue and are meshed by the next call.
+ */
+public class RemeshSchedulerTest {
+
+    private static final int CHUNK_COUNT = 8;
+    private static final int FAILING_CHUNK = 3;
+
+    /**
+     * Throws once when the mesher of the failing chunk looks at the chunk above it, which no other chunk does.
+     */
+    private static class FailingWorld extends VoxelWorld {
+
+        boolean failing;
+
+        @Override
+        public Chunk getChunk(int x, int y, int z) {
+            if (failing && x == FAILING_CHUNK && y == 1) {
+                failing = false;
+                throw new IllegalStateException("Broken chunk");
+            }
+            return super.getChunk(x, y, z);
+        }
+    }
+
+    public static void main(String[] args) {
+        failure(1, CHUNK_COUNT - FAILING_CHUNK);
+        // The other threads keep taking chunks, only the failed one is left
+        failure(4, 1);
+    }
+
+    private static void failure(int threadCount, int unmeshed) {
+        FailingWorld world = new FailingWorld();
+        for (int chunk = 0; chunk < CHUNK_COUNT; chunk++) {
+            world.setBlock(chunk * Chunk.SIZE + 5, 5, 5, 1);
+        }
+        RemeshScheduler scheduler = new RemeshScheduler(world, threadCount);
+        String name = " with " + threadCount + " threads";
+        try {
+            world.failing = true;
+            try {
+                scheduler.remeshAll();
+                fail("No failure" + name);
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            assertEquals("Chunks queued again" + name, unmeshed, world.getDirtyCount());
+            assertEquals("Chunks meshed before the failure" + name, CHUNK_COUNT - unmeshed, scheduler.getChunksMeshed());
+            assertEquals("Faces of the meshed chunks" + name, 6 * (CHUNK_COUNT - unmeshed), scheduler.getFacesEmitted());
+
+            assertEquals("Chunks meshed by the next call" + name, unmeshed, scheduler.remeshAll());
+            assertEquals("Queue after the next call" + name, 0, world.getDirtyCount());
+            assertEquals("All chunks meshed" + name, CHUNK_COUNT, scheduler.getChunksMeshed());
+            for (int chunk = 0; chunk < CHUNK_COUNT; chunk++) {
+                assertNotNull("Mesh of chunk " + chunk + name, world.getChunk(chunk, 0, 0).getMesh());
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+}